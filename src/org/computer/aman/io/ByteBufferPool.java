@@ -0,0 +1,98 @@
+package org.computer.aman.io;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * A pool of heap byte buffers, bucketed by powers of two, 
+ * so that reading many files does not allocate a new buffer for each of them.
+ * <p></p>
+ * A buffer larger than the largest bucket is allocated for the request and is not pooled.
+ * The methods are thread-safe.
+ * 
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class ByteBufferPool
+{
+    /**
+     * Creates a pool of buffers from 4KB up to the specified size.
+     * 
+     * @param aMaxPooledSize the capacity of the largest pooled buffer
+     * @param aBuffersPerBucket the maximum number of idle buffers in a bucket
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public ByteBufferPool(final int aMaxPooledSize, final int aBuffersPerBucket)
+    {
+        buckets = new ArrayDeque[bucketOf(aMaxPooledSize) + 1];
+        for ( int i = 0; i < buckets.length; i++ ){
+            buckets[i] = new ArrayDeque<ByteBuffer>();
+        }
+        buffersPerBucket = aBuffersPerBucket;
+    }
+
+    /**
+     * Returns a cleared buffer whose capacity is the specified size or more.
+     * 
+     * @param aSize the required capacity
+     * @return a buffer (position 0, limit aSize)
+     */
+    public ByteBuffer acquire(final int aSize)
+    {
+        final int bucket = bucketOf(aSize);
+        ByteBuffer buffer = null;
+        if ( bucket < buckets.length ){
+            synchronized ( buckets[bucket] ){
+                buffer = buckets[bucket].pollFirst();
+            }
+            if ( buffer == null ){
+                buffer = ByteBuffer.allocate(MIN_SIZE << bucket);
+            }
+        }
+        else{
+            buffer = ByteBuffer.allocate(aSize);
+        }
+        buffer.clear();
+        buffer.limit(aSize);
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer to this pool; the buffer must not be used after this.
+     * 
+     * @param aBuffer the buffer acquired from this pool
+     */
+    public void release(final ByteBuffer aBuffer)
+    {
+        final int capacity = aBuffer.capacity();
+        final int bucket = bucketOf(capacity);
+        if ( bucket >= buckets.length || (MIN_SIZE << bucket) != capacity ){
+            return;
+        }
+        synchronized ( buckets[bucket] ){
+            if ( buckets[bucket].size() < buffersPerBucket ){
+                buckets[bucket].addFirst(aBuffer);
+            }
+        }
+    }
+
+    /**
+     * Returns the index of the smallest bucket whose buffers can hold the specified size.
+     */
+    private static int bucketOf(final int aSize)
+    {
+        if ( aSize <= MIN_SIZE ){
+            return 0;
+        }
+        return 32 - Integer.numberOfLeadingZeros(aSize - 1) - MIN_SHIFT;
+    }
+
+    private static final int MIN_SHIFT = 12;
+
+    /** the capacity of the smallest buffers */
+    private static final int MIN_SIZE = 1 << MIN_SHIFT;
+
+    /** the idle buffers, bucketed by their capacities (MIN_SIZE &lt;&lt; index) */
+    private final ArrayDeque<ByteBuffer>[] buckets;
+
+    private final int buffersPerBucket;
+}
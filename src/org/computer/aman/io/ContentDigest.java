@@ -0,0 +1,150 @@
+package org.computer.aman.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A 128-bit digest of the contents of a file, with its size, for finding identical files.
+ * <p></p>
+ * The contents are streamed through a fixed buffer and hashed eight bytes at a time
+ * by two independent multiply-rotate lanes, which is much cheaper than a cryptographic digest;
+ * it is not meant to resist a deliberate collision, only to tell apart the files of a source tree.
+ * Two digests are equal if the sizes and both lanes are equal.
+ * 
+ * <p></p>
+ * <u><b>(Example) checking whether two files have the same contents.</b></u>
+ * <pre>
+ * boolean <i>same</i> = ContentDigest.of(new File(<i>"a.java"</i>)).equals(ContentDigest.of(new File(<i>"b.java"</i>)));
+ * </pre>
+ * 
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public final class ContentDigest
+{
+    private ContentDigest(final long aSize, final long aHigh, final long aLow)
+    {
+        size = aSize;
+        high = aHigh;
+        low = aLow;
+    }
+
+    /**
+     * Computes the digest of the specified file.
+     * 
+     * @param aFile the file
+     * @return the digest of the contents of the file
+     * @throws IOException if the file could not be read
+     */
+    public static ContentDigest of(final File aFile)
+    throws IOException
+    {
+        ByteBuffer buffer = BUFFERS.get();
+        long h1 = SEED_1;
+        long h2 = SEED_2;
+        long size = 0;
+        FileChannel channel = FileChannel.open(aFile.toPath(), StandardOpenOption.READ);
+        try {
+            buffer.clear();
+            boolean end = false;
+            while ( !end ){
+                final int read = channel.read(buffer);
+                if ( read == -1 ){
+                    end = true;
+                }
+                else{
+                    size += read;
+                    if ( buffer.hasRemaining() ){
+                        continue;
+                    }
+                }
+                buffer.flip();
+                while ( buffer.remaining() >= 8 ){
+                    final long v = buffer.getLong();
+                    h1 = Long.rotateLeft((h1 ^ v) * P1, 31);
+                    h2 = Long.rotateLeft((h2 + v) * P2, 27) ^ h1;
+                }
+                if ( !end ){
+                    buffer.compact();
+                }
+            }
+        } finally {
+            channel.close();
+        }
+        // the tail of fewer than eight bytes
+        long tail = 0;
+        for ( int shift = 0; buffer.hasRemaining(); shift += 8 ){
+            tail |= (buffer.get() & 0xffL) << shift;
+        }
+        h1 = Long.rotateLeft((h1 ^ tail) * P1, 31);
+        h2 = Long.rotateLeft((h2 + tail) * P2, 27) ^ h1;
+
+        return new ContentDigest(size, mix(h1 ^ size), mix(h2 + h1));
+    }
+
+    /**
+     * Returns the size of the file.
+     * 
+     * @return the size in bytes
+     */
+    public long getSize()
+    {
+        return size;
+    }
+
+    public boolean equals(final Object anObject)
+    {
+        if ( !(anObject instanceof ContentDigest) ){
+            return false;
+        }
+        ContentDigest other = (ContentDigest)anObject;
+        return size == other.size && high == other.high && low == other.low;
+    }
+
+    public int hashCode()
+    {
+        return (int)(high ^ (high >>> 32));
+    }
+
+    public String toString()
+    {
+        return String.format("%016x%016x", high, low);
+    }
+
+    /**
+     * The finalizer of a lane, which spreads every bit over the whole value.
+     */
+    private static long mix(long h)
+    {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /** the size of the buffer through which the contents are streamed */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** a buffer per thread, so that the hashing threads do not allocate a buffer per file */
+    private static final ThreadLocal<ByteBuffer> BUFFERS = ThreadLocal.withInitial(
+        () -> ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN));
+
+    private static final long P1 = 0x9e3779b97f4a7c15L;
+
+    private static final long P2 = 0xc2b2ae3d27d4eb4fL;
+
+    private static final long SEED_1 = 0x243f6a8885a308d3L;
+
+    private static final long SEED_2 = 0x13198a2e03707344L;
+
+    private final long high;
+
+    private final long low;
+
+    private final long size;
+}
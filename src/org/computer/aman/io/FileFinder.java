@@ -2,9 +2,20 @@
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 
+import org.computer.aman.metrics.profile.DirectoryWalkEvent;
+import org.computer.aman.metrics.profile.MetricsProfiler;
+import org.computer.aman.metrics.profile.Phase;
+
 /**
  * A class that recursively finds all files in or below the specified directory.   
  * 
@@ -24,11 +35,48 @@ import java.util.List;
  * List&lt;String&gt; <i>list</i> = <i>finder</i>.getList(<i>".+\\.java"</i>);
  * </pre>
  * 
+ * <p></p>
+ * <u><b>(Example 3) walking a tree with symbolic links, listing each physical directory once.</b></u>
+ * 
+ * <pre>
+ * FileFinder <i>finder</i> = new FileFinder(<i>/foo/bar</i>); 
+ * <i>finder</i>.setSymlinkPolicy(SymlinkPolicy.FOLLOW);
+ * List&lt;String&gt; <i>list</i> = <i>finder</i>.getList();
+ * </pre>
+ * 
+ * <p></p>
+ * <u><b>(Example 4) processing each Java source file as soon as it is found, without a list of all files.</b></u>
+ * 
+ * <pre>
+ * FileFinder <i>finder</i> = new FileFinder(<i>/foo/bar</i>); 
+ * <i>finder</i>.visit(<i>".+\\.java"</i>, new FileFinder.Visitor() {
+ *     public void found(String <i>path</i>)
+ *     {
+ *         ...
+ *     }
+ * });
+ * </pre>
+ * 
  * @author Hirohisa AMAN &lt;aman@computer.org&gt;
  * @version 1.0
  */
 public class FileFinder
 {
+    /**
+     * A receiver of the files found by visit().
+     */
+    public interface Visitor
+    {
+        /**
+         * Receives a found file; the walk continues when this method returns,
+         * so that a visitor which waits (e.g., for a full buffer) also holds back the walk.
+         * An unchecked exception thrown by this method ends the walk, and is thrown by visit().
+         * 
+         * @param aPath the path of the found file
+         */
+        public void found(String aPath);
+    }
+
     /** 
      * Creates a FileFinder object that searches files in or below the current directory.
      * 
@@ -66,6 +114,20 @@ public class FileFinder
         return directory.getPath();
     }
     
+    /**
+     * Sets the policy for symbolic links, which switches the walk to the safe mode:
+     * the tree is walked with an explicit stack instead of recursion (so the depth is unlimited),
+     * and the visited directories are identified by their file keys (the device and the inode),
+     * so that a link loop or a farm of links to the same directory lists each physical directory only once.
+     * Dangling links are ignored. A null policy restores the original walk, which follows every link as it is.
+     * 
+     * @param aPolicy the policy for symbolic links (null for the original walk)
+     */
+    public void setSymlinkPolicy(final SymlinkPolicy aPolicy)
+    {
+        symlinkPolicy = aPolicy;
+    }
+
     /**
      * Returns the list of all files (file paths) in or below the search root directory.
      * 
@@ -89,29 +151,213 @@ public class FileFinder
     public List<String> getList(final String aPattern) 
     throws FileNotFoundException
     {
-    	LinkedList<String> list = new LinkedList<String>();
+    	final LinkedList<String> list = new LinkedList<String>();
+        visit(aPattern, new Visitor() {
+            public void found(final String aPath)
+            {
+                list.add(aPath);
+            }
+        });
+        return list;
+    }
 
-        if ( directory.isFile() ){ 
-        	if ( directory.getPath().matches(aPattern) ){
-        		list.add(directory.getPath());
+    /**
+     * Passes all files (file paths) which the specified regular expression matches, 
+     * in or below the search root directory, to the visitor one by one while walking the tree,
+     * in the same order as getList(). Unlike getList(), the paths are never held all at once.
+     * The time spent in the visitor is not counted as the walk in MetricsProfiler.
+     * 
+     * @param aPattern the regular expression corresponding to the files to be found
+     * @param aVisitor the visitor which receives the found files
+     * @throws FileNotFoundException if there is a unaccessible directory
+     */
+    public void visit(final String aPattern, final Visitor aVisitor) 
+    throws FileNotFoundException
+    {
+        final long start = MetricsProfiler.start();
+        if ( start == 0L ){
+            find(aPattern, aVisitor);
+            return;
+        }
+        final long[] visiting = new long[1];
+        find(aPattern, new Visitor() {
+            public void found(final String aPath)
+            {
+                final long begin = System.nanoTime();
+                try {
+                    aVisitor.found(aPath);
+                } finally {
+                    visiting[0] += System.nanoTime() - begin;
+                }
+            }
+        });
+        MetricsProfiler.add(Phase.WALK, System.nanoTime() - start - visiting[0]);
+    }
+
+    private void find(final String aPattern, final Visitor aVisitor) 
+    throws FileNotFoundException
+    {
+        if ( symlinkPolicy != null ){
+            walk(directory, aPattern, symlinkPolicy, aVisitor);
+        }
+        else{
+            collect(directory, aPattern, aVisitor);
+        }
+    }
+
+    /**
+     * Passes all files (file paths) which the specified regular expression matches, 
+     * in or below the specified directory, to the visitor.
+     * 
+     * @param aDirectory the directory to be searched (or a file)
+     * @param aPattern the regular expression corresponding to the files to be found
+     * @param aVisitor the visitor which receives the found files
+     * @throws FileNotFoundException if there is a unaccessible directory
+     */
+    private static void collect(final File aDirectory, final String aPattern, final Visitor aVisitor) 
+    throws FileNotFoundException
+    {
+        if ( aDirectory.isFile() ){ 
+        	if ( aDirectory.getPath().matches(aPattern) ){
+        		aVisitor.found(aDirectory.getPath());
         	}
-        	return list;
+        	return;
         }
         
-        String[] files = directory.list();
+        DirectoryWalkEvent event = new DirectoryWalkEvent();
+        event.begin();
+        String[] files = aDirectory.list();
+        if ( event.shouldCommit() ){
+            event.path = aDirectory.getPath();
+            event.entryCount = files != null ? files.length : 0;
+            event.commit();
+        }
         for ( int i = 0; i < files.length; i++ ){
-            File f = new File(directory.getPath() + File.separator + files[i]);
+            File f = new File(aDirectory.getPath() + File.separator + files[i]);
             if ( f.isDirectory() ){
-                FileFinder subFinder = new FileFinder(f.getPath());
-                list.addAll(subFinder.getList(aPattern));
+                if ( !f.canRead() ){
+                    throw new FileNotFoundException("could not open : " + f.getPath());
+                }
+                collect(f, aPattern, aVisitor);
             }
             else if ( f.getPath().matches(aPattern) ) {                
-                list.add(f.getPath());
+                aVisitor.found(f.getPath());
             }
         }
-        return list;
     }
-            
+
+    /**
+     * Passes all files (file paths) which the specified regular expression matches, 
+     * in or below the specified directory, to the visitor, in the same order as collect();
+     * every physical directory is listed only once.
+     * 
+     * @param aRoot the directory to be searched (or a file)
+     * @param aPattern the regular expression corresponding to the files to be found
+     * @param aPolicy the policy for symbolic links
+     * @param aVisitor the visitor which receives the found files
+     * @throws FileNotFoundException if there is a unaccessible directory
+     */
+    private static void walk(final File aRoot, final String aPattern, final SymlinkPolicy aPolicy, final Visitor aVisitor) 
+    throws FileNotFoundException
+    {
+        if ( aRoot.isFile() ){ 
+            if ( aRoot.getPath().matches(aPattern) ){
+                aVisitor.found(aRoot.getPath());
+            }
+            return;
+        }
+
+        final HashSet<Object> visited = new HashSet<Object>();
+        final ArrayDeque<Directory> stack = new ArrayDeque<Directory>();
+        visited.add(identityOf(aRoot.toPath(), null));
+        stack.push(new Directory(aRoot));
+        while ( !stack.isEmpty() ){
+            Directory current = stack.peek();
+            if ( current.next == current.entries.length ){
+                stack.pop();
+                continue;
+            }
+            File f = new File(current.path + File.separator + current.entries[current.next++]);
+            BasicFileAttributes attributes;
+            try {
+                Path path = f.toPath();
+                attributes = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                if ( attributes.isSymbolicLink() ){
+                    if ( aPolicy == SymlinkPolicy.SKIP ){
+                        continue;
+                    }
+                    attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                    if ( attributes.isDirectory() && aPolicy == SymlinkPolicy.FOLLOW_FILES ){
+                        continue;
+                    }
+                }
+                if ( attributes.isDirectory() && !visited.add(identityOf(path, attributes)) ){
+                    // a loop, or another link to a directory which has been listed
+                    continue;
+                }
+            } catch (IOException e) {
+                // a dangling link, or an entry removed while walking
+                continue;
+            }
+            if ( attributes.isDirectory() ){
+                if ( !f.canRead() ){
+                    throw new FileNotFoundException("could not open : " + f.getPath());
+                }
+                stack.push(new Directory(f));
+            }
+            else if ( f.getPath().matches(aPattern) ) {                
+                aVisitor.found(f.getPath());
+            }
+        }
+    }
+
+    /**
+     * Returns the identity of a directory: its file key, or its real path if the file system has no file keys.
+     */
+    private static Object identityOf(final Path aPath, BasicFileAttributes someAttributes)
+    {
+        try {
+            if ( someAttributes == null ){
+                someAttributes = Files.readAttributes(aPath, BasicFileAttributes.class);
+            }
+            final Object key = someAttributes.fileKey();
+            return key != null ? key : aPath.toRealPath();
+        } catch (IOException e) {
+            return aPath.toAbsolutePath().normalize();
+        }
+    }
+
+    /**
+     * A directory being listed in walk().
+     */
+    private static class Directory
+    {
+        Directory(final File aDirectory)
+        {
+            path = aDirectory.getPath();
+            DirectoryWalkEvent event = new DirectoryWalkEvent();
+            event.begin();
+            String[] files = aDirectory.list();
+            entries = files != null ? files : new String[0];
+            if ( event.shouldCommit() ){
+                event.path = path;
+                event.entryCount = entries.length;
+                event.commit();
+            }
+        }
+
+        /** the names of the entries */
+        final String[] entries;
+
+        /** the index of the next entry */
+        int next;
+
+        final String path;
+    }
+
     /** the root directory of this file search */
     private File directory;
+
+    /** the policy for symbolic links (null for the original walk) */
+    private SymlinkPolicy symlinkPolicy;
 }
@@ -0,0 +1,150 @@
+package org.computer.aman.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * A reader of lines which never buffers more than a limited number of characters of a line.
+ * <p></p>
+ * The lines are split in the same way as BufferedReader.readLine() (at \n, \r or \r\n).
+ * A line longer than the limit is cut after limit + 1 characters, and readLine() returns that part
+ * without reading the rest; the rest is returned by the next call as if it were the next line.
+ * Thus a caller which rejects a line longer than the limit (e.g., by ParseBudget.checkLine())
+ * rejects it as soon as the limit is exceeded, instead of after a multi-MB line has been buffered.
+ *
+ * <p></p>
+ * <u><b>(Example) reading the lines of a file up to 10,000 characters each.</b></u>
+ * <pre>
+ * LineReader <i>reader</i> = new LineReader(new FileReader(<i>file</i>), 10000);
+ * try {
+ *     String <i>line</i> = null;
+ *     while ( (<i>line</i> = <i>reader</i>.readLine()) != null ){
+ *         if ( <i>line</i>.length() &gt; 10000 ){
+ *             ... // the line is too long
+ *         }
+ *         ...
+ *     }
+ * } finally {
+ *     <i>reader</i>.close();
+ * }
+ * </pre>
+ *
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class LineReader
+implements Closeable
+{
+    /**
+     * Creates a reader.
+     *
+     * @param aReader the reader of the characters
+     * @param aMaxLineLength the maximum number of characters of a line (Integer.MAX_VALUE for no limit)
+     */
+    public LineReader(final Reader aReader, final int aMaxLineLength)
+    {
+        in = aReader;
+        maxLineLength = aMaxLineLength;
+        buffer = new char[BUFFER_SIZE];
+    }
+
+    /**
+     * Reads a line; a line longer than the limit is cut after limit + 1 characters.
+     *
+     * @return the line without its terminator, or null at the end of the stream
+     * @throws IOException if the characters could not be read
+     */
+    public String readLine()
+    throws IOException
+    {
+        StringBuilder longLine = null;
+        int length = 0;
+        while ( true ){
+            if ( position >= limit && !fill() ){
+                if ( longLine != null && longLine.length() > 0 ){
+                    return longLine.toString();
+                }
+                return null;
+            }
+            if ( skipLF ){
+                skipLF = false;
+                if ( buffer[position] == '\n' ){
+                    position++;
+                    continue;
+                }
+            }
+
+            final int begin = position;
+            final long room = (long)maxLineLength + 1 - length;
+            final int end = (int)Math.min(limit, begin + room);
+            int i = begin;
+            while ( i < end && buffer[i] != '\n' && buffer[i] != '\r' ){
+                i++;
+            }
+            if ( i < end ){
+                // the end of the line
+                position = i + 1;
+                skipLF = buffer[i] == '\r';
+                if ( longLine == null ){
+                    return new String(buffer, begin, i - begin);
+                }
+                return longLine.append(buffer, begin, i - begin).toString();
+            }
+
+            if ( longLine == null ){
+                longLine = new StringBuilder(Math.max(80, 2 * (end - begin)));
+            }
+            longLine.append(buffer, begin, end - begin);
+            length += end - begin;
+            position = end;
+            if ( length > maxLineLength ){
+                // the rest of the line is left unread
+                return longLine.toString();
+            }
+        }
+    }
+
+    /**
+     * Closes the underlying reader.
+     *
+     * @throws IOException if the reader could not be closed
+     */
+    public void close()
+    throws IOException
+    {
+        in.close();
+    }
+
+    /**
+     * Reads the next characters into the buffer; returns false at the end of the stream.
+     */
+    private boolean fill()
+    throws IOException
+    {
+        int count;
+        do {
+            count = in.read(buffer, 0, buffer.length);
+        } while ( count == 0 );
+        position = 0;
+        limit = Math.max(count, 0);
+        return count > 0;
+    }
+
+    /** the size of the buffer in characters (the same as BufferedReader) */
+    private static final int BUFFER_SIZE = 8192;
+
+    private final char[] buffer;
+
+    private final Reader in;
+
+    /** the number of valid characters in the buffer */
+    private int limit;
+
+    private final int maxLineLength;
+
+    /** the index of the next character in the buffer */
+    private int position;
+
+    /** true if the last line ended with \r, so that a following \n is skipped */
+    private boolean skipLF;
+}
@@ -0,0 +1,118 @@
+package org.computer.aman.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+
+/**
+ * The content of a file loaded by a PrefetchingReader into a pooled buffer.
+ * <p></p>
+ * release() must be called when the content is no longer used, to return the buffer to the pool.
+ * 
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class PrefetchedFile
+{
+    PrefetchedFile(final String aPath, final ByteBuffer aBuffer, final IOException aFailure, final ByteBufferPool aPool)
+    {
+        this(aPath, aBuffer, aFailure, aPool, 0L);
+    }
+
+    PrefetchedFile(final String aPath, final ByteBuffer aBuffer, final IOException aFailure, final ByteBufferPool aPool,
+                   final long aReadNanos)
+    {
+        path = aPath;
+        buffer = aBuffer;
+        failure = aFailure;
+        pool = aPool;
+        readNanos = aReadNanos;
+    }
+
+    /**
+     * Returns the path of the file.
+     * 
+     * @return the path of the file
+     */
+    public String getPath()
+    {
+        return path;
+    }
+
+    /**
+     * Returns the time from the beginning of the asynchronous read to its completion.
+     * 
+     * @return the time in nanoseconds (0 if the file could not be read)
+     */
+    public long getReadNanos()
+    {
+        return readNanos;
+    }
+
+    /**
+     * Returns the content of the file (from position 0 to the limit).
+     * 
+     * @return the buffer holding the content
+     * @throws IOException if the file could not be read
+     */
+    public ByteBuffer getBuffer()
+    throws IOException
+    {
+        if ( failure != null ){
+            throw failure;
+        }
+        return buffer;
+    }
+
+    /**
+     * Decodes the content by the default charset (as FileReader does) and splits it into lines
+     * in the same way as BufferedReader.readLine() (at \n, \r or \r\n).
+     * 
+     * @return array of the lines
+     * @throws IOException if the file could not be read
+     */
+    public String[] getLines()
+    throws IOException
+    {
+        final ByteBuffer content = getBuffer();
+        final String text = new String(content.array(), content.arrayOffset(), content.limit(), Charset.defaultCharset());
+        ArrayList<String> lines = new ArrayList<String>();
+        final int length = text.length();
+        int begin = 0;
+        for ( int i = 0; i < length; i++ ){
+            final char c = text.charAt(i);
+            if ( c == '\n' || c == '\r' ){
+                lines.add(text.substring(begin, i));
+                if ( c == '\r' && i + 1 < length && text.charAt(i + 1) == '\n' ){
+                    i++;
+                }
+                begin = i + 1;
+            }
+        }
+        if ( begin < length ){
+            lines.add(text.substring(begin));
+        }
+        return lines.toArray(new String[lines.size()]);
+    }
+
+    /**
+     * Returns the buffer to the pool; the content must not be used after this.
+     */
+    public void release()
+    {
+        if ( buffer != null ){
+            pool.release(buffer);
+            buffer = null;
+        }
+    }
+
+    private ByteBuffer buffer;
+
+    private final IOException failure;
+
+    private final String path;
+
+    private final ByteBufferPool pool;
+
+    private final long readNanos;
+}
@@ -0,0 +1,325 @@
+package org.computer.aman.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A reader which loads the next files of a list (e.g., the list of a FileFinder) in the background,
+ * while the current file is being processed.
+ * <p></p>
+ * The files are read by AsynchronousFileChannels on a dedicated I/O thread pool into pooled buffers,
+ * and are returned by next() in the order of the list.
+ * The number of files read ahead (the depth) adapts to the measured read latency:
+ * it is the read latency divided by the time the caller spends on a file, plus one,
+ * and it grows whenever the caller has to wait for a read.
+ * The depth is bounded, and so are the bytes being read ahead, so that the memory stays bounded.
+ * <p></p>
+ * A reader is used by a single thread.
+ * 
+ * <p></p>
+ * <u><b>(Example) measuring all Java files while the next ones are being read.</b></u>
+ * <pre>
+ * PrefetchingReader <i>reader</i> = new PrefetchingReader(new FileFinder(<i>"/foo/bar"</i>).getList(<i>".+\\.java"</i>));
+ * try {
+ *     while ( <i>reader</i>.hasNext() ){
+ *         PrefetchedFile <i>file</i> = <i>reader</i>.next();
+ *         LOC <i>result</i> = LOCCounter.measure(<i>file</i>);
+ *         <i>file</i>.release();
+ *         ...
+ *     }
+ * } finally {
+ *     <i>reader</i>.close();
+ * }
+ * </pre>
+ * 
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class PrefetchingReader
+implements AutoCloseable
+{
+    /**
+     * Creates a reader which reads ahead 2 to 64 files and up to 64MB.
+     * 
+     * @param somePaths the paths of the files to be read
+     */
+    public PrefetchingReader(final List<String> somePaths)
+    {
+        this(somePaths, 2, 64, 64L << 20, 4);
+    }
+
+    /**
+     * Creates a reader.
+     * 
+     * @param somePaths the paths of the files to be read
+     * @param aMinDepth the minimum number of files read ahead
+     * @param aMaxDepth the maximum number of files read ahead
+     * @param aMaxBytesInFlight the maximum number of bytes read ahead (at least one file is read ahead anyway)
+     * @param anIOThreadCount the number of the I/O threads
+     */
+    public PrefetchingReader(final List<String> somePaths, final int aMinDepth, final int aMaxDepth, 
+                             final long aMaxBytesInFlight, final int anIOThreadCount)
+    {
+        if ( aMinDepth <= 0 || aMaxDepth < aMinDepth ){
+            throw new IllegalArgumentException("invalid depth : " + aMinDepth + " to " + aMaxDepth);
+        }
+        paths = somePaths.iterator();
+        minDepth = aMinDepth;
+        maxDepth = aMaxDepth;
+        depth = aMinDepth;
+        maxBytesInFlight = aMaxBytesInFlight;
+        pool = new ByteBufferPool(1 << 20, aMaxDepth);
+        pending = new ArrayDeque<Pending>();
+        ioThreads = Executors.newFixedThreadPool(anIOThreadCount, aRunnable -> {
+            Thread thread = new Thread(aRunnable, "prefetch");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Returns true if there are more files.
+     * 
+     * @return true if there are more files
+     */
+    public boolean hasNext()
+    {
+        return !pending.isEmpty() || paths.hasNext();
+    }
+
+    /**
+     * Returns the next file, waiting for its read if it has not completed yet.
+     * A file which could not be read is returned as well, and its getBuffer() throws the IOException.
+     * 
+     * @return the next file
+     * @throws InterruptedException if the current thread is interrupted while waiting
+     */
+    public PrefetchedFile next()
+    throws InterruptedException
+    {
+        final long now = System.nanoTime();
+        if ( lastReturnTime != 0L ){
+            processingNanos = average(processingNanos, now - lastReturnTime);
+        }
+        fill();
+        final Pending next = pending.pollFirst();
+        if ( next == null ){
+            throw new NoSuchElementException();
+        }
+        bytesInFlight -= next.size;
+        fill();
+
+        PrefetchedFile file;
+        final boolean ready = next.future.isDone();
+        final long waitStart = System.nanoTime();
+        try {
+            file = next.future.get();
+        } catch (ExecutionException e) {
+            file = new PrefetchedFile(next.path, null, new IOException(e.getCause()), pool);
+        }
+        lastReturnTime = System.nanoTime();
+        stallNanos += lastReturnTime - waitStart;
+        adapt(!ready);
+        return file;
+    }
+
+    /**
+     * Returns the current number of files read ahead.
+     * 
+     * @return the current depth
+     */
+    public int getDepth()
+    {
+        return depth;
+    }
+
+    /**
+     * Returns the total time the caller has waited in next(), i.e., the time the caller was idle on reads.
+     * 
+     * @return the total waiting time in nanoseconds
+     */
+    public long getStallNanos()
+    {
+        return stallNanos;
+    }
+
+    /**
+     * Stops reading ahead, and releases the files read ahead.
+     */
+    public void close()
+    {
+        for (Iterator<Pending> itr = pending.iterator(); itr.hasNext(); ){
+            itr.next().future.thenAccept(aFile -> aFile.release());
+        }
+        pending.clear();
+        paths = Collections.<String>emptyList().iterator();
+        ioThreads.shutdown();
+    }
+
+    /**
+     * Starts reading files until the depth or the byte limit is reached.
+     */
+    private void fill()
+    {
+        while ( pending.size() < depth && paths.hasNext() && (pending.isEmpty() || bytesInFlight < maxBytesInFlight) ){
+            final String path = paths.next();
+            final long size = new File(path).length();
+            final Pending item = new Pending(path, size);
+            pending.addLast(item);
+            bytesInFlight += size;
+            start(item);
+        }
+    }
+
+    /**
+     * Starts reading a file asynchronously.
+     */
+    private void start(final Pending anItem)
+    {
+        if ( anItem.size > Integer.MAX_VALUE - 8 ){
+            anItem.future.complete(new PrefetchedFile(anItem.path, null, 
+                                                      new IOException("too large to be read: " + anItem.path), pool));
+            return;
+        }
+        final long start = System.nanoTime();
+        final ByteBuffer buffer = pool.acquire((int)anItem.size);
+        final AsynchronousFileChannel channel;
+        try {
+            channel = AsynchronousFileChannel.open(Paths.get(anItem.path), 
+                                                   Collections.singleton(StandardOpenOption.READ), ioThreads);
+        } catch (IOException | RuntimeException e) {
+            pool.release(buffer);
+            anItem.future.complete(new PrefetchedFile(anItem.path, null, 
+                                                      e instanceof IOException ? (IOException)e : new IOException(e), pool));
+            return;
+        }
+        channel.read(buffer, 0, null, new CompletionHandler<Integer, Void>() {
+            public void completed(final Integer aCount, final Void anAttachment)
+            {
+                if ( aCount >= 0 && buffer.hasRemaining() ){
+                    channel.read(buffer, buffer.position(), null, this);
+                    return;
+                }
+                close(channel);
+                buffer.flip();
+                final long latency = System.nanoTime() - start;
+                recordLatency(latency);
+                anItem.future.complete(new PrefetchedFile(anItem.path, buffer, null, pool, latency));
+            }
+
+            public void failed(final Throwable aCause, final Void anAttachment)
+            {
+                close(channel);
+                pool.release(buffer);
+                anItem.future.complete(new PrefetchedFile(anItem.path, null, 
+                        aCause instanceof IOException ? (IOException)aCause : new IOException(aCause), pool));
+            }
+        });
+    }
+
+    /**
+     * Updates the depth from the read latency and the processing time per file.
+     */
+    private void adapt(final boolean isStalled)
+    {
+        final long latency;
+        synchronized ( this ){
+            latency = readNanos;
+        }
+        int target = depth;
+        if ( processingNanos > 0 && latency > 0 ){
+            target = (int)Math.min(maxDepth, (latency + processingNanos - 1) / processingNanos + 1);
+        }
+        if ( isStalled ){
+            target = Math.max(target, depth + 1);
+        }
+        depth = Math.max(minDepth, Math.min(maxDepth, target));
+    }
+
+    private synchronized void recordLatency(final long aNanos)
+    {
+        readNanos = average(readNanos, aNanos);
+    }
+
+    /**
+     * Returns the exponentially weighted moving average.
+     */
+    private static long average(final long anAverage, final long aSample)
+    {
+        return anAverage == 0L ? aSample : (anAverage * 7 + aSample) / 8;
+    }
+
+    private static void close(final AsynchronousFileChannel aChannel)
+    {
+        try {
+            aChannel.close();
+        } catch (IOException e) {
+            // nothing to do for a file opened for reading
+        }
+    }
+
+    /**
+     * A file being read.
+     */
+    private static class Pending
+    {
+        Pending(final String aPath, final long aSize)
+        {
+            path = aPath;
+            size = aSize;
+            future = new CompletableFuture<PrefetchedFile>();
+        }
+
+        final CompletableFuture<PrefetchedFile> future;
+
+        final String path;
+
+        final long size;
+    }
+
+    /** the number of the bytes of the files read ahead */
+    private long bytesInFlight;
+
+    /** the current number of files read ahead */
+    private int depth;
+
+    private final ExecutorService ioThreads;
+
+    /** the time at which next() returned the last time */
+    private long lastReturnTime;
+
+    private final long maxBytesInFlight;
+
+    private final int maxDepth;
+
+    private final int minDepth;
+
+    private Iterator<String> paths;
+
+    /** the files being read, in the order of the list */
+    private final ArrayDeque<Pending> pending;
+
+    private final ByteBufferPool pool;
+
+    /** the average time the caller spends on a file */
+    private long processingNanos;
+
+    /** the average read latency of a file, guarded by this */
+    private long readNanos;
+
+    /** the total time the caller has waited */
+    private long stallNanos;
+}
@@ -0,0 +1,18 @@
+package org.computer.aman.io;
+
+/**
+ * The policies of FileFinder for symbolic links.
+ * 
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public enum SymlinkPolicy
+{
+    /** links to files and directories are followed; each physical directory is still listed only once */
+    FOLLOW,
+
+    /** links to files are followed, but links to directories are not */
+    FOLLOW_FILES,
+
+    /** all links are ignored */
+    SKIP
+}
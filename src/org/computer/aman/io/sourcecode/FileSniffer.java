@@ -0,0 +1,165 @@
+package org.computer.aman.io.sourcecode;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * A cheap pre-scan which guesses what a file is from its first few kilobytes, before the file is lexed.
+ * <p></p>
+ * The following kinds are detected, in this order:
+ * <ul>
+ * <li>BINARY: a NUL byte, or many control characters</li>
+ * <li>MINIFIED: a line longer than the sample, or a very long average line</li>
+ * <li>PREPROCESSED: preprocessor line markers (# 1 "foo.c" or #line), as in .i and .ii files</li>
+ * <li>GENERATED: a marker of generated code (e.g., "@generated" or "DO NOT EDIT") in the header</li>
+ * <li>SOURCE: none of the above</li>
+ * </ul>
+ * 
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class FileSniffer
+{
+    /** the kinds of files */
+    public enum Kind { SOURCE, BINARY, MINIFIED, PREPROCESSED, GENERATED }
+
+    /**
+     * Creates a sniffer which reads the first 8KB of a file.
+     */
+    public FileSniffer()
+    {
+        this(8192);
+    }
+
+    /**
+     * Creates a sniffer.
+     * 
+     * @param aSampleSize the number of bytes read from the beginning of a file
+     */
+    public FileSniffer(final int aSampleSize)
+    {
+        sampleSize = aSampleSize;
+    }
+
+    /**
+     * Guesses the kind of the specified file.
+     * 
+     * @param aFile the file
+     * @return the kind of the file
+     * @throws IOException if the file could not be read
+     */
+    public Kind sniff(final File aFile)
+    throws IOException
+    {
+        final byte[] sample = new byte[sampleSize];
+        int length = 0;
+        InputStream in = new FileInputStream(aFile);
+        try {
+            int n;
+            while ( length < sample.length && (n = in.read(sample, length, sample.length - length)) > 0 ){
+                length += n;
+            }
+        } finally {
+            in.close();
+        }
+        return sniff(sample, length, aFile.length() > length);
+    }
+
+    /**
+     * Guesses the kind of a file from its first bytes.
+     * 
+     * @param aSample the first bytes of the file
+     * @param aLength the number of the valid bytes in aSample
+     * @param isTruncated true if the file is longer than the sample
+     * @return the kind of the file
+     */
+    public Kind sniff(final byte[] aSample, final int aLength, final boolean isTruncated)
+    {
+        int controls = 0;
+        int lines = 0;
+        int lineStart = 0;
+        boolean hasMarker = false;
+        for ( int i = 0; i < aLength; i++ ){
+            final int b = aSample[i] & 0xff;
+            if ( b == 0 ){
+                return Kind.BINARY;
+            }
+            if ( b < 0x20 && b != '\n' && b != '\r' && b != '\t' && b != '\f' ){
+                controls++;
+            }
+            if ( b == '\n' ){
+                if ( !hasMarker && isLineMarker(aSample, lineStart, i) ){
+                    hasMarker = true;
+                }
+                lines++;
+                lineStart = i + 1;
+            }
+        }
+        if ( controls * CONTROL_RATIO > aLength ){
+            return Kind.BINARY;
+        }
+        // the last line is complete only if the whole file has been read
+        final boolean lastLineComplete = !isTruncated && lineStart < aLength;
+        if ( lastLineComplete ){
+            if ( !hasMarker && isLineMarker(aSample, lineStart, aLength) ){
+                hasMarker = true;
+            }
+            lines++;
+        }
+        if ( isTruncated && lines == 0 ){
+            return Kind.MINIFIED;
+        }
+        if ( lines > 0 && (lastLineComplete ? aLength : lineStart) / lines > MINIFIED_AVERAGE_LENGTH ){
+            return Kind.MINIFIED;
+        }
+        if ( hasMarker ){
+            return Kind.PREPROCESSED;
+        }
+        final String header = new String(aSample, 0, Math.min(aLength, HEADER_SIZE), 
+                                         StandardCharsets.ISO_8859_1).toLowerCase(Locale.ROOT);
+        for ( int i = 0; i < GENERATED_MARKERS.length; i++ ){
+            if ( header.indexOf(GENERATED_MARKERS[i]) >= 0 ){
+                return Kind.GENERATED;
+            }
+        }
+        return Kind.SOURCE;
+    }
+
+    /**
+     * Returns true if the line [aBegin, anEnd) is a preprocessor line marker: # &lt;digits&gt; "..." or #line.
+     */
+    private static boolean isLineMarker(final byte[] aSample, final int aBegin, final int anEnd)
+    {
+        if ( anEnd - aBegin < 3 || aSample[aBegin] != '#' ){
+            return false;
+        }
+        int i = aBegin + 1;
+        if ( aSample[i] == ' ' && aSample[i + 1] >= '0' && aSample[i + 1] <= '9' ){
+            return true;
+        }
+        while ( i < anEnd && (aSample[i] == ' ' || aSample[i] == '\t') ){
+            i++;
+        }
+        return anEnd - i > 5 && aSample[i] == 'l' && aSample[i + 1] == 'i' && aSample[i + 2] == 'n' 
+               && aSample[i + 3] == 'e' && aSample[i + 4] == ' ';
+    }
+
+    /** a file with one control character (other than white spaces) in this many bytes is binary */
+    private static final int CONTROL_RATIO = 20;
+
+    /** the markers of generated code (in lower case) searched in the header */
+    private static final String[] GENERATED_MARKERS = {
+        "@generated", "do not edit", "auto-generated", "autogenerated", "<auto-generated", "code generated by",
+    };
+
+    /** the number of bytes at the beginning of a file in which the markers of generated code are searched */
+    private static final int HEADER_SIZE = 2048;
+
+    /** a file whose lines are longer than this on average is minified */
+    private static final int MINIFIED_AVERAGE_LENGTH = 300;
+
+    private final int sampleSize;
+}
@@ -20,12 +20,28 @@ extends File
      */
     public SourceFile(final String aPathName) 
     throws FileNotFoundException, SecurityException
+    {
+        this(aPathName, true);
+    }
+
+    /**
+     * Constructs a source file model corresponding to the specified path,
+     * without checking the file if it has been measured before and may be gone by now
+     * (e.g., for a result of measurement read back from a spill file).
+     * 
+     * @param aPathName path to the source file
+     * @param isChecked true if the file must exist and be readable
+     * @throws FileNotFoundException if the file is checked and is not found
+     * @throws SecurityException if the file is checked and cannot be opened
+     */
+    protected SourceFile(final String aPathName, final boolean isChecked) 
+    throws FileNotFoundException, SecurityException
     {
         super(aPathName);
-        if ( !isFile() ){
+        if ( isChecked && !isFile() ){
             throw new FileNotFoundException("File not found: " + aPathName);
         }
-        if ( !canRead() ){
+        if ( isChecked && !canRead() ){
             throw new SecurityException("can't open file: " + aPathName);
         }
     }
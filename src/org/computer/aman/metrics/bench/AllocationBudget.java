@@ -0,0 +1,200 @@
+package org.computer.aman.metrics.bench;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+
+import org.computer.aman.io.sourcecode.SourceFile;
+import org.computer.aman.metrics.size.loc.LOCCounter;
+import org.computer.aman.metrics.util.c.CodeMapForC;
+import org.computer.aman.metrics.util.java.CodeMapForJava;
+
+/**
+ * A regression check of the memory allocated by the lexing hot path.
+ * <p></p>
+ * The number of bytes allocated per byte of source code is measured 
+ * with com.sun.management.ThreadMXBean.getThreadAllocatedBytes() 
+ * for CodeMapForJava, CodeMapForC and LOCCounter.measure() over fixed corpora produced by CorpusGenerator,
+ * and compared with a budget.
+ * The program exits with status 1 if any of the budgets is exceeded, so that it can be run in a build.
+ * <p></p>
+ * Usage: AllocationBudget
+ * 
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class AllocationBudget
+{
+    /**
+     * A piece of work whose allocation is measured.
+     */
+    private interface Work
+    {
+        void run() throws Exception;
+    }
+
+    /**
+     * Creates a checker.
+     * 
+     * @param anOut stream to which the results are printed
+     */
+    public AllocationBudget(final PrintStream anOut)
+    {
+        out = anOut;
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if ( !(bean instanceof com.sun.management.ThreadMXBean) ){
+            throw new UnsupportedOperationException("allocated bytes are not available on this JVM");
+        }
+        threads = (com.sun.management.ThreadMXBean)bean;
+        threads.setThreadAllocatedMemoryEnabled(true);
+        exceeded = 0;
+        out.println(String.format("%-40s %12s %12s", "check", "bytes/byte", "budget"));
+    }
+
+    /**
+     * Runs all checks.
+     * 
+     * @return the number of exceeded budgets
+     * @throws Exception if a check failed
+     */
+    public int run()
+    throws Exception
+    {
+        CorpusGenerator.Kind[] kinds = CorpusGenerator.Kind.values();
+        File dir = File.createTempFile("allocation-budget", "");
+        if ( !dir.delete() || !dir.mkdir() ){
+            throw new IOException("could not create : " + dir);
+        }
+        try {
+            for ( int k = 0; k < kinds.length; k++ ){
+                final String name = kinds[k].name().toLowerCase();
+                final String[] javaLines = new CorpusGenerator(SEED).generate(kinds[k], true, LINES);
+                final String[] cLines = new CorpusGenerator(SEED).generate(kinds[k], false, LINES);
+
+                check("codemap.java." + name, sizeOf(javaLines), LEX_BUDGET, new Work() {
+                    public void run()
+                    {
+                        new CodeMapForJava(javaLines);
+                    }
+                });
+                check("codemap.c." + name, sizeOf(cLines), LEX_BUDGET, new Work() {
+                    public void run()
+                    {
+                        new CodeMapForC(cLines);
+                    }
+                });
+
+                final SourceFile javaFile = write(new File(dir, name + ".java"), javaLines);
+                final SourceFile cFile = write(new File(dir, name + ".c"), cLines);
+                check("loc.measure.java." + name, javaFile.length(), LEX_BUDGET + MEASURE_BUDGET, new Work() {
+                    public void run() throws Exception
+                    {
+                        LOCCounter.measure(javaFile);
+                    }
+                });
+                check("loc.measure.c." + name, cFile.length(), LEX_BUDGET + MEASURE_BUDGET, new Work() {
+                    public void run() throws Exception
+                    {
+                        LOCCounter.measure(cFile);
+                    }
+                });
+            }
+        } finally {
+            File[] files = dir.listFiles();
+            for ( int i = 0; files != null && i < files.length; i++ ){
+                files[i].delete();
+            }
+            dir.delete();
+        }
+        return exceeded;
+    }
+
+    /**
+     * Measures the bytes allocated per source byte by the specified work, and compares it with the budget.
+     * The work is run several times before the measurement so that the result reflects compiled code,
+     * and the least allocation of several measured runs is taken, so that a run which happens to allocate
+     * in the interpreter or during a deoptimization does not fail a budget set close to the usual allocation.
+     */
+    private void check(final String aName, final long aSourceBytes, final double aBudget, final Work aWork)
+    throws Exception
+    {
+        for ( int i = 0; i < WARMUP; i++ ){
+            aWork.run();
+        }
+        final long id = Thread.currentThread().getId();
+        long allocated = Long.MAX_VALUE;
+        for ( int i = 0; i < MEASUREMENTS; i++ ){
+            final long before = threads.getThreadAllocatedBytes(id);
+            aWork.run();
+            allocated = Math.min(allocated, threads.getThreadAllocatedBytes(id) - before);
+        }
+
+        final double ratio = (double)allocated / aSourceBytes;
+        final boolean ok = ratio <= aBudget;
+        if ( !ok ){
+            exceeded++;
+        }
+        out.println(String.format("%-40s %12.1f %12.1f%s", aName, ratio, aBudget, ok ? "" : "  EXCEEDED"));
+    }
+
+    private static long sizeOf(final String[] lines)
+    {
+        long size = 0;
+        for ( int i = 0; i < lines.length; i++ ){
+            size += lines[i].length() + 1;
+        }
+        return size;
+    }
+
+    private static SourceFile write(final File aFile, final String[] lines)
+    throws IOException
+    {
+        Writer writer = new FileWriter(aFile);
+        try {
+            for ( int i = 0; i < lines.length; i++ ){
+                writer.write(lines[i]);
+                writer.write('\n');
+            }
+        } finally {
+            writer.close();
+        }
+        return new SourceFile(aFile.getPath());
+    }
+
+    public static void main(String[] args)
+    throws Exception
+    {
+        int exceeded = new AllocationBudget(System.out).run();
+        if ( exceeded > 0 ){
+            System.out.println(exceeded + " budget(s) exceeded");
+            System.exit(1);
+        }
+    }
+
+    /** the budget of bytes allocated per source byte for producing a code map (about 1.2 times the 52.6 measured at most) */
+    public static final double LEX_BUDGET = 63.0;
+
+    /**
+     * the budget of bytes allocated per source byte by LOCCounter.measure() in addition to its code map
+     * (the total is about 1.2 times the 56.9 measured at most)
+     */
+    public static final double MEASURE_BUDGET = 5.0;
+
+    private static final int LINES = 2000;
+
+    /** the number of measured runs of a check, of which the least allocation is taken */
+    private static final int MEASUREMENTS = 5;
+
+    private static final long SEED = 20080613L;
+
+    /** the number of runs before the measurement; fewer runs leave some checks measured before C2 has compiled them */
+    private static final int WARMUP = 200;
+
+    private int exceeded;
+
+    private final PrintStream out;
+
+    private final com.sun.management.ThreadMXBean threads;
+}
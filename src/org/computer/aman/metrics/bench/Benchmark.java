@@ -0,0 +1,284 @@
+package org.computer.aman.metrics.bench;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A benchmark harness in the manner of JMH, which runs from the plain classpath.
+ * <p></p>
+ * A benchmark runs for warm-up iterations and then for measured iterations;
+ * every iteration repeats the task for a fixed time, and reports the average time per operation,
+ * so that a short task is measured over many operations and the timer costs nothing per operation.
+ * The result is the mean and the standard deviation over the measured iterations.
+ * <p></p>
+ * Every result of the task is written to a volatile field (a blackhole),
+ * so that the JIT compiler can eliminate neither the computation of the result nor the task itself.
+ * <p></p>
+ * With forks, each benchmark runs in fresh JVMs started by fork(),
+ * so that the profile collected by one benchmark does not change the code compiled for the next one;
+ * the iterations of all forks are put together.
+ * A forked JVM runs the same main class with "-only &lt;benchmark&gt;" appended to the arguments,
+ * and passes its iterations back on its standard output.
+ *
+ * <p></p>
+ * <u><b>(Example) a main method of benchmarks run in two forks.</b></u>
+ * <pre>
+ * Benchmark <i>bench</i> = Benchmark.fromArguments(<i>args</i>, 5, 10, 1000, System.out);
+ * <i>bench</i>.measure(<i>"lex.java"</i>, <i>bytes</i>, <i>task</i>);
+ * ...
+ * <i>bench</i>.fork(MyBenchmarks.class, <i>args</i>, 2);
+ * </pre>
+ *
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class Benchmark
+{
+    /**
+     * A task to be measured.
+     */
+    public interface Task
+    {
+        /**
+         * Runs the task once.
+         *
+         * @return any object computed by the task
+         * @throws Exception if the task failed
+         */
+        public Object run() throws Exception;
+    }
+
+    /**
+     * Creates a harness which measures the benchmarks in the current JVM.
+     *
+     * @param aWarmupIterations the number of iterations before the measurement
+     * @param anIterations the number of measured iterations
+     * @param anIterationMillis the time of an iteration in milliseconds
+     * @param anOut stream to which the results are printed
+     */
+    public Benchmark(final int aWarmupIterations, final int anIterations, final long anIterationMillis, final PrintStream anOut)
+    {
+        warmupIterations = aWarmupIterations;
+        iterations = anIterations;
+        iterationNanos = anIterationMillis * 1000000L;
+        out = anOut;
+        names = new LinkedHashMap<String, Long>();
+    }
+
+    /**
+     * Creates a harness for a main method: if the arguments end with "-only &lt;benchmark&gt;",
+     * the harness is in a forked JVM and measures only that benchmark;
+     * otherwise it only collects the names of the benchmarks, which are measured by fork().
+     *
+     * @param args the arguments of the main method
+     * @param aWarmupIterations the number of iterations before the measurement
+     * @param anIterations the number of measured iterations
+     * @param anIterationMillis the time of an iteration in milliseconds
+     * @param anOut stream to which the results are printed
+     * @return the harness
+     */
+    public static Benchmark fromArguments(final String[] args, final int aWarmupIterations, final int anIterations,
+                                          final long anIterationMillis, final PrintStream anOut)
+    {
+        Benchmark bench = new Benchmark(aWarmupIterations, anIterations, anIterationMillis, anOut);
+        if ( args.length >= 2 && args[args.length - 2].equals(ONLY) ){
+            bench.only = args[args.length - 1];
+        }
+        else{
+            bench.collecting = true;
+        }
+        return bench;
+    }
+
+    /**
+     * Returns the arguments without the "-only &lt;benchmark&gt;" appended for a forked JVM.
+     *
+     * @param args the arguments of the main method
+     * @return the arguments given by the user
+     */
+    public static String[] userArguments(final String[] args)
+    {
+        if ( args.length >= 2 && args[args.length - 2].equals(ONLY) ){
+            return Arrays.copyOf(args, args.length - 2);
+        }
+        return args;
+    }
+
+    /**
+     * Measures the specified task and prints the result.
+     * If the harness only collects the names, the task is not run.
+     *
+     * @param aName the name of the benchmark
+     * @param aBytesPerOperation the number of bytes processed by an operation (0 if not applicable)
+     * @param aTask the task to be measured
+     * @throws Exception if the task failed
+     */
+    public void measure(final String aName, final long aBytesPerOperation, final Task aTask)
+    throws Exception
+    {
+        if ( collecting ){
+            names.put(aName, aBytesPerOperation);
+            return;
+        }
+        if ( only != null && !only.equals(aName) ){
+            return;
+        }
+
+        for ( int i = 0; i < warmupIterations; i++ ){
+            iterate(aTask);
+        }
+        double[] samples = new double[iterations];
+        for ( int i = 0; i < iterations; i++ ){
+            samples[i] = iterate(aTask);
+        }
+        if ( only != null ){
+            // passes the iterations back to the parent JVM
+            StringBuilder line = new StringBuilder(RESULT).append(aName);
+            for ( int i = 0; i < samples.length; i++ ){
+                line.append(' ').append(samples[i]);
+            }
+            out.println(line);
+        }
+        else{
+            print(aName, aBytesPerOperation, samples);
+        }
+    }
+
+    /**
+     * Measures every benchmark collected by measure() in forked JVMs, and prints the results.
+     * This method does nothing in a forked JVM.
+     *
+     * @param aMainClass the class whose main method defines the benchmarks
+     * @param args the arguments of the main method
+     * @param aForks the number of JVMs for each benchmark
+     * @throws IOException if a JVM could not be started
+     * @throws InterruptedException if the current thread is interrupted while waiting for a JVM
+     */
+    public void fork(final Class<?> aMainClass, final String[] args, final int aForks)
+    throws IOException, InterruptedException
+    {
+        if ( !collecting ){
+            return;
+        }
+        printHeader();
+        final String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        for (Iterator<Map.Entry<String, Long>> itr = names.entrySet().iterator(); itr.hasNext(); ){
+            Map.Entry<String, Long> entry = itr.next();
+            ArrayList<Double> samples = new ArrayList<Double>();
+            for ( int f = 0; f < aForks; f++ ){
+                List<String> command = new ArrayList<String>();
+                command.add(java);
+                command.add("-cp");
+                command.add(System.getProperty("java.class.path"));
+                command.add(aMainClass.getName());
+                command.addAll(Arrays.asList(args));
+                command.add(ONLY);
+                command.add(entry.getKey());
+                Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+                BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+                try {
+                    String line;
+                    while ( (line = reader.readLine()) != null ){
+                        if ( line.startsWith(RESULT) ){
+                            String[] fields = line.split(" ");
+                            for ( int i = 2; i < fields.length; i++ ){
+                                samples.add(Double.parseDouble(fields[i]));
+                            }
+                        }
+                        else{
+                            out.println(line);
+                        }
+                    }
+                } finally {
+                    reader.close();
+                }
+                if ( process.waitFor() != 0 ){
+                    throw new IOException("the fork of " + entry.getKey() + " failed with status " + process.exitValue());
+                }
+            }
+            double[] values = new double[samples.size()];
+            for ( int i = 0; i < values.length; i++ ){
+                values[i] = samples.get(i);
+            }
+            print(entry.getKey(), entry.getValue(), values);
+        }
+    }
+
+    /**
+     * Prints the header of the results (for the benchmarks measured in the current JVM).
+     */
+    public void printHeader()
+    {
+        out.println(String.format("%-40s %14s %10s %12s", "benchmark", "ns/op", "+/-", "MB/s"));
+    }
+
+    /**
+     * Repeats the task for the time of an iteration, and returns the average time per operation in nanoseconds.
+     */
+    private double iterate(final Task aTask)
+    throws Exception
+    {
+        long operations = 0;
+        final long start = System.nanoTime();
+        long elapsed;
+        do {
+            blackhole = aTask.run();
+            operations++;
+            elapsed = System.nanoTime() - start;
+        } while ( elapsed < iterationNanos );
+        return (double)elapsed / operations;
+    }
+
+    private void print(final String aName, final long aBytesPerOperation, final double[] someSamples)
+    {
+        double mean = 0;
+        for ( int i = 0; i < someSamples.length; i++ ){
+            mean += someSamples[i];
+        }
+        mean /= Math.max(someSamples.length, 1);
+        double variance = 0;
+        for ( int i = 0; i < someSamples.length; i++ ){
+            variance += (someSamples[i] - mean) * (someSamples[i] - mean);
+        }
+        final double deviation = someSamples.length > 1 ? Math.sqrt(variance / (someSamples.length - 1)) : 0;
+
+        String throughput = aBytesPerOperation > 0 && mean > 0
+                ? String.format("%12.2f", aBytesPerOperation / mean * 1e9 / (1 << 20))
+                : String.format("%12s", "-");
+        out.println(String.format("%-40s %14.0f %10.0f %s", aName, mean, deviation, throughput));
+    }
+
+    /** the option which makes a JVM measure only one benchmark */
+    public static final String ONLY = "-only";
+
+    /** the prefix of the lines by which a forked JVM passes its iterations back */
+    private static final String RESULT = "#result ";
+
+    /** the last result of the measured tasks, written so that their work cannot be eliminated */
+    private volatile Object blackhole;
+
+    /** true if the harness only collects the names of the benchmarks */
+    private boolean collecting;
+
+    private final long iterationNanos;
+
+    private final int iterations;
+
+    /** the names of the benchmarks with their bytes per operation (if collecting) */
+    private final LinkedHashMap<String, Long> names;
+
+    /** the only benchmark to be measured (in a forked JVM) */
+    private String only;
+
+    private final PrintStream out;
+
+    private final int warmupIterations;
+}
@@ -0,0 +1,233 @@
+package org.computer.aman.metrics.bench;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * A generator of synthetic Java and C source code, used for benchmarking the code maps and LOCCounter.
+ * <p></p>
+ * The same seed always produces the same corpus, so that two runs of a benchmark
+ * measure exactly the same input.
+ * Besides realistic source files, the generator produces pathological ones
+ * which stress particular parts of the lexers:
+ * <ul>
+ *  <li> HUGE_LINE: a few lines which are very long </li>
+ *  <li> GIANT_BLOCK_COMMENT: a traditional comment spanning many lines </li>
+ *  <li> COMMENTED_OUT_CODE: many lines of commented-out code </li>
+ *  <li> LONG_STRING_LITERAL: long string literals containing comment-like characters </li>
+ * </ul>
+ * 
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class CorpusGenerator
+{
+    /** kinds of source code which can be generated */
+    public enum Kind { REALISTIC, HUGE_LINE, GIANT_BLOCK_COMMENT, COMMENTED_OUT_CODE, LONG_STRING_LITERAL }
+
+    /**
+     * Creates a generator.
+     * 
+     * @param aSeed the seed of the pseudo random numbers
+     */
+    public CorpusGenerator(final long aSeed)
+    {
+        random = new Random(aSeed);
+    }
+
+    /**
+     * Generates the lines of a source file.
+     * 
+     * @param aKind the kind of source code
+     * @param isJava true for Java source code, false for C source code
+     * @param aLineCount the approximate number of lines
+     * @return array of the generated lines
+     */
+    public String[] generate(final Kind aKind, final boolean isJava, final int aLineCount)
+    {
+        ArrayList<String> lines = new ArrayList<String>(aLineCount);
+        switch ( aKind ){
+        case HUGE_LINE:
+            for ( int i = 0; i < Math.max(1, aLineCount / 1000); i++ ){
+                StringBuilder buf = new StringBuilder();
+                while ( buf.length() < HUGE_LINE_LENGTH ){
+                    buf.append(statement(isJava)).append(' ');
+                }
+                lines.add(buf.toString());
+            }
+            break;
+        case GIANT_BLOCK_COMMENT:
+            lines.add("/*");
+            for ( int i = 0; i < aLineCount - 2; i++ ){
+                lines.add(" * " + words(8));
+            }
+            lines.add(" */");
+            break;
+        case COMMENTED_OUT_CODE:
+            for ( int i = 0; i < aLineCount; i++ ){
+                lines.add(indent(i % 6) + "// " + statement(isJava));
+            }
+            break;
+        case LONG_STRING_LITERAL:
+            for ( int i = 0; i < aLineCount; i++ ){
+                StringBuilder buf = new StringBuilder("s = \"");
+                for ( int j = 0; j < 20; j++ ){
+                    buf.append(words(1)).append(j % 5 == 0 ? " /* // \\\" " : " ");
+                }
+                lines.add(buf.append("\";").toString());
+            }
+            break;
+        default:
+            generateRealistic(lines, isJava, aLineCount);
+        }
+        return lines.toArray(new String[lines.size()]);
+    }
+
+    /**
+     * Generates a corpus of source files under the specified directory.
+     * 
+     * @param aDirectory directory in which the files are created
+     * @param aFileCount the number of files of each kind and each language
+     * @param aLineCount the approximate number of lines of each file
+     * @throws IOException if a file could not be written
+     */
+    public void generateCorpus(final File aDirectory, final int aFileCount, final int aLineCount)
+    throws IOException
+    {
+        Kind[] kinds = Kind.values();
+        for ( int k = 0; k < kinds.length; k++ ){
+            File dir = new File(aDirectory, kinds[k].name().toLowerCase());
+            if ( !dir.isDirectory() && !dir.mkdirs() ){
+                throw new IOException("could not create : " + dir);
+            }
+            for ( int i = 0; i < aFileCount; i++ ){
+                write(new File(dir, "Gen" + i + ".java"), generate(kinds[k], true, aLineCount));
+                write(new File(dir, "gen" + i + ".c"), generate(kinds[k], false, aLineCount));
+            }
+        }
+    }
+
+    private void generateRealistic(final ArrayList<String> lines, final boolean isJava, final int aLineCount)
+    {
+        lines.add(isJava ? "package gen;" : "#include <stdio.h>");
+        lines.add("");
+        int depth = 0;
+        while ( lines.size() < aLineCount ){
+            int dice = random.nextInt(100);
+            if ( dice < 5 && isJava ){
+                lines.add(indent(depth) + "/**");
+                lines.add(indent(depth) + " * " + words(6));
+                lines.add(indent(depth) + " */");
+            }
+            else if ( dice < 10 ){
+                lines.add(indent(depth) + "/* " + words(5) + " */");
+            }
+            else if ( dice < 18 ){
+                lines.add(indent(depth) + "// " + words(7));
+            }
+            else if ( dice < 21 ){
+                lines.add(indent(depth) + "// " + statement(isJava));
+            }
+            else if ( dice < 30 ){
+                lines.add("");
+            }
+            else if ( dice < 38 && depth < 6 ){
+                lines.add(indent(depth) + (depth == 0 ? (isJava ? "class C" + lines.size() : "void f" + lines.size() + "(void)") : "if ( x > " + random.nextInt(100) + " )") + " {");
+                depth++;
+            }
+            else if ( dice < 46 && depth > 0 ){
+                depth--;
+                lines.add(indent(depth) + "}");
+            }
+            else{
+                lines.add(indent(depth) + statement(isJava) + (dice < 50 ? " // " + words(3) : ""));
+            }
+        }
+        while ( depth > 0 ){
+            depth--;
+            lines.add(indent(depth) + "}");
+        }
+    }
+
+    private String indent(final int aDepth)
+    {
+        StringBuilder buf = new StringBuilder();
+        for ( int i = 0; i < aDepth; i++ ){
+            buf.append("    ");
+        }
+        return buf.toString();
+    }
+
+    private String statement(final boolean isJava)
+    {
+        switch ( random.nextInt(4) ){
+        case 0:
+            return "int v" + random.nextInt(1000) + " = " + random.nextInt(100000) + ";";
+        case 1:
+            return (isJava ? "System.out.println(" : "printf(") + "\"" + words(3) + "\");";
+        case 2:
+            return "c = '" + (char)('a' + random.nextInt(26)) + "';";
+        default:
+            return "x = x * " + random.nextInt(10) + " + y / " + (1 + random.nextInt(9)) + ";";
+        }
+    }
+
+    private String words(final int aCount)
+    {
+        StringBuilder buf = new StringBuilder();
+        for ( int i = 0; i < aCount; i++ ){
+            if ( i > 0 ){
+                buf.append(' ');
+            }
+            buf.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return buf.toString();
+    }
+
+    private static void write(final File aFile, final String[] lines)
+    throws IOException
+    {
+        Writer writer = new FileWriter(aFile);
+        try {
+            for ( int i = 0; i < lines.length; i++ ){
+                writer.write(lines[i]);
+                writer.write('\n');
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Generates a corpus.
+     * Usage: CorpusGenerator directory [seed] [files] [lines]
+     * 
+     * @param args command line arguments
+     * @throws IOException if a file could not be written
+     */
+    public static void main(String[] args)
+    throws IOException
+    {
+        if ( args.length < 1 ){
+            System.err.println("usage: CorpusGenerator directory [seed] [files] [lines]");
+            return;
+        }
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 1L;
+        int files = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int lines = args.length > 3 ? Integer.parseInt(args[3]) : 1000;
+        new CorpusGenerator(seed).generateCorpus(new File(args[0]), files, lines);
+    }
+
+    /** the length of a line generated for HUGE_LINE */
+    private static final int HUGE_LINE_LENGTH = 1 << 18;
+
+    private static final String[] WORDS = {
+        "the", "value", "of", "count", "is", "updated", "when", "buffer", "file", "line",
+        "returns", "index", "map", "code", "comment", "state", "next", "size", "TODO", "fix"
+    };
+
+    private final Random random;
+}
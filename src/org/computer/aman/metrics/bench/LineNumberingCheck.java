@@ -0,0 +1,107 @@
+package org.computer.aman.metrics.bench;
+
+import java.io.PrintStream;
+import java.util.Iterator;
+
+import org.computer.aman.io.sourcecode.SourceCodeLine;
+import org.computer.aman.metrics.size.loc.LOC;
+import org.computer.aman.metrics.size.loc.LOCCounter;
+import org.computer.aman.metrics.util.CodeLineMap;
+import org.computer.aman.metrics.util.CodeMap;
+import org.computer.aman.metrics.util.c.CodeMapForC;
+import org.computer.aman.metrics.util.java.CodeMapForJava;
+
+/**
+ * A regression check of the per-line results of the lexers, for the block comments 
+ * which are relabelled as commented-out code after their last line has been parsed.
+ * <p></p>
+ * For each fragment, the map of every line must have the same length as the line, 
+ * and the LOC line numbers must be the same as those of the original lexers 
+ * (the relabelling changes only the comment types, never the order of the lines).
+ * The program exits with status 1 if any check fails, so that it can be run in a build.
+ * <p></p>
+ * Usage: LineNumberingCheck
+ * 
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class LineNumberingCheck
+{
+    /**
+     * Creates a checker.
+     * 
+     * @param anOut stream to which the failures are printed
+     */
+    public LineNumberingCheck(final PrintStream anOut)
+    {
+        out = anOut;
+    }
+
+    /**
+     * Runs all checks.
+     * 
+     * @return the number of failed checks
+     */
+    public int run()
+    {
+        int failed = 0;
+        for ( int i = 0; i < FRAGMENTS.length; i++ ){
+            if ( !check("java." + i, FRAGMENTS[i], NUMBERS[i], new CodeMapForJava(FRAGMENTS[i])) ){
+                failed++;
+            }
+            if ( !check("c." + i, FRAGMENTS[i], NUMBERS[i], new CodeMapForC(FRAGMENTS[i])) ){
+                failed++;
+            }
+        }
+        return failed;
+    }
+
+    private boolean check(final String aName, final String[] someLines, final int[] someNumbers, final CodeMap aMap)
+    {
+        int line = 0;
+        for (Iterator<CodeLineMap> itr = aMap.iterator(); itr.hasNext(); line++ ){
+            CodeLineMap map = itr.next();
+            if ( map.getMap().length() != someLines[line].length() ){
+                out.println(aName + ": the map of line " + (line + 1) + " is " + map.getMap() + " for \"" + someLines[line] + "\"");
+                return false;
+            }
+        }
+        LOC result = LOCCounter.measure(someLines, aMap);
+        line = 0;
+        for (Iterator<SourceCodeLine> itr = result.iterator(); itr.hasNext(); line++ ){
+            final int number = itr.next().getLineNumber();
+            if ( number != someNumbers[line] ){
+                out.println(aName + ": line " + (line + 1) + " is numbered " + number + " instead of " + someNumbers[line]);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static void main(String[] args)
+    {
+        int failed = new LineNumberingCheck(System.out).run();
+        if ( failed > 0 ){
+            System.out.println(failed + " check(s) failed");
+            System.exit(1);
+        }
+        System.out.println("all checks passed");
+    }
+
+    /** the fragments, whose block comments end with ';', '{' or '}' */
+    private static final String[][] FRAGMENTS = {
+        { "int a;", "int b; /* first", "middle", "end; */", "int c;" },
+        { "/* if ( x ){", "  y = 1;", "}", "*/", "int z;" },
+        { "int a; /*", "", "  b = 2;", "", "  c = 3; */ int d;", "int e;" },
+        { "/* one-line; */", "int a;", "/* two", "lines; */" },
+    };
+
+    /** the LOC line numbers of the fragments by the original lexers (-1 for the lines without code) */
+    private static final int[][] NUMBERS = {
+        { 1, 2, -1, -1, 3 },
+        { -1, -1, -1, -1, 1 },
+        { 1, -1, -1, -1, 2, 3 },
+        { -1, 1, -1, -1 },
+    };
+
+    private final PrintStream out;
+}
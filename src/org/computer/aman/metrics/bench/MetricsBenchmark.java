@@ -0,0 +1,164 @@
+package org.computer.aman.metrics.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.computer.aman.io.FileFinder;
+import org.computer.aman.io.sourcecode.SourceFile;
+import org.computer.aman.metrics.size.loc.LOC;
+import org.computer.aman.metrics.size.loc.LOCCounter;
+import org.computer.aman.metrics.util.CodeMap;
+import org.computer.aman.metrics.util.CodeMapFactory;
+import org.computer.aman.metrics.util.c.CodeMapForC;
+import org.computer.aman.metrics.util.java.CodeMapForJava;
+
+/**
+ * Benchmarks of the lexers (code map construction), LOC measurement, FileFinder walking 
+ * and result aggregation, over a corpus produced by CorpusGenerator.
+ * <p></p>
+ * Every benchmark runs in its own forked JVMs (see Benchmark); with 0 forks, all benchmarks run in the current JVM.
+ * <p></p>
+ * Usage: MetricsBenchmark [seed] [warm-up iterations] [iterations] [forks] [iteration milliseconds]
+ * 
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class MetricsBenchmark
+{
+    public static void main(String[] args) 
+    throws Exception
+    {
+        final String[] options = Benchmark.userArguments(args);
+        final long seed = options.length > 0 ? Long.parseLong(options[0]) : 1L;
+        final int warmup = options.length > 1 ? Integer.parseInt(options[1]) : 5;
+        final int iterations = options.length > 2 ? Integer.parseInt(options[2]) : 10;
+        final int forks = options.length > 3 ? Integer.parseInt(options[3]) : 2;
+        final long iterationMillis = options.length > 4 ? Long.parseLong(options[4]) : 1000;
+        
+        Benchmark bench;
+        if ( forks > 0 ){
+            bench = Benchmark.fromArguments(args, warmup, iterations, iterationMillis, System.out);
+        }
+        else{
+            bench = new Benchmark(warmup, iterations, iterationMillis, System.out);
+            bench.printHeader();
+        }
+        CorpusGenerator generator = new CorpusGenerator(seed);
+
+        // lexing of in-memory code fragments
+        CorpusGenerator.Kind[] kinds = CorpusGenerator.Kind.values();
+        for ( int k = 0; k < kinds.length; k++ ){
+            final String[] javaLines = generator.generate(kinds[k], true, LINES);
+            final String[] cLines = generator.generate(kinds[k], false, LINES);
+            final String name = kinds[k].name().toLowerCase();
+            bench.measure("lex.java." + name, sizeOf(javaLines), new Benchmark.Task() {
+                public Object run()
+                {
+                    return new CodeMapForJava(javaLines);
+                }
+            });
+            bench.measure("lex.c." + name, sizeOf(cLines), new Benchmark.Task() {
+                public Object run()
+                {
+                    return new CodeMapForC(cLines);
+                }
+            });
+        }
+
+        // file-based code map construction, LOC measurement, walking and aggregation
+        final File root = Files.createTempDirectory("metrics-bench").toFile();
+        try {
+            generator.generateCorpus(root, FILES, LINES);
+            final List<String> paths = new FileFinder(root.getPath()).getList(".+\\.(java|c)");
+            final long corpusSize = sizeOf(paths);
+
+            bench.measure("codemap.files", corpusSize, new Benchmark.Task() {
+                public Object run() throws Exception
+                {
+                    CodeMap last = null;
+                    for (Iterator<String> itr = paths.iterator(); itr.hasNext(); ){
+                        last = CodeMapFactory.create(new SourceFile(itr.next()));
+                    }
+                    return last;
+                }
+            });
+            bench.measure("loc.measure.files", corpusSize, new Benchmark.Task() {
+                public Object run() throws Exception
+                {
+                    return measureAll(paths);
+                }
+            });
+            bench.measure("filefinder.walk", 0, new Benchmark.Task() {
+                public Object run() throws IOException
+                {
+                    return new FileFinder(root.getPath()).getList(".+\\.(java|c)");
+                }
+            });
+            final List<LOC> results = measureAll(paths);
+            bench.measure("aggregate.totals", 0, new Benchmark.Task() {
+                public Object run()
+                {
+                    long[] totals = new long[3];
+                    for (Iterator<LOC> itr = results.iterator(); itr.hasNext(); ){
+                        LOC loc = itr.next();
+                        totals[0] += loc.getLOC();
+                        totals[1] += loc.getBlankCount();
+                        totals[2] += loc.getTotalLineCount();
+                    }
+                    return totals;
+                }
+            });
+        } finally {
+            delete(root);
+        }
+        bench.fork(MetricsBenchmark.class, options, forks);
+    }
+
+    private static List<LOC> measureAll(final List<String> aPaths)
+    throws Exception
+    {
+        ArrayList<LOC> results = new ArrayList<LOC>(aPaths.size());
+        for (Iterator<String> itr = aPaths.iterator(); itr.hasNext(); ){
+            results.add(LOCCounter.measure(new SourceFile(itr.next())));
+        }
+        return results;
+    }
+
+    private static long sizeOf(final String[] lines)
+    {
+        long size = 0;
+        for ( int i = 0; i < lines.length; i++ ){
+            size += lines[i].length() + 1;
+        }
+        return size;
+    }
+
+    private static long sizeOf(final List<String> aPaths)
+    {
+        long size = 0;
+        for (Iterator<String> itr = aPaths.iterator(); itr.hasNext(); ){
+            size += new File(itr.next()).length();
+        }
+        return size;
+    }
+
+    private static void delete(final File aFile)
+    {
+        File[] children = aFile.listFiles();
+        if ( children != null ){
+            for ( int i = 0; i < children.length; i++ ){
+                delete(children[i]);
+            }
+        }
+        aFile.delete();
+    }
+
+    /** the number of files of each kind and each language in the file-based benchmarks */
+    private static final int FILES = 4;
+
+    /** the approximate number of lines of each generated source */
+    private static final int LINES = 2000;
+}
@@ -0,0 +1,179 @@
+package org.computer.aman.metrics.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+
+import org.computer.aman.io.FileFinder;
+import org.computer.aman.metrics.size.loc.LOC;
+import org.computer.aman.metrics.size.loc.pipeline.MeasurementPipeline;
+import org.computer.aman.metrics.size.loc.pipeline.ResultSink;
+import org.computer.aman.metrics.util.MemoryGovernor;
+
+/**
+ * A regression check of a MeasurementPipeline whose sink fails in the middle of a run.
+ * <p></p>
+ * The pipeline measures a corpus produced by CorpusGenerator with a small MemoryGovernor,
+ * and the sink throws an exception for one of the first results.
+ * run() must throw that exception within a time limit (instead of waiting forever
+ * for the memory of the files which never reach the sink),
+ * and the governor must have no memory accounted afterwards.
+ * The program exits with status 1 if any check fails, so that it can be run in a build.
+ * <p></p>
+ * Usage: PipelineFailureCheck
+ *
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class PipelineFailureCheck
+{
+    /**
+     * A sink which throws an exception for the n-th result.
+     */
+    private static class FailingSink
+    implements ResultSink
+    {
+        FailingSink(final int aFailAt)
+        {
+            failAt = aFailAt;
+        }
+
+        public synchronized void accept(final LOC aResult)
+        throws IOException
+        {
+            if ( ++accepted == failAt ){
+                throw new IOException("the sink failed at result " + failAt);
+            }
+        }
+
+        public void failed(final String aPath, final Exception aCause)
+        {
+        }
+
+        public void close()
+        {
+        }
+
+        private int accepted;
+
+        private final int failAt;
+    }
+
+    /**
+     * Creates a checker.
+     *
+     * @param anOut stream to which the results are printed
+     */
+    public PipelineFailureCheck(final PrintStream anOut)
+    {
+        out = anOut;
+    }
+
+    /**
+     * Runs all checks.
+     *
+     * @return the number of failed checks
+     * @throws Exception if the corpus could not be generated
+     */
+    public int run()
+    throws Exception
+    {
+        File dir = File.createTempFile("pipeline-failure", "");
+        if ( !dir.delete() || !dir.mkdir() ){
+            throw new IOException("could not create : " + dir);
+        }
+        int failed = 0;
+        try {
+            new CorpusGenerator(SEED).generateCorpus(dir, FILES, LINES);
+            if ( !checkFailure("sink.ioexception", dir) ){
+                failed++;
+            }
+        } finally {
+            delete(dir);
+        }
+        return failed;
+    }
+
+    /**
+     * Runs the pipeline with a sink which fails, and checks that run() throws the exception of the sink in time
+     * and that the governor has released all memory.
+     */
+    private boolean checkFailure(final String aName, final File aDirectory)
+    throws Exception
+    {
+        final MemoryGovernor governor = new MemoryGovernor(GOVERNOR_BUDGET);
+        final MeasurementPipeline pipeline = new MeasurementPipeline(new FileFinder(aDirectory.getPath()),
+                                                                     ".+\\.(java|c)", new FailingSink(FAIL_AT));
+        pipeline.setBufferSize(4);
+        pipeline.setMemoryGovernor(governor);
+
+        final Throwable[] thrown = new Throwable[1];
+        Thread runner = new Thread(new Runnable() {
+            public void run()
+            {
+                try {
+                    pipeline.run();
+                } catch (Throwable e) {
+                    thrown[0] = e;
+                }
+            }
+        });
+        runner.setDaemon(true);
+        final long start = System.nanoTime();
+        runner.start();
+        runner.join(TIMEOUT_MILLIS);
+        final long millis = (System.nanoTime() - start) / 1000000L;
+
+        if ( runner.isAlive() ){
+            out.println(aName + ": run() has not returned in " + TIMEOUT_MILLIS + " ms");
+            return false;
+        }
+        if ( !(thrown[0] instanceof IOException) ){
+            out.println(aName + ": run() threw " + thrown[0] + " instead of the IOException of the sink");
+            return false;
+        }
+        if ( governor.getUsed() != 0 ){
+            out.println(aName + ": " + governor.getUsed() + " bytes remain accounted to the governor");
+            return false;
+        }
+        out.println(aName + ": run() threw the exception of the sink in " + millis + " ms");
+        return true;
+    }
+
+    private static void delete(final File aFile)
+    {
+        File[] files = aFile.listFiles();
+        for ( int i = 0; files != null && i < files.length; i++ ){
+            delete(files[i]);
+        }
+        aFile.delete();
+    }
+
+    public static void main(String[] args)
+    throws Exception
+    {
+        int failed = new PipelineFailureCheck(System.out).run();
+        if ( failed > 0 ){
+            System.out.println(failed + " check(s) failed");
+            System.exit(1);
+        }
+        System.out.println("all checks passed");
+    }
+
+    /** the result for which the sink fails */
+    private static final int FAIL_AT = 5;
+
+    /** the number of files of each kind and each language in the corpus */
+    private static final int FILES = 200;
+
+    /** the budget of the governor, far smaller than the corpus */
+    private static final long GOVERNOR_BUDGET = 256 * 1024;
+
+    private static final int LINES = 50;
+
+    private static final long SEED = 20080613L;
+
+    /** the time within which run() must return */
+    private static final long TIMEOUT_MILLIS = 60000;
+
+    private final PrintStream out;
+}
@@ -0,0 +1,308 @@
+package org.computer.aman.metrics.clone;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.computer.aman.io.sourcecode.NotSupportedSourceFileExeption;
+import org.computer.aman.io.sourcecode.SourceFile;
+import org.computer.aman.metrics.util.CodeMapFactory;
+import org.computer.aman.metrics.util.LanguageRegistry;
+
+/**
+ * A detector of copy-pasted code (code clones) across many source files.
+ * <p></p>
+ * Each source line is normalized to its CODE characters (white spaces and comments are ignored)
+ * and hashed, in the same pass as the code map of the file is produced.
+ * A rolling hash over every window of N consecutive code lines is put into a sharded hash index,
+ * and the windows occurring two or more times are reported as clone groups;
+ * overlapping windows of a longer clone are merged into a single group.
+ * The files are processed in parallel, and the memory is proportional to the number of unique windows;
+ * with setSpillDirectory(), the index is spilled to temporary files instead.
+ * <p></p>
+ * Two windows are regarded as identical if their 64-bit hashes are equal.
+ * 
+ * <p></p>
+ * <u><b>(Example) finding clones of 10 or more code lines among Java files.</b></u>
+ * <pre>
+ * CloneDetector <i>detector</i> = new CloneDetector(10);
+ * List&lt;CloneGroup&gt; <i>groups</i> = <i>detector</i>.detect(new FileFinder(<i>"/foo/bar"</i>).getList(<i>".+\\.java"</i>));
+ * </pre>
+ * 
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class CloneDetector
+{
+    /**
+     * Creates a detector.
+     * 
+     * @param aWindowSize the minimum number of code lines of a clone
+     */
+    public CloneDetector(final int aWindowSize)
+    {
+        if ( aWindowSize <= 0 ){
+            throw new IllegalArgumentException("must be positive : " + aWindowSize);
+        }
+        windowSize = aWindowSize;
+        parallelism = Runtime.getRuntime().availableProcessors();
+        shardCount = 64;
+        spillDirectory = null;
+    }
+
+    /**
+     * Sets the number of files processed at the same time.
+     * 
+     * @param aParallelism the number of files processed at the same time (must be positive)
+     */
+    public void setParallelism(final int aParallelism)
+    {
+        if ( aParallelism <= 0 ){
+            throw new IllegalArgumentException("must be positive : " + aParallelism);
+        }
+        parallelism = aParallelism;
+    }
+
+    /**
+     * Sets the directory to which the index is spilled; null keeps the index in memory.
+     * 
+     * @param aDirectory the directory of the temporary files (null for the in-memory index)
+     */
+    public void setSpillDirectory(final File aDirectory)
+    {
+        spillDirectory = aDirectory;
+    }
+
+    /**
+     * Detects clones among the specified source files.
+     * The files whose languages are not supported are ignored.
+     * 
+     * @param somePaths paths of the source files
+     * @return the clone groups, the longest first
+     * @throws IOException if a source file could not be read, or the index could not be spilled
+     * @throws InterruptedException if the current thread is interrupted while waiting
+     */
+    public List<CloneGroup> detect(final List<String> somePaths)
+    throws IOException, InterruptedException
+    {
+        final String[] paths = somePaths.toArray(new String[somePaths.size()]);
+        final WindowIndex index = new WindowIndex(shardCount, spillDirectory);
+        final ArrayList<long[]> windows = new ArrayList<long[]>();
+        try {
+            index(paths, index);
+            index.forEachDuplicate(new WindowIndex.Visitor() {
+                public void visit(final long[] someOccurrences)
+                {
+                    windows.add(sort(someOccurrences));
+                }
+            });
+        } finally {
+            index.discard();
+        }
+        return merge(windows, paths);
+    }
+
+    /**
+     * Puts all windows of all files into the index, in parallel.
+     */
+    private void index(final String[] somePaths, final WindowIndex anIndex)
+    throws IOException, InterruptedException
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        try {
+            ArrayList<Future<Void>> futures = new ArrayList<Future<Void>>();
+            final int chunk = Math.max(1, somePaths.length / (parallelism * 8));
+            for ( int begin = 0; begin < somePaths.length; begin += chunk ){
+                final int from = begin;
+                final int to = Math.min(somePaths.length, begin + chunk);
+                futures.add(executor.submit(() -> {
+                    CodeLineHasher hasher = new CodeLineHasher();
+                    for ( int fileId = from; fileId < to; fileId++ ){
+                        if ( LanguageRegistry.lookup(somePaths[fileId]) == null ){
+                            continue;
+                        }
+                        CodeMapFactory.create(new SourceFile(somePaths[fileId]), hasher);
+                        indexFile(fileId, hasher, anIndex);
+                    }
+                    return null;
+                }));
+            }
+            for ( int i = 0; i < futures.size(); i++ ){
+                futures.get(i).get();
+            }
+        } catch (ExecutionException e) {
+            if ( e.getCause() instanceof IOException ){
+                throw (IOException)e.getCause();
+            }
+            if ( e.getCause() instanceof NotSupportedSourceFileExeption ){
+                throw new IOException(e.getCause());
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Puts the windows of a file into the index, computing their hashes by a rolling hash.
+     */
+    private void indexFile(final int aFileId, final CodeLineHasher aHasher, final WindowIndex anIndex)
+    throws IOException
+    {
+        final int count = aHasher.count;
+        if ( count < windowSize ){
+            return;
+        }
+        final long[] hashes = aHasher.hashes;
+        final int[] lineNumbers = aHasher.lineNumbers;
+
+        long power = 1;
+        for ( int i = 1; i < windowSize; i++ ){
+            power *= BASE;
+        }
+        long hash = 0;
+        for ( int i = 0; i < count; i++ ){
+            if ( i >= windowSize ){
+                hash -= hashes[i - windowSize] * power;
+            }
+            hash = hash * BASE + hashes[i];
+            if ( i + 1 >= windowSize ){
+                final int first = i + 1 - windowSize;
+                anIndex.add(hash, ((long)aFileId << 32) | first, ((long)lineNumbers[first] << 32) | lineNumbers[i]);
+            }
+        }
+    }
+
+    /**
+     * Merges the overlapping windows into clone groups:
+     * a window whose occurrences are those of another window shifted by one code line extends it.
+     */
+    private List<CloneGroup> merge(final ArrayList<long[]> someWindows, final String[] somePaths)
+    {
+        Collections.sort(someWindows, new Comparator<long[]>() {
+            public int compare(final long[] aLeft, final long[] aRight)
+            {
+                return Long.compare(aLeft[1], aRight[1]);
+            }
+        });
+
+        // the merged clones, keyed by the positions of their last windows
+        HashMap<Positions, long[]> tails = new HashMap<Positions, long[]>();
+        ArrayList<long[]> clones = new ArrayList<long[]>();
+        for ( int w = 0; w < someWindows.size(); w++ ){
+            final long[] window = someWindows.get(w);
+            final int count = (int)window[0];
+            long[] previous = new long[count];
+            long[] current = new long[count];
+            for ( int i = 0; i < count; i++ ){
+                current[i] = window[1 + 2 * i];
+                previous[i] = current[i] - 1;
+            }
+
+            long[] clone = tails.remove(new Positions(previous));
+            if ( clone != null ){
+                // extend the clone: update the end lines and the length
+                for ( int i = 0; i < count; i++ ){
+                    clone[2 + 2 * i] = (clone[2 + 2 * i] & 0xffffffff00000000L) | (window[2 + 2 * i] & 0xffffffffL);
+                }
+                clone[clone.length - 1]++;
+            }
+            else{
+                clone = Arrays.copyOf(window, 1 + 2 * count + 1);
+                clone[clone.length - 1] = windowSize;
+                clones.add(clone);
+            }
+            tails.put(new Positions(current), clone);
+        }
+
+        ArrayList<CloneGroup> groups = new ArrayList<CloneGroup>(clones.size());
+        for ( int c = 0; c < clones.size(); c++ ){
+            final long[] clone = clones.get(c);
+            final int count = (int)clone[0];
+            ArrayList<CloneLocation> locations = new ArrayList<CloneLocation>(count);
+            for ( int i = 0; i < count; i++ ){
+                final int fileId = (int)(clone[1 + 2 * i] >>> 32);
+                final long lines = clone[2 + 2 * i];
+                locations.add(new CloneLocation(somePaths[fileId], (int)(lines >>> 32), (int)lines));
+            }
+            groups.add(new CloneGroup((int)clone[clone.length - 1], locations));
+        }
+        Collections.sort(groups, new Comparator<CloneGroup>() {
+            public int compare(final CloneGroup aLeft, final CloneGroup aRight)
+            {
+                return Integer.compare(aRight.getLength(), aLeft.getLength());
+            }
+        });
+        return groups;
+    }
+
+    /**
+     * Sorts the occurrence pairs of a window by their positions, and trims the array.
+     */
+    private static long[] sort(final long[] someOccurrences)
+    {
+        final int count = (int)someOccurrences[0];
+        Integer[] order = new Integer[count];
+        for ( int i = 0; i < count; i++ ){
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(final Integer aLeft, final Integer aRight)
+            {
+                return Long.compare(someOccurrences[1 + 2 * aLeft], someOccurrences[1 + 2 * aRight]);
+            }
+        });
+        long[] sorted = new long[1 + 2 * count];
+        sorted[0] = count;
+        for ( int i = 0; i < count; i++ ){
+            sorted[1 + 2 * i] = someOccurrences[1 + 2 * order[i]];
+            sorted[2 + 2 * i] = someOccurrences[2 + 2 * order[i]];
+        }
+        return sorted;
+    }
+
+    /**
+     * A set of window positions used as a key.
+     */
+    private static class Positions
+    {
+        Positions(final long[] somePositions)
+        {
+            positions = somePositions;
+            hash = Arrays.hashCode(somePositions);
+        }
+
+        public int hashCode()
+        {
+            return hash;
+        }
+
+        public boolean equals(final Object anObject)
+        {
+            return anObject instanceof Positions && Arrays.equals(positions, ((Positions)anObject).positions);
+        }
+
+        private final int hash;
+
+        private final long[] positions;
+    }
+
+    /** the base of the rolling hash */
+    private static final long BASE = 1000003L;
+
+    private int parallelism;
+
+    private final int shardCount;
+
+    private File spillDirectory;
+
+    private final int windowSize;
+}
@@ -0,0 +1,52 @@
+package org.computer.aman.metrics.clone;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A group of code fragments which have the same code (ignoring white spaces and comments).
+ * 
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class CloneGroup
+{
+    CloneGroup(final int aLength, final List<CloneLocation> someLocations)
+    {
+        length = aLength;
+        locations = Collections.unmodifiableList(someLocations);
+    }
+
+    /**
+     * Returns the number of code lines of each fragment.
+     * 
+     * @return the number of code lines of each fragment
+     */
+    public int getLength()
+    {
+        return length;
+    }
+
+    /**
+     * Returns the locations of the fragments.
+     * 
+     * @return the locations of the fragments
+     */
+    public List<CloneLocation> getLocations()
+    {
+        return locations;
+    }
+
+    /**
+     * Returns the string representation of this group.
+     * 
+     * @return the string representation of this group
+     */
+    public String toString()
+    {
+        return length + " code lines: " + locations;
+    }
+
+    private final int length;
+
+    private final List<CloneLocation> locations;
+}
@@ -0,0 +1,62 @@
+package org.computer.aman.metrics.clone;
+
+/**
+ * A location of a code clone: a range of lines in a source file.
+ * 
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class CloneLocation
+{
+    CloneLocation(final String aPath, final int aBeginLine, final int anEndLine)
+    {
+        path = aPath;
+        beginLine = aBeginLine;
+        endLine = anEndLine;
+    }
+
+    /**
+     * Returns the path of the source file.
+     * 
+     * @return the path of the source file
+     */
+    public String getPath()
+    {
+        return path;
+    }
+
+    /**
+     * Returns the first line of the clone.
+     * 
+     * @return the first line number of the clone
+     */
+    public int getBeginLine()
+    {
+        return beginLine;
+    }
+
+    /**
+     * Returns the last line of the clone.
+     * 
+     * @return the last line number of the clone
+     */
+    public int getEndLine()
+    {
+        return endLine;
+    }
+
+    /**
+     * Returns the string representation of this location ("path:begin-end").
+     * 
+     * @return the string representation of this location
+     */
+    public String toString()
+    {
+        return path + ":" + beginLine + "-" + endLine;
+    }
+
+    private final int beginLine;
+
+    private final int endLine;
+
+    private final String path;
+}
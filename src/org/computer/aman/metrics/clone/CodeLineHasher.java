@@ -0,0 +1,86 @@
+package org.computer.aman.metrics.clone;
+
+import java.util.Arrays;
+
+import org.computer.aman.io.sourcecode.SourceFile;
+import org.computer.aman.metrics.util.CodeLineMap;
+import org.computer.aman.metrics.util.MetricCollector;
+
+/**
+ * A MetricCollector which normalizes each source line to its CODE characters
+ * (i.e., without white spaces and comments) and hashes it.
+ * Lines without CODE characters are skipped.
+ * 
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+class CodeLineHasher
+implements MetricCollector
+{
+    CodeLineHasher()
+    {
+        hashes = new long[256];
+        lineNumbers = new int[256];
+    }
+
+    public void beginFile(final SourceFile aSourceFile)
+    {
+        count = 0;
+        lineNumber = 0;
+        hash = FNV_OFFSET;
+        hasCode = false;
+    }
+
+    public void span(final String aLine, final int aBegin, final int anEnd, final char aType)
+    {
+        if ( aType != CODE ){
+            return;
+        }
+        long h = hash;
+        for ( int i = aBegin; i < anEnd; i++ ){
+            h = (h ^ aLine.charAt(i)) * FNV_PRIME;
+        }
+        hash = h;
+        hasCode = true;
+    }
+
+    public void endLine(final String aLine, final CharSequence aMap, final int aCodeCount, final int aBlankCount)
+    {
+        lineNumber++;
+        if ( hasCode ){
+            if ( count == hashes.length ){
+                hashes = Arrays.copyOf(hashes, count * 2);
+                lineNumbers = Arrays.copyOf(lineNumbers, count * 2);
+            }
+            hashes[count] = hash;
+            lineNumbers[count] = lineNumber;
+            count++;
+        }
+        hash = FNV_OFFSET;
+        hasCode = false;
+    }
+
+    public void endFile()
+    {
+    }
+
+    /** the number of code lines of the last parsed file */
+    int count;
+
+    /** the hashes of the code lines (valid up to count) */
+    long[] hashes;
+
+    /** the physical line numbers of the code lines (valid up to count) */
+    int[] lineNumbers;
+
+    private static final char CODE = CodeLineMap.CODE.charAt(0);
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private long hash;
+
+    private boolean hasCode;
+
+    private int lineNumber;
+}
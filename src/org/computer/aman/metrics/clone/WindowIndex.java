@@ -0,0 +1,194 @@
+package org.computer.aman.metrics.clone;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * A sharded hash index from the hash of a window (N consecutive code lines) to its occurrences.
+ * <p></p>
+ * An occurrence is a pair of longs: (file id &lt;&lt; 32 | code line index) and (begin line &lt;&lt; 32 | end line).
+ * The index either keeps the shards in memory, or spills them to temporary files 
+ * and loads them one by one when the duplicates are enumerated,
+ * so that the memory is proportional to the number of unique windows of a single shard.
+ * 
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+class WindowIndex
+{
+    /**
+     * Receives the occurrences of a window which occurs two or more times.
+     */
+    interface Visitor
+    {
+        /**
+         * @param someOccurrences array of occurrence pairs (from index 1; index 0 holds the number of pairs)
+         */
+        void visit(long[] someOccurrences);
+    }
+
+    /**
+     * Creates an index.
+     * 
+     * @param aShardCount the number of shards (a power of two)
+     * @param aSpillDirectory directory of the temporary files (null for the in-memory index)
+     * @throws IOException if a temporary file could not be created
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    WindowIndex(final int aShardCount, final File aSpillDirectory)
+    throws IOException
+    {
+        shardMask = aShardCount - 1;
+        if ( aSpillDirectory == null ){
+            shards = new HashMap[aShardCount];
+            for ( int i = 0; i < aShardCount; i++ ){
+                shards[i] = new HashMap<Long, long[]>();
+            }
+            spillFiles = null;
+            spillStreams = null;
+        }
+        else{
+            shards = null;
+            spillFiles = new File[aShardCount];
+            spillStreams = new DataOutputStream[aShardCount];
+            for ( int i = 0; i < aShardCount; i++ ){
+                spillFiles[i] = File.createTempFile("clone-index-" + i + "-", ".bin", aSpillDirectory);
+                spillFiles[i].deleteOnExit();
+                spillStreams[i] = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(spillFiles[i])));
+            }
+        }
+    }
+
+    /**
+     * Adds an occurrence of a window; this method is thread-safe.
+     * 
+     * @param aHash the hash of the window
+     * @param aPosition file id &lt;&lt; 32 | code line index
+     * @param aLines begin line &lt;&lt; 32 | end line
+     * @throws IOException if the occurrence could not be spilled
+     */
+    void add(final long aHash, final long aPosition, final long aLines)
+    throws IOException
+    {
+        final int shard = (int)(aHash ^ (aHash >>> 32)) & shardMask;
+        if ( shards == null ){
+            DataOutputStream out = spillStreams[shard];
+            synchronized ( out ){
+                out.writeLong(aHash);
+                out.writeLong(aPosition);
+                out.writeLong(aLines);
+            }
+            return;
+        }
+        HashMap<Long, long[]> map = shards[shard];
+        synchronized ( map ){
+            put(map, aHash, aPosition, aLines);
+        }
+    }
+
+    /**
+     * Passes the occurrences of every window occurring two or more times to the visitor,
+     * and releases the index.
+     * 
+     * @param aVisitor the visitor
+     * @throws IOException if a spilled shard could not be read
+     */
+    void forEachDuplicate(final Visitor aVisitor)
+    throws IOException
+    {
+        final int shardCount = shardMask + 1;
+        for ( int i = 0; i < shardCount; i++ ){
+            HashMap<Long, long[]> map;
+            if ( shards != null ){
+                map = shards[i];
+                shards[i] = null;
+            }
+            else{
+                spillStreams[i].close();
+                map = load(spillFiles[i]);
+                spillFiles[i].delete();
+            }
+            for (Iterator<Map.Entry<Long, long[]>> itr = map.entrySet().iterator(); itr.hasNext(); ){
+                long[] occurrences = itr.next().getValue();
+                if ( occurrences[0] > 1 ){
+                    aVisitor.visit(occurrences);
+                }
+            }
+        }
+    }
+
+    /**
+     * Closes and deletes the spilled shards, if any.
+     */
+    void discard()
+    {
+        if ( spillFiles == null ){
+            return;
+        }
+        for ( int i = 0; i < spillFiles.length; i++ ){
+            try {
+                spillStreams[i].close();
+            } catch (IOException e) {
+                // the file is deleted anyway
+            }
+            spillFiles[i].delete();
+        }
+    }
+
+    private static HashMap<Long, long[]> load(final File aFile)
+    throws IOException
+    {
+        HashMap<Long, long[]> map = new HashMap<Long, long[]>();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(aFile)));
+        try {
+            while ( true ){
+                long hash;
+                try {
+                    hash = in.readLong();
+                } catch (EOFException e) {
+                    break;
+                }
+                put(map, hash, in.readLong(), in.readLong());
+            }
+        } finally {
+            in.close();
+        }
+        return map;
+    }
+
+    private static void put(final HashMap<Long, long[]> aMap, final long aHash, final long aPosition, final long aLines)
+    {
+        long[] occurrences = aMap.get(aHash);
+        if ( occurrences == null ){
+            aMap.put(aHash, new long[] { 1, aPosition, aLines });
+            return;
+        }
+        int count = (int)occurrences[0];
+        if ( 1 + 2 * (count + 1) > occurrences.length ){
+            long[] grown = new long[1 + 4 * count];
+            System.arraycopy(occurrences, 0, grown, 0, occurrences.length);
+            occurrences = grown;
+            aMap.put(aHash, occurrences);
+        }
+        occurrences[1 + 2 * count] = aPosition;
+        occurrences[2 + 2 * count] = aLines;
+        occurrences[0] = count + 1;
+    }
+
+    private final int shardMask;
+
+    private final HashMap<Long, long[]>[] shards;
+
+    private final File[] spillFiles;
+
+    private final DataOutputStream[] spillStreams;
+}
@@ -0,0 +1,186 @@
+package org.computer.aman.metrics.daemon;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * A client of a MetricsDaemon, which keeps a connection open for any number of requests.
+ * <p></p>
+ * Usage: MetricsClient &lt;socket path | port&gt; &lt;file&gt; ...
+ * (prints the path, LOC, blank, comment and commented-out line counts of each file, separated by tabs)
+ * 
+ * <p></p>
+ * <u><b>(Example) measuring files through a daemon.</b></u>
+ * <pre>
+ * MetricsClient <i>client</i> = new MetricsClient(<i>"/tmp/metrics.sock"</i>);
+ * int[] <i>values</i> = <i>client</i>.measure(<i>"Baz.java"</i>);
+ * int <i>loc</i> = <i>values</i>[ResultStore.Column.LOC.ordinal()];
+ * <i>client</i>.close();
+ * </pre>
+ * 
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class MetricsClient
+implements AutoCloseable
+{
+    public static void main(String[] args) 
+    throws Exception
+    {
+        if ( args.length < 2 ){
+            System.err.println("Usage: MetricsClient <socket path | port> <file> ...");
+            System.exit(1);
+        }
+        MetricsClient client = new MetricsClient(args[0]);
+        try {
+            String[] paths = new String[args.length - 1];
+            System.arraycopy(args, 1, paths, 0, paths.length);
+            String[] responses = client.request(paths);
+            for ( int i = 0; i < paths.length; i++ ){
+                if ( responses[i].startsWith("OK ") ){
+                    System.out.println(paths[i] + "\t" + responses[i].substring(3).replace(' ', '\t'));
+                }
+                else{
+                    System.err.println(paths[i] + ": " + responses[i]);
+                }
+            }
+        } finally {
+            client.close();
+        }
+    }
+
+    /**
+     * Connects to a daemon.
+     * 
+     * @param anAddress the port number or the socket path of the daemon
+     * @throws IOException if the daemon could not be connected
+     */
+    public MetricsClient(final String anAddress)
+    throws IOException
+    {
+        this(MetricsDaemon.addressOf(anAddress));
+    }
+
+    /**
+     * Connects to a daemon.
+     * 
+     * @param anAddress the address of the daemon
+     * @throws IOException if the daemon could not be connected
+     */
+    public MetricsClient(final SocketAddress anAddress)
+    throws IOException
+    {
+        channel = anAddress instanceof UnixDomainSocketAddress 
+                  ? SocketChannel.open(StandardProtocolFamily.UNIX) : SocketChannel.open();
+        channel.connect(anAddress);
+        if ( !(anAddress instanceof UnixDomainSocketAddress) ){
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        }
+        in = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8));
+        out = new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Measures a file.
+     * 
+     * @param aPath path of the file (relative to the current directory of the client)
+     * @return the LOC, blank, comment and commented-out line counts (in the order of ResultStore.Column)
+     * @throws IOException if the daemon failed to measure the file, or the connection is broken
+     */
+    public int[] measure(final String aPath)
+    throws IOException
+    {
+        return valuesOf(request(new String[] { aPath })[0]);
+    }
+
+    /**
+     * Measures files, sending all requests before reading the responses.
+     * 
+     * @param somePaths paths of the files (relative to the current directory of the client)
+     * @return the values of the files (null for a file which the daemon failed to measure)
+     * @throws IOException if the connection is broken
+     */
+    public int[][] measure(final List<String> somePaths)
+    throws IOException
+    {
+        String[] responses = request(somePaths.toArray(new String[somePaths.size()]));
+        int[][] values = new int[responses.length][];
+        for ( int i = 0; i < responses.length; i++ ){
+            values[i] = responses[i].startsWith("OK ") ? valuesOf(responses[i]) : null;
+        }
+        return values;
+    }
+
+    /**
+     * Closes the connection.
+     * 
+     * @throws IOException if the connection could not be closed
+     */
+    public void close()
+    throws IOException
+    {
+        channel.close();
+    }
+
+    /**
+     * Sends the measurement requests of the files in batches, and returns the raw responses.
+     * A batch is bounded by BATCH_SIZE, so that neither side blocks on a full socket buffer
+     * while the other is still writing.
+     */
+    private String[] request(final String[] somePaths)
+    throws IOException
+    {
+        String[] responses = new String[somePaths.length];
+        StringBuilder requests = new StringBuilder();
+        for ( int begin = 0; begin < somePaths.length; begin += BATCH_SIZE ){
+            final int end = Math.min(begin + BATCH_SIZE, somePaths.length);
+            requests.setLength(0);
+            for ( int i = begin; i < end; i++ ){
+                requests.append("M ").append(new File(somePaths[i]).getAbsolutePath()).append('\n');
+            }
+            out.write(requests.toString());
+            out.flush();
+            for ( int i = begin; i < end; i++ ){
+                responses[i] = in.readLine();
+                if ( responses[i] == null ){
+                    throw new IOException("connection closed by the daemon");
+                }
+            }
+        }
+        return responses;
+    }
+
+    private static int[] valuesOf(final String aResponse)
+    throws IOException
+    {
+        if ( !aResponse.startsWith("OK ") ){
+            throw new IOException(aResponse);
+        }
+        String[] fields = aResponse.substring(3).split(" ");
+        int[] values = new int[fields.length];
+        for ( int i = 0; i < fields.length; i++ ){
+            values[i] = Integer.parseInt(fields[i]);
+        }
+        return values;
+    }
+
+    /** the maximum number of requests sent before reading their responses */
+    private static final int BATCH_SIZE = 256;
+
+    private final SocketChannel channel;
+
+    private final BufferedReader in;
+
+    private final Writer out;
+}
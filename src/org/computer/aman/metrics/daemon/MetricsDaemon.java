@@ -0,0 +1,417 @@
+package org.computer.aman.metrics.daemon;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.computer.aman.io.sourcecode.SourceFile;
+import org.computer.aman.metrics.size.loc.LOC;
+import org.computer.aman.metrics.size.loc.LOCCollector;
+import org.computer.aman.metrics.util.CodeLineMap;
+import org.computer.aman.metrics.util.CodeMap;
+import org.computer.aman.metrics.util.CodeMapFactory;
+import org.computer.aman.metrics.util.LanguageProvider;
+import org.computer.aman.metrics.util.LanguageRegistry;
+
+/**
+ * A long-running local server of LOC measurement, which saves the clients the startup of a JVM per file.
+ * <p></p>
+ * The daemon warms up the lexers of all registered languages before it accepts clients,
+ * and keeps a cache of the results, which is valid while the size and the modification time of a file are unchanged.
+ * It listens on a Unix domain socket, or on a TCP port of the loopback address only.
+ * The directory of a Unix domain socket must be accessible only by the owner (e.g., mode 0700; 
+ * it is created so if it does not exist), so that no other user can connect
+ * even before the permissions of the socket itself have been set.
+ * <p></p>
+ * The protocol is line-based UTF-8 text; a client may send any number of requests on a connection
+ * without waiting for the responses, which come back in the same order:
+ * <pre>
+ *  M &lt;absolute path&gt;   -&gt;  OK &lt;LOC&gt; &lt;blank&gt; &lt;comment&gt; &lt;commented-out&gt;   or   ERR &lt;message&gt;
+ *  S                    -&gt;  OK &lt;cache hits&gt; &lt;cache misses&gt; &lt;cached files&gt;
+ *  P                    -&gt;  OK
+ * </pre>
+ * The values are in the order of ResultStore.Column (the comment lines include the commented-out lines).
+ * <p></p>
+ * Usage: MetricsDaemon &lt;socket path | port&gt; [cache size]
+ * <p></p>
+ * Since the protocol is plain text, shell scripts need not start a JVM per file (MetricsClient is for Java callers):
+ * <pre>
+ *  printf 'M %s\n' "$(realpath Baz.java)" | nc -U -N /run/user/1000/metrics/metrics.sock
+ *  printf 'M %s\n' "$(realpath Baz.java)" | socat - UNIX-CONNECT:/run/user/1000/metrics/metrics.sock
+ *  exec 3&lt;&gt;/dev/tcp/127.0.0.1/7070; printf 'M %s\n' "$(realpath Baz.java)" &gt;&amp;3; read -r response &lt;&amp;3   (bash, TCP)
+ * </pre>
+ * 
+ * <p></p>
+ * <u><b>(Example) measuring a file through a daemon.</b></u>
+ * <pre>
+ * MetricsDaemon <i>daemon</i> = new MetricsDaemon(MetricsDaemon.addressOf(<i>"/run/user/1000/metrics/metrics.sock"</i>), 100000);
+ * <i>daemon</i>.start();
+ * ...
+ * MetricsClient <i>client</i> = new MetricsClient(<i>"/run/user/1000/metrics/metrics.sock"</i>);
+ * int[] <i>values</i> = <i>client</i>.measure(<i>"/foo/bar/Baz.java"</i>);
+ * </pre>
+ * 
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class MetricsDaemon
+implements AutoCloseable
+{
+    public static void main(String[] args) 
+    throws Exception
+    {
+        if ( args.length < 1 ){
+            System.err.println("Usage: MetricsDaemon <socket path | port> [cache size]");
+            System.exit(1);
+        }
+        final int cacheSize = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_CACHE_SIZE;
+        final MetricsDaemon daemon = new MetricsDaemon(addressOf(args[0]), cacheSize);
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            public void run()
+            {
+                daemon.close();
+            }
+        });
+        daemon.start();
+        System.out.println("listening on " + args[0]);
+        daemon.await();
+    }
+
+    /**
+     * Creates a daemon which listens on the specified address.
+     * 
+     * @param anAddress a UnixDomainSocketAddress, or an InetSocketAddress of the loopback address
+     * @param aCacheSize the maximum number of files whose results are cached
+     */
+    public MetricsDaemon(final SocketAddress anAddress, final int aCacheSize)
+    {
+        if ( anAddress instanceof InetSocketAddress && !((InetSocketAddress)anAddress).getAddress().isLoopbackAddress() ){
+            throw new IllegalArgumentException("not a loopback address : " + anAddress);
+        }
+        address = anAddress;
+        cache = new ResultCache(aCacheSize);
+        workers = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-daemon");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Returns the address of a daemon: a TCP port of the loopback address if the specified string is a number,
+     * or else a Unix domain socket at the specified path.
+     * 
+     * @param anAddress a port number or a socket path
+     * @return the address
+     */
+    public static SocketAddress addressOf(final String anAddress)
+    {
+        if ( anAddress.matches("[0-9]+") ){
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(anAddress));
+        }
+        return UnixDomainSocketAddress.of(anAddress);
+    }
+
+    /**
+     * Warms up the lexers, and starts to accept clients.
+     * A stale socket file left by a crashed daemon is replaced.
+     * 
+     * @throws IOException if the address could not be bound, 
+     *         or the directory of the socket is accessible by other users
+     */
+    public synchronized void start()
+    throws IOException
+    {
+        warmUp();
+        if ( address instanceof UnixDomainSocketAddress ){
+            final Path path = ((UnixDomainSocketAddress)address).getPath();
+            checkPrivate(path.toAbsolutePath().getParent());
+            Files.deleteIfExists(path);
+            server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            server.bind(address);
+            try {
+                // only the owner may connect
+                Files.setPosixFilePermissions(path, PosixFilePermissions.fromString("rw-------"));
+            } catch (UnsupportedOperationException e) {
+                // not a POSIX file system
+            }
+        }
+        else{
+            server = ServerSocketChannel.open();
+            server.bind(address);
+        }
+        workers.execute(new Runnable() {
+            public void run()
+            {
+                accept();
+            }
+        });
+    }
+
+    /**
+     * Waits until the daemon is closed.
+     * 
+     * @throws InterruptedException if the current thread is interrupted while waiting
+     */
+    public synchronized void await()
+    throws InterruptedException
+    {
+        while ( server != null && server.isOpen() ){
+            wait();
+        }
+    }
+
+    /**
+     * Stops accepting clients, and closes the connections.
+     */
+    public synchronized void close()
+    {
+        if ( server == null ){
+            return;
+        }
+        try {
+            server.close();
+            if ( address instanceof UnixDomainSocketAddress ){
+                Files.deleteIfExists(((UnixDomainSocketAddress)address).getPath());
+            }
+        } catch (IOException e) {
+            // nothing to do any more
+        }
+        workers.shutdownNow();
+        notifyAll();
+    }
+
+    /**
+     * Measures a file, or returns its cached values.
+     * 
+     * @param aPath path of the file
+     * @return the LOC, blank, comment and commented-out line counts (in the order of ResultStore.Column)
+     * @throws Exception if the file could not be measured
+     */
+    public int[] measure(final String aPath)
+    throws Exception
+    {
+        final SourceFile sourceFile = new SourceFile(aPath);
+        int[] values = cache.get(sourceFile);
+        if ( values != null ){
+            return values;
+        }
+        final long size = sourceFile.length();
+        final long lastModified = sourceFile.lastModified();
+        LOCCollector collector = new LOCCollector(sourceFile);
+        values = valuesOf(collector, CodeMapFactory.create(sourceFile, collector));
+        cache.put(sourceFile, size, lastModified, values);
+        return values;
+    }
+
+    /**
+     * Accepts the clients until the daemon is closed.
+     */
+    private void accept()
+    {
+        while ( true ){
+            try {
+                final SocketChannel client = server.accept();
+                if ( !(address instanceof UnixDomainSocketAddress) ){
+                    // the responses are small, and must not wait for delayed acknowledgements
+                    client.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                }
+                workers.execute(new Runnable() {
+                    public void run()
+                    {
+                        serve(client);
+                    }
+                });
+            } catch (IOException e) {
+                if ( !server.isOpen() ){
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Answers the requests of a client until it closes the connection.
+     */
+    private void serve(final SocketChannel aClient)
+    {
+        try {
+            BufferedReader in = new BufferedReader(new InputStreamReader(Channels.newInputStream(aClient), StandardCharsets.UTF_8));
+            Writer out = new OutputStreamWriter(Channels.newOutputStream(aClient), StandardCharsets.UTF_8);
+            StringBuilder response = new StringBuilder();
+            String request;
+            while ( (request = in.readLine()) != null ){
+                respond(request, response);
+                response.append('\n');
+                if ( !in.ready() ){
+                    // flushes once for a batch of pipelined requests
+                    out.write(response.toString());
+                    out.flush();
+                    response.setLength(0);
+                }
+            }
+        } catch (IOException e) {
+            // the client has gone
+        } finally {
+            try {
+                aClient.close();
+            } catch (IOException e) {
+                // nothing to do any more
+            }
+        }
+    }
+
+    private void respond(final String aRequest, final StringBuilder aResponse)
+    {
+        if ( aRequest.startsWith("M ") ){
+            try {
+                int[] values = measure(aRequest.substring(2));
+                aResponse.append("OK");
+                for ( int i = 0; i < values.length; i++ ){
+                    aResponse.append(' ').append(values[i]);
+                }
+            } catch (Exception e) {
+                aResponse.append("ERR ").append(String.valueOf(e.getMessage()).replace('\n', ' '));
+            }
+        }
+        else if ( aRequest.equals("S") ){
+            aResponse.append("OK ").append(cache.getHitCount()).append(' ').append(cache.getMissCount())
+                     .append(' ').append(cache.size());
+        }
+        else if ( aRequest.equals("P") ){
+            aResponse.append("OK");
+        }
+        else{
+            aResponse.append("ERR unknown request");
+        }
+    }
+
+    /**
+     * Makes sure that the directory of a socket is accessible only by the owner (the user of this process),
+     * creating it with mode 0700 if it does not exist.
+     */
+    private static void checkPrivate(final Path aDirectory)
+    throws IOException
+    {
+        if ( !Files.exists(aDirectory) ){
+            try {
+                Files.createDirectories(aDirectory, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+            } catch (UnsupportedOperationException e) {
+                // not a POSIX file system
+                Files.createDirectories(aDirectory);
+            }
+            return;
+        }
+        try {
+            Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(aDirectory);
+            if ( permissions.contains(PosixFilePermission.GROUP_READ) || permissions.contains(PosixFilePermission.GROUP_WRITE)
+                 || permissions.contains(PosixFilePermission.GROUP_EXECUTE) || permissions.contains(PosixFilePermission.OTHERS_READ)
+                 || permissions.contains(PosixFilePermission.OTHERS_WRITE) || permissions.contains(PosixFilePermission.OTHERS_EXECUTE) ){
+                throw new IOException("the directory of the socket must be accessible only by the owner (0700) : " + aDirectory);
+            }
+            if ( !Files.getOwner(aDirectory).getName().equals(System.getProperty("user.name")) ){
+                throw new IOException("the directory of the socket must be owned by " + System.getProperty("user.name") + " : " + aDirectory);
+            }
+        } catch (UnsupportedOperationException e) {
+            // not a POSIX file system
+        }
+    }
+
+    /**
+     * Lexes fixed code with the lexers of all registered languages, so that they are compiled by the JIT
+     * before the first client comes.
+     */
+    private static void warmUp()
+    {
+        final String[] fragment = new String[WARM_UP_SOURCE.length * WARM_UP_REPEATS];
+        for ( int i = 0; i < fragment.length; i++ ){
+            fragment[i] = WARM_UP_SOURCE[i % WARM_UP_SOURCE.length];
+        }
+        for (Iterator<LanguageProvider> itr = LanguageRegistry.getProviders().iterator(); itr.hasNext(); ){
+            LanguageProvider language = itr.next();
+            for ( int i = 0; i < WARM_UP_ITERATIONS; i++ ){
+                LOCCollector collector = new LOCCollector();
+                valuesOf(collector, language.create(fragment, collector));
+            }
+        }
+    }
+
+    private static int[] valuesOf(final LOCCollector aCollector, final CodeMap aMap)
+    {
+        LOC result = aCollector.getResult();
+        int commentOut = 0;
+        for (Iterator<CodeLineMap> itr = aMap.iterator(); itr.hasNext(); ){
+            CodeLineMap line = itr.next();
+            if ( line.getCodeCount() == 0 && line.getCommentOutCount() > 0 ){
+                commentOut++;
+            }
+        }
+        return new int[] { result.getLOC(), result.getBlankCount(), 
+                           result.getTotalLineCount() - result.getLOC() - result.getBlankCount(), commentOut };
+    }
+
+    /** the default maximum number of files whose results are cached */
+    public static final int DEFAULT_CACHE_SIZE = 100000;
+
+    /** the number of times the lexer of each language is run before accepting clients */
+    private static final int WARM_UP_ITERATIONS = 200;
+
+    /** the number of times WARM_UP_SOURCE is repeated in the fragment for warming up */
+    private static final int WARM_UP_REPEATS = 80;
+
+    /** the code for warming up, which has every kind of comment and literal of the C family */
+    private static final String[] WARM_UP_SOURCE = {
+        "/**",
+        " * A class for warming up.",
+        " */",
+        "#include <stdio.h>",
+        "",
+        "static int count = 0; // a counter",
+        "",
+        "int sum(const int* values, int size)",
+        "{",
+        "    int total = 0;",
+        "    /* total = 1; */",
+        "    for ( int i = 0; i < size; i++ ){",
+        "        total += values[i]; // adds",
+        "    }",
+        "    // printf(\"%d\\n\", total);",
+        "    char c = '\\'';",
+        "    const char* s = \"a /* not a comment */ \\\" // nor this\";",
+        "    /*",
+        "     * a block comment",
+        "     * over some lines",
+        "     */",
+        "    return total;",
+        "}",
+        "",
+    };
+
+    private final SocketAddress address;
+
+    private final ResultCache cache;
+
+    private ServerSocketChannel server;
+
+    /** the threads of the acceptor and the connections */
+    private final ExecutorService workers;
+}
@@ -0,0 +1,100 @@
+package org.computer.aman.metrics.daemon;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of the measured values of files, evicting the least recently used file.
+ * An entry is valid only while the size and the modification time of the file are unchanged.
+ * 
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+class ResultCache
+{
+    /**
+     * @param aCapacity the maximum number of files
+     */
+    ResultCache(final int aCapacity)
+    {
+        capacity = aCapacity;
+        entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            protected boolean removeEldestEntry(final Map.Entry<String, Entry> anEldest)
+            {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached values of the file, or null if they are not cached or the file has changed.
+     * 
+     * @param aFile the file
+     * @return the values (null if not available)
+     */
+    synchronized int[] get(final File aFile)
+    {
+        Entry entry = entries.get(aFile.getPath());
+        if ( entry == null || entry.size != aFile.length() || entry.lastModified != aFile.lastModified() ){
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.values;
+    }
+
+    /**
+     * Caches the values of the file.
+     * 
+     * @param aFile the file
+     * @param aSize the size of the file when it was measured
+     * @param aLastModified the modification time of the file when it was measured
+     * @param someValues the values
+     */
+    synchronized void put(final File aFile, final long aSize, final long aLastModified, final int[] someValues)
+    {
+        entries.put(aFile.getPath(), new Entry(aSize, aLastModified, someValues));
+    }
+
+    synchronized long getHitCount()
+    {
+        return hits;
+    }
+
+    synchronized long getMissCount()
+    {
+        return misses;
+    }
+
+    synchronized int size()
+    {
+        return entries.size();
+    }
+
+    private static class Entry
+    {
+        Entry(final long aSize, final long aLastModified, final int[] someValues)
+        {
+            size = aSize;
+            lastModified = aLastModified;
+            values = someValues;
+        }
+
+        final long lastModified;
+
+        final long size;
+
+        final int[] values;
+    }
+
+    private final int capacity;
+
+    /** the entries in the order of access */
+    private final LinkedHashMap<String, Entry> entries;
+
+    private long hits;
+
+    private long misses;
+}
@@ -0,0 +1,27 @@
+package org.computer.aman.metrics.profile;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Java Flight Recorder event emitted for each directory listed by FileFinder.
+ * 
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+@Name("org.computer.aman.metrics.DirectoryWalk")
+@Label("Directory Walk")
+@Category({"MetricsToolsAPI"})
+@Description("Listing of a directory by FileFinder")
+@StackTrace(false)
+public class DirectoryWalkEvent
+extends jdk.jfr.Event
+{
+    @Label("Path")
+    public String path;
+
+    @Label("Entry Count")
+    public int entryCount;
+}
@@ -0,0 +1,70 @@
+package org.computer.aman.metrics.profile;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+/**
+ * A Java Flight Recorder event emitted for each source file whose code map is produced.
+ * <p></p>
+ * The duration of the event covers reading and lexing of the file;
+ * for the lines read beforehand (e.g., by a MeasurementPipeline or a PrefetchingReader),
+ * it covers only lexing, and the time of the read is given by the read duration.
+ * A code fragment which is not read from a file is recorded without a path.
+ * Only the files slower than a threshold can be recorded by setting the threshold of the event,
+ * for example:
+ * <pre>
+ * jcmd <i>pid</i> JFR.start settings=profile org.computer.aman.metrics.FileMeasurement#threshold=20ms
+ * </pre>
+ * or the system property "org.computer.aman.metrics.jfr.threshold" (in milliseconds).
+ * 
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+@Name("org.computer.aman.metrics.FileMeasurement")
+@Label("File Measurement")
+@Category({"MetricsToolsAPI"})
+@Description("Reading and lexing of a source file")
+@StackTrace(false)
+@Threshold("0 ms")
+public class FileMeasurementEvent
+extends jdk.jfr.Event
+{
+    /**
+     * Returns true if the event should be recorded for a file measured in the specified time.
+     * 
+     * @param aNanos the time spent for the file in nanoseconds
+     * @return true if the time is not shorter than the threshold given by the system property
+     */
+    public static boolean exceedsThreshold(final long aNanos)
+    {
+        return aNanos >= THRESHOLD_NANOS;
+    }
+
+    @Label("Path")
+    public String path;
+
+    @Label("Size")
+    @jdk.jfr.DataAmount
+    public long size;
+
+    @Label("Language")
+    public String language;
+
+    @Label("Line Count")
+    public long lineCount;
+
+    @Label("Read Duration")
+    @Timespan(Timespan.NANOSECONDS)
+    public long readDuration;
+
+    @Label("Lex Duration")
+    @Timespan(Timespan.NANOSECONDS)
+    public long lexDuration;
+
+    /** the threshold given by the system property "org.computer.aman.metrics.jfr.threshold" */
+    private static final long THRESHOLD_NANOS = Long.getLong("org.computer.aman.metrics.jfr.threshold", 0L) * 1000000L;
+}
@@ -0,0 +1,258 @@
+package org.computer.aman.metrics.profile;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Per-phase timers and counters of the measurement hot paths
+ * (FileFinder, the CodeMap constructors and LOCCounter).
+ * <p></p>
+ * The profiler is disabled by default; while it is disabled, every method called 
+ * from the hot paths returns after reading a single volatile field.
+ * It can be enabled by the system property "org.computer.aman.metrics.profile=true",
+ * by setEnabled(), or over JMX after register() has been called.
+ * <p></p>
+ * <u><b>(Example) timing a phase.</b></u>
+ * <pre>
+ * long <i>start</i> = MetricsProfiler.start();
+ * ... 
+ * MetricsProfiler.stop(Phase.READ, <i>start</i>);
+ * </pre>
+ * 
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class MetricsProfiler
+implements MetricsProfilerMBean
+{
+    private MetricsProfiler()
+    {
+        final int phases = Phase.values().length;
+        time = new LongAdder[phases];
+        count = new LongAdder[phases];
+        max = new LongAccumulator[phases];
+        for ( int i = 0; i < phases; i++ ){
+            time[i] = new LongAdder();
+            count[i] = new LongAdder();
+            max[i] = new LongAccumulator(Math::max, 0L);
+        }
+        files = new LongAdder();
+        lines = new LongAdder();
+        bytes = new LongAdder();
+    }
+
+    /**
+     * Returns the profiler.
+     * 
+     * @return the profiler
+     */
+    public static MetricsProfiler getInstance()
+    {
+        return INSTANCE;
+    }
+
+    /**
+     * Registers the profiler to the platform MBean server 
+     * with the name "org.computer.aman.metrics:type=MetricsProfiler".
+     * Nothing is done if it has already been registered.
+     * 
+     * @throws JMException if the registration failed
+     */
+    public static void register()
+    throws JMException
+    {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        synchronized ( INSTANCE ){
+            if ( !server.isRegistered(name) ){
+                server.registerMBean(INSTANCE, name);
+            }
+        }
+    }
+
+    /**
+     * Returns true if the profiler is enabled.
+     * 
+     * @return true if the profiler is enabled
+     */
+    public static boolean enabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * Returns the start time of a phase, or 0 if the profiler is disabled.
+     * 
+     * @return the start time of a phase (0 if the profiler is disabled)
+     */
+    public static long start()
+    {
+        return enabled ? System.nanoTime() : 0L;
+    }
+
+    /**
+     * Records the time elapsed since the specified start time as a time of the specified phase.
+     * Nothing is done if the start time is 0.
+     * 
+     * @param aPhase the phase
+     * @param aStartTime the value returned by start()
+     */
+    public static void stop(final Phase aPhase, final long aStartTime)
+    {
+        if ( aStartTime != 0L ){
+            INSTANCE.record(aPhase, System.nanoTime() - aStartTime);
+        }
+    }
+
+    /**
+     * Records the specified time as a time of the specified phase, if the profiler is enabled.
+     * 
+     * @param aPhase the phase
+     * @param aNanos elapsed time in nanoseconds
+     */
+    public static void add(final Phase aPhase, final long aNanos)
+    {
+        if ( enabled ){
+            INSTANCE.record(aPhase, aNanos);
+        }
+    }
+
+    /**
+     * Counts a measured file, if the profiler is enabled.
+     */
+    public static void addFile()
+    {
+        if ( enabled ){
+            INSTANCE.files.increment();
+        }
+    }
+
+    /**
+     * Counts read lines and bytes, if the profiler is enabled.
+     * 
+     * @param aLines the number of read lines
+     * @param aBytes the number of read bytes
+     */
+    public static void addRead(final long aLines, final long aBytes)
+    {
+        if ( enabled ){
+            INSTANCE.lines.add(aLines);
+            INSTANCE.bytes.add(aBytes);
+        }
+    }
+
+    /**
+     * Takes a snapshot of the current values of all timers and counters.
+     * 
+     * @return the snapshot
+     */
+    public ProfileSnapshot snapshot()
+    {
+        final int phases = time.length;
+        long[] totalNanos = new long[phases];
+        long[] counts = new long[phases];
+        long[] maxNanos = new long[phases];
+        for ( int i = 0; i < phases; i++ ){
+            totalNanos[i] = time[i].sum();
+            counts[i] = count[i].sum();
+            maxNanos[i] = max[i].get();
+        }
+        return new ProfileSnapshot(files.sum(), lines.sum(), bytes.sum(), totalNanos, counts, maxNanos);
+    }
+
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    public void setEnabled(final boolean isEnabled)
+    {
+        enabled = isEnabled;
+    }
+
+    public long getFiles()
+    {
+        return files.sum();
+    }
+
+    public long getLines()
+    {
+        return lines.sum();
+    }
+
+    public long getBytes()
+    {
+        return bytes.sum();
+    }
+
+    public long getWalkTimeNanos()
+    {
+        return time[Phase.WALK.ordinal()].sum();
+    }
+
+    public long getReadTimeNanos()
+    {
+        return time[Phase.READ.ordinal()].sum();
+    }
+
+    public long getLexTimeNanos()
+    {
+        return time[Phase.LEX.ordinal()].sum();
+    }
+
+    public long getCommentOutTimeNanos()
+    {
+        return time[Phase.COMMENT_OUT.ordinal()].sum();
+    }
+
+    public long getAssembleTimeNanos()
+    {
+        return time[Phase.ASSEMBLE.ordinal()].sum();
+    }
+
+    /**
+     * Resets all timers and counters to zero.
+     */
+    public void reset()
+    {
+        for ( int i = 0; i < time.length; i++ ){
+            time[i].reset();
+            count[i].reset();
+            max[i].reset();
+        }
+        files.reset();
+        lines.reset();
+        bytes.reset();
+    }
+
+    private void record(final Phase aPhase, final long aNanos)
+    {
+        final int i = aPhase.ordinal();
+        time[i].add(aNanos);
+        count[i].increment();
+        max[i].accumulate(aNanos);
+    }
+
+    /** the name of the MBean */
+    public static final String OBJECT_NAME = "org.computer.aman.metrics:type=MetricsProfiler";
+
+    private static final MetricsProfiler INSTANCE = new MetricsProfiler();
+
+    private static volatile boolean enabled = Boolean.getBoolean("org.computer.aman.metrics.profile");
+
+    private final LongAdder bytes;
+
+    private final LongAdder[] count;
+
+    private final LongAdder files;
+
+    private final LongAdder lines;
+
+    private final LongAccumulator[] max;
+
+    private final LongAdder[] time;
+}
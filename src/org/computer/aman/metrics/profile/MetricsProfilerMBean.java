@@ -0,0 +1,31 @@
+package org.computer.aman.metrics.profile;
+
+/**
+ * Management interface of MetricsProfiler.
+ * 
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public interface MetricsProfilerMBean
+{
+    public boolean isEnabled();
+
+    public void setEnabled(boolean isEnabled);
+
+    public long getFiles();
+
+    public long getLines();
+
+    public long getBytes();
+
+    public long getWalkTimeNanos();
+
+    public long getReadTimeNanos();
+
+    public long getLexTimeNanos();
+
+    public long getCommentOutTimeNanos();
+
+    public long getAssembleTimeNanos();
+
+    public void reset();
+}
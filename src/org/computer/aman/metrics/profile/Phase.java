@@ -0,0 +1,24 @@
+package org.computer.aman.metrics.profile;
+
+/**
+ * Phases of a measurement, whose time is recorded by MetricsProfiler.
+ * 
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public enum Phase
+{
+    /** walking directories (FileFinder) */
+    WALK,
+
+    /** reading source files */
+    READ,
+
+    /** producing code maps (including COMMENT_OUT) */
+    LEX,
+
+    /** detecting commented-out code */
+    COMMENT_OUT,
+
+    /** assembling code line maps and LOC objects */
+    ASSEMBLE
+}
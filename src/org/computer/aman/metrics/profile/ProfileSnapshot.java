@@ -0,0 +1,112 @@
+package org.computer.aman.metrics.profile;
+
+/**
+ * A snapshot of the timers and counters of MetricsProfiler.
+ * 
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class ProfileSnapshot
+{
+    ProfileSnapshot(final long aFiles, final long aLines, final long aBytes, 
+                    final long[] aTotalNanos, final long[] aCounts, final long[] aMaxNanos)
+    {
+        files = aFiles;
+        lines = aLines;
+        bytes = aBytes;
+        totalNanos = aTotalNanos;
+        counts = aCounts;
+        maxNanos = aMaxNanos;
+    }
+
+    /**
+     * Returns the number of measured files.
+     * 
+     * @return the number of measured files
+     */
+    public long getFiles()
+    {
+        return files;
+    }
+
+    /**
+     * Returns the number of read lines.
+     * 
+     * @return the number of read lines
+     */
+    public long getLines()
+    {
+        return lines;
+    }
+
+    /**
+     * Returns the number of read bytes.
+     * 
+     * @return the number of read bytes
+     */
+    public long getBytes()
+    {
+        return bytes;
+    }
+
+    /**
+     * Returns the total time of the specified phase in nanoseconds.
+     * 
+     * @param aPhase the phase
+     * @return the total time of the phase in nanoseconds
+     */
+    public long getTotalNanos(final Phase aPhase)
+    {
+        return totalNanos[aPhase.ordinal()];
+    }
+
+    /**
+     * Returns the number of times the specified phase has been recorded.
+     * 
+     * @param aPhase the phase
+     * @return the number of times the phase has been recorded
+     */
+    public long getCount(final Phase aPhase)
+    {
+        return counts[aPhase.ordinal()];
+    }
+
+    /**
+     * Returns the longest recorded time of the specified phase in nanoseconds.
+     * 
+     * @param aPhase the phase
+     * @return the longest recorded time of the phase in nanoseconds
+     */
+    public long getMaxNanos(final Phase aPhase)
+    {
+        return maxNanos[aPhase.ordinal()];
+    }
+
+    /**
+     * Returns the string representation of this snapshot.
+     * 
+     * @return the string representation of this snapshot
+     */
+    public String toString()
+    {
+        StringBuilder buf = new StringBuilder();
+        buf.append("files = " + files + ", lines = " + lines + ", bytes = " + bytes + "\n");
+        Phase[] phases = Phase.values();
+        for ( int i = 0; i < phases.length; i++ ){
+            buf.append(phases[i] + ": total = " + totalNanos[i] / 1000000 + " ms"
+                    + ", count = " + counts[i] + ", max = " + maxNanos[i] / 1000 + " us\n");
+        }
+        return buf.toString();
+    }
+
+    private final long bytes;
+
+    private final long[] counts;
+
+    private final long files;
+
+    private final long lines;
+
+    private final long[] maxNanos;
+
+    private final long[] totalNanos;
+}
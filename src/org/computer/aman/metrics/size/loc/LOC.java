@@ -1,6 +1,7 @@
 ﻿package org.computer.aman.metrics.size.loc;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Iterator;
 
 import org.computer.aman.io.sourcecode.SourceCodeLine;
@@ -22,6 +23,7 @@ public class LOC
 	public LOC()
 	{
 		lines = new ArrayList<SourceCodeLine>();
+		blankLines = new BitSet();
 	}
 	
 	/**
@@ -34,6 +36,23 @@ public class LOC
 		this();
 		sourceFile = aSourceFile;
 	}
+
+	/**
+	 * Initializes LOC object with the counts of the lines, but without their contents
+	 * (e.g., for the summary of a file recorded by ScanJournal).
+	 * 
+	 * @param aSourceFile the measurement target source file
+	 * @param aLOC the LOC value
+	 * @param aBlankCount the number of blank lines
+	 * @param aTotalLineCount the total line count
+	 */
+	public LOC(final SourceFile aSourceFile, final int aLOC, final int aBlankCount, final int aTotalLineCount)
+	{
+		this(aSourceFile);
+		loc = aLOC;
+		blank = aBlankCount;
+		countedLineCount = aTotalLineCount;
+	}
 	
 
 	/**
@@ -47,6 +66,23 @@ public class LOC
 		lines.add(aCodeLine);
 	}
 
+	/**
+	 * Append a SourceCodeLine object to the list maintained in this LOC,
+	 * and counts it as a blank line if it is so judged by the LOC measurement;
+	 * a line which consists of only white spaces in a comment is not a blank line.
+	 * 
+	 * @param aCodeLine SourceCodeLine object to be appended
+	 * @param isBlank true if the line is a blank line
+	 */
+	public void addContents(final SourceCodeLine aCodeLine, final boolean isBlank)
+	{
+		if ( isBlank ){
+			blankLines.set(lines.size());
+			blank++;
+		}
+		lines.add(aCodeLine);
+	}
+
     /**
      * Returns the number of blank lines.
      * 
@@ -84,17 +120,38 @@ public class LOC
 	 */
 	public int getTotalLineCount()
 	{
-		return lines.size();
+		return lines.size() + countedLineCount;
+	}
+
+	/**
+	 * Counts a line whose content is not kept (e.g., a line counted by LOCCounter.countLines());
+	 * the line is included in the total line count, but not in the list of SourceCodeLine objects.
+	 */
+	public void incrementLineCount()
+	{
+		countedLineCount++;
 	}
 
 	/** 
-	 * Increments the count of blank lines.
+	 * Increments the count of blank lines;
+	 * this does not tell which line is blank (see addContents(SourceCodeLine, boolean)).
 	 */
 	public void incrementBlankCount()
 	{
 	    blank++;
 	}
 	
+	/**
+	 * Returns true if the line at the specified index (from 0) was added as a blank line.
+	 * 
+	 * @param anIndex index of the line in the list of SourceCodeLine object
+	 * @return true if the line is a blank line
+	 */
+	public boolean isBlankLine(final int anIndex)
+	{
+		return blankLines.get(anIndex);
+	}
+
 	/**
 	 * Increments the LOC value.
 	 */
@@ -138,6 +195,12 @@ public class LOC
 
 	/** number of blank lines */
 	private int blank;
+
+	/** indexes of the blank lines */
+	private BitSet blankLines;
+
+	/** number of lines counted without their contents */
+	private int countedLineCount;
 	
     /** list of SourceCodeLine objects */
 	private ArrayList<SourceCodeLine> lines;
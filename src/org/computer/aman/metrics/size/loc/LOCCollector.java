@@ -0,0 +1,107 @@
+package org.computer.aman.metrics.size.loc;
+
+import org.computer.aman.io.sourcecode.SourceCodeLine;
+import org.computer.aman.io.sourcecode.SourceFile;
+import org.computer.aman.metrics.util.MetricCollector;
+
+/**
+ * A MetricCollector which measures LOC while a code map parses the source code.
+ * 
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class LOCCollector
+implements MetricCollector
+{
+    /**
+     * Creates a collector which measures all lines.
+     */
+    public LOCCollector()
+    {
+        this(1, -1);
+    }
+
+    /**
+     * Creates a collector which measures the specified range of lines.
+     * 
+     * @param aBeginLineNumber the line number at which the LOC measurement begins 
+     * @param anEndLineNumber the line number at which the LOC measurement ends (-1 means the end of the file)
+     */
+    public LOCCollector(final int aBeginLineNumber, final int anEndLineNumber)
+    {
+        beginLineNumber = aBeginLineNumber;
+        endLineNumber = anEndLineNumber;
+    }
+
+    /**
+     * Creates a collector which measures all lines of the specified source file,
+     * whose lines are parsed from an array (for which the code map does not know the source file).
+     * 
+     * @param aSourceFile source file from which the lines were read
+     */
+    public LOCCollector(final SourceFile aSourceFile)
+    {
+        this(1, -1);
+        sourceFile = aSourceFile;
+    }
+
+    public void beginFile(final SourceFile aSourceFile)
+    {
+        final SourceFile file = aSourceFile != null ? aSourceFile : sourceFile;
+        result = file != null ? new LOC(file) : new LOC();
+        lineNumber = 0;
+        loc = 0;
+    }
+
+    public void span(final String aLine, final int aBegin, final int anEnd, final char aType)
+    {
+    }
+
+    public void endLine(final String aLine, final CharSequence aMap, final int aCodeCount, final int aBlankCount)
+    {
+        lineNumber++;
+        if ( lineNumber < beginLineNumber ){
+            return;
+        }
+        if ( endLineNumber > 0 && (endLineNumber < beginLineNumber || lineNumber > endLineNumber) ){
+            return;
+        }
+
+        SourceCodeLine codeLine = new SourceCodeLine(aLine);
+        if ( aCodeCount > 0 ){
+            loc++;
+            codeLine.setLineNumber(loc);
+            result.incrementLOC();
+        }
+        else{
+            codeLine.setLineNumber(-1);
+        }
+        result.addContents(codeLine, aCodeCount == 0 && aBlankCount == aMap.length());
+    }
+
+    public void endFile()
+    {
+    }
+
+    /**
+     * Returns the result of LOC measurement of the last parsed file.
+     * 
+     * @return the result of LOC measurement
+     */
+    public LOC getResult()
+    {
+        return result;
+    }
+
+    private final int beginLineNumber;
+
+    private final int endLineNumber;
+
+    private int lineNumber;
+
+    private int loc;
+
+    private LOC result;
+
+    /** the source file used when the code map does not give one */
+    private SourceFile sourceFile;
+}
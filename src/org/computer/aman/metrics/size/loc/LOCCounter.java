@@ -2,15 +2,23 @@
 
 import java.io.FileReader;
 import java.io.IOException;
-import java.io.LineNumberReader;
+import java.io.Reader;
 import java.util.Iterator;
 
+import org.computer.aman.io.PrefetchedFile;
+import org.computer.aman.io.sourcecode.FileSniffer;
 import org.computer.aman.io.sourcecode.NotSupportedSourceFileExeption;
 import org.computer.aman.io.sourcecode.SourceCodeLine;
 import org.computer.aman.io.sourcecode.SourceFile;
+import org.computer.aman.metrics.profile.MetricsProfiler;
+import org.computer.aman.metrics.profile.Phase;
 import org.computer.aman.metrics.util.CodeLineMap;
 import org.computer.aman.metrics.util.CodeMap;
 import org.computer.aman.metrics.util.CodeMapFactory;
+import org.computer.aman.metrics.util.ParseAbortedException;
+import org.computer.aman.metrics.util.ParseBudget;
+import org.computer.aman.metrics.util.ParseOptions;
+import org.computer.aman.metrics.util.SniffPolicy;
 
 /**
  * A class for measuring LOC of a source file.
@@ -61,54 +69,168 @@ public class LOCCounter
     public static LOC measure(final SourceFile aSourceFile, final int aBeginLineNumber, final int anEndLineNumber)
     throws NotSupportedSourceFileExeption, IOException
     {
-        // check if the specified source file is supported or not
-        if ( !aSourceFile.isJavaFile() && !aSourceFile.isCFile() ){
-            throw new NotSupportedSourceFileExeption("not supported file type: " + aSourceFile);
-        }
-
-        LOC result = new LOC(aSourceFile);
+        // the LOC is measured in the same pass as the code map is produced;
+        // CodeMapFactory throws NotSupportedSourceFileExeption if the source file is not supported
+        LOCCollector collector = new LOCCollector(aBeginLineNumber, anEndLineNumber);
+        CodeMapFactory.create(aSourceFile, collector);
+        LOC result = collector.getResult();
+        MetricsProfiler.addFile();
         
-        CodeMap map = CodeMapFactory.create(aSourceFile);
+        return result;        
+    }
+    
+    /**
+     * Measures the LOC value of the specified source file within the specified budget, and returns the result.
+     * A file exceeding the budget is aborted, instead of keeping the calling thread busy.
+     * 
+     * @param aSourceFile source file to be measured
+     * @param aBudget the limits of the size, the line length and the time (a new budget for each file)
+     * @return the results of LOC measurement
+     * @throws IOException if an error occurred while the source file is opened
+     * @throws NotSupportedSourceFileExeption if the specified source file is not supported 
+     * @throws ParseAbortedException if the measurement exceeds the budget, or the budget is cancelled
+     */
+    public static LOC measure(final SourceFile aSourceFile, final ParseBudget aBudget)
+    throws NotSupportedSourceFileExeption, IOException
+    {
+        LOCCollector collector = new LOCCollector();
+        CodeMapFactory.create(aSourceFile, new ParseOptions(aBudget), collector);
+        LOC result = collector.getResult();
+        MetricsProfiler.addFile();
         
-        LineNumberReader reader = new LineNumberReader(new FileReader(aSourceFile));
+        return result;
+    }
 
-        Iterator<CodeLineMap> itr = map.iterator();
-        int loc = 0;
-        int lineNumber = 0;        
-        while ( itr.hasNext() ){
-            CodeLineMap lineMap = itr.next();
-            lineNumber++;
-            if ( lineNumber < aBeginLineNumber ){
-                continue;
-            }
-            if ( anEndLineNumber > 0 && anEndLineNumber < aBeginLineNumber ){
-                continue;
-            }
-            if ( lineNumber-1 == anEndLineNumber ){
-                break;
-            }
+    /**
+     * Measures the LOC value of the specified source file in the way decided by the specified policy,
+     * after sniffing the first few kilobytes of the file.
+     * 
+     * @param aSourceFile source file to be measured
+     * @param aPolicy the policy which routes the file to lexing, counting or skipping
+     * @return the results of LOC measurement (by countLines() if the file is routed to COUNT_ONLY)
+     * @throws IOException if an error occurred while the source file is opened
+     * @throws NotSupportedSourceFileExeption if the specified source file is not supported 
+     * @throws ParseAbortedException if the file is routed to SKIP (the reason is SKIPPED)
+     */
+    public static LOC measure(final SourceFile aSourceFile, final SniffPolicy aPolicy)
+    throws NotSupportedSourceFileExeption, IOException
+    {
+        final FileSniffer.Kind kind = aPolicy.sniff(aSourceFile);
+        switch ( aPolicy.getRoute(kind) ){
+        case SKIP:
+            throw new ParseAbortedException(ParseAbortedException.Reason.SKIPPED, kind + " " + aSourceFile.getPath());
+        case COUNT_ONLY:
+            return countLines(aSourceFile);
+        default:
+            return measure(aSourceFile);
+        }
+    }
 
-            SourceCodeLine codeLine = new SourceCodeLine(reader.readLine());
+    /**
+     * Measures the LOC value of a file loaded by a PrefetchingReader, and returns the result.
+     * The buffer of the file is not released by this method.
+     * The file is recorded by MetricsProfiler and FileMeasurementEvent with the time of its read and its decoding.
+     * 
+     * @param aFile the file loaded by a PrefetchingReader
+     * @return the results of LOC measurement
+     * @throws IOException if the file could not be read
+     * @throws NotSupportedSourceFileExeption if the specified file is not supported 
+     */
+    public static LOC measure(final PrefetchedFile aFile)
+    throws NotSupportedSourceFileExeption, IOException
+    {
+        final SourceFile sourceFile = new SourceFile(aFile.getPath());
+        final long start = System.nanoTime();
+        final String[] sourceLines = aFile.getLines();
+        final ParseOptions options = new ParseOptions(null, sourceFile, aFile.getReadNanos() + System.nanoTime() - start);
+        LOCCollector collector = new LOCCollector(sourceFile);
+        CodeMapFactory.create(sourceFile, sourceLines, options, collector);
+        LOC result = collector.getResult();
+        MetricsProfiler.addFile();
+        
+        return result;
+    }
 
-            if ( lineMap.getCodeCount() > 0 ){
-                loc++;
-                codeLine.setLineNumber(loc);
-                result.incrementLOC();
-            }
-            else{                
-                codeLine.setLineNumber(-1);
-                if ( lineMap.isBlankLine() ){
-                    result.incrementBlankCount();
+    /**
+     * Counts the lines and the blank lines of the specified source file without lexing it;
+     * every non-blank line is counted as a code line, since comments are not recognized.
+     * This is the fast path for the files whose exact LOC is not of interest (e.g., generated files).
+     * 
+     * @param aSourceFile source file to be counted
+     * @return the results of counting (without the contents of the lines)
+     * @throws IOException if an error occurred while the source file is read
+     */
+    public static LOC countLines(final SourceFile aSourceFile)
+    throws IOException
+    {
+        return countLines(aSourceFile, null);
+    }
+
+    /**
+     * Counts the lines and the blank lines of the specified source file without lexing it, within the specified budget.
+     * <p></p>
+     * The characters are scanned in a fixed buffer, and no object is created for a line,
+     * so that the result has the counts only: its iterator() returns no line.
+     * A line is blank if it consists of only white spaces (as String.trim() removes),
+     * and the lines are split in the same way as BufferedReader.readLine() (at \n, \r or \r\n).
+     * A line longer than the limit of the budget is aborted as soon as the limit is exceeded.
+     * 
+     * @param aSourceFile source file to be counted
+     * @param aBudget the limits of the size, the line length and the time (null for no limit)
+     * @return the results of counting (without the contents of the lines)
+     * @throws IOException if an error occurred while the source file is read
+     * @throws ParseAbortedException if the counting exceeds the budget, or the budget is cancelled
+     */
+    public static LOC countLines(final SourceFile aSourceFile, final ParseBudget aBudget)
+    throws IOException
+    {
+        final int maxLineLength = aBudget != null ? aBudget.getMaxLineLength() : Integer.MAX_VALUE;
+        if ( aBudget != null ){
+            aBudget.begin();
+            aBudget.checkFile(aSourceFile);
+        }
+        LOC result = new LOC(aSourceFile);
+        Reader reader = new FileReader(aSourceFile);
+        try {
+            final char[] buffer = new char[COUNT_BUFFER_SIZE];
+            int length = 0;
+            boolean isBlank = true;
+            boolean afterCR = false;
+            int count;
+            while ( (count = reader.read(buffer)) >= 0 ){
+                for ( int i = 0; i < count; i++ ){
+                    final char c = buffer[i];
+                    if ( c == '\n' || c == '\r' ){
+                        if ( c == '\n' && afterCR ){
+                            // the second half of \r\n
+                            afterCR = false;
+                            continue;
+                        }
+                        countLine(result, length, isBlank, aBudget);
+                        length = 0;
+                        isBlank = true;
+                        afterCR = c == '\r';
+                        continue;
+                    }
+                    afterCR = false;
+                    if ( c > ' ' ){
+                        isBlank = false;
+                    }
+                    if ( ++length > maxLineLength ){
+                        aBudget.checkLine(length);
+                    }
                 }
             }
-            result.addContents(codeLine);
+            if ( length > 0 ){
+                countLine(result, length, isBlank, aBudget);
+            }
+        } finally {
+            reader.close();
         }
-
-        reader.close();
+        MetricsProfiler.addFile();
         
-        return result;        
+        return result;
     }
-    
 
     /**
      * Measures the LOC value of the specified source file and returns the result.
@@ -119,7 +241,22 @@ public class LOCCounter
      */
     public static LOC measure(final String[] sourceLines, final CodeMap aMap)
     {
-        LOC result = new LOC();
+        return measure(null, sourceLines, aMap);
+    }
+
+    /**
+     * Measures the LOC value of the specified source file whose lines have already been read,
+     * and returns the result.
+     * 
+     * @param aSourceFile source file from which sourceLines were read (null for a code fragment)
+     * @param sourceLines array of code lines to be measured
+     * @param aMap a CodeMap corresponding sourceLines 
+     * @return the results of LOC measurement
+     */
+    public static LOC measure(final SourceFile aSourceFile, final String[] sourceLines, final CodeMap aMap)
+    {
+        final long start = MetricsProfiler.start();
+        LOC result = aSourceFile != null ? new LOC(aSourceFile) : new LOC();
 
         Iterator<CodeLineMap> itr = aMap.iterator();
         int loc = 0;
@@ -136,13 +273,34 @@ public class LOCCounter
             }
             else{                
                 codeLine.setLineNumber(-1);
-                if ( lineMap.isBlankLine() ){
-                    result.incrementBlankCount();
-                }
             }
-            result.addContents(codeLine);
+            result.addContents(codeLine, lineMap.getCodeCount() == 0 && lineMap.isBlankLine());
+        }
+        MetricsProfiler.stop(Phase.ASSEMBLE, start);
+        if ( aSourceFile != null ){
+            MetricsProfiler.addFile();
         }
         
         return result;        
     }
+
+    /**
+     * Counts a line scanned by countLines().
+     */
+    private static void countLine(final LOC aResult, final int aLength, final boolean isBlank, final ParseBudget aBudget)
+    {
+        if ( aBudget != null ){
+            aBudget.checkLine(aLength);
+        }
+        aResult.incrementLineCount();
+        if ( isBlank ){
+            aResult.incrementBlankCount();
+        }
+        else{
+            aResult.incrementLOC();
+        }
+    }
+
+    /** the size of the buffer in which countLines() scans the characters */
+    private static final int COUNT_BUFFER_SIZE = 8192;
 }
@@ -0,0 +1,356 @@
+package org.computer.aman.metrics.size.loc.dedup;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.computer.aman.io.ContentDigest;
+import org.computer.aman.io.FileFinder;
+import org.computer.aman.io.sourcecode.SourceFile;
+import org.computer.aman.metrics.size.loc.LOC;
+import org.computer.aman.metrics.size.loc.LOCCollector;
+import org.computer.aman.metrics.size.loc.store.ResultStore;
+import org.computer.aman.metrics.util.CodeLineMap;
+import org.computer.aman.metrics.util.CodeMap;
+import org.computer.aman.metrics.util.CodeMapFactory;
+import org.computer.aman.metrics.util.LanguageProvider;
+
+/**
+ * A scanner of several roots (e.g., many repositories with the same vendored sources),
+ * which lexes each distinct content only once.
+ * <p></p>
+ * Every file is identified first by its file key (the device and the inode), so that
+ * the hard links of a file and the symbolic links to it are read only once;
+ * then its contents are hashed by ContentDigest, a cheap streaming hash.
+ * Only the first file of each (digest, language) is lexed, and its result is shared by
+ * all paths with the same contents; the language is a part of the key since the same contents
+ * may be lexed differently as different languages (e.g., "*.h" and "*.c").
+ * <p></p>
+ * Every path still gets its own row in the ResultStore, and is counted in the totals of its root,
+ * so that the totals of each root are the same as those of a separate scan of the root.
+ * The files which could not be measured are kept with their causes (see getFailures()).
+ * 
+ * <p></p>
+ * <u><b>(Example) measuring two repositories sharing vendored sources.</b></u>
+ * <pre>
+ * List&lt;FileFinder&gt; <i>roots</i> = Arrays.asList(new FileFinder(<i>"/repo/a"</i>), new FileFinder(<i>"/repo/b"</i>));
+ * ResultStore <i>store</i> = new ResultStore();
+ * DedupScanner <i>scanner</i> = new DedupScanner(<i>roots</i>, <i>".+\\.java"</i>, <i>store</i>);
+ * <i>scanner</i>.run();
+ * long <i>locOfB</i> = <i>scanner</i>.getTotal(1, ResultStore.Column.LOC);
+ * </pre>
+ * 
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class DedupScanner
+{
+    /**
+     * Creates a scanner of the specified roots.
+     * 
+     * @param someRoots FileFinders of the roots
+     * @param aPattern the regular expression corresponding to the files to be measured
+     * @param aStore the store to which a row is added for every measured path
+     */
+    public DedupScanner(final List<FileFinder> someRoots, final String aPattern, final ResultStore aStore)
+    {
+        roots = new ArrayList<FileFinder>(someRoots);
+        pattern = aPattern;
+        store = aStore;
+        parallelism = Runtime.getRuntime().availableProcessors();
+        totals = new LongAdder[roots.size()][ResultStore.Column.values().length];
+        for ( int i = 0; i < totals.length; i++ ){
+            for ( int j = 0; j < totals[i].length; j++ ){
+                totals[i][j] = new LongAdder();
+            }
+        }
+        fileCounts = new AtomicInteger[roots.size()];
+        for ( int i = 0; i < fileCounts.length; i++ ){
+            fileCounts[i] = new AtomicInteger();
+        }
+        digests = new ConcurrentHashMap<Object, CompletableFuture<ContentDigest>>();
+        results = new ConcurrentHashMap<ContentKey, CompletableFuture<int[]>>();
+        failures = new ConcurrentHashMap<String, Exception>();
+        linkHits = new AtomicInteger();
+        contentHits = new AtomicInteger();
+    }
+
+    /**
+     * Sets the number of files hashed and measured at the same time.
+     * 
+     * @param aParallelism the number of threads (must be positive)
+     */
+    public void setParallelism(final int aParallelism)
+    {
+        if ( aParallelism <= 0 ){
+            throw new IllegalArgumentException("must be positive : " + aParallelism);
+        }
+        parallelism = aParallelism;
+    }
+
+    /**
+     * Scans all roots, and returns after all paths have been added to the store.
+     * 
+     * @throws FileNotFoundException if there is a unaccessible directory
+     * @throws InterruptedException if the current thread is interrupted while waiting
+     */
+    public void run()
+    throws FileNotFoundException, InterruptedException
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        try {
+            for ( int i = 0; i < roots.size(); i++ ){
+                final int root = i;
+                for (Iterator<String> itr = roots.get(i).getList(pattern).iterator(); itr.hasNext(); ){
+                    final String path = itr.next();
+                    executor.execute(new Runnable() {
+                        public void run()
+                        {
+                            scan(root, path);
+                        }
+                    });
+                }
+            }
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns the total of the specified column over the paths in the specified root.
+     * 
+     * @param aRoot the index of the root (in the order given to the constructor)
+     * @param aColumn the column
+     * @return the total
+     */
+    public long getTotal(final int aRoot, final ResultStore.Column aColumn)
+    {
+        return totals[aRoot][aColumn.ordinal()].sum();
+    }
+
+    /**
+     * Returns the number of the measured paths in the specified root.
+     * 
+     * @param aRoot the index of the root (in the order given to the constructor)
+     * @return the number of the measured paths
+     */
+    public int getFileCount(final int aRoot)
+    {
+        return fileCounts[aRoot].get();
+    }
+
+    /**
+     * Returns the number of the distinct contents which have been lexed.
+     * 
+     * @return the number of the lexed contents
+     */
+    public int getUniqueCount()
+    {
+        return results.size();
+    }
+
+    /**
+     * Returns the number of the paths whose contents were not read again, 
+     * since they were links to a file which had been hashed.
+     * 
+     * @return the number of the paths found by their file keys
+     */
+    public int getLinkHitCount()
+    {
+        return linkHits.get();
+    }
+
+    /**
+     * Returns the number of the paths whose contents were not lexed again, 
+     * since the same contents had been lexed.
+     * 
+     * @return the number of the paths sharing a result
+     */
+    public int getContentHitCount()
+    {
+        return contentHits.get();
+    }
+
+    /**
+     * Returns the paths which could not be measured, with their causes.
+     * 
+     * @return map from the paths to the causes
+     */
+    public Map<String, Exception> getFailures()
+    {
+        return Collections.unmodifiableMap(failures);
+    }
+
+    /**
+     * Measures a path (or shares the result of the same contents), and adds it to the store and the totals.
+     */
+    private void scan(final int aRoot, final String aPath)
+    {
+        try {
+            final SourceFile sourceFile = new SourceFile(aPath);
+            final LanguageProvider language = CodeMapFactory.providerOf(sourceFile);
+            final ContentKey key = new ContentKey(digestOf(sourceFile), language.getName());
+
+            CompletableFuture<int[]> future = new CompletableFuture<int[]>();
+            CompletableFuture<int[]> existing = results.putIfAbsent(key, future);
+            int[] values;
+            if ( existing == null ){
+                try {
+                    values = measure(sourceFile);
+                    future.complete(values);
+                } catch (Exception e) {
+                    future.completeExceptionally(e);
+                    throw e;
+                }
+            }
+            else{
+                values = join(existing);
+                contentHits.incrementAndGet();
+            }
+
+            store.add(aPath, language.getName(), values[0], values[1], values[2], values[3]);
+            for ( int i = 0; i < values.length; i++ ){
+                totals[aRoot][i].add(values[i]);
+            }
+            fileCounts[aRoot].incrementAndGet();
+        } catch (Exception e) {
+            failures.put(aPath, e);
+        }
+    }
+
+    /**
+     * Returns the digest of the contents of the file, hashing it only if no link to the same file has been hashed.
+     */
+    private ContentDigest digestOf(final File aFile)
+    throws Exception
+    {
+        final Object fileKey = Files.readAttributes(aFile.toPath(), BasicFileAttributes.class).fileKey();
+        if ( fileKey == null ){
+            // the file system does not identify files
+            return ContentDigest.of(aFile);
+        }
+        CompletableFuture<ContentDigest> future = new CompletableFuture<ContentDigest>();
+        CompletableFuture<ContentDigest> existing = digests.putIfAbsent(fileKey, future);
+        if ( existing != null ){
+            linkHits.incrementAndGet();
+            return join(existing);
+        }
+        try {
+            ContentDigest digest = ContentDigest.of(aFile);
+            future.complete(digest);
+            return digest;
+        } catch (IOException e) {
+            future.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Lexes the file, and returns its LOC, blank, comment and commented-out line counts
+     * (in the order of ResultStore.Column).
+     */
+    private static int[] measure(final SourceFile aSourceFile)
+    throws Exception
+    {
+        LOCCollector collector = new LOCCollector(aSourceFile);
+        CodeMap map = CodeMapFactory.create(aSourceFile, collector);
+        LOC result = collector.getResult();
+        int commentOut = 0;
+        for (Iterator<CodeLineMap> itr = map.iterator(); itr.hasNext(); ){
+            CodeLineMap line = itr.next();
+            if ( line.getCodeCount() == 0 && line.getCommentOutCount() > 0 ){
+                commentOut++;
+            }
+        }
+        return new int[] { result.getLOC(), result.getBlankCount(), 
+                           result.getTotalLineCount() - result.getLOC() - result.getBlankCount(), commentOut };
+    }
+
+    /**
+     * Waits for a value computed by another thread, and rethrows its failure.
+     */
+    private static <T> T join(final CompletableFuture<T> aFuture)
+    throws Exception
+    {
+        try {
+            return aFuture.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception)e.getCause() : e;
+        }
+    }
+
+    /**
+     * The key of a result: the digest of the contents and the language.
+     */
+    private static final class ContentKey
+    {
+        ContentKey(final ContentDigest aDigest, final String aLanguage)
+        {
+            digest = aDigest;
+            language = aLanguage;
+        }
+
+        public boolean equals(final Object anObject)
+        {
+            if ( !(anObject instanceof ContentKey) ){
+                return false;
+            }
+            ContentKey other = (ContentKey)anObject;
+            return digest.equals(other.digest) && language.equals(other.language);
+        }
+
+        public int hashCode()
+        {
+            return digest.hashCode() * 31 + language.hashCode();
+        }
+
+        private final ContentDigest digest;
+
+        private final String language;
+    }
+
+    /** the number of the paths sharing a result */
+    private final AtomicInteger contentHits;
+
+    /** the digests by the file keys */
+    private final ConcurrentHashMap<Object, CompletableFuture<ContentDigest>> digests;
+
+    /** the paths which could not be measured, with their causes */
+    private final ConcurrentHashMap<String, Exception> failures;
+
+    /** the number of the measured paths of each root */
+    private final AtomicInteger[] fileCounts;
+
+    /** the number of the paths found by their file keys */
+    private final AtomicInteger linkHits;
+
+    private int parallelism;
+
+    private final String pattern;
+
+    /** the values of each distinct contents (by ContentKey) */
+    private final ConcurrentHashMap<ContentKey, CompletableFuture<int[]>> results;
+
+    private final List<FileFinder> roots;
+
+    private final ResultStore store;
+
+    /** the totals of the columns of each root */
+    private final LongAdder[][] totals;
+}
@@ -0,0 +1,162 @@
+package org.computer.aman.metrics.size.loc.delta;
+
+/**
+ * The differences of lines between two versions of a source file, split by code, comment and blank lines.
+ * <p></p>
+ * A changed region (hunk) which removes some code lines and adds some code lines
+ * is regarded as modifying min(removed, added) code lines;
+ * the rest of the lines are counted as removed or added. The same is true for the comment lines.
+ * 
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class LOCDelta
+{
+    LOCDelta()
+    {
+    }
+
+    /**
+     * Returns the number of added code lines.
+     * 
+     * @return the number of added code lines
+     */
+    public int getCodeAdded()
+    {
+        return codeAdded;
+    }
+
+    /**
+     * Returns the number of removed code lines.
+     * 
+     * @return the number of removed code lines
+     */
+    public int getCodeRemoved()
+    {
+        return codeRemoved;
+    }
+
+    /**
+     * Returns the number of modified code lines.
+     * 
+     * @return the number of modified code lines
+     */
+    public int getCodeModified()
+    {
+        return codeModified;
+    }
+
+    /**
+     * Returns the number of added comment lines.
+     * 
+     * @return the number of added comment lines
+     */
+    public int getCommentAdded()
+    {
+        return commentAdded;
+    }
+
+    /**
+     * Returns the number of removed comment lines.
+     * 
+     * @return the number of removed comment lines
+     */
+    public int getCommentRemoved()
+    {
+        return commentRemoved;
+    }
+
+    /**
+     * Returns the number of modified comment lines.
+     * 
+     * @return the number of modified comment lines
+     */
+    public int getCommentModified()
+    {
+        return commentModified;
+    }
+
+    /**
+     * Returns the number of added blank lines.
+     * 
+     * @return the number of added blank lines
+     */
+    public int getBlankAdded()
+    {
+        return blankAdded;
+    }
+
+    /**
+     * Returns the number of removed blank lines.
+     * 
+     * @return the number of removed blank lines
+     */
+    public int getBlankRemoved()
+    {
+        return blankRemoved;
+    }
+
+    /**
+     * Returns the number of changed regions.
+     * 
+     * @return the number of changed regions
+     */
+    public int getHunkCount()
+    {
+        return hunkCount;
+    }
+
+    /**
+     * Returns the LOC of the new version minus the LOC of the old version.
+     * 
+     * @return the difference of LOC
+     */
+    public int getLOCDifference()
+    {
+        return codeAdded - codeRemoved;
+    }
+
+    /**
+     * Counts a changed region.
+     */
+    void addHunk(final int[] someRemoved, final int[] someAdded)
+    {
+        final int code = Math.min(someRemoved[LineHasher.CODE], someAdded[LineHasher.CODE]);
+        codeModified += code;
+        codeRemoved += someRemoved[LineHasher.CODE] - code;
+        codeAdded += someAdded[LineHasher.CODE] - code;
+
+        final int comment = Math.min(someRemoved[LineHasher.COMMENT], someAdded[LineHasher.COMMENT]);
+        commentModified += comment;
+        commentRemoved += someRemoved[LineHasher.COMMENT] - comment;
+        commentAdded += someAdded[LineHasher.COMMENT] - comment;
+
+        blankRemoved += someRemoved[LineHasher.BLANK];
+        blankAdded += someAdded[LineHasher.BLANK];
+        hunkCount++;
+    }
+
+    public String toString()
+    {
+        return "code +" + codeAdded + " -" + codeRemoved + " ~" + codeModified
+             + ", comment +" + commentAdded + " -" + commentRemoved + " ~" + commentModified
+             + ", blank +" + blankAdded + " -" + blankRemoved;
+    }
+
+    private int blankAdded;
+
+    private int blankRemoved;
+
+    private int codeAdded;
+
+    private int codeModified;
+
+    private int codeRemoved;
+
+    private int commentAdded;
+
+    private int commentModified;
+
+    private int commentRemoved;
+
+    private int hunkCount;
+}
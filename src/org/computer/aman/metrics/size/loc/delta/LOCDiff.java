@@ -0,0 +1,102 @@
+package org.computer.aman.metrics.size.loc.delta;
+
+import java.io.IOException;
+
+import org.computer.aman.io.sourcecode.NotSupportedSourceFileExeption;
+import org.computer.aman.io.sourcecode.SourceFile;
+import org.computer.aman.metrics.util.CodeMapFactory;
+
+/**
+ * A class for measuring the differences of lines between two versions of a source file.
+ * <p></p>
+ * Both versions are parsed into code maps, and each line is reduced to a hash of its code
+ * (or of its comment, for a comment line) while it is parsed;
+ * the diff runs over the hashes rather than the strings, so that
+ * the changes of white spaces and comments in code lines are not counted as code changes.
+ * 
+ * <p></p>
+ * <u><b>(Example) measuring the change of a Java file.</b></u>
+ * <pre>
+ * LOCDelta <i>delta</i> = LOCDiff.diff(new SourceFile(<i>"Foo.java.orig"</i>), new SourceFile(<i>"Foo.java"</i>));
+ * System.out.println(<i>delta</i>.getCodeAdded() + " " + <i>delta</i>.getCodeRemoved() + " " + <i>delta</i>.getCodeModified());
+ * </pre>
+ * 
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class LOCDiff
+{
+    /**
+     * Measures the differences between two versions of a source file.
+     * 
+     * @param anOldFile the old version of the source file
+     * @param aNewFile the new version of the source file
+     * @return the differences of lines
+     * @throws IOException if an error occurred while the source files are read
+     * @throws NotSupportedSourceFileExeption if a source file is not supported 
+     */
+    public static LOCDelta diff(final SourceFile anOldFile, final SourceFile aNewFile)
+    throws NotSupportedSourceFileExeption, IOException
+    {
+        LineHasher oldHasher = new LineHasher();
+        CodeMapFactory.create(anOldFile, oldHasher);
+        LineHasher newHasher = new LineHasher();
+        CodeMapFactory.create(aNewFile, newHasher);
+        return diff(oldHasher, newHasher);
+    }
+
+    /**
+     * Measures the differences between two versions of a source file, which have already been read.
+     * 
+     * @param aSourceFile source file whose language decides how the lines are parsed
+     * @param oldLines array of the lines of the old version
+     * @param newLines array of the lines of the new version
+     * @return the differences of lines
+     * @throws NotSupportedSourceFileExeption if the source file is not supported 
+     */
+    public static LOCDelta diff(final SourceFile aSourceFile, final String[] oldLines, final String[] newLines)
+    throws NotSupportedSourceFileExeption
+    {
+        LineHasher oldHasher = new LineHasher();
+        CodeMapFactory.create(aSourceFile, oldLines, oldHasher);
+        LineHasher newHasher = new LineHasher();
+        CodeMapFactory.create(aSourceFile, newLines, newHasher);
+        return diff(oldHasher, newHasher);
+    }
+
+    private static LOCDelta diff(final LineHasher anOldHasher, final LineHasher aNewHasher)
+    {
+        final long[] oldKeys = anOldHasher.keys;
+        final long[] newKeys = aNewHasher.keys;
+        final int oldCount = anOldHasher.count;
+        final int newCount = aNewHasher.count;
+        final MyersDiff myers = new MyersDiff(oldKeys, oldCount, newKeys, newCount);
+        final boolean[] removed = myers.getRemoved();
+        final boolean[] added = myers.getAdded();
+
+        // the common lines correspond one to one in order, and the changed regions lie between them
+        LOCDelta delta = new LOCDelta();
+        int[] removedCounts = new int[3];
+        int[] addedCounts = new int[3];
+        int i = 0;
+        int j = 0;
+        while ( i < oldCount || j < newCount ){
+            if ( i < oldCount && j < newCount && !removed[i] && !added[j] ){
+                i++;
+                j++;
+                continue;
+            }
+            removedCounts[0] = removedCounts[1] = removedCounts[2] = 0;
+            addedCounts[0] = addedCounts[1] = addedCounts[2] = 0;
+            while ( i < oldCount && removed[i] ){
+                removedCounts[LineHasher.kindOf(oldKeys[i])]++;
+                i++;
+            }
+            while ( j < newCount && added[j] ){
+                addedCounts[LineHasher.kindOf(newKeys[j])]++;
+                j++;
+            }
+            delta.addHunk(removedCounts, addedCounts);
+        }
+        return delta;
+    }
+}
@@ -0,0 +1,112 @@
+package org.computer.aman.metrics.size.loc.delta;
+
+import java.util.Arrays;
+
+import org.computer.aman.io.sourcecode.SourceFile;
+import org.computer.aman.metrics.util.CodeLineMap;
+import org.computer.aman.metrics.util.MetricCollector;
+
+/**
+ * A MetricCollector which gives each source line a key for the diff.
+ * <p></p>
+ * The key of a code line is the hash of its CODE characters,
+ * so that the changes of white spaces or comments in the line are ignored;
+ * the key of a comment line is the hash of its comment characters,
+ * and the key of a blank line is always BLANK.
+ * The lowest two bits of a key tell the kind of the line.
+ * 
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+class LineHasher
+implements MetricCollector
+{
+    LineHasher()
+    {
+        keys = new long[256];
+    }
+
+    public void beginFile(final SourceFile aSourceFile)
+    {
+        count = 0;
+        codeHash = FNV_OFFSET;
+        commentHash = FNV_OFFSET;
+    }
+
+    public void span(final String aLine, final int aBegin, final int anEnd, final char aType)
+    {
+        if ( aType == BLANK_TYPE ){
+            return;
+        }
+        long h = aType == CODE_TYPE ? codeHash : commentHash;
+        for ( int i = aBegin; i < anEnd; i++ ){
+            h = (h ^ aLine.charAt(i)) * FNV_PRIME;
+        }
+        if ( aType == CODE_TYPE ){
+            codeHash = h;
+        }
+        else{
+            commentHash = h;
+        }
+    }
+
+    public void endLine(final String aLine, final CharSequence aMap, final int aCodeCount, final int aBlankCount)
+    {
+        if ( count == keys.length ){
+            keys = Arrays.copyOf(keys, count * 2);
+        }
+        if ( aCodeCount > 0 ){
+            keys[count] = (codeHash << 2) | CODE;
+        }
+        else if ( aBlankCount == aMap.length() ){
+            keys[count] = BLANK;
+        }
+        else{
+            keys[count] = (commentHash << 2) | COMMENT;
+        }
+        count++;
+        codeHash = FNV_OFFSET;
+        commentHash = FNV_OFFSET;
+    }
+
+    public void endFile()
+    {
+    }
+
+    /**
+     * Returns the kind of the line having the specified key.
+     * 
+     * @param aKey the key of a line
+     * @return BLANK, CODE or COMMENT
+     */
+    static int kindOf(final long aKey)
+    {
+        return (int)(aKey & 3);
+    }
+
+    /** the kind of a blank line (and its key) */
+    static final int BLANK = 0;
+
+    /** the kind of a code line */
+    static final int CODE = 1;
+
+    /** the kind of a comment line */
+    static final int COMMENT = 2;
+
+    /** the number of lines of the last parsed file */
+    int count;
+
+    /** the keys of the lines (valid up to count) */
+    long[] keys;
+
+    private static final char BLANK_TYPE = CodeLineMap.BLANK.charAt(0);
+
+    private static final char CODE_TYPE = CodeLineMap.CODE.charAt(0);
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private long codeHash;
+
+    private long commentHash;
+}
@@ -0,0 +1,422 @@
+package org.computer.aman.metrics.size.loc.delta;
+
+import java.util.Arrays;
+
+/**
+ * Myers' O(ND) difference algorithm in linear space, over arrays of line keys.
+ * <p></p>
+ * The lines which never occur in the other array are marked as removed or added beforehand,
+ * since they cannot be a part of any common subsequence; so are the lines which occur there too often
+ * (e.g., "}") if they lie among such lines, as GNU diff does.
+ * This leaves nothing to search for a rewritten file, and makes the regions of the others much shorter.
+ * The common prefix and suffix are trimmed first, and then the middle snake is searched
+ * from both ends at the same time; the two halves around it are compared recursively.
+ * If the edit distance of a region exceeds COST_LIMIT, 
+ * the furthest point reached so far is used as the split point instead,
+ * which bounds the time at O((N+M) * COST_LIMIT) for the worst case at the cost of a minimal edit script.
+ * <p></p>
+ * The bound is reached only when a large region is changed and consists of lines which occur many times
+ * in both arrays: e.g., the keys of a rewritten 200k-line file made of 40 distinct lines are compared
+ * in about 1.3 seconds, while those of a 200k-line file with a thousand scattered edits,
+ * or of a rewritten file of 100k lines a fifth of which are repeated, take 20-30 milliseconds
+ * (without the time to parse the files).
+ * 
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+class MyersDiff
+{
+    /**
+     * Compares two arrays of keys.
+     * 
+     * @param someOldKeys the keys of the old lines
+     * @param anOldCount the number of the old lines
+     * @param someNewKeys the keys of the new lines
+     * @param aNewCount the number of the new lines
+     */
+    MyersDiff(final long[] someOldKeys, final int anOldCount, final long[] someNewKeys, final int aNewCount)
+    {
+        removed = new boolean[anOldCount];
+        added = new boolean[aNewCount];
+        oldIndexes = new int[anOldCount];
+        newIndexes = new int[aNewCount];
+        oldKeys = new long[anOldCount];
+        newKeys = new long[aNewCount];
+        final int oldCount = discard(someOldKeys, anOldCount, someNewKeys, aNewCount, removed, oldKeys, oldIndexes);
+        final int newCount = discard(someNewKeys, aNewCount, someOldKeys, anOldCount, added, newKeys, newIndexes);
+
+        final int maxD = (oldCount + newCount + 1) / 2 + 1;
+        forward = new int[2 * maxD + 2];
+        backward = new int[2 * maxD + 2];
+        Arrays.fill(forward, -1);
+        Arrays.fill(backward, -1);
+
+        compare(0, oldCount, 0, newCount);
+    }
+
+    /**
+     * Returns the flags of the removed old lines.
+     * 
+     * @return array of flags whose elements are true if the old lines are removed
+     */
+    boolean[] getRemoved()
+    {
+        return removed;
+    }
+
+    /**
+     * Returns the flags of the added new lines.
+     * 
+     * @return array of flags whose elements are true if the new lines are added
+     */
+    boolean[] getAdded()
+    {
+        return added;
+    }
+
+    private void compare(int anOldBegin, int anOldEnd, int aNewBegin, int aNewEnd)
+    {
+        while ( anOldBegin < anOldEnd && aNewBegin < aNewEnd && oldKeys[anOldBegin] == newKeys[aNewBegin] ){
+            anOldBegin++;
+            aNewBegin++;
+        }
+        while ( anOldBegin < anOldEnd && aNewBegin < aNewEnd && oldKeys[anOldEnd - 1] == newKeys[aNewEnd - 1] ){
+            anOldEnd--;
+            aNewEnd--;
+        }
+
+        if ( anOldBegin == anOldEnd || aNewBegin == aNewEnd ){
+            for ( int i = anOldBegin; i < anOldEnd; i++ ){
+                removed[oldIndexes[i]] = true;
+            }
+            for ( int i = aNewBegin; i < aNewEnd; i++ ){
+                added[newIndexes[i]] = true;
+            }
+            return;
+        }
+
+        final long split = split(anOldBegin, anOldEnd, aNewBegin, aNewEnd);
+        final int x = anOldBegin + (int)(split >>> 32);
+        final int y = aNewBegin + (int)split;
+        compare(anOldBegin, x, aNewBegin, y);
+        compare(x, anOldEnd, y, aNewEnd);
+    }
+
+    /**
+     * Finds a point on the shortest edit path (or the furthest point reached within COST_LIMIT),
+     * and returns it as (x &lt;&lt; 32 | y) relative to the beginning of the region.
+     */
+    private long split(final int anOldBegin, final int anOldEnd, final int aNewBegin, final int aNewEnd)
+    {
+        final int n = anOldEnd - anOldBegin;
+        final int m = aNewEnd - aNewBegin;
+        final int maxD = (n + m + 1) / 2;
+        final int offset = forward.length / 2;
+        final int delta = n - m;
+        final boolean front = (delta & 1) != 0;
+
+        int forwardStart = 0;
+        int forwardEnd = 0;
+        int backwardStart = 0;
+        int backwardEnd = 0;
+        int bestX = 0;
+        int bestY = 0;
+        forward[offset + 1] = 0;
+        backward[offset + 1] = 0;
+        int d = 0;
+        long result = -1;
+        search:
+        for ( ; d < maxD; d++ ){
+            for ( int k = -d + forwardStart; k <= d - forwardEnd; k += 2 ){
+                int x;
+                if ( k == -d || (k != d && forward[offset + k - 1] < forward[offset + k + 1]) ){
+                    x = forward[offset + k + 1];
+                }
+                else{
+                    x = forward[offset + k - 1] + 1;
+                }
+                int y = x - k;
+                while ( x < n && y < m && oldKeys[anOldBegin + x] == newKeys[aNewBegin + y] ){
+                    x++;
+                    y++;
+                }
+                forward[offset + k] = x;
+                if ( x > n ){
+                    forwardEnd += 2;
+                }
+                else if ( y > m ){
+                    forwardStart += 2;
+                }
+                else{
+                    if ( x + y > bestX + bestY ){
+                        bestX = x;
+                        bestY = y;
+                    }
+                    final int index = offset + delta - k;
+                    if ( front && index >= 0 && index < backward.length ){
+                        final int reverse = backward[index];
+                        if ( reverse != -1 && x >= n - reverse ){
+                            result = ((long)x << 32) | y;
+                            break search;
+                        }
+                    }
+                }
+            }
+
+            for ( int k = -d + backwardStart; k <= d - backwardEnd; k += 2 ){
+                int x;
+                if ( k == -d || (k != d && backward[offset + k - 1] < backward[offset + k + 1]) ){
+                    x = backward[offset + k + 1];
+                }
+                else{
+                    x = backward[offset + k - 1] + 1;
+                }
+                int y = x - k;
+                while ( x < n && y < m && oldKeys[anOldEnd - x - 1] == newKeys[aNewEnd - y - 1] ){
+                    x++;
+                    y++;
+                }
+                backward[offset + k] = x;
+                if ( x > n ){
+                    backwardEnd += 2;
+                }
+                else if ( y > m ){
+                    backwardStart += 2;
+                }
+                else{
+                    final int index = offset + delta - k;
+                    if ( front || index < 0 || index >= forward.length ){
+                        continue;
+                    }
+                    final int forwardX = forward[index];
+                    if ( forwardX != -1 && forwardX >= n - x ){
+                        result = ((long)forwardX << 32) | (forwardX - delta + k);
+                        break search;
+                    }
+                }
+            }
+
+            if ( d >= COST_LIMIT && bestX + bestY > 0 ){
+                result = ((long)bestX << 32) | bestY;
+                break;
+            }
+        }
+
+        // reset the diagonals for the next search
+        final int used = Math.min(d + 1, maxD);
+        for ( int k = -used; k <= used; k++ ){
+            forward[offset + k] = -1;
+            backward[offset + k] = -1;
+        }
+        if ( result == -1 ){
+            // no common line: the whole region is replaced
+            result = ((long)n << 32) | 0;
+        }
+        return result;
+    }
+
+    /**
+     * Marks the lines which never occur in the other array, and the lines which occur there too often
+     * in the middle of a run of such lines; copies the rest of the keys with their original indexes,
+     * and returns the number of the copied keys.
+     */
+    private static int discard(final long[] someKeys, final int aCount, final long[] someOtherKeys, final int anOtherCount,
+                               final boolean[] someMarks, final long[] someKeptKeys, final int[] someKeptIndexes)
+    {
+        // an open addressing hash table of the other keys with their counts (the key 0 is counted apart)
+        int capacity = 16;
+        while ( capacity < anOtherCount * 2 ){
+            capacity <<= 1;
+        }
+        final long[] table = new long[capacity];
+        final int[] counts = new int[capacity];
+        final int mask = capacity - 1;
+        int zeroCount = 0;
+        for ( int i = 0; i < anOtherCount; i++ ){
+            final long key = someOtherKeys[i];
+            if ( key == 0 ){
+                zeroCount++;
+                continue;
+            }
+            int slot = slotOf(key, mask);
+            while ( table[slot] != 0 && table[slot] != key ){
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = key;
+            counts[slot]++;
+        }
+
+        // a line matching more than "many" lines is discarded only provisionally (the same bound as GNU diff)
+        int many = 5;
+        for ( int tem = aCount / 64; (tem >>= 2) > 0; ){
+            many *= 2;
+        }
+        final byte[] discards = new byte[aCount];
+        for ( int i = 0; i < aCount; i++ ){
+            final long key = someKeys[i];
+            int matches = zeroCount;
+            if ( key != 0 ){
+                int slot = slotOf(key, mask);
+                while ( table[slot] != 0 && table[slot] != key ){
+                    slot = (slot + 1) & mask;
+                }
+                matches = table[slot] == key ? counts[slot] : 0;
+            }
+            if ( matches == 0 ){
+                discards[i] = DISCARD;
+            }
+            else if ( matches > many ){
+                discards[i] = PROVISIONAL;
+            }
+        }
+        confirm(discards);
+
+        int kept = 0;
+        for ( int i = 0; i < aCount; i++ ){
+            if ( discards[i] == 0 ){
+                someKeptKeys[kept] = someKeys[i];
+                someKeptIndexes[kept] = i;
+                kept++;
+            }
+            else{
+                someMarks[i] = true;
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * Keeps the provisional discards only in the middle of a run of discarded lines, in the manner of GNU diff:
+     * a run in which more than a quarter of the lines are provisional is kept as a whole,
+     * and so are a long streak of provisional lines, and the provisional lines near both ends of a run.
+     * Thus the repeated lines (e.g., "}") between the lines of a rewritten region no longer anchor the search
+     * there, while those between the common lines are compared as before.
+     */
+    private static void confirm(final byte[] someDiscards)
+    {
+        final int end = someDiscards.length;
+        for ( int i = 0; i < end; i++ ){
+            if ( someDiscards[i] == PROVISIONAL ){
+                // not in a run of discarded lines
+                someDiscards[i] = 0;
+                continue;
+            }
+            if ( someDiscards[i] == 0 ){
+                continue;
+            }
+
+            // a run of discardable lines which begins with a line never occurring in the other array
+            int j = i;
+            int provisional = 0;
+            while ( j < end && someDiscards[j] != 0 ){
+                if ( someDiscards[j] == PROVISIONAL ){
+                    provisional++;
+                }
+                j++;
+            }
+            while ( j > i && someDiscards[j - 1] == PROVISIONAL ){
+                someDiscards[--j] = 0;
+                provisional--;
+            }
+            final int length = j - i;
+
+            if ( provisional * 4 > length ){
+                while ( j > i ){
+                    if ( someDiscards[--j] == PROVISIONAL ){
+                        someDiscards[j] = 0;
+                    }
+                }
+            }
+            else{
+                // a streak of about sqrt(length / 4) provisional lines is kept
+                int minimum = 1;
+                for ( int tem = length >> 2; (tem >>= 2) > 0; ){
+                    minimum <<= 1;
+                }
+                minimum++;
+                int consecutive = 0;
+                for ( j = 0; j < length; j++ ){
+                    if ( someDiscards[i + j] != PROVISIONAL ){
+                        consecutive = 0;
+                    }
+                    else if ( ++consecutive == minimum ){
+                        // back to the beginning of the streak, which is kept as a whole
+                        j -= consecutive;
+                    }
+                    else if ( consecutive > minimum ){
+                        someDiscards[i + j] = 0;
+                    }
+                }
+
+                // the provisional lines are kept until three discarded lines in a row (or eight lines)
+                consecutive = 0;
+                for ( j = 0; j < length; j++ ){
+                    if ( j >= 8 && someDiscards[i + j] == DISCARD ){
+                        break;
+                    }
+                    if ( someDiscards[i + j] == PROVISIONAL ){
+                        someDiscards[i + j] = 0;
+                        consecutive = 0;
+                    }
+                    else if ( someDiscards[i + j] == 0 ){
+                        consecutive = 0;
+                    }
+                    else if ( ++consecutive == 3 ){
+                        break;
+                    }
+                }
+                i += length - 1;
+                consecutive = 0;
+                for ( j = 0; j < length; j++ ){
+                    if ( j >= 8 && someDiscards[i - j] == DISCARD ){
+                        break;
+                    }
+                    if ( someDiscards[i - j] == PROVISIONAL ){
+                        someDiscards[i - j] = 0;
+                        consecutive = 0;
+                    }
+                    else if ( someDiscards[i - j] == 0 ){
+                        consecutive = 0;
+                    }
+                    else if ( ++consecutive == 3 ){
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    private static int slotOf(final long aKey, final int aMask)
+    {
+        long h = aKey * 0x9e3779b97f4a7c15L;
+        return (int)(h ^ (h >>> 32)) & aMask;
+    }
+
+    /** the edit distance from which a region is split at the furthest point reached */
+    private static final int COST_LIMIT = 256;
+
+    /** a line never occurring in the other array */
+    private static final byte DISCARD = 1;
+
+    /** a line occurring too often in the other array, which is discarded if it is in a run of discarded lines */
+    private static final byte PROVISIONAL = 2;
+
+    private final boolean[] added;
+
+    private final int[] backward;
+
+    private final int[] forward;
+
+    /** the original indexes of the new keys being compared */
+    private final int[] newIndexes;
+
+    /** the new keys being compared (the keys never occurring in the old array are excluded) */
+    private final long[] newKeys;
+
+    /** the original indexes of the old keys being compared */
+    private final int[] oldIndexes;
+
+    /** the old keys being compared (the keys never occurring in the new array are excluded) */
+    private final long[] oldKeys;
+
+    private final boolean[] removed;
+}
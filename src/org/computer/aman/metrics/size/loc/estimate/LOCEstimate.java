@@ -0,0 +1,154 @@
+package org.computer.aman.metrics.size.loc.estimate;
+
+import org.computer.aman.metrics.size.loc.store.ResultStore;
+
+/**
+ * An estimate of the total LOC, blank and comment lines of a tree, with its 95% confidence intervals.
+ * 
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class LOCEstimate
+{
+    LOCEstimate(final double[] someValues, final double[] someHalfWidths, 
+                final int aSampleCount, final int aFileCount, final long anElapsedMillis)
+    {
+        values = someValues;
+        halfWidths = someHalfWidths;
+        sampleCount = aSampleCount;
+        fileCount = aFileCount;
+        elapsedMillis = anElapsedMillis;
+    }
+
+    /**
+     * Returns the estimated total.
+     * 
+     * @param aColumn LOC, BLANK or COMMENT
+     * @return the estimated total over all files
+     */
+    public long get(final ResultStore.Column aColumn)
+    {
+        return Math.round(values[index(aColumn)]);
+    }
+
+    /**
+     * Returns the half width of the 95% confidence interval of the estimated total.
+     * 
+     * @param aColumn LOC, BLANK or COMMENT
+     * @return the half width of the confidence interval (0 if all files have been measured)
+     */
+    public long getHalfWidth(final ResultStore.Column aColumn)
+    {
+        return Math.round(halfWidths[index(aColumn)]);
+    }
+
+    /**
+     * Returns the lower bound of the 95% confidence interval of the estimated total.
+     * 
+     * @param aColumn LOC, BLANK or COMMENT
+     * @return the lower bound
+     */
+    public long getLower(final ResultStore.Column aColumn)
+    {
+        return Math.max(0, Math.round(values[index(aColumn)] - halfWidths[index(aColumn)]));
+    }
+
+    /**
+     * Returns the upper bound of the 95% confidence interval of the estimated total.
+     * 
+     * @param aColumn LOC, BLANK or COMMENT
+     * @return the upper bound
+     */
+    public long getUpper(final ResultStore.Column aColumn)
+    {
+        return Math.round(values[index(aColumn)] + halfWidths[index(aColumn)]);
+    }
+
+    /**
+     * Returns the half width of the confidence interval of LOC relative to the estimated LOC.
+     * 
+     * @return the relative error of LOC (0.0 if all files have been measured)
+     */
+    public double getRelativeError()
+    {
+        final double loc = values[index(ResultStore.Column.LOC)];
+        final double halfWidth = halfWidths[index(ResultStore.Column.LOC)];
+        if ( halfWidth == 0.0 ){
+            return 0.0;
+        }
+        return loc > 0.0 ? halfWidth / loc : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Returns the number of the measured (sampled) files.
+     * 
+     * @return the number of the measured files
+     */
+    public int getSampleCount()
+    {
+        return sampleCount;
+    }
+
+    /**
+     * Returns the number of all files in the tree.
+     * 
+     * @return the number of all files
+     */
+    public int getFileCount()
+    {
+        return fileCount;
+    }
+
+    /**
+     * Returns the time elapsed since the estimation started.
+     * 
+     * @return the elapsed time in milliseconds
+     */
+    public long getElapsedMillis()
+    {
+        return elapsedMillis;
+    }
+
+    /**
+     * Returns true if all files have been measured, i.e., the estimate is exact.
+     * 
+     * @return true if the estimate is exact
+     */
+    public boolean isExact()
+    {
+        return sampleCount == fileCount;
+    }
+
+    public String toString()
+    {
+        return "LOC " + get(ResultStore.Column.LOC) + " +/- " + getHalfWidth(ResultStore.Column.LOC)
+             + ", blank " + get(ResultStore.Column.BLANK) + " +/- " + getHalfWidth(ResultStore.Column.BLANK)
+             + ", comment " + get(ResultStore.Column.COMMENT) + " +/- " + getHalfWidth(ResultStore.Column.COMMENT)
+             + " (" + sampleCount + " of " + fileCount + " files)";
+    }
+
+    /**
+     * Returns the index of the values of the specified column.
+     */
+    static int index(final ResultStore.Column aColumn)
+    {
+        if ( aColumn == ResultStore.Column.COMMENT_OUT ){
+            throw new IllegalArgumentException("not estimated : " + aColumn);
+        }
+        return aColumn.ordinal();
+    }
+
+    /** the number of the estimated columns (LOC, BLANK and COMMENT) */
+    static final int COLUMN_COUNT = 3;
+
+    private final long elapsedMillis;
+
+    private final int fileCount;
+
+    /** the half widths of the confidence intervals, indexed by index() */
+    private final double[] halfWidths;
+
+    private final int sampleCount;
+
+    /** the estimated totals, indexed by index() */
+    private final double[] values;
+}
@@ -0,0 +1,417 @@
+package org.computer.aman.metrics.size.loc.estimate;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.computer.aman.io.FileFinder;
+import org.computer.aman.io.sourcecode.SourceFile;
+import org.computer.aman.metrics.size.loc.LOC;
+import org.computer.aman.metrics.size.loc.LOCCounter;
+import org.computer.aman.metrics.util.LanguageProvider;
+import org.computer.aman.metrics.util.LanguageRegistry;
+
+/**
+ * An estimator of the total LOC, blank and comment lines of a huge tree, which measures only a sample of the files.
+ * <p></p>
+ * The tree is walked first to get the sizes of the files, which is cheap compared with reading them.
+ * The files are divided into strata by their languages and sizes (powers of two),
+ * and files are drawn at random from the strata and measured by LOCCounter 
+ * (i.e., by the same code maps as the exact measurement);
+ * every stratum gets five samples first, and then the stratum whose estimate is the most uncertain
+ * relative to its number of samples is drawn from.
+ * The totals are extrapolated by the ratio of lines to bytes in each stratum,
+ * and the 95% confidence intervals are computed from the variances of the strata 
+ * (pooled with the variance of all samples for the small strata, see Stratum)
+ * with the quantile of Student's t distribution, whose degrees of freedom are given by the Welch-Satterthwaite approximation.
+ * <p></p>
+ * The estimate improves as more samples are measured; a Listener receives every intermediate estimate.
+ * The estimation stops when the time budget runs out, when the relative error of LOC 
+ * gets within the accuracy budget (checked only after every stratum has five samples), 
+ * or when all files have been measured (then the estimate is exact).
+ * 
+ * <p></p>
+ * <u><b>(Example) estimating the LOC of Java files within 10 seconds or 1% error.</b></u>
+ * <pre>
+ * LOCEstimator <i>estimator</i> = new LOCEstimator(new FileFinder(<i>"/foo/bar"</i>), <i>".+\\.java"</i>);
+ * LOCEstimate <i>estimate</i> = <i>estimator</i>.estimate(10000, 0.01);
+ * System.out.println(<i>estimate</i>.get(ResultStore.Column.LOC) + " +/- " + <i>estimate</i>.getHalfWidth(ResultStore.Column.LOC));
+ * </pre>
+ * 
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class LOCEstimator
+{
+    /**
+     * Receives the intermediate estimates.
+     */
+    public interface Listener
+    {
+        /**
+         * Receives an estimate updated by a new sample.
+         * This method is called from the measuring threads, one at a time.
+         * 
+         * @param anEstimate the current estimate
+         */
+        public void progress(final LOCEstimate anEstimate);
+    }
+
+    /**
+     * Creates an estimator of the files found by the specified FileFinder.
+     * 
+     * @param aFinder the FileFinder whose files are estimated
+     * @param aPattern the regular expression corresponding to the files
+     */
+    public LOCEstimator(final FileFinder aFinder, final String aPattern)
+    {
+        finder = aFinder;
+        pattern = aPattern;
+        parallelism = Runtime.getRuntime().availableProcessors();
+        random = new Random();
+        listener = null;
+    }
+
+    /**
+     * Sets the number of files measured at the same time.
+     * 
+     * @param aParallelism the number of files measured at the same time (must be positive)
+     */
+    public void setParallelism(final int aParallelism)
+    {
+        if ( aParallelism <= 0 ){
+            throw new IllegalArgumentException("must be positive : " + aParallelism);
+        }
+        parallelism = aParallelism;
+    }
+
+    /**
+     * Sets the seed of the random sampling, to make the sample reproducible.
+     * 
+     * @param aSeed the seed
+     */
+    public void setSeed(final long aSeed)
+    {
+        random = new Random(aSeed);
+    }
+
+    /**
+     * Sets the listener which receives the intermediate estimates.
+     * 
+     * @param aListener the listener (null for none)
+     */
+    public void setListener(final Listener aListener)
+    {
+        listener = aListener;
+    }
+
+    /**
+     * Estimates the totals within the specified budget.
+     * 
+     * @param aTimeLimitMillis the time budget in milliseconds (0 for no limit)
+     * @param aRelativeError the accuracy budget: the estimation stops when the half width 
+     *                       of the confidence interval of LOC divided by LOC gets below it (0.0 for exact measurement)
+     * @return the estimate
+     * @throws IOException if the tree could not be walked
+     * @throws InterruptedException if the current thread is interrupted while waiting
+     */
+    public LOCEstimate estimate(final long aTimeLimitMillis, final double aRelativeError)
+    throws IOException, InterruptedException
+    {
+        startTime = System.currentTimeMillis();
+        final long deadline = aTimeLimitMillis > 0 ? startTime + aTimeLimitMillis : Long.MAX_VALUE;
+        relativeError = aRelativeError;
+        stopped = false;
+        strata = stratify(finder.getList(pattern));
+
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        try {
+            for ( int i = 0; i < parallelism; i++ ){
+                executor.execute(new Runnable() {
+                    public void run()
+                    {
+                        sample();
+                    }
+                });
+            }
+            executor.shutdown();
+            final long remaining = deadline - System.currentTimeMillis();
+            if ( !executor.awaitTermination(Math.max(remaining, 0), TimeUnit.MILLISECONDS) ){
+                synchronized ( this ){
+                    stopped = true;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        synchronized ( this ){
+            stopped = true;
+            return current();
+        }
+    }
+
+    /**
+     * Measures the files drawn from the strata until the estimation stops.
+     */
+    private void sample()
+    {
+        final long[] values = new long[LOCEstimate.COLUMN_COUNT];
+        while ( true ){
+            Stratum stratum;
+            int index;
+            synchronized ( this ){
+                stratum = stopped ? null : choose();
+                if ( stratum == null ){
+                    return;
+                }
+                index = stratum.next();
+            }
+            final String path = stratum.paths.get(index);
+            final long size = stratum.sizes.get(index);
+            LOC result = null;
+            try {
+                result = LOCCounter.measure(new SourceFile(path));
+            } catch (Exception e) {
+                // the file is excluded from the population
+            }
+            if ( Thread.currentThread().isInterrupted() ){
+                return;
+            }
+            synchronized ( this ){
+                if ( stopped ){
+                    return;
+                }
+                if ( result != null ){
+                    values[0] = result.getLOC();
+                    values[1] = result.getBlankCount();
+                    values[2] = result.getTotalLineCount() - result.getLOC() - result.getBlankCount();
+                    stratum.record(size, values);
+                }
+                else{
+                    stratum.discard(size);
+                }
+                LOCEstimate estimate = current();
+                if ( estimate.isExact() 
+                     || (estimate.getSampleCount() >= MIN_SAMPLES && isSampled() 
+                         && estimate.getRelativeError() <= relativeError) ){
+                    stopped = true;
+                }
+                if ( listener != null ){
+                    listener.progress(estimate);
+                }
+            }
+        }
+    }
+
+    /**
+     * Chooses the stratum from which the next file is drawn (null if all files have been dispatched).
+     * The strata with fewer than Stratum.MIN_SAMPLES dispatched files come first (the largest first),
+     * and then the stratum with the largest variance per dispatched file.
+     */
+    private Stratum choose()
+    {
+        final double ratio = globalRatio();
+        final double pooled = pooledResidual(0, ratio);
+        Stratum best = null;
+        double bestScore = -1.0;
+        boolean bestIsNew = false;
+        for (Iterator<Stratum> itr = strata.iterator(); itr.hasNext(); ){
+            Stratum stratum = itr.next();
+            if ( stratum.isExhausted() ){
+                continue;
+            }
+            final boolean isNew = stratum.dispatched < Stratum.MIN_SAMPLES;
+            final double score = isNew ? stratum.totalSize : stratum.variance(0, ratio, pooled) / (stratum.dispatched + 1);
+            if ( best == null || (isNew && !bestIsNew) || (isNew == bestIsNew && score > bestScore) ){
+                best = stratum;
+                bestScore = score;
+                bestIsNew = isNew;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the current estimate.
+     */
+    private LOCEstimate current()
+    {
+        final double[] values = new double[LOCEstimate.COLUMN_COUNT];
+        final double[] halfWidths = new double[LOCEstimate.COLUMN_COUNT];
+        int samples = 0;
+        int files = 0;
+        for ( int c = 0; c < LOCEstimate.COLUMN_COUNT; c++ ){
+            final double ratio = globalRatio(c);
+            final double pooled = pooledResidual(c, ratio);
+            double variance = 0.0;
+            // the denominator of the Welch-Satterthwaite degrees of freedom
+            double spread = 0.0;
+            for (Iterator<Stratum> itr = strata.iterator(); itr.hasNext(); ){
+                Stratum stratum = itr.next();
+                values[c] += stratum.estimate(c, ratio);
+                final double v = stratum.variance(c, ratio, pooled);
+                variance += v;
+                spread += v * v / stratum.getDegrees();
+            }
+            final double degrees = spread > 0.0 ? variance * variance / spread : Double.POSITIVE_INFINITY;
+            halfWidths[c] = quantile975(degrees) * Math.sqrt(variance);
+        }
+        for (Iterator<Stratum> itr = strata.iterator(); itr.hasNext(); ){
+            Stratum stratum = itr.next();
+            samples += stratum.n;
+            files += stratum.getPopulation();
+        }
+        if ( samples == 0 && files > 0 ){
+            // nothing is known yet
+            Arrays.fill(halfWidths, Double.POSITIVE_INFINITY);
+        }
+        return new LOCEstimate(values, halfWidths, samples, files, System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * Returns true if every stratum has enough samples for its variance to be trusted.
+     */
+    private boolean isSampled()
+    {
+        for (Iterator<Stratum> itr = strata.iterator(); itr.hasNext(); ){
+            if ( !itr.next().isSampled() ){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the residual variance of all samples around the specified global ratio per squared byte
+     * (NaN if there are fewer than two samples).
+     */
+    private double pooledResidual(final int aColumn, final double aRatio)
+    {
+        double residuals = 0.0;
+        double squaredSizes = 0.0;
+        int samples = 0;
+        for (Iterator<Stratum> itr = strata.iterator(); itr.hasNext(); ){
+            Stratum stratum = itr.next();
+            residuals += stratum.squaredResiduals(aColumn, aRatio);
+            squaredSizes += stratum.sumXX;
+            samples += stratum.n;
+        }
+        if ( samples < 2 || squaredSizes <= 0.0 ){
+            return Double.NaN;
+        }
+        return residuals / squaredSizes * samples / (samples - 1);
+    }
+
+    /**
+     * Returns the 97.5% quantile of Student's t distribution with the specified degrees of freedom
+     * (rounded down, so that the interval is never too narrow).
+     */
+    private static double quantile975(final double aDegrees)
+    {
+        if ( aDegrees < T_975.length ){
+            return T_975[Math.max((int)aDegrees, 1) - 1];
+        }
+        if ( Double.isInfinite(aDegrees) ){
+            return Z_95;
+        }
+        // the Cornish-Fisher expansion, accurate to 1e-4 above 30 degrees
+        final double z = Z_95;
+        final double z3 = z * z * z;
+        final double z5 = z3 * z * z;
+        final double v = Math.floor(aDegrees);
+        return z + (z3 + z) / (4 * v) + (5 * z5 + 16 * z3 + 3 * z) / (96 * v * v);
+    }
+
+    private double globalRatio()
+    {
+        return globalRatio(0);
+    }
+
+    /**
+     * Returns the ratio of the values to the sizes over all samples.
+     */
+    private double globalRatio(final int aColumn)
+    {
+        double x = 0.0;
+        double y = 0.0;
+        for (Iterator<Stratum> itr = strata.iterator(); itr.hasNext(); ){
+            Stratum stratum = itr.next();
+            x += stratum.sumX;
+            y += stratum.sumY[aColumn];
+        }
+        return x > 0.0 ? y / x : 0.0;
+    }
+
+    /**
+     * Divides the supported files into strata by their languages and sizes.
+     */
+    private List<Stratum> stratify(final List<String> somePaths)
+    {
+        HashMap<String, Stratum> map = new HashMap<String, Stratum>();
+        for (Iterator<String> itr = somePaths.iterator(); itr.hasNext(); ){
+            final String path = itr.next();
+            final LanguageProvider language = LanguageRegistry.lookup(path);
+            if ( language == null ){
+                continue;
+            }
+            final long size = new File(path).length();
+            final String key = language.getName() + "/" + (64 - Long.numberOfLeadingZeros(size));
+            Stratum stratum = map.get(key);
+            if ( stratum == null ){
+                stratum = new Stratum();
+                map.put(key, stratum);
+            }
+            stratum.addFile(path, size);
+        }
+
+        ArrayList<String> keys = new ArrayList<String>(map.keySet());
+        Collections.sort(keys);
+        ArrayList<Stratum> list = new ArrayList<Stratum>(keys.size());
+        for (Iterator<String> itr = keys.iterator(); itr.hasNext(); ){
+            Stratum stratum = map.get(itr.next());
+            stratum.shuffle(random);
+            list.add(stratum);
+        }
+        return list;
+    }
+
+    /** the minimum number of samples before the accuracy budget is checked */
+    private static final int MIN_SAMPLES = 30;
+
+    /** the 97.5% quantiles of Student's t distribution with 1 to 30 degrees of freedom */
+    private static final double[] T_975 = {
+        12.706, 4.303, 3.182, 2.776, 2.571, 2.447, 2.365, 2.306, 2.262, 2.228,
+        2.201, 2.179, 2.160, 2.145, 2.131, 2.120, 2.110, 2.101, 2.093, 2.086,
+        2.080, 2.074, 2.069, 2.064, 2.060, 2.056, 2.052, 2.048, 2.045, 2.042,
+    };
+
+    /** the z value of the 95% confidence interval */
+    private static final double Z_95 = 1.959964;
+
+    private final FileFinder finder;
+
+    private Listener listener;
+
+    private int parallelism;
+
+    private final String pattern;
+
+    private Random random;
+
+    private double relativeError;
+
+    private long startTime;
+
+    /** true if no more files should be measured, guarded by this */
+    private boolean stopped;
+
+    private List<Stratum> strata;
+}
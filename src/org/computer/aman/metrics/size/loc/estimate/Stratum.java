@@ -0,0 +1,212 @@
+package org.computer.aman.metrics.size.loc.estimate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+
+/**
+ * A stratum of files (of the same language and of similar sizes), sampled in a random order.
+ * <p></p>
+ * The total of a stratum is estimated by the ratio estimator with the file size as the auxiliary variable:
+ * (the total size of the stratum) * (the sum of the sampled values) / (the sum of the sampled sizes),
+ * which is accurate as long as the number of lines is roughly proportional to the size.
+ * <p></p>
+ * The residual variance of a stratum with few samples is not trusted alone:
+ * a few files of the same kind (e.g., generated files without code) may have exactly the same ratio,
+ * which would make the estimate look exact. The residual variance is therefore pooled
+ * with the residual variance of all samples around the global ratio, weighted as PRIOR_DEGREES samples,
+ * so that it falls back to the pooled one for a small stratum and approaches its own as the samples grow.
+ * 
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+class Stratum
+{
+    Stratum()
+    {
+        paths = new ArrayList<String>();
+        sizes = new ArrayList<Long>();
+        sumY = new double[LOCEstimate.COLUMN_COUNT];
+        sumXY = new double[LOCEstimate.COLUMN_COUNT];
+        sumYY = new double[LOCEstimate.COLUMN_COUNT];
+    }
+
+    /**
+     * Adds a file to the population of this stratum.
+     */
+    void addFile(final String aPath, final long aSize)
+    {
+        paths.add(aPath);
+        sizes.add(aSize);
+        totalSize += aSize;
+        totalSizeSquared += (double)aSize * aSize;
+    }
+
+    /**
+     * Shuffles the files to be sampled.
+     */
+    void shuffle(final Random aRandom)
+    {
+        final long seed = aRandom.nextLong();
+        Collections.shuffle(paths, new Random(seed));
+        Collections.shuffle(sizes, new Random(seed));
+    }
+
+    /**
+     * Returns the index of the next file to be sampled, or -1 if all files have been dispatched.
+     */
+    int next()
+    {
+        if ( dispatched == paths.size() ){
+            return -1;
+        }
+        return dispatched++;
+    }
+
+    /**
+     * Records the measured values of a sampled file.
+     */
+    void record(final long aSize, final long[] someValues)
+    {
+        n++;
+        sumX += aSize;
+        sumXX += (double)aSize * aSize;
+        for ( int i = 0; i < someValues.length; i++ ){
+            sumY[i] += someValues[i];
+            sumXY[i] += (double)aSize * someValues[i];
+            sumYY[i] += (double)someValues[i] * someValues[i];
+        }
+    }
+
+    /**
+     * Records that a dispatched file could not be measured; it is removed from the population.
+     */
+    void discard(final long aSize)
+    {
+        discarded++;
+        totalSize -= aSize;
+        totalSizeSquared -= (double)aSize * aSize;
+    }
+
+    /**
+     * Returns the number of the files of this stratum (excluding the discarded ones).
+     */
+    int getPopulation()
+    {
+        return paths.size() - discarded;
+    }
+
+    /**
+     * Returns true if all files of this stratum have been dispatched.
+     */
+    boolean isExhausted()
+    {
+        return dispatched == paths.size();
+    }
+
+    /**
+     * Returns the estimated total of a column, using the specified global ratio if this stratum has no sample.
+     */
+    double estimate(final int aColumn, final double aGlobalRatio)
+    {
+        if ( n == 0 ){
+            return totalSize * aGlobalRatio;
+        }
+        return sumX > 0 ? totalSize * sumY[aColumn] / sumX : sumY[aColumn] * getPopulation() / n;
+    }
+
+    /**
+     * Returns true if this stratum has enough samples for its variance to be trusted (or has no file left).
+     */
+    boolean isSampled()
+    {
+        return n >= MIN_SAMPLES || isExhausted();
+    }
+
+    /**
+     * Returns the sum of the squared residuals of the samples around the specified ratio.
+     */
+    double squaredResiduals(final int aColumn, final double aRatio)
+    {
+        return Math.max(0.0, sumYY[aColumn] - 2 * aRatio * sumXY[aColumn] + aRatio * aRatio * sumXX);
+    }
+
+    /**
+     * Returns the variance of the estimated total of a column.
+     * A stratum without a sample, or without the pooled residual (NaN), gets a conservative variance: 
+     * the square of its estimated unsampled part.
+     * 
+     * @param aColumn the column
+     * @param aGlobalRatio the ratio of the values to the sizes over all samples
+     * @param aPooledResidual the residual variance of all samples around the global ratio per squared byte (NaN if unknown)
+     */
+    double variance(final int aColumn, final double aGlobalRatio, final double aPooledResidual)
+    {
+        final int population = getPopulation();
+        if ( n >= population ){
+            return 0.0;
+        }
+        if ( n == 0 || (n < 2 && Double.isNaN(aPooledResidual)) ){
+            final double unsampled = estimate(aColumn, aGlobalRatio) - sumY[aColumn];
+            return unsampled * unsampled;
+        }
+        final double ratio = sumX > 0 ? sumY[aColumn] / sumX : 0.0;
+        final double own = n >= 2 ? squaredResiduals(aColumn, ratio) / (n - 1) : 0.0;
+        double residual = own;
+        if ( !Double.isNaN(aPooledResidual) ){
+            // the pooled residual is scaled by the mean squared size of this stratum
+            final double pooled = aPooledResidual * totalSizeSquared / population;
+            residual = ((n - 1) * own + PRIOR_DEGREES * pooled) / (n - 1 + PRIOR_DEGREES);
+        }
+        return (double)population * population * (1.0 - (double)n / population) * residual / n;
+    }
+
+    /**
+     * Returns the degrees of freedom of the variance of this stratum, for the Welch-Satterthwaite approximation.
+     */
+    int getDegrees()
+    {
+        return Math.max(n - 1, 1);
+    }
+
+    /** the number of samples before the variance of a stratum is trusted */
+    static final int MIN_SAMPLES = 5;
+
+    /** the weight of the pooled residual variance, in samples */
+    static final int PRIOR_DEGREES = 5;
+
+    /** the number of the dispatched files */
+    int dispatched;
+
+    /** the number of the dispatched files which could not be measured */
+    int discarded;
+
+    /** the number of the measured files */
+    int n;
+
+    /** the paths of the files, in the order of sampling */
+    final ArrayList<String> paths;
+
+    /** the sizes of the files, in the same order as the paths */
+    final ArrayList<Long> sizes;
+
+    /** the sum of the sizes of the measured files */
+    double sumX;
+
+    /** the sum of the squared sizes of the measured files */
+    double sumXX;
+
+    /** the sums of the products of the size and the value of the measured files */
+    final double[] sumXY;
+
+    /** the sums of the values of the measured files */
+    final double[] sumY;
+
+    /** the sums of the squared values of the measured files */
+    final double[] sumYY;
+
+    /** the total size of the files of this stratum */
+    double totalSize;
+
+    /** the total of the squared sizes of the files of this stratum */
+    double totalSizeSquared;
+}
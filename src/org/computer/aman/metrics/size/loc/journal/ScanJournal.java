@@ -0,0 +1,379 @@
+package org.computer.aman.metrics.size.loc.journal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.zip.CRC32;
+
+import org.computer.aman.metrics.size.loc.LOC;
+import org.computer.aman.metrics.size.loc.store.ResultStore;
+import org.computer.aman.metrics.util.LanguageProvider;
+import org.computer.aman.metrics.util.LanguageRegistry;
+
+/**
+ * An append-only journal of the files which have been measured, with the summaries of their results,
+ * for resuming a long scan after a crash or a restart.
+ * <p></p>
+ * Each record holds the path, the size and the modification time of a file, and its LOC, blank and total line counts;
+ * a record is framed by its length and a CRC32, so that a record torn by a crash is detected and
+ * cut off when the journal is opened again; the journal is read in chunks, and is cut off
+ * only after the last record which has been read and verified.
+ * The records are buffered and written in batches, and the journal is forced to the disk (fsync)
+ * every SYNC_RECORDS records or SYNC_INTERVAL milliseconds, whichever comes first, and when it is closed;
+ * a crash loses at most the records of the last batch, whose files are simply measured again.
+ * <p></p>
+ * A file is done if the journal has a record of it with the same size and modification time.
+ * The journal is thread-safe.
+ * 
+ * <p></p>
+ * <u><b>(Example) a resumable scan.</b></u>
+ * <pre>
+ * ScanJournal <i>journal</i> = new ScanJournal(new File(<i>"scan.journal"</i>));
+ * MeasurementPipeline <i>pipeline</i> = new MeasurementPipeline(new FileFinder(<i>"/foo/bar"</i>), <i>".+"</i>, <i>sink</i>);
+ * <i>pipeline</i>.setJournal(<i>journal</i>);
+ * <i>pipeline</i>.run();
+ * <i>journal</i>.close();
+ * </pre>
+ * 
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class ScanJournal
+implements AutoCloseable
+{
+    /**
+     * A record of a measured file.
+     */
+    public static class Entry
+    {
+        Entry(final String aPath, final long aSize, final long aLastModified, 
+              final int aLOC, final int aBlank, final int aTotal)
+        {
+            path = aPath;
+            size = aSize;
+            lastModified = aLastModified;
+            loc = aLOC;
+            blank = aBlank;
+            total = aTotal;
+        }
+
+        /**
+         * Returns the path of the file.
+         * 
+         * @return the path of the file
+         */
+        public String getPath()
+        {
+            return path;
+        }
+
+        /**
+         * Returns the size of the file when it was measured.
+         * 
+         * @return the size in bytes
+         */
+        public long getSize()
+        {
+            return size;
+        }
+
+        /**
+         * Returns the modification time of the file when it was measured.
+         * 
+         * @return the modification time in milliseconds
+         */
+        public long getLastModified()
+        {
+            return lastModified;
+        }
+
+        /**
+         * Returns the LOC value.
+         * 
+         * @return the LOC value
+         */
+        public int getLOC()
+        {
+            return loc;
+        }
+
+        /**
+         * Returns the number of blank lines.
+         * 
+         * @return the number of blank lines
+         */
+        public int getBlankCount()
+        {
+            return blank;
+        }
+
+        /**
+         * Returns the total line count.
+         * 
+         * @return the total line count
+         */
+        public int getTotalLineCount()
+        {
+            return total;
+        }
+
+        private final int blank;
+
+        private final long lastModified;
+
+        private final int loc;
+
+        private final String path;
+
+        private final long size;
+
+        private final int total;
+    }
+
+    /**
+     * Opens a journal, loading its records; a new journal is created if the file does not exist.
+     * A torn record at the end (by a crash) is cut off.
+     * 
+     * @param aFile the journal file
+     * @throws IOException if the journal could not be opened
+     */
+    public ScanJournal(final File aFile)
+    throws IOException
+    {
+        entries = new HashMap<String, Entry>();
+        buffer = new ByteArrayOutputStream(BATCH_SIZE);
+        channel = FileChannel.open(aFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        final long valid = load();
+        channel.truncate(valid);
+        channel.position(valid);
+        lastSync = System.currentTimeMillis();
+    }
+
+    /**
+     * Returns true if the specified file has been measured and has not changed since then.
+     * 
+     * @param aFile the file
+     * @return true if the journal has a record of the file with the same size and modification time
+     */
+    public synchronized boolean isDone(final File aFile)
+    {
+        final Entry entry = entries.get(aFile.getPath());
+        return entry != null && entry.size == aFile.length() && entry.lastModified == aFile.lastModified();
+    }
+
+    /**
+     * Returns the record of the specified file.
+     * 
+     * @param aPath path of the file
+     * @return the record (null if the file has not been measured)
+     */
+    public synchronized Entry getEntry(final String aPath)
+    {
+        return entries.get(aPath);
+    }
+
+    /**
+     * Returns all records (the latest one for each file).
+     * 
+     * @return the records
+     */
+    public synchronized Collection<Entry> getEntries()
+    {
+        return Collections.unmodifiableCollection(new ArrayList<Entry>(entries.values()));
+    }
+
+    /**
+     * Adds all records to a ResultStore, e.g., to report the results of a scan without running it again.
+     * Note that a MeasurementPipeline passes the files skipped by a resumed scan to its sink by itself.
+     * The commented-out line counts are not journaled, and are added as 0.
+     * 
+     * @param aStore the store
+     */
+    public void exportTo(final ResultStore aStore)
+    {
+        for (Iterator<Entry> itr = getEntries().iterator(); itr.hasNext(); ){
+            Entry entry = itr.next();
+            LanguageProvider language = LanguageRegistry.lookup(entry.path);
+            aStore.add(entry.path, language != null ? language.getName() : "", 
+                       entry.loc, entry.blank, entry.total - entry.loc - entry.blank, 0);
+        }
+    }
+
+    /**
+     * Records a measured file, with its size and modification time at the time of measurement.
+     * 
+     * @param aResult the result of LOC measurement (must have its SourceFile)
+     * @param aSize the size of the file when it was read
+     * @param aLastModified the modification time of the file when it was read
+     * @throws IOException if the journal could not be written
+     */
+    public synchronized void record(final LOC aResult, final long aSize, final long aLastModified)
+    throws IOException
+    {
+        final Entry entry = new Entry(aResult.getSourceFile().getPath(), aSize, aLastModified,
+                                      aResult.getLOC(), aResult.getBlankCount(), aResult.getTotalLineCount());
+        entries.put(entry.path, entry);
+
+        final byte[] path = entry.path.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(4 + path.length + 8 + 8 + 4 + 4 + 4);
+        record.putInt(path.length).put(path).putLong(aSize).putLong(aLastModified)
+              .putInt(entry.loc).putInt(entry.blank).putInt(entry.total);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 0, record.position());
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.writeInt(record.position());
+        out.write(record.array(), 0, record.position());
+        out.writeInt((int)crc.getValue());
+        pendingRecords++;
+
+        if ( pendingRecords >= SYNC_RECORDS || System.currentTimeMillis() - lastSync >= SYNC_INTERVAL ){
+            sync();
+        }
+    }
+
+    /**
+     * Records a measured file, with its current size and modification time.
+     * 
+     * @param aResult the result of LOC measurement (must have its SourceFile)
+     * @throws IOException if the journal could not be written
+     */
+    public void record(final LOC aResult)
+    throws IOException
+    {
+        final File file = aResult.getSourceFile();
+        record(aResult, file.length(), file.lastModified());
+    }
+
+    /**
+     * Writes the buffered records, and forces them to the disk.
+     * 
+     * @throws IOException if the journal could not be written
+     */
+    public synchronized void sync()
+    throws IOException
+    {
+        if ( pendingRecords > 0 ){
+            ByteBuffer bytes = ByteBuffer.wrap(buffer.toByteArray());
+            while ( bytes.hasRemaining() ){
+                channel.write(bytes);
+            }
+            buffer.reset();
+            pendingRecords = 0;
+            channel.force(false);
+        }
+        lastSync = System.currentTimeMillis();
+    }
+
+    /**
+     * Writes the buffered records, and closes the journal.
+     * 
+     * @throws IOException if the journal could not be written
+     */
+    public synchronized void close()
+    throws IOException
+    {
+        if ( channel.isOpen() ){
+            sync();
+            channel.close();
+        }
+    }
+
+    /**
+     * Loads the records, reading the journal in chunks of LOAD_CHUNK bytes,
+     * and returns the end of the last valid record (in the journal of any size).
+     */
+    private long load()
+    throws IOException
+    {
+        final ByteBuffer bytes = ByteBuffer.allocate(LOAD_CHUNK);
+        bytes.flip();
+        channel.position(0);
+        long valid = 0;
+        CRC32 crc = new CRC32();
+        while ( true ){
+            if ( bytes.remaining() < 4 && !fill(bytes, 4) ){
+                break;
+            }
+            final int length = bytes.getInt(bytes.position());
+            if ( length < 32 || length > LOAD_CHUNK - 8 ){
+                break;
+            }
+            if ( bytes.remaining() < length + 8 && !fill(bytes, length + 8) ){
+                break;
+            }
+            final int start = bytes.position() + 4;
+            crc.reset();
+            crc.update(bytes.array(), start, length);
+            bytes.position(start);
+            final int pathLength = bytes.getInt();
+            if ( pathLength != length - 32 ){
+                break;
+            }
+            final String path = new String(bytes.array(), bytes.position(), pathLength, StandardCharsets.UTF_8);
+            bytes.position(bytes.position() + pathLength);
+            Entry entry = new Entry(path, bytes.getLong(), bytes.getLong(), bytes.getInt(), bytes.getInt(), bytes.getInt());
+            if ( bytes.getInt() != (int)crc.getValue() ){
+                break;
+            }
+            entries.put(path, entry);
+            // the end of this record in the journal
+            valid = channel.position() - bytes.remaining();
+        }
+        return valid;
+    }
+
+    /**
+     * Moves the unparsed bytes to the beginning of the buffer, and reads the journal
+     * until the buffer has the specified number of bytes; returns false if the journal ends before.
+     */
+    private boolean fill(final ByteBuffer someBytes, final int aCount)
+    throws IOException
+    {
+        someBytes.compact();
+        try {
+            while ( someBytes.position() < aCount ){
+                if ( channel.read(someBytes) < 0 ){
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            someBytes.flip();
+        }
+    }
+
+    /** the number of bytes of the buffer for a batch */
+    private static final int BATCH_SIZE = 1 << 16;
+
+    /** the number of bytes read at once while the journal is loaded (more than the longest record) */
+    private static final int LOAD_CHUNK = 1 << 20;
+
+    /** the maximum time in milliseconds between two syncs while records are added */
+    private static final long SYNC_INTERVAL = 1000;
+
+    /** the maximum number of records between two syncs */
+    private static final int SYNC_RECORDS = 1024;
+
+    /** the records not written yet */
+    private final ByteArrayOutputStream buffer;
+
+    private final FileChannel channel;
+
+    /** the latest record of each file */
+    private final HashMap<String, Entry> entries;
+
+    /** the time of the last sync */
+    private long lastSync;
+
+    /** the number of the records not written yet */
+    private int pendingRecords;
+}
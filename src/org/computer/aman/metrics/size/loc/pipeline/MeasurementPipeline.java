@@ -0,0 +1,619 @@
+package org.computer.aman.metrics.size.loc.pipeline;
+
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+
+import org.computer.aman.io.FileFinder;
+import org.computer.aman.io.LineReader;
+import org.computer.aman.io.sourcecode.FileSniffer;
+import org.computer.aman.io.sourcecode.SourceFile;
+import org.computer.aman.metrics.profile.MetricsProfiler;
+import org.computer.aman.metrics.profile.Phase;
+import org.computer.aman.metrics.size.loc.LOC;
+import org.computer.aman.metrics.size.loc.LOCCounter;
+import org.computer.aman.metrics.size.loc.journal.ScanJournal;
+import org.computer.aman.metrics.util.CodeMapFactory;
+import org.computer.aman.metrics.util.MemoryGovernor;
+import org.computer.aman.metrics.util.ParseAbortedException;
+import org.computer.aman.metrics.util.ParseBudget;
+import org.computer.aman.metrics.util.ParseOptions;
+import org.computer.aman.metrics.util.SniffPolicy;
+
+/**
+ * A streaming pipeline which measures the LOC values of all source files found by a FileFinder.
+ * <p></p>
+ * The pipeline consists of the following stages connected by java.util.concurrent.Flow:
+ * <pre>
+ *  walk (FileFinder) -&gt; read -&gt; lex (CodeMap) -&gt; measure (LOCCounter) -&gt; sink (ResultSink)
+ * </pre>
+ * Every stage has a bounded buffer, and the read, lex and measure stages process
+ * a configurable number of files at the same time.
+ * Since a stage whose downstream buffer is full waits until the downstream catches up,
+ * a slow sink or a slow disk throttles the upstream stages
+ * instead of piling up LOC objects on the heap.
+ * This includes the walk: each file is submitted as soon as FileFinder.visit() finds it,
+ * so that the walk waits for the read stage and the paths of a large tree are never held all at once.
+ * 
+ * <p></p>
+ * <u><b>(Example) writing the LOC values of all Java files in or below "/foo/bar".</b></u>
+ * 
+ * <pre>
+ * MeasurementPipeline <i>pipeline</i> = new MeasurementPipeline(new FileFinder(<i>"/foo/bar"</i>), <i>".+\\.java"</i>, <i>sink</i>);
+ * <i>pipeline</i>.setReadParallelism(4);
+ * <i>pipeline</i>.run();
+ * </pre>
+ * 
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class MeasurementPipeline
+{
+    /**
+     * Creates a pipeline which measures the files found by the specified FileFinder.
+     * 
+     * @param aFinder FileFinder which finds the files to be measured
+     * @param aPattern the regular expression corresponding to the files to be measured
+     * @param aSink the sink which receives the results
+     */
+    public MeasurementPipeline(final FileFinder aFinder, final String aPattern, final ResultSink aSink)
+    {
+        finder = aFinder;
+        pattern = aPattern;
+        sink = aSink;
+
+        final int processors = Runtime.getRuntime().availableProcessors();
+        bufferSize = DEFAULT_BUFFER_SIZE;
+        readParallelism = processors;
+        lexParallelism = processors;
+        measureParallelism = processors;
+    }
+
+    /**
+     * Sets the capacity of the buffer between two successive stages.
+     * 
+     * @param aBufferSize the capacity of the buffer (must be positive)
+     */
+    public void setBufferSize(final int aBufferSize)
+    {
+        bufferSize = checkPositive(aBufferSize);
+    }
+
+    /**
+     * Sets the number of files read at the same time.
+     * 
+     * @param aParallelism the number of files read at the same time (must be positive)
+     */
+    public void setReadParallelism(final int aParallelism)
+    {
+        readParallelism = checkPositive(aParallelism);
+    }
+
+    /**
+     * Sets the number of files whose code maps are produced at the same time.
+     * 
+     * @param aParallelism the number of files lexed at the same time (must be positive)
+     */
+    public void setLexParallelism(final int aParallelism)
+    {
+        lexParallelism = checkPositive(aParallelism);
+    }
+
+    /**
+     * Sets the number of files measured at the same time.
+     * 
+     * @param aParallelism the number of files measured at the same time (must be positive)
+     */
+    public void setMeasureParallelism(final int aParallelism)
+    {
+        measureParallelism = checkPositive(aParallelism);
+    }
+
+    /**
+     * Sets the per-file budget; a file exceeding it is aborted, and passed to ResultSink.failed() 
+     * with a ParseAbortedException which tells the reason.
+     * The size and the line lengths are checked while the file is read,
+     * so that a pathological file is dropped before it is lexed. A non-positive limit means no limit.
+     * 
+     * @param aMaxBytes the maximum size of a file in bytes
+     * @param aMaxLineLength the maximum number of characters of a line
+     * @param aMaxMillis the maximum time for reading and lexing a file in milliseconds
+     */
+    public void setBudget(final long aMaxBytes, final int aMaxLineLength, final long aMaxMillis)
+    {
+        maxBytes = aMaxBytes;
+        maxLineLength = aMaxLineLength;
+        maxMillis = aMaxMillis;
+        budgeted = aMaxBytes > 0 || aMaxLineLength > 0 || aMaxMillis > 0;
+    }
+
+    /**
+     * Sets the policy which routes each file, by sniffing its first few kilobytes before it is read:
+     * a file routed to COUNT_ONLY is counted by LOCCounter.countLines() without being lexed
+     * (within the budget, if set; the result has no line for a per-line ResultWriter),
+     * and a file routed to SKIP is passed to ResultSink.failed() with a ParseAbortedException (SKIPPED).
+     * 
+     * @param aPolicy the policy (null for lexing all files)
+     */
+    public void setSniffPolicy(final SniffPolicy aPolicy)
+    {
+        policy = aPolicy;
+    }
+
+    /**
+     * Sets the governor which bounds the memory of the files in flight: the reader stage
+     * accounts the estimated memory of each file before reading it, waiting while the governor is over budget,
+     * and the memory is released when the result has been passed to the sink.
+     * If the run fails (e.g., the sink throws an exception), the memory of all files still in flight is released,
+     * and the reader stage stops accounting new files, so that a failure never leaves the governor over budget.
+     * A sink which retains the results (e.g., SpillingResultSink) should share the same governor.
+     * 
+     * @param aGovernor the governor (null for no limit)
+     */
+    public void setMemoryGovernor(final MemoryGovernor aGovernor)
+    {
+        governor = aGovernor;
+    }
+
+    /**
+     * Sets the journal for a resumable scan: the files which the journal has recorded
+     * with the same size and modification time are not read again, and every other result passed to the sink
+     * is recorded in the journal afterwards. The failures are not recorded, so that they are retried on resume.
+     * A skipped file is still passed to the sink, in the order of the walk, as the summary recorded by the journal:
+     * a LOC with the LOC value, the blank line count and the total line count, but without the lines
+     * (so a per-line ResultWriter has no line for it).
+     * Thus the sink receives all files of the scan, no matter how many times the scan has been resumed.
+     * The journal is synced when the pipeline finishes, but not closed.
+     * 
+     * @param aJournal the journal (null for no journal)
+     */
+    public void setJournal(final ScanJournal aJournal)
+    {
+        journal = aJournal;
+    }
+
+    /**
+     * Returns the number of the files skipped by the last run, since the journal had recorded them;
+     * these files are passed to the sink with their summaries.
+     * 
+     * @return the number of the skipped files
+     */
+    public int getSkippedCount()
+    {
+        return skippedCount;
+    }
+
+    /**
+     * Runs the pipeline, and returns after all results have been passed to the sink 
+     * and the sink has been closed.
+     * If the sink fails, the walk stops and the stages are cancelled, 
+     * so that run() throws the exception of the sink as soon as the files in process are done.
+     * 
+     * @throws FileNotFoundException if there is a unaccessible directory
+     * @throws IOException if the sink failed to write a result
+     * @throws InterruptedException if the current thread is interrupted while waiting
+     */
+    public void run()
+    throws FileNotFoundException, IOException, InterruptedException
+    {
+        final ExecutorService delivery = Executors.newCachedThreadPool();
+        final ExecutorService readers = Executors.newFixedThreadPool(readParallelism);
+        final ExecutorService lexers = Executors.newFixedThreadPool(lexParallelism);
+        final ExecutorService counters = Executors.newFixedThreadPool(measureParallelism);
+        final SubmissionPublisher<WorkItem> walk = new SubmissionPublisher<WorkItem>(delivery, bufferSize);
+        reservations = new Reservations();
+        final Stage read = new Stage(new Stage.Work() {
+            public void process(WorkItem anItem) throws Exception
+            {
+                if ( anItem.result != null ){
+                    return;
+                }
+                anItem.language = CodeMapFactory.providerOf(anItem.sourceFile);
+                if ( journal != null ){
+                    // taken before reading, so that a change while reading is detected on resume
+                    anItem.size = anItem.sourceFile.length();
+                    anItem.lastModified = anItem.sourceFile.lastModified();
+                }
+                if ( budgeted ){
+                    anItem.budget = new ParseBudget(maxBytes, maxLineLength, maxMillis);
+                    anItem.budget.checkFile(anItem.sourceFile);
+                }
+                if ( policy != null ){
+                    final FileSniffer.Kind kind = policy.sniff(anItem.sourceFile);
+                    switch ( policy.getRoute(kind) ){
+                    case SKIP:
+                        throw new ParseAbortedException(ParseAbortedException.Reason.SKIPPED, kind + " " + anItem.getPath());
+                    case COUNT_ONLY:
+                        // counted within the same budget, and without holding the lines
+                        anItem.result = LOCCounter.countLines(anItem.sourceFile, anItem.budget);
+                        anItem.budget = null;
+                        return;
+                    default:
+                        break;
+                    }
+                }
+                if ( governor != null ){
+                    reservations.acquire(anItem, MemoryGovernor.estimateFile(anItem.sourceFile.length()));
+                }
+                final long start = System.nanoTime();
+                anItem.lines = readLines(anItem.sourceFile, anItem.budget);
+                anItem.readNanos = System.nanoTime() - start;
+            }
+        }, delivery, readers, readParallelism, bufferSize);
+        final Stage lex = new Stage(new Stage.Work() {
+            public void process(WorkItem anItem) throws Exception
+            {
+                if ( anItem.result != null ){
+                    return;
+                }
+                final ParseOptions options = new ParseOptions(anItem.budget, anItem.sourceFile, anItem.readNanos);
+                anItem.map = anItem.language.create(anItem.lines, options);
+                anItem.budget = null;
+            }
+        }, delivery, lexers, lexParallelism, bufferSize);
+        final Stage measure = new Stage(new Stage.Work() {
+            public void process(WorkItem anItem)
+            {
+                if ( anItem.result != null ){
+                    return;
+                }
+                anItem.result = LOCCounter.measure(anItem.sourceFile, anItem.lines, anItem.map);
+                anItem.lines = null;
+                anItem.map = null;
+            }
+        }, delivery, counters, measureParallelism, bufferSize);
+        final SinkSubscriber terminal = new SinkSubscriber(new Stage[] { measure, lex, read });
+        try {
+            walk.subscribe(read);
+            read.subscribe(lex);
+            lex.subscribe(measure);
+            measure.subscribe(terminal);
+
+            skippedCount = 0;
+            try {
+                finder.visit(pattern, new FileFinder.Visitor() {
+                    public void found(final String aPath)
+                    {
+                        if ( terminal.error != null ){
+                            // stops the walk, since the results could not be passed to the sink
+                            throw new CancellationException("the sink has failed");
+                        }
+                        WorkItem item;
+                        try {
+                            item = new WorkItem(new SourceFile(aPath));
+                        } catch (FileNotFoundException | SecurityException e) {
+                            item = new WorkItem(null);
+                            item.path = aPath;
+                            item.failure = e;
+                        }
+                        if ( journal != null && item.sourceFile != null && journal.isDone(item.sourceFile) ){
+                            // passed through the stages as it is, so that the sink receives it in order
+                            final ScanJournal.Entry entry = journal.getEntry(aPath);
+                            item.result = new LOC(item.sourceFile, entry.getLOC(), entry.getBlankCount(), entry.getTotalLineCount());
+                            item.journaled = true;
+                            skippedCount++;
+                        }
+                        // blocks while the buffer of the read stage is full
+                        walk.submit(item);
+                    }
+                });
+                walk.close();
+            } catch (CancellationException e) {
+                walk.close();
+            } catch (FileNotFoundException e) {
+                walk.closeExceptionally(e);
+                terminal.await();
+                throw e;
+            }
+
+            terminal.await();
+            if ( terminal.error != null ){
+                rethrow(terminal.error);
+            }
+        } finally {
+            reservations.abort();
+            // the stages are cancelled while the delivery executor still runs, 
+            // so that a worker waiting for a buffer of a cancelled stage is woken up
+            measure.cancel();
+            lex.cancel();
+            read.cancel();
+            readers.shutdownNow();
+            lexers.shutdownNow();
+            counters.shutdownNow();
+            readers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            lexers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            counters.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            delivery.shutdownNow();
+        }
+    }
+
+    /**
+     * Reads all lines of the specified source file; a line is read only up to the line limit of the budget.
+     * 
+     * @param aSourceFile source file to be read
+     * @param aBudget the budget against which each line is checked (null for no budget)
+     * @return array of the lines
+     * @throws IOException if an error occurred while the source file is read
+     */
+    private static String[] readLines(final SourceFile aSourceFile, final ParseBudget aBudget)
+    throws IOException
+    {
+        final long start = MetricsProfiler.start();
+        ArrayList<String> lines = new ArrayList<String>();
+        LineReader reader = new LineReader(new FileReader(aSourceFile), 
+                                           aBudget != null ? aBudget.getMaxLineLength() : Integer.MAX_VALUE);
+        try {
+            String line = null;
+            while ( (line = reader.readLine()) != null ){
+                if ( aBudget != null ){
+                    aBudget.checkLine(line);
+                }
+                lines.add(line);
+            }
+        } finally {
+            reader.close();
+        }
+        if ( start != 0L ){
+            MetricsProfiler.stop(Phase.READ, start);
+            MetricsProfiler.addRead(lines.size(), aSourceFile.length());
+        }
+        return lines.toArray(new String[lines.size()]);
+    }
+
+    /**
+     * Throws the specified cause of a failure: an IOException or an unchecked exception as it is,
+     * and any other exception wrapped in an IOException.
+     */
+    private static void rethrow(final Throwable aCause)
+    throws IOException
+    {
+        if ( aCause instanceof IOException ){
+            throw (IOException)aCause;
+        }
+        if ( aCause instanceof RuntimeException ){
+            throw (RuntimeException)aCause;
+        }
+        if ( aCause instanceof Error ){
+            throw (Error)aCause;
+        }
+        throw new IOException(aCause);
+    }
+
+    private static int checkPositive(final int aValue)
+    {
+        if ( aValue <= 0 ){
+            throw new IllegalArgumentException("must be positive : " + aValue);
+        }
+        return aValue;
+    }
+
+    /**
+     * The terminal subscriber which passes the results to the sink one by one.
+     * When the sink fails, the subscriber cancels the stages, so that the upstream stops processing files.
+     */
+    private class SinkSubscriber
+    implements Flow.Subscriber<WorkItem>
+    {
+        /**
+         * Creates a subscriber.
+         * 
+         * @param someStages the stages to be cancelled when the sink fails
+         */
+        SinkSubscriber(final Stage[] someStages)
+        {
+            stages = someStages;
+        }
+
+        public void onSubscribe(final Flow.Subscription aSubscription)
+        {
+            subscription = aSubscription;
+            subscription.request(1);
+        }
+
+        public void onNext(final WorkItem anItem)
+        {
+            try {
+                deliver(anItem);
+            } finally {
+                reservations.release(anItem);
+            }
+        }
+
+        private void deliver(final WorkItem anItem)
+        {
+            if ( error == null ){
+                try {
+                    if ( anItem.failure != null ){
+                        sink.failed(anItem.getPath(), anItem.failure);
+                    }
+                    else{
+                        sink.accept(anItem.result);
+                        if ( journal != null && !anItem.journaled ){
+                            journal.record(anItem.result, anItem.size, anItem.lastModified);
+                        }
+                    }
+                } catch (IOException | RuntimeException e) {
+                    fail(e);
+                    return;
+                }
+            }
+            subscription.request(1);
+        }
+
+        public void onError(final Throwable aCause)
+        {
+            fail(aCause);
+        }
+
+        public void onComplete()
+        {
+            done();
+        }
+
+        void await()
+        throws InterruptedException
+        {
+            latch.await();
+        }
+
+        /**
+         * Records the cause of the failure (unless another has been recorded), cancels the stages,
+         * and closes the sink.
+         */
+        private void fail(final Throwable aCause)
+        {
+            if ( error == null ){
+                error = aCause;
+            }
+            subscription.cancel();
+            for ( int i = 0; i < stages.length; i++ ){
+                stages[i].cancel();
+            }
+            reservations.abort();
+            done();
+        }
+
+        private void done()
+        {
+            if ( latch.getCount() == 0 ){
+                return;
+            }
+            try {
+                sink.close();
+            } catch (IOException e) {
+                if ( error == null ){
+                    error = e;
+                }
+            }
+            if ( journal != null ){
+                try {
+                    journal.sync();
+                } catch (IOException e) {
+                    if ( error == null ){
+                        error = e;
+                    }
+                }
+            }
+            latch.countDown();
+        }
+
+        /** the cause of the failure of the sink or of the upstream (null if none) */
+        private volatile Throwable error;
+
+        private final CountDownLatch latch = new CountDownLatch(1);
+
+        private final Stage[] stages;
+
+        private Flow.Subscription subscription;
+    }
+
+    /**
+     * The memory accounted to the MemoryGovernor for the files in flight in a run.
+     * <p></p>
+     * An item which is dropped on the way (e.g., by a cancelled stage, or in the buffer of a cancelled subscription)
+     * never reaches the sink, which releases its memory otherwise;
+     * abort() releases the memory of all such items at once, and refuses to account any more.
+     */
+    private class Reservations
+    {
+        /**
+         * Accounts the memory of the specified item, waiting while the governor is over budget.
+         * 
+         * @throws CancellationException if the run has been aborted
+         */
+        void acquire(final WorkItem anItem, final long aBytes)
+        throws InterruptedException
+        {
+            governor.acquire(aBytes);
+            synchronized ( this ){
+                if ( !aborted ){
+                    anItem.reservedBytes = aBytes;
+                    items.add(anItem);
+                    return;
+                }
+            }
+            governor.release(aBytes);
+            throw new CancellationException("the pipeline has been aborted : " + anItem.getPath());
+        }
+
+        /**
+         * Releases the memory of the specified item, unless it has been released.
+         */
+        synchronized void release(final WorkItem anItem)
+        {
+            if ( items.remove(anItem) ){
+                governor.release(anItem.reservedBytes);
+                anItem.reservedBytes = 0;
+            }
+        }
+
+        /**
+         * Releases the memory of all items in flight, and refuses to account any more.
+         */
+        synchronized void abort()
+        {
+            aborted = true;
+            for (Iterator<WorkItem> itr = items.iterator(); itr.hasNext(); ){
+                WorkItem item = itr.next();
+                governor.release(item.reservedBytes);
+                item.reservedBytes = 0;
+            }
+            items.clear();
+        }
+
+        private boolean aborted;
+
+        /** the items whose memory is accounted */
+        private final HashSet<WorkItem> items = new HashSet<WorkItem>();
+    }
+
+    /** the default capacity of the buffer between two successive stages */
+    public static final int DEFAULT_BUFFER_SIZE = 256;
+
+    private int bufferSize;
+
+    /** true if a per-file budget has been set */
+    private boolean budgeted;
+
+    private final FileFinder finder;
+
+    /** the governor of the memory of the files in flight (null for no limit) */
+    private MemoryGovernor governor;
+
+    /** the journal of a resumable scan (null for no journal) */
+    private ScanJournal journal;
+
+    private int lexParallelism;
+
+    private long maxBytes;
+
+    /** the policy which routes the files (null for lexing all files) */
+    private SniffPolicy policy;
+
+    private int maxLineLength;
+
+    private long maxMillis;
+
+    private int measureParallelism;
+
+    private final String pattern;
+
+    private int readParallelism;
+
+    /** the memory accounted for the files in flight in the current run */
+    private volatile Reservations reservations;
+
+    /** the number of the files skipped by the last run */
+    private volatile int skippedCount;
+
+    private final ResultSink sink;
+}
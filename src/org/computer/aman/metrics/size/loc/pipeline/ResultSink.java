@@ -0,0 +1,41 @@
+package org.computer.aman.metrics.size.loc.pipeline;
+
+import java.io.IOException;
+
+import org.computer.aman.metrics.size.loc.LOC;
+
+/**
+ * The last stage of a MeasurementPipeline, which receives the results of LOC measurement.
+ * <p></p>
+ * The methods of a sink are called from a single thread at a time,
+ * so that an implementation does not need to be thread-safe.
+ * 
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public interface ResultSink
+{
+    /**
+     * Receives the result of LOC measurement of a source file.
+     * 
+     * @param aResult the result of LOC measurement
+     * @throws IOException if the result could not be written
+     */
+    public void accept(final LOC aResult)
+    throws IOException;
+
+    /**
+     * Receives a notification that the specified file could not be measured.
+     * 
+     * @param aPath path of the file
+     * @param aCause the reason of the failure
+     */
+    public void failed(final String aPath, final Exception aCause);
+
+    /**
+     * Called once after all results have been received.
+     * 
+     * @throws IOException if the sink could not be closed
+     */
+    public void close()
+    throws IOException;
+}
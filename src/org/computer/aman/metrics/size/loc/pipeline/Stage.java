@@ -0,0 +1,171 @@
+package org.computer.aman.metrics.size.loc.pipeline;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An intermediate stage of a MeasurementPipeline.
+ * <p></p>
+ * A stage processes at most "parallelism" items at the same time;
+ * it requests a new item from the upstream only when one of them has been passed to the downstream.
+ * Since passing an item to the downstream blocks while the buffer of the downstream is full,
+ * a slow stage throttles all of the stages before it.
+ * <p></p>
+ * An item whose processing failed is passed to the downstream as it is, together with the cause,
+ * and the following stages let it through untouched, so that the sink can report it.
+ * <p></p>
+ * A stage which has been cancelled (e.g., because the sink has failed) cancels its subscription to the upstream,
+ * and drops the items still in process instead of passing them to the downstream;
+ * it closes exceptionally once they are done, so that no worker is left waiting for a downstream which has gone.
+ * 
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+class Stage
+extends SubmissionPublisher<WorkItem>
+implements Flow.Processor<WorkItem, WorkItem>
+{
+    /**
+     * Work done by a stage for an item.
+     */
+    interface Work
+    {
+        /**
+         * Processes the specified item.
+         * 
+         * @param anItem item to be processed
+         * @throws Exception if the item could not be processed
+         */
+        void process(WorkItem anItem) throws Exception;
+    }
+
+    /**
+     * Creates a stage.
+     * 
+     * @param aWork work done by this stage
+     * @param aDeliveryExecutor executor which delivers items to the subscriber of this stage
+     * @param aWorkerExecutor executor on which the work is done (must not be aDeliveryExecutor)
+     * @param aParallelism the maximum number of items processed at the same time
+     * @param aBufferSize the capacity of the buffer to the subscriber of this stage
+     */
+    Stage(final Work aWork, final Executor aDeliveryExecutor, final Executor aWorkerExecutor, 
+          final int aParallelism, final int aBufferSize)
+    {
+        super(aDeliveryExecutor, aBufferSize);
+        work = aWork;
+        workerExecutor = aWorkerExecutor;
+        parallelism = aParallelism;
+        inFlight = new AtomicInteger();
+        upstreamDone = false;
+        cancelled = false;
+        finished = new AtomicBoolean(false);
+    }
+
+    public void onSubscribe(final Flow.Subscription aSubscription)
+    {
+        subscription = aSubscription;
+        if ( cancelled ){
+            aSubscription.cancel();
+            return;
+        }
+        aSubscription.request(parallelism);
+    }
+
+    public void onNext(final WorkItem anItem)
+    {
+        inFlight.incrementAndGet();
+        workerExecutor.execute(new Runnable() {
+            public void run()
+            {
+                if ( anItem.failure == null && !cancelled ){
+                    try {
+                        work.process(anItem);
+                    } catch (Exception e) {
+                        anItem.failure = e;
+                    }
+                }
+                if ( !cancelled ){
+                    if ( !isClosed() ){
+                        submit(anItem);
+                    }
+                    subscription.request(1);
+                }
+                if ( inFlight.decrementAndGet() == 0 ){
+                    if ( cancelled ){
+                        finish(new CancellationException("the stage has been cancelled"));
+                    }
+                    else if ( upstreamDone ){
+                        finish(null);
+                    }
+                }
+            }
+        });
+    }
+
+    public void onError(final Throwable aCause)
+    {
+        finish(aCause);
+    }
+
+    public void onComplete()
+    {
+        upstreamDone = true;
+        if ( inFlight.get() == 0 ){
+            finish(null);
+        }
+    }
+
+    /**
+     * Cancels this stage: the subscription to the upstream is cancelled, and the items in process are dropped.
+     * This stage closes exceptionally when no item is in process any more.
+     */
+    void cancel()
+    {
+        cancelled = true;
+        final Flow.Subscription upstream = subscription;
+        if ( upstream != null ){
+            upstream.cancel();
+        }
+        if ( inFlight.get() == 0 ){
+            finish(new CancellationException("the stage has been cancelled"));
+        }
+    }
+
+    /**
+     * Closes this stage once, either normally or exceptionally.
+     * 
+     * @param aCause the cause of the abnormal termination (null for the normal one)
+     */
+    private void finish(final Throwable aCause)
+    {
+        if ( !finished.compareAndSet(false, true) ){
+            return;
+        }
+        if ( aCause == null ){
+            close();
+        }
+        else{
+            closeExceptionally(aCause);
+        }
+    }
+
+    /** true if this stage has been cancelled */
+    private volatile boolean cancelled;
+
+    private final AtomicBoolean finished;
+
+    private final AtomicInteger inFlight;
+
+    private final int parallelism;
+
+    private volatile Flow.Subscription subscription;
+
+    private volatile boolean upstreamDone;
+
+    private final Work work;
+
+    private final Executor workerExecutor;
+}
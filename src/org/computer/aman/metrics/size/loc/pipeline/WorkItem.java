@@ -0,0 +1,70 @@
+package org.computer.aman.metrics.size.loc.pipeline;
+
+import org.computer.aman.io.sourcecode.SourceFile;
+import org.computer.aman.metrics.size.loc.LOC;
+import org.computer.aman.metrics.util.CodeMap;
+import org.computer.aman.metrics.util.LanguageProvider;
+import org.computer.aman.metrics.util.ParseBudget;
+
+/**
+ * A source file travelling through the stages of a MeasurementPipeline.
+ * Each stage fills in the part which it is responsible for.
+ * 
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+class WorkItem
+{
+    WorkItem(final SourceFile aSourceFile)
+    {
+        sourceFile = aSourceFile;
+    }
+
+    /**
+     * Returns the path of the file.
+     * 
+     * @return the path of the file
+     */
+    String getPath()
+    {
+        return sourceFile != null ? sourceFile.getPath() : path;
+    }
+
+    /** the source file (null if the file could not be opened) */
+    final SourceFile sourceFile;
+
+    /** the path of the file which could not be opened as a SourceFile */
+    String path;
+
+    /** the language of the source file (filled by the reader stage) */
+    LanguageProvider language;
+
+    /** the budget of the source file (filled by the reader stage if a budget is set) */
+    ParseBudget budget;
+
+    /** the lines of the source file (filled by the reader stage) */
+    String[] lines;
+
+    /** the time spent reading the lines in nanoseconds (filled by the reader stage) */
+    long readNanos;
+
+    /** the code map of the source file (filled by the lexer stage) */
+    CodeMap map;
+
+    /** the result of LOC measurement (filled by the measurement stage) */
+    LOC result;
+
+    /** true if the result is the summary recorded by the journal (filled by the walk if a journal is set) */
+    boolean journaled;
+
+    /** the size of the source file when it was read (filled by the reader stage if a journal is set) */
+    long size;
+
+    /** the modification time of the source file when it was read (filled by the reader stage if a journal is set) */
+    long lastModified;
+
+    /** the memory accounted to the MemoryGovernor for this item (0 if none) */
+    long reservedBytes;
+
+    /** the cause of the failure in any stage (null if no stage has failed) */
+    Exception failure;
+}
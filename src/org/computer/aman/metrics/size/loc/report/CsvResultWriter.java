@@ -0,0 +1,111 @@
+package org.computer.aman.metrics.size.loc.report;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A ResultWriter which writes the results in CSV (RFC 4180) with a header row.
+ * <p></p>
+ * Per-file columns: path, lines, loc, blank, comment, error<br>
+ * Per-line columns: path, line, loc_line, kind, contents, error<br>
+ * A file which could not be measured is written as a row with its path and error message, 
+ * and with the other columns empty; the error column of the other rows is empty.
+ * 
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class CsvResultWriter
+extends ResultWriter
+{
+    /**
+     * Creates a CSV writer.
+     * 
+     * @param anOutputStream the stream to which the results are written (encoded in UTF-8)
+     * @param isPerLine true for one row per source line, false for one row per file
+     * @throws IOException if the header could not be written
+     */
+    public CsvResultWriter(final OutputStream anOutputStream, final boolean isPerLine)
+    throws IOException
+    {
+        super(anOutputStream, isPerLine);
+        out.write(isPerLine ? "path,line,loc_line,kind,contents,error\r\n" : "path,lines,loc,blank,comment,error\r\n");
+    }
+
+    /**
+     * Writes a row with the error message of a file which could not be measured.
+     * 
+     * @param aPath path of the file
+     * @param aCause the reason of the failure
+     */
+    public void failed(final String aPath, final Exception aCause)
+    {
+        try {
+            writeField(aPath);
+            out.write(",,,,,");
+            writeField(String.valueOf(aCause.getMessage()));
+            out.write("\r\n");
+        } catch (IOException e) {
+            // the error will be reported again by the next write or by close()
+        }
+    }
+
+    protected void writeFile(final String aPath, final int aTotal, final int aLOC, final int aBlank, final int aComment)
+    throws IOException
+    {
+        writeField(aPath);
+        out.write(',');
+        out.write(Integer.toString(aTotal));
+        out.write(',');
+        out.write(Integer.toString(aLOC));
+        out.write(',');
+        out.write(Integer.toString(aBlank));
+        out.write(',');
+        out.write(Integer.toString(aComment));
+        out.write(",\r\n");
+    }
+
+    protected void writeLine(final String aPath, final int aLineNumber, final int aLOCNumber, final String aKind, final String aContents)
+    throws IOException
+    {
+        writeField(aPath);
+        out.write(',');
+        out.write(Integer.toString(aLineNumber));
+        out.write(',');
+        if ( aLOCNumber > 0 ){
+            out.write(Integer.toString(aLOCNumber));
+        }
+        out.write(',');
+        out.write(aKind);
+        out.write(',');
+        writeField(aContents != null ? aContents : "");
+        out.write(",\r\n");
+    }
+
+    /**
+     * Writes a field, quoting it only if it contains a comma, a double quote or a line break.
+     */
+    private void writeField(final String aField)
+    throws IOException
+    {
+        boolean quote = false;
+        for ( int i = 0; i < aField.length() && !quote; i++ ){
+            char ch = aField.charAt(i);
+            quote = ch == ',' || ch == '"' || ch == '\r' || ch == '\n';
+        }
+        if ( !quote ){
+            out.write(aField);
+            return;
+        }
+
+        out.write('"');
+        int start = 0;
+        for ( int i = 0; i < aField.length(); i++ ){
+            if ( aField.charAt(i) == '"' ){
+                out.write(aField, start, i + 1 - start);
+                out.write('"');
+                start = i + 1;
+            }
+        }
+        out.write(aField, start, aField.length() - start);
+        out.write('"');
+    }
+}
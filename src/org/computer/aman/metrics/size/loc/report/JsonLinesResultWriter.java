@@ -0,0 +1,112 @@
+package org.computer.aman.metrics.size.loc.report;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A ResultWriter which writes the results in JSON Lines (one JSON object per line).
+ * <p></p>
+ * Per-file object: {"path":..., "lines":..., "loc":..., "blank":..., "comment":...}<br>
+ * Per-line object: {"path":..., "line":..., "loc_line":..., "kind":..., "contents":...}<br>
+ * A file which could not be measured is written as {"path":..., "error":...}.
+ * 
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class JsonLinesResultWriter
+extends ResultWriter
+{
+    /**
+     * Creates a JSON Lines writer.
+     * 
+     * @param anOutputStream the stream to which the results are written (encoded in UTF-8)
+     * @param isPerLine true for one object per source line, false for one object per file
+     */
+    public JsonLinesResultWriter(final OutputStream anOutputStream, final boolean isPerLine)
+    {
+        super(anOutputStream, isPerLine);
+    }
+
+    /**
+     * Writes an object with the error message of a file which could not be measured.
+     * 
+     * @param aPath path of the file
+     * @param aCause the reason of the failure
+     */
+    public void failed(final String aPath, final Exception aCause)
+    {
+        try {
+            out.write("{\"path\":");
+            writeString(aPath);
+            out.write(",\"error\":");
+            writeString(String.valueOf(aCause.getMessage()));
+            out.write("}\n");
+        } catch (IOException e) {
+            // the error will be reported again by the next write or by close()
+        }
+    }
+
+    protected void writeFile(final String aPath, final int aTotal, final int aLOC, final int aBlank, final int aComment)
+    throws IOException
+    {
+        out.write("{\"path\":");
+        writeString(aPath);
+        out.write(",\"lines\":");
+        out.write(Integer.toString(aTotal));
+        out.write(",\"loc\":");
+        out.write(Integer.toString(aLOC));
+        out.write(",\"blank\":");
+        out.write(Integer.toString(aBlank));
+        out.write(",\"comment\":");
+        out.write(Integer.toString(aComment));
+        out.write("}\n");
+    }
+
+    protected void writeLine(final String aPath, final int aLineNumber, final int aLOCNumber, final String aKind, final String aContents)
+    throws IOException
+    {
+        out.write("{\"path\":");
+        writeString(aPath);
+        out.write(",\"line\":");
+        out.write(Integer.toString(aLineNumber));
+        out.write(",\"loc_line\":");
+        out.write(aLOCNumber > 0 ? Integer.toString(aLOCNumber) : "null");
+        out.write(",\"kind\":\"");
+        out.write(aKind);
+        out.write("\",\"contents\":");
+        writeString(aContents != null ? aContents : "");
+        out.write("}\n");
+    }
+
+    /**
+     * Writes a JSON string literal, escaping the characters which must be escaped.
+     */
+    private void writeString(final String aString)
+    throws IOException
+    {
+        out.write('"');
+        int start = 0;
+        for ( int i = 0; i < aString.length(); i++ ){
+            char ch = aString.charAt(i);
+            if ( ch != '"' && ch != '\\' && ch >= 0x20 ){
+                continue;
+            }
+            out.write(aString, start, i - start);
+            start = i + 1;
+            switch ( ch ){
+            case '"':  out.write("\\\""); break;
+            case '\\': out.write("\\\\"); break;
+            case '\n': out.write("\\n"); break;
+            case '\r': out.write("\\r"); break;
+            case '\t': out.write("\\t"); break;
+            default:
+                out.write("\\u00");
+                out.write(HEX[ch >> 4]);
+                out.write(HEX[ch & 0xf]);
+            }
+        }
+        out.write(aString, start, aString.length() - start);
+        out.write('"');
+    }
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+}
@@ -0,0 +1,147 @@
+package org.computer.aman.metrics.size.loc.report;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+
+import org.computer.aman.io.sourcecode.SourceCodeLine;
+import org.computer.aman.metrics.size.loc.LOC;
+import org.computer.aman.metrics.size.loc.pipeline.ResultSink;
+
+/**
+ * A base class of the writers which stream the results of LOC measurement to an OutputStream.
+ * <p></p>
+ * Each result is written as soon as it is received, through a single encoder and a single buffer,
+ * so that the memory used by a writer does not depend on the number of results.
+ * A writer writes either one record per file or one record per source line.
+ * 
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public abstract class ResultWriter
+implements ResultSink
+{
+    /** kinds of a source line in a per-line record */
+    public static final String CODE = "code";
+    public static final String COMMENT = "comment";
+    public static final String BLANK = "blank";
+
+    /**
+     * Creates a writer.
+     * 
+     * @param anOutputStream the stream to which the results are written (encoded in UTF-8)
+     * @param isPerLine true for one record per source line, false for one record per file
+     */
+    protected ResultWriter(final OutputStream anOutputStream, final boolean isPerLine)
+    {
+        out = new BufferedWriter(new OutputStreamWriter(anOutputStream, StandardCharsets.UTF_8), BUFFER_SIZE);
+        perLine = isPerLine;
+    }
+
+    /**
+     * Writes the result of LOC measurement of a source file.
+     * 
+     * @param aResult the result of LOC measurement
+     * @throws IOException if the result could not be written
+     */
+    public void accept(final LOC aResult)
+    throws IOException
+    {
+        final String path = aResult.getSourceFile() != null ? aResult.getSourceFile().getPath() : "";
+        if ( !perLine ){
+            final int total = aResult.getTotalLineCount();
+            writeFile(path, total, aResult.getLOC(), aResult.getBlankCount(), 
+                      total - aResult.getLOC() - aResult.getBlankCount());
+            return;
+        }
+
+        int lineNumber = 0;
+        for (Iterator<SourceCodeLine> itr = aResult.iterator(); itr.hasNext(); ){
+            SourceCodeLine line = itr.next();
+            writeLine(path, lineNumber + 1, line.getLineNumber(), kindOf(aResult, lineNumber, line), line.getContents());
+            lineNumber++;
+        }
+    }
+
+    /**
+     * Writes nothing for a file which could not be measured; a subclass may override this.
+     * 
+     * @param aPath path of the file
+     * @param aCause the reason of the failure
+     */
+    public void failed(final String aPath, final Exception aCause)
+    {
+    }
+
+    /**
+     * Flushes the buffer and closes the stream.
+     * 
+     * @throws IOException if the stream could not be closed
+     */
+    public void close()
+    throws IOException
+    {
+        out.close();
+    }
+
+    /**
+     * Flushes the buffer.
+     * 
+     * @throws IOException if the buffer could not be flushed
+     */
+    public void flush()
+    throws IOException
+    {
+        out.flush();
+    }
+
+    /**
+     * Writes a per-file record.
+     * 
+     * @param aPath path of the file
+     * @param aTotal the total line count
+     * @param aLOC the LOC value
+     * @param aBlank the number of blank lines
+     * @param aComment the number of comment-only lines
+     * @throws IOException if the record could not be written
+     */
+    protected abstract void writeFile(String aPath, int aTotal, int aLOC, int aBlank, int aComment)
+    throws IOException;
+
+    /**
+     * Writes a per-line record.
+     * 
+     * @param aPath path of the file
+     * @param aLineNumber the physical line number
+     * @param aLOCNumber the line number counted only by code lines (-1 for a comment-only or blank line)
+     * @param aKind the kind of the line (CODE, COMMENT or BLANK)
+     * @param aContents the content of the line
+     * @throws IOException if the record could not be written
+     */
+    protected abstract void writeLine(String aPath, int aLineNumber, int aLOCNumber, String aKind, String aContents)
+    throws IOException;
+
+    /**
+     * Returns the kind of the line at the specified index, as it was counted by the LOC measurement;
+     * so that the per-line records agree with the per-file counts
+     * (e.g., a line of only white spaces in a block comment is a comment line).
+     */
+    private static String kindOf(final LOC aResult, final int anIndex, final SourceCodeLine aLine)
+    {
+        if ( aLine.getLineNumber() > 0 ){
+            return CODE;
+        }
+        return aResult.isBlankLine(anIndex) ? BLANK : COMMENT;
+    }
+
+    /** the size of the output buffer in characters */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** the buffered writer to the output stream */
+    protected final Writer out;
+
+    private final boolean perLine;
+}
@@ -0,0 +1,314 @@
+package org.computer.aman.metrics.size.loc.report;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import org.computer.aman.io.sourcecode.SourceCodeLine;
+import org.computer.aman.io.sourcecode.SourceFile;
+import org.computer.aman.metrics.size.loc.LOC;
+import org.computer.aman.metrics.size.loc.pipeline.ResultSink;
+import org.computer.aman.metrics.util.MemoryGovernor;
+
+/**
+ * A sink which keeps the detailed (per-line) results of LOC measurement for a final report,
+ * spilling them to a temporary file when a MemoryGovernor reports that the memory is over budget.
+ * <p></p>
+ * The retained results are charged to the governor; when it gets over budget 
+ * (or a reader is waiting for memory), all retained results are written to the spill file
+ * in a compact binary format and dropped from the heap.
+ * After the measurement, replay() passes all results to another sink (e.g., a ResultWriter)
+ * in the order in which they were received, reading the spilled ones back one at a time.
+ * 
+ * <p></p>
+ * <u><b>(Example) a per-line CSV report of a huge tree within 512MB.</b></u>
+ * <pre>
+ * MemoryGovernor <i>governor</i> = new MemoryGovernor(512L &lt;&lt; 20);
+ * SpillingResultSink <i>spill</i> = new SpillingResultSink(<i>governor</i>, null);
+ * MeasurementPipeline <i>pipeline</i> = new MeasurementPipeline(new FileFinder(<i>"/foo/bar"</i>), <i>".+"</i>, <i>spill</i>);
+ * <i>pipeline</i>.setMemoryGovernor(<i>governor</i>);
+ * <i>pipeline</i>.run();
+ * <i>spill</i>.replay(new CsvResultWriter(new FileOutputStream(<i>"loc.csv"</i>), true));
+ * <i>spill</i>.dispose();
+ * </pre>
+ * 
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class SpillingResultSink
+implements ResultSink
+{
+    /**
+     * Creates a sink.
+     * 
+     * @param aGovernor the governor to which the retained results are charged
+     * @param aSpillDirectory the directory of the spill file (null for the default temporary directory)
+     */
+    public SpillingResultSink(final MemoryGovernor aGovernor, final File aSpillDirectory)
+    {
+        governor = aGovernor;
+        spillDirectory = aSpillDirectory;
+        entries = new ArrayList<Object>();
+    }
+
+    public void accept(final LOC aResult)
+    throws IOException
+    {
+        final long size = MemoryGovernor.estimate(aResult.iterator());
+        governor.charge(size);
+        retainedBytes += size;
+        entries.add(aResult);
+        if ( governor.isOverBudget() ){
+            spill();
+        }
+    }
+
+    public void failed(final String aPath, final Exception aCause)
+    {
+        entries.add(new String[] { aPath, aCause.toString() });
+    }
+
+    /**
+     * Flushes the spill file; the results are kept for replay().
+     * 
+     * @throws IOException if the spill file could not be flushed
+     */
+    public void close()
+    throws IOException
+    {
+        if ( out != null ){
+            out.flush();
+        }
+    }
+
+    /**
+     * Returns the number of results written to the spill file.
+     * 
+     * @return the number of spilled results
+     */
+    public int getSpilledCount()
+    {
+        return spilledCount;
+    }
+
+    /**
+     * Passes all results received so far to the specified sink in the order in which they were received,
+     * and closes the sink. A failure is passed as an IOException whose message is the original failure.
+     * 
+     * @param aSink the sink
+     * @throws IOException if the spill file could not be read, or the sink failed
+     */
+    public void replay(final ResultSink aSink)
+    throws IOException
+    {
+        if ( out != null ){
+            out.flush();
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(spillFile), BUFFER_SIZE));
+            try {
+                for ( int i = 0; i < spilledCount; i++ ){
+                    replay(in, aSink);
+                }
+            } finally {
+                in.close();
+            }
+        }
+        for (Iterator<Object> itr = entries.iterator(); itr.hasNext(); ){
+            Object entry = itr.next();
+            if ( entry instanceof LOC ){
+                aSink.accept((LOC)entry);
+            }
+            else{
+                String[] failure = (String[])entry;
+                aSink.failed(failure[0], new IOException(failure[1]));
+            }
+        }
+        aSink.close();
+    }
+
+    /**
+     * Drops all results, and deletes the spill file.
+     * 
+     * @throws IOException if the spill file could not be closed
+     */
+    public void dispose()
+    throws IOException
+    {
+        governor.discharge(retainedBytes);
+        retainedBytes = 0;
+        entries.clear();
+        if ( out != null ){
+            out.close();
+            out = null;
+            spillFile.delete();
+        }
+        spilledCount = 0;
+    }
+
+    /**
+     * Writes all retained results to the spill file, and discharges them from the governor.
+     */
+    private void spill()
+    throws IOException
+    {
+        if ( out == null ){
+            spillFile = File.createTempFile("loc-spill-", ".bin", spillDirectory);
+            spillFile.deleteOnExit();
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(spillFile), BUFFER_SIZE));
+        }
+        for (Iterator<Object> itr = entries.iterator(); itr.hasNext(); ){
+            Object entry = itr.next();
+            if ( entry instanceof LOC ){
+                write((LOC)entry);
+            }
+            else{
+                String[] failure = (String[])entry;
+                out.writeByte(FAILURE);
+                writeString(failure[0]);
+                writeString(failure[1]);
+            }
+            spilledCount++;
+        }
+        entries.clear();
+        governor.discharge(retainedBytes);
+        retainedBytes = 0;
+    }
+
+    /**
+     * Writes a result: the path, LOC, the blank count, the number of lines, the number of the lines with their contents
+     * (fewer if the lines were only counted), and for each of them its kind (code, comment or blank) and its content.
+     */
+    private void write(final LOC aResult)
+    throws IOException
+    {
+        out.writeByte(RESULT);
+        writeString(aResult.getSourceFile() != null ? aResult.getSourceFile().getPath() : "");
+        out.writeInt(aResult.getLOC());
+        out.writeInt(aResult.getBlankCount());
+        out.writeInt(aResult.getTotalLineCount());
+        int kept = 0;
+        for (Iterator<SourceCodeLine> itr = aResult.iterator(); itr.hasNext(); itr.next() ){
+            kept++;
+        }
+        out.writeInt(kept);
+        int i = 0;
+        for (Iterator<SourceCodeLine> itr = aResult.iterator(); itr.hasNext(); ){
+            SourceCodeLine line = itr.next();
+            out.writeByte(line.getLineNumber() > 0 ? CODE_LINE : aResult.isBlankLine(i) ? BLANK_LINE : COMMENT_LINE);
+            writeString(line.getContents());
+            i++;
+        }
+    }
+
+    /**
+     * Reads a spilled entry and passes it to the sink.
+     */
+    private static void replay(final DataInputStream anInput, final ResultSink aSink)
+    throws IOException
+    {
+        final int kind = anInput.readByte();
+        if ( kind == FAILURE ){
+            final String path = readString(anInput);
+            aSink.failed(path, new IOException(readString(anInput)));
+            return;
+        }
+        final String path = readString(anInput);
+        final int loc = anInput.readInt();
+        final int blank = anInput.readInt();
+        final int lineCount = anInput.readInt();
+        final int keptCount = anInput.readInt();
+        // the file is not opened again: it may have been deleted since it was measured
+        LOC result = path.length() > 0 ? new LOC(new SpilledFile(path)) : new LOC();
+        int lineNumber = 0;
+        for ( int i = 0; i < keptCount; i++ ){
+            final int lineKind = anInput.readByte();
+            SourceCodeLine line = new SourceCodeLine(readString(anInput));
+            line.setLineNumber(lineKind == CODE_LINE ? ++lineNumber : -1);
+            result.addContents(line, lineKind == BLANK_LINE);
+        }
+        for ( int i = keptCount; i < lineCount; i++ ){
+            result.incrementLineCount();
+        }
+        for ( int i = 0; i < loc; i++ ){
+            result.incrementLOC();
+        }
+        // the blank lines counted without telling which line is blank
+        for ( int i = result.getBlankCount(); i < blank; i++ ){
+            result.incrementBlankCount();
+        }
+        aSink.accept(result);
+    }
+
+    /**
+     * The source file of a spilled result, which is not checked when it is read back.
+     */
+    private static class SpilledFile
+    extends SourceFile
+    {
+        SpilledFile(final String aPath)
+        throws IOException
+        {
+            super(aPath, false);
+        }
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    private void writeString(final String aString)
+    throws IOException
+    {
+        final byte[] bytes = aString.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(final DataInputStream anInput)
+    throws IOException
+    {
+        final int length = anInput.readInt();
+        if ( length < 0 ){
+            throw new EOFException("broken spill file");
+        }
+        final byte[] bytes = new byte[length];
+        anInput.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** the kinds of a spilled line */
+    private static final int BLANK_LINE = 2;
+    private static final int CODE_LINE = 1;
+    private static final int COMMENT_LINE = 0;
+
+    /** the kind of an entry for a file which could not be measured */
+    private static final int FAILURE = 1;
+
+    /** the kind of an entry for a result */
+    private static final int RESULT = 0;
+
+    /** the retained results (LOC) and failures (path and message), in the order of receipt */
+    private final ArrayList<Object> entries;
+
+    private final MemoryGovernor governor;
+
+    /** the stream to the spill file (null until the first spill) */
+    private DataOutputStream out;
+
+    /** the estimated size of the retained results */
+    private long retainedBytes;
+
+    private final File spillDirectory;
+
+    private File spillFile;
+
+    /** the number of entries in the spill file */
+    private int spilledCount;
+}
@@ -0,0 +1,415 @@
+package org.computer.aman.metrics.size.loc.store;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.computer.aman.metrics.size.loc.LOC;
+import org.computer.aman.metrics.size.loc.pipeline.ResultSink;
+import org.computer.aman.metrics.util.CodeLineMap;
+import org.computer.aman.metrics.util.CodeMap;
+
+/**
+ * A tree of directories which holds the subtotals of LOC, blank, comment and commented-out lines 
+ * at every level, and keeps them up to date as the results of files change.
+ * <p></p>
+ * A file node holds the values of the file, and a directory node holds the sums over all files below it.
+ * When the result of a file is updated, only the difference from its previous values 
+ * is added to its ancestors, so that an update costs O(depth) regardless of the size of the tree.
+ * <p></p>
+ * update() and accept() can be called from any number of threads at the same time:
+ * the values of a file are replaced under the lock of the file node, 
+ * and the subtotals of the directories are LongAdders, so that parallel workers
+ * do not contend on the directories near the root.
+ * A subtotal read during updates may not include the updates in progress yet,
+ * but all of them are included once the updates have returned.
+ * 
+ * <p></p>
+ * <u><b>(Example) LOC per directory.</b></u>
+ * <pre>
+ * List&lt;String&gt; <i>paths</i> = new FileFinder(<i>"/foo/bar"</i>).getList(<i>".+\\.java"</i>);
+ * DirectoryTree <i>tree</i> = new DirectoryTree(<i>"/foo/bar"</i>, <i>paths</i>);
+ * ... (in parallel)
+ * <i>tree</i>.update(LOCCounter.measure(new SourceFile(<i>path</i>)));
+ * ...
+ * long <i>loc</i> = <i>tree</i>.getNode(<i>"/foo/bar/baz"</i>).get(ResultStore.Column.LOC);
+ * </pre>
+ * 
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class DirectoryTree
+implements ResultSink
+{
+    /**
+     * A file or a directory in the tree.
+     */
+    public static class Node
+    {
+        Node(final Node aParent, final String aPath, final boolean isDirectory)
+        {
+            parent = aParent;
+            path = aPath;
+            if ( isDirectory ){
+                children = new ConcurrentHashMap<String, Node>();
+                totals = new LongAdder[COLUMN_COUNT];
+                for ( int i = 0; i < COLUMN_COUNT; i++ ){
+                    totals[i] = new LongAdder();
+                }
+                fileCount = new LongAdder();
+                values = null;
+            }
+            else{
+                children = null;
+                totals = null;
+                fileCount = null;
+                values = new int[COLUMN_COUNT];
+            }
+        }
+
+        /**
+         * Returns the value of the file, or the subtotal of the directory.
+         * 
+         * @param aColumn the kind of the value
+         * @return the value of the file, or the sum over all files below the directory
+         */
+        public long get(final ResultStore.Column aColumn)
+        {
+            if ( totals != null ){
+                return totals[aColumn.ordinal()].sum();
+            }
+            synchronized ( this ){
+                return values[aColumn.ordinal()];
+            }
+        }
+
+        /**
+         * Returns the child nodes of the directory (an empty list for a file).
+         * 
+         * @return the child nodes
+         */
+        public List<Node> getChildren()
+        {
+            if ( children == null ){
+                return Collections.emptyList();
+            }
+            return new ArrayList<Node>(children.values());
+        }
+
+        /**
+         * Returns the number of files below the directory (1 for a file).
+         * 
+         * @return the number of files
+         */
+        public long getFileCount()
+        {
+            return fileCount != null ? fileCount.sum() : 1;
+        }
+
+        /**
+         * Returns the name of the file or the directory.
+         * 
+         * @return the name
+         */
+        public String getName()
+        {
+            return new File(path).getName();
+        }
+
+        /**
+         * Returns the parent directory (null for the root).
+         * 
+         * @return the parent node
+         */
+        public Node getParent()
+        {
+            return parent;
+        }
+
+        /**
+         * Returns the path of the file or the directory.
+         * 
+         * @return the path
+         */
+        public String getPath()
+        {
+            return path;
+        }
+
+        /**
+         * Returns true if this node is a directory.
+         * 
+         * @return true if this node is a directory
+         */
+        public boolean isDirectory()
+        {
+            return totals != null;
+        }
+
+        public String toString()
+        {
+            return path + " (LOC " + get(ResultStore.Column.LOC) + ")";
+        }
+
+        /** the child nodes, keyed by their names (null for a file) */
+        private final ConcurrentHashMap<String, Node> children;
+
+        /** the number of files below the directory (null for a file) */
+        private final LongAdder fileCount;
+
+        /** the parent directory */
+        private final Node parent;
+
+        /** the path of this node */
+        private final String path;
+
+        /** the subtotals of the directory (null for a file) */
+        private final LongAdder[] totals;
+
+        /** true if the file has been removed from the tree, guarded by this node */
+        private boolean removed;
+
+        /** the values of the file (null for a directory), guarded by this node */
+        private final int[] values;
+    }
+
+    /**
+     * Creates an empty tree.
+     * 
+     * @param aRoot path of the root directory
+     */
+    public DirectoryTree(final String aRoot)
+    {
+        root = new Node(null, new File(aRoot).getPath(), true);
+        nodes = new ConcurrentHashMap<String, Node>();
+        nodes.put(root.getPath(), root);
+    }
+
+    /**
+     * Creates a tree of the specified files (e.g., the list of FileFinder), whose values are all zero.
+     * 
+     * @param aRoot path of the root directory
+     * @param somePaths paths of the files below the root directory
+     */
+    public DirectoryTree(final String aRoot, final List<String> somePaths)
+    {
+        this(aRoot);
+        for (Iterator<String> itr = somePaths.iterator(); itr.hasNext(); ){
+            file(itr.next());
+        }
+    }
+
+    /**
+     * Returns the root directory.
+     * 
+     * @return the root node
+     */
+    public Node getRoot()
+    {
+        return root;
+    }
+
+    /**
+     * Returns the node of the specified file or directory.
+     * 
+     * @param aPath path of a file or a directory
+     * @return the node (null if it is not in the tree)
+     */
+    public Node getNode(final String aPath)
+    {
+        return nodes.get(new File(aPath).getPath());
+    }
+
+    /**
+     * Sets the result of LOC measurement of a file, and updates the subtotals of its ancestors.
+     * A LOC object does not tell the commented-out lines, so the COMMENT_OUT value of the file is set to 0;
+     * use update(LOC, CodeMap) to have it counted. This method is thread-safe.
+     * 
+     * @param aResult the result of LOC measurement (must have its SourceFile)
+     */
+    public void update(final LOC aResult)
+    {
+        update(aResult, null);
+    }
+
+    /**
+     * Sets the result of LOC measurement of a file, and updates the subtotals of its ancestors.
+     * The number of commented-out lines is taken from the code map of the file. This method is thread-safe.
+     * 
+     * @param aResult the result of LOC measurement (must have its SourceFile)
+     * @param aMap the code map of the same source file (null if not available; then COMMENT_OUT is 0)
+     */
+    public void update(final LOC aResult, final CodeMap aMap)
+    {
+        int commentOut = 0;
+        if ( aMap != null ){
+            for (Iterator<CodeLineMap> itr = aMap.iterator(); itr.hasNext(); ){
+                CodeLineMap line = itr.next();
+                if ( line.getCodeCount() == 0 && line.getCommentOutCount() > 0 ){
+                    commentOut++;
+                }
+            }
+        }
+        final int comment = aResult.getTotalLineCount() - aResult.getLOC() - aResult.getBlankCount();
+        update(aResult.getSourceFile().getPath(), aResult.getLOC(), aResult.getBlankCount(), comment, commentOut);
+    }
+
+    /**
+     * Sets the values of a file, and updates the subtotals of its ancestors.
+     * The file is added to the tree if it is new. This method is thread-safe.
+     * 
+     * @param aPath path of the file
+     * @param aLOC the LOC value
+     * @param aBlank the number of blank lines
+     * @param aComment the number of comment-only lines (including the commented-out lines)
+     * @param aCommentOut the number of commented-out lines
+     */
+    public void update(final String aPath, final int aLOC, final int aBlank, final int aComment, final int aCommentOut)
+    {
+        final int[] differences = new int[COLUMN_COUNT];
+        Node file;
+        while ( true ){
+            file = file(aPath);
+            synchronized ( file ){
+                if ( file.removed ){
+                    // removed after it was looked up: a new node is added on the next try
+                    continue;
+                }
+                differences[ResultStore.Column.LOC.ordinal()] = aLOC - file.values[ResultStore.Column.LOC.ordinal()];
+                differences[ResultStore.Column.BLANK.ordinal()] = aBlank - file.values[ResultStore.Column.BLANK.ordinal()];
+                differences[ResultStore.Column.COMMENT.ordinal()] = aComment - file.values[ResultStore.Column.COMMENT.ordinal()];
+                differences[ResultStore.Column.COMMENT_OUT.ordinal()] = aCommentOut - file.values[ResultStore.Column.COMMENT_OUT.ordinal()];
+                file.values[ResultStore.Column.LOC.ordinal()] = aLOC;
+                file.values[ResultStore.Column.BLANK.ordinal()] = aBlank;
+                file.values[ResultStore.Column.COMMENT.ordinal()] = aComment;
+                file.values[ResultStore.Column.COMMENT_OUT.ordinal()] = aCommentOut;
+            }
+            break;
+        }
+        propagate(file.parent, differences, 0);
+    }
+
+    /**
+     * Removes a file from the tree, and subtracts its values from its ancestors.
+     * This method is thread-safe.
+     * 
+     * @param aPath path of the file
+     * @return true if the file was in the tree
+     */
+    public boolean remove(final String aPath)
+    {
+        final String path = new File(aPath).getPath();
+        final Node file = nodes.get(path);
+        if ( file == null || file.isDirectory() ){
+            return false;
+        }
+        final int[] differences = new int[COLUMN_COUNT];
+        synchronized ( file ){
+            if ( file.removed ){
+                return false;
+            }
+            // marked under the lock, so that no update() adds to the unlinked node afterwards
+            file.removed = true;
+            nodes.remove(path, file);
+            file.parent.children.remove(file.getName(), file);
+            for ( int i = 0; i < COLUMN_COUNT; i++ ){
+                differences[i] = -file.values[i];
+                file.values[i] = 0;
+            }
+        }
+        propagate(file.parent, differences, -1);
+        return true;
+    }
+
+    /**
+     * Sets the result of a file, as update(LOC) does (the COMMENT_OUT value of the file is set to 0).
+     * 
+     * @param aResult the result of LOC measurement (must have its SourceFile)
+     */
+    public void accept(final LOC aResult)
+    {
+        update(aResult);
+    }
+
+    public void failed(final String aPath, final Exception aCause)
+    {
+    }
+
+    public void close()
+    {
+    }
+
+    /**
+     * Adds the differences to the directory and all of its ancestors.
+     */
+    private static void propagate(final Node aDirectory, final int[] someDifferences, final int aFileCountDifference)
+    {
+        for ( Node node = aDirectory; node != null; node = node.parent ){
+            for ( int i = 0; i < COLUMN_COUNT; i++ ){
+                if ( someDifferences[i] != 0 ){
+                    node.totals[i].add(someDifferences[i]);
+                }
+            }
+            if ( aFileCountDifference != 0 ){
+                node.fileCount.add(aFileCountDifference);
+            }
+        }
+    }
+
+    /**
+     * Returns the node of the specified file, adding it and its directories if they are new.
+     */
+    private Node file(final String aPath)
+    {
+        final String path = new File(aPath).getPath();
+        Node node = nodes.get(path);
+        if ( node != null ){
+            return node;
+        }
+        final Node parent = directory(new File(path).getParent(), path);
+        node = new Node(parent, path, false);
+        // linked under the lock, so that remove() never sees a node which is not linked yet
+        synchronized ( node ){
+            final Node existing = nodes.putIfAbsent(path, node);
+            if ( existing != null ){
+                return existing;
+            }
+            parent.children.put(node.getName(), node);
+            propagate(parent, new int[COLUMN_COUNT], 1);
+        }
+        return node;
+    }
+
+    /**
+     * Returns the node of the specified directory, adding it and its ancestors if they are new.
+     */
+    private Node directory(final String aPath, final String aFilePath)
+    {
+        if ( aPath == null ){
+            throw new IllegalArgumentException("not below " + root.getPath() + " : " + aFilePath);
+        }
+        Node node = nodes.get(aPath);
+        if ( node != null ){
+            return node;
+        }
+        final Node parent = directory(new File(aPath).getParent(), aFilePath);
+        node = new Node(parent, aPath, true);
+        final Node existing = nodes.putIfAbsent(aPath, node);
+        if ( existing != null ){
+            return existing;
+        }
+        parent.children.put(node.getName(), node);
+        return node;
+    }
+
+    private static final int COLUMN_COUNT = ResultStore.Column.values().length;
+
+    /** all nodes, keyed by their paths */
+    private final ConcurrentHashMap<String, Node> nodes;
+
+    /** the root directory */
+    private final Node root;
+}
@@ -0,0 +1,430 @@
+package org.computer.aman.metrics.size.loc.store;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.stream.IntStream;
+
+import org.computer.aman.metrics.size.loc.LOC;
+import org.computer.aman.metrics.util.CodeLineMap;
+import org.computer.aman.metrics.util.CodeMap;
+import org.computer.aman.metrics.util.LanguageProvider;
+import org.computer.aman.metrics.util.LanguageRegistry;
+
+/**
+ * A columnar in-memory store of the results of LOC measurement, for aggregate queries over many files.
+ * <p></p>
+ * Instead of holding a LOC object per file, the store keeps one row per file in primitive arrays
+ * (directory id, file name id, language id, LOC, blank, comment and commented-out line counts).
+ * Directories, file names and languages are dictionary-encoded, so that a path costs 
+ * two integers per row plus one copy of each distinct directory and name.
+ * The queries run as tight loops over the arrays, in parallel when the store is large.
+ * <p></p>
+ * Rows are added by one thread at a time (add() is synchronized); 
+ * queries may run concurrently with each other once all rows have been added.
+ * 
+ * <p></p>
+ * <u><b>(Example) the ten largest files and the LOC per directory.</b></u>
+ * <pre>
+ * ResultStore <i>store</i> = new ResultStore();
+ * LOCCollector <i>collector</i> = new LOCCollector(<i>file</i>);
+ * CodeMap <i>map</i> = CodeMapFactory.create(<i>file</i>, <i>collector</i>); // lexes the file once for both
+ * <i>store</i>.add(<i>collector</i>.getResult(), <i>map</i>);
+ * ...
+ * int[] <i>top</i> = <i>store</i>.top(ResultStore.Column.LOC, 10);
+ * long[] <i>perDirectory</i> = <i>store</i>.sumByDirectory(ResultStore.Column.LOC);
+ * </pre>
+ * 
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class ResultStore
+{
+    /** the columns of measured values */
+    public enum Column { LOC, BLANK, COMMENT, COMMENT_OUT }
+
+    /**
+     * Creates an empty store.
+     */
+    public ResultStore()
+    {
+        this(1024);
+    }
+
+    /**
+     * Creates an empty store with the specified initial capacity.
+     * 
+     * @param aCapacity the initial number of rows
+     */
+    public ResultStore(final int aCapacity)
+    {
+        final int capacity = Math.max(aCapacity, 16);
+        directoryIds = new int[capacity];
+        nameIds = new int[capacity];
+        languageIds = new int[capacity];
+        values = new int[Column.values().length][capacity];
+        directories = new StringDictionary();
+        names = new StringDictionary();
+        languages = new StringDictionary();
+        size = 0;
+    }
+
+    /**
+     * Adds the result of LOC measurement of a source file.
+     * The number of commented-out lines is taken from the code map of the file.
+     * 
+     * @param aResult the result of LOC measurement (must have its SourceFile)
+     * @param aMap the code map of the same source file (null if not available)
+     * @return the row index of the added result
+     */
+    public int add(final LOC aResult, final CodeMap aMap)
+    {
+        int commentOut = 0;
+        if ( aMap != null ){
+            for (Iterator<CodeLineMap> itr = aMap.iterator(); itr.hasNext(); ){
+                CodeLineMap line = itr.next();
+                if ( line.getCodeCount() == 0 && line.getCommentOutCount() > 0 ){
+                    commentOut++;
+                }
+            }
+        }
+        final LanguageProvider language = LanguageRegistry.lookup(aResult.getSourceFile());
+        final int comment = aResult.getTotalLineCount() - aResult.getLOC() - aResult.getBlankCount();
+        return add(aResult.getSourceFile().getPath(), language != null ? language.getName() : "", 
+                   aResult.getLOC(), aResult.getBlankCount(), comment, commentOut);
+    }
+
+    /**
+     * Adds a row.
+     * 
+     * @param aPath path of the file
+     * @param aLanguage name of the language
+     * @param aLOC the LOC value
+     * @param aBlank the number of blank lines
+     * @param aComment the number of comment-only lines (including the commented-out lines)
+     * @param aCommentOut the number of commented-out lines
+     * @return the row index of the added row
+     */
+    public synchronized int add(final String aPath, final String aLanguage, 
+                                final int aLOC, final int aBlank, final int aComment, final int aCommentOut)
+    {
+        if ( size == directoryIds.length ){
+            grow();
+        }
+        final File file = new File(aPath);
+        final String parent = file.getParent();
+        directoryIds[size] = directories.encode(parent != null ? parent : "");
+        nameIds[size] = names.encode(file.getName());
+        languageIds[size] = languages.encode(aLanguage);
+        values[Column.LOC.ordinal()][size] = aLOC;
+        values[Column.BLANK.ordinal()][size] = aBlank;
+        values[Column.COMMENT.ordinal()][size] = aComment;
+        values[Column.COMMENT_OUT.ordinal()][size] = aCommentOut;
+        return size++;
+    }
+
+    /**
+     * Returns the number of rows.
+     * 
+     * @return the number of rows
+     */
+    public synchronized int size()
+    {
+        return size;
+    }
+
+    /**
+     * Returns the path of the specified row.
+     * 
+     * @param aRow the row index
+     * @return the path of the row
+     */
+    public String getPath(final int aRow)
+    {
+        final String directory = directories.decode(directoryIds[aRow]);
+        final String name = names.decode(nameIds[aRow]);
+        return directory.isEmpty() ? name : directory + File.separator + name;
+    }
+
+    /**
+     * Returns the directory id of the specified row.
+     * 
+     * @param aRow the row index
+     * @return the directory id of the row
+     */
+    public int getDirectoryId(final int aRow)
+    {
+        return directoryIds[aRow];
+    }
+
+    /**
+     * Returns the language id of the specified row.
+     * 
+     * @param aRow the row index
+     * @return the language id of the row
+     */
+    public int getLanguageId(final int aRow)
+    {
+        return languageIds[aRow];
+    }
+
+    /**
+     * Returns the value of the specified column of the specified row.
+     * 
+     * @param aColumn the column
+     * @param aRow the row index
+     * @return the value
+     */
+    public int get(final Column aColumn, final int aRow)
+    {
+        return values[aColumn.ordinal()][aRow];
+    }
+
+    /**
+     * Returns the dictionary of the directories (directory id to directory path).
+     * 
+     * @return the dictionary of the directories
+     */
+    public StringDictionary getDirectories()
+    {
+        return directories;
+    }
+
+    /**
+     * Returns the dictionary of the languages (language id to language name).
+     * 
+     * @return the dictionary of the languages
+     */
+    public StringDictionary getLanguages()
+    {
+        return languages;
+    }
+
+    /**
+     * Returns the sum of the specified column over all rows.
+     * 
+     * @param aColumn the column
+     * @return the sum
+     */
+    public long sum(final Column aColumn)
+    {
+        final int[] column = values[aColumn.ordinal()];
+        final int n = size();
+        if ( n < PARALLEL_THRESHOLD ){
+            long sum = 0;
+            for ( int i = 0; i < n; i++ ){
+                sum += column[i];
+            }
+            return sum;
+        }
+        return IntStream.range(0, n).parallel().mapToLong(i -> column[i]).sum();
+    }
+
+    /**
+     * Returns the sums of the specified column grouped by directory;
+     * the i-th element is the sum of the files directly in the directory whose id is i.
+     * 
+     * @param aColumn the column
+     * @return array of the sums indexed by directory id
+     */
+    public long[] sumByDirectory(final Column aColumn)
+    {
+        return sumBy(directoryIds, directories.size(), aColumn);
+    }
+
+    /**
+     * Returns the sums of the specified column grouped by language;
+     * the i-th element is the sum of the files whose language id is i.
+     * 
+     * @param aColumn the column
+     * @return array of the sums indexed by language id
+     */
+    public long[] sumByLanguage(final Column aColumn)
+    {
+        return sumBy(languageIds, languages.size(), aColumn);
+    }
+
+    /**
+     * Returns the number of files grouped by language;
+     * the i-th element is the number of the files whose language id is i.
+     * 
+     * @return array of the numbers of files indexed by language id
+     */
+    public long[] countByLanguage()
+    {
+        final int n = size();
+        long[] counts = new long[languages.size()];
+        for ( int i = 0; i < n; i++ ){
+            counts[languageIds[i]]++;
+        }
+        return counts;
+    }
+
+    /**
+     * Returns the rows of the N largest values of the specified column, in descending order.
+     * 
+     * @param aColumn the column
+     * @param aCount N
+     * @return array of the row indexes
+     */
+    public int[] top(final Column aColumn, final int aCount)
+    {
+        final int[] column = values[aColumn.ordinal()];
+        final int n = size();
+        final int k = Math.min(aCount, n);
+        if ( k <= 0 ){
+            return new int[0];
+        }
+
+        // a min-heap of the k largest rows seen so far
+        int[] heap = new int[k];
+        int heapSize = 0;
+        for ( int i = 0; i < n; i++ ){
+            if ( heapSize < k ){
+                heap[heapSize] = i;
+                siftUp(heap, heapSize++, column);
+            }
+            else if ( column[i] > column[heap[0]] ){
+                heap[0] = i;
+                siftDown(heap, heapSize, column);
+            }
+        }
+
+        int[] result = new int[k];
+        for ( int i = k - 1; i >= 0; i-- ){
+            result[i] = heap[0];
+            heap[0] = heap[--heapSize];
+            siftDown(heap, heapSize, column);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the rows whose values of the specified column are within the specified range.
+     * 
+     * @param aColumn the column
+     * @param aMin the lower bound (inclusive)
+     * @param aMax the upper bound (inclusive)
+     * @return array of the row indexes in ascending order
+     */
+    public int[] filter(final Column aColumn, final int aMin, final int aMax)
+    {
+        final int[] column = values[aColumn.ordinal()];
+        final int n = size();
+        IntStream rows = IntStream.range(0, n);
+        if ( n >= PARALLEL_THRESHOLD ){
+            rows = rows.parallel();
+        }
+        return rows.filter(i -> column[i] >= aMin && column[i] <= aMax).toArray();
+    }
+
+    /**
+     * Returns the histogram of the specified column.
+     * The i-th element is the number of rows whose value v satisfies 
+     * aBounds[i-1] &lt;= v &lt; aBounds[i] (aBounds[-1] = -infinity, aBounds[aBounds.length] = +infinity).
+     * 
+     * @param aColumn the column
+     * @param aBounds the ascending bounds of the bins
+     * @return array of aBounds.length + 1 counts
+     */
+    public long[] histogram(final Column aColumn, final int[] aBounds)
+    {
+        final int[] column = values[aColumn.ordinal()];
+        final int n = size();
+        long[] counts = new long[aBounds.length + 1];
+        for ( int i = 0; i < n; i++ ){
+            int bin = Arrays.binarySearch(aBounds, column[i]);
+            counts[bin >= 0 ? bin + 1 : -bin - 1]++;
+        }
+        return counts;
+    }
+
+    private long[] sumBy(final int[] aKeys, final int aKeyCount, final Column aColumn)
+    {
+        final int[] column = values[aColumn.ordinal()];
+        final int n = size();
+        if ( n < PARALLEL_THRESHOLD ){
+            long[] sums = new long[aKeyCount];
+            for ( int i = 0; i < n; i++ ){
+                sums[aKeys[i]] += column[i];
+            }
+            return sums;
+        }
+        return IntStream.range(0, n).parallel().collect(
+                () -> new long[aKeyCount],
+                (sums, i) -> sums[aKeys[i]] += column[i],
+                (left, right) -> {
+                    for ( int j = 0; j < aKeyCount; j++ ){
+                        left[j] += right[j];
+                    }
+                });
+    }
+
+    private void grow()
+    {
+        final int capacity = directoryIds.length + (directoryIds.length >> 1);
+        directoryIds = Arrays.copyOf(directoryIds, capacity);
+        nameIds = Arrays.copyOf(nameIds, capacity);
+        languageIds = Arrays.copyOf(languageIds, capacity);
+        for ( int i = 0; i < values.length; i++ ){
+            values[i] = Arrays.copyOf(values[i], capacity);
+        }
+    }
+
+    private static void siftUp(final int[] aHeap, int anIndex, final int[] aColumn)
+    {
+        final int row = aHeap[anIndex];
+        while ( anIndex > 0 ){
+            int parent = (anIndex - 1) >>> 1;
+            if ( aColumn[aHeap[parent]] <= aColumn[row] ){
+                break;
+            }
+            aHeap[anIndex] = aHeap[parent];
+            anIndex = parent;
+        }
+        aHeap[anIndex] = row;
+    }
+
+    private static void siftDown(final int[] aHeap, final int aSize, final int[] aColumn)
+    {
+        if ( aSize == 0 ){
+            return;
+        }
+        final int row = aHeap[0];
+        int index = 0;
+        while ( true ){
+            int child = 2 * index + 1;
+            if ( child >= aSize ){
+                break;
+            }
+            if ( child + 1 < aSize && aColumn[aHeap[child + 1]] < aColumn[aHeap[child]] ){
+                child++;
+            }
+            if ( aColumn[row] <= aColumn[aHeap[child]] ){
+                break;
+            }
+            aHeap[index] = aHeap[child];
+            index = child;
+        }
+        aHeap[index] = row;
+    }
+
+    /** the number of rows from which the queries run in parallel */
+    private static final int PARALLEL_THRESHOLD = 1 << 16;
+
+    private int[] directoryIds;
+
+    private final StringDictionary directories;
+
+    private int[] languageIds;
+
+    private final StringDictionary languages;
+
+    private int[] nameIds;
+
+    private final StringDictionary names;
+
+    private int size;
+
+    /** the columns of measured values, indexed by Column.ordinal() */
+    private final int[][] values;
+}
@@ -0,0 +1,73 @@
+package org.computer.aman.metrics.size.loc.store;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * A dictionary which encodes strings into dense integer ids (0, 1, 2, ...).
+ * Each distinct string is stored only once.
+ * 
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class StringDictionary
+{
+    public StringDictionary()
+    {
+        ids = new HashMap<String, Integer>();
+        strings = new ArrayList<String>();
+    }
+
+    /**
+     * Returns the id of the specified string, adding it to this dictionary if it is new.
+     * 
+     * @param aString the string
+     * @return the id of the string
+     */
+    public int encode(final String aString)
+    {
+        Integer id = ids.get(aString);
+        if ( id == null ){
+            id = strings.size();
+            ids.put(aString, id);
+            strings.add(aString);
+        }
+        return id;
+    }
+
+    /**
+     * Returns the id of the specified string.
+     * 
+     * @param aString the string
+     * @return the id of the string, or -1 if the string is not in this dictionary
+     */
+    public int lookup(final String aString)
+    {
+        Integer id = ids.get(aString);
+        return id != null ? id : -1;
+    }
+
+    /**
+     * Returns the string of the specified id.
+     * 
+     * @param anId the id
+     * @return the string of the id
+     */
+    public String decode(final int anId)
+    {
+        return strings.get(anId);
+    }
+
+    /**
+     * Returns the number of strings in this dictionary.
+     * 
+     * @return the number of strings in this dictionary
+     */
+    public int size()
+    {
+        return strings.size();
+    }
+
+    private final HashMap<String, Integer> ids;
+
+    private final ArrayList<String> strings;
+}
@@ -0,0 +1,272 @@
+package org.computer.aman.metrics.size.loc.summary;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.computer.aman.metrics.size.loc.LOC;
+import org.computer.aman.metrics.size.loc.pipeline.ResultSink;
+import org.computer.aman.metrics.size.loc.store.ResultStore;
+
+/**
+ * A streaming reducer which estimates the quantiles (e.g., p50, p95 and p99) of a measured value
+ * by a KLL sketch, keeping O(k log(n/k)) values instead of all n values.
+ * <p></p>
+ * The sketch is a stack of compactors: level h holds values each of which stands for 2^h values.
+ * When the sketch gets full, a level is sorted, and every other value of it (from a random offset)
+ * is promoted to the next level, while the rest are discarded.
+ * The rank error is about 1.7/k with high probability (about 0.85% for the default k = 200).
+ * <p></p>
+ * A sketch is not thread-safe; give each parallel worker its own sketch
+ * and merge() them at the end.
+ * 
+ * <p></p>
+ * <u><b>(Example) the p50, p95 and p99 of LOC.</b></u>
+ * <pre>
+ * QuantileSketch <i>sketch</i> = new QuantileSketch(ResultStore.Column.LOC);
+ * new MeasurementPipeline(new FileFinder(<i>"/foo/bar"</i>), <i>".+\\.java"</i>, <i>sketch</i>).run();
+ * long[] <i>quantiles</i> = <i>sketch</i>.getQuantiles(new double[] { 0.5, 0.95, 0.99 });
+ * </pre>
+ * 
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class QuantileSketch
+implements ResultSink
+{
+    /**
+     * Creates a sketch with the default accuracy (k = 200).
+     * 
+     * @param aColumn the value whose quantiles are estimated (LOC, BLANK or COMMENT)
+     */
+    public QuantileSketch(final ResultStore.Column aColumn)
+    {
+        this(aColumn, 200);
+    }
+
+    /**
+     * Creates a sketch.
+     * 
+     * @param aColumn the value whose quantiles are estimated (LOC, BLANK or COMMENT)
+     * @param aK the accuracy parameter (the capacity of the top level)
+     */
+    public QuantileSketch(final ResultStore.Column aColumn, final int aK)
+    {
+        if ( aK < 8 ){
+            throw new IllegalArgumentException("must be 8 or more : " + aK);
+        }
+        column = aColumn;
+        k = aK;
+        levels = new long[][] { new long[aK] };
+        sizes = new int[1];
+        random = new Random(aK);
+    }
+
+    /**
+     * Adds a value.
+     * 
+     * @param aValue the value
+     */
+    public void add(final long aValue)
+    {
+        append(0, aValue);
+        count++;
+        compress();
+    }
+
+    /**
+     * Adds the values of another sketch (e.g., of another worker).
+     * The accuracy parameters of both sketches should be the same.
+     * 
+     * @param anOther another sketch
+     */
+    public void merge(final QuantileSketch anOther)
+    {
+        for ( int h = 0; h < anOther.sizes.length; h++ ){
+            for ( int i = 0; i < anOther.sizes[h]; i++ ){
+                append(h, anOther.levels[h][i]);
+            }
+        }
+        count += anOther.count;
+        compress();
+    }
+
+    /**
+     * Returns the number of added values.
+     * 
+     * @return the number of added values
+     */
+    public long getCount()
+    {
+        return count;
+    }
+
+    /**
+     * Returns the estimated quantile.
+     * 
+     * @param aFraction the fraction (0.0 to 1.0), e.g., 0.95 for p95
+     * @return the estimated value of the quantile (0 if no value has been added)
+     */
+    public long getQuantile(final double aFraction)
+    {
+        return getQuantiles(new double[] { aFraction })[0];
+    }
+
+    /**
+     * Returns the estimated quantiles.
+     * 
+     * @param someFractions the fractions (0.0 to 1.0)
+     * @return the estimated values of the quantiles
+     */
+    public long[] getQuantiles(final double[] someFractions)
+    {
+        // the values of each level sorted as primitives, and then merged into (value, weight) pairs
+        final int[] starts = new int[sizes.length + 1];
+        long total = 0;
+        for ( int h = 0; h < sizes.length; h++ ){
+            starts[h + 1] = starts[h] + sizes[h];
+            total += (long)sizes[h] << h;
+        }
+        final int retained = starts[sizes.length];
+        final long[] levelValues = new long[retained];
+        for ( int h = 0; h < sizes.length; h++ ){
+            System.arraycopy(levels[h], 0, levelValues, starts[h], sizes[h]);
+            Arrays.sort(levelValues, starts[h], starts[h + 1]);
+        }
+        final long[] values = new long[retained];
+        final long[] weights = new long[retained];
+        final int[] heads = Arrays.copyOf(starts, sizes.length);
+        for ( int n = 0; n < retained; n++ ){
+            int lowest = -1;
+            for ( int h = 0; h < sizes.length; h++ ){
+                if ( heads[h] < starts[h + 1] 
+                     && (lowest < 0 || levelValues[heads[h]] < levelValues[heads[lowest]]) ){
+                    lowest = h;
+                }
+            }
+            values[n] = levelValues[heads[lowest]++];
+            weights[n] = 1L << lowest;
+        }
+
+        final long[] quantiles = new long[someFractions.length];
+        for ( int q = 0; q < someFractions.length; q++ ){
+            if ( someFractions[q] < 0.0 || someFractions[q] > 1.0 ){
+                throw new IllegalArgumentException("must be between 0.0 and 1.0 : " + someFractions[q]);
+            }
+            if ( retained == 0 ){
+                continue;
+            }
+            final double target = someFractions[q] * total;
+            long cumulative = 0;
+            int i = 0;
+            while ( i < retained - 1 && cumulative + weights[i] < target ){
+                cumulative += weights[i];
+                i++;
+            }
+            quantiles[q] = values[i];
+        }
+        return quantiles;
+    }
+
+    public void accept(final LOC aResult)
+    {
+        add(TopK.valueOf(aResult, column));
+    }
+
+    public void failed(final String aPath, final Exception aCause)
+    {
+    }
+
+    public void close()
+    {
+    }
+
+    /**
+     * Appends a value to the specified level, adding the level if necessary.
+     */
+    private void append(final int aLevel, final long aValue)
+    {
+        if ( aLevel >= sizes.length ){
+            levels = Arrays.copyOf(levels, aLevel + 1);
+            sizes = Arrays.copyOf(sizes, aLevel + 1);
+            for ( int h = 0; h < levels.length; h++ ){
+                if ( levels[h] == null ){
+                    levels[h] = new long[capacity(h)];
+                }
+            }
+        }
+        if ( sizes[aLevel] == levels[aLevel].length ){
+            levels[aLevel] = Arrays.copyOf(levels[aLevel], Math.max(sizes[aLevel] * 2, 2));
+        }
+        levels[aLevel][sizes[aLevel]++] = aValue;
+    }
+
+    /**
+     * Compacts the lowest level over its capacity until the sketch is within its total capacity.
+     */
+    private void compress()
+    {
+        while ( true ){
+            int retained = 0;
+            int capacity = 0;
+            for ( int h = 0; h < sizes.length; h++ ){
+                retained += sizes[h];
+                capacity += capacity(h);
+            }
+            if ( retained < capacity ){
+                return;
+            }
+            for ( int h = 0; h < sizes.length; h++ ){
+                if ( sizes[h] >= capacity(h) ){
+                    compact(h);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Sorts a level, promotes every other value of it to the next level, and empties it.
+     * An odd value out stays at the level.
+     */
+    private void compact(final int aLevel)
+    {
+        final long[] level = levels[aLevel];
+        int size = sizes[aLevel];
+        Arrays.sort(level, 0, size);
+        long leftOver = 0;
+        final boolean odd = (size & 1) != 0;
+        if ( odd ){
+            leftOver = level[--size];
+        }
+        final int offset = random.nextBoolean() ? 1 : 0;
+        sizes[aLevel] = 0;
+        for ( int i = offset; i < size; i += 2 ){
+            append(aLevel + 1, levels[aLevel][i]);
+        }
+        if ( odd ){
+            levels[aLevel][sizes[aLevel]++] = leftOver;
+        }
+    }
+
+    /**
+     * Returns the capacity of the specified level: k at the top, 
+     * and 2/3 of the level above at each level below it (at least 2).
+     */
+    private int capacity(final int aLevel)
+    {
+        final int depth = sizes.length - 1 - aLevel;
+        return Math.max(2, (int)Math.ceil(k * Math.pow(2.0 / 3.0, depth)));
+    }
+
+    private final ResultStore.Column column;
+
+    private long count;
+
+    private final int k;
+
+    /** the compactors; levels[h][0 .. sizes[h]) are the values of weight 2^h */
+    private long[][] levels;
+
+    private final Random random;
+
+    private int[] sizes;
+}
@@ -0,0 +1,181 @@
+package org.computer.aman.metrics.size.loc.summary;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.computer.aman.metrics.size.loc.LOC;
+import org.computer.aman.metrics.size.loc.pipeline.ResultSink;
+import org.computer.aman.metrics.size.loc.store.ResultStore;
+
+/**
+ * A streaming reducer which keeps the K largest files by a measured value, 
+ * using a bounded min-heap of K entries instead of retaining all results.
+ * <p></p>
+ * A reducer is not thread-safe; give each parallel worker its own reducer
+ * and merge() them at the end.
+ * 
+ * <p></p>
+ * <u><b>(Example) the 100 largest files by LOC.</b></u>
+ * <pre>
+ * TopK <i>top</i> = new TopK(100, ResultStore.Column.LOC);
+ * new MeasurementPipeline(new FileFinder(<i>"/foo/bar"</i>), <i>".+\\.java"</i>, <i>top</i>).run();
+ * List&lt;TopK.Entry&gt; <i>largest</i> = <i>top</i>.getEntries();
+ * </pre>
+ * 
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class TopK
+implements ResultSink
+{
+    /**
+     * A file and its value.
+     */
+    public static class Entry
+    {
+        Entry(final String aPath, final long aValue)
+        {
+            path = aPath;
+            value = aValue;
+        }
+
+        /**
+         * Returns the path of the file.
+         * 
+         * @return the path of the file
+         */
+        public String getPath()
+        {
+            return path;
+        }
+
+        /**
+         * Returns the value of the file.
+         * 
+         * @return the value
+         */
+        public long getValue()
+        {
+            return value;
+        }
+
+        public String toString()
+        {
+            return path + " : " + value;
+        }
+
+        private final String path;
+
+        private final long value;
+    }
+
+    /**
+     * Creates a reducer.
+     * 
+     * @param aCount the number of files to keep (K)
+     * @param aColumn the value by which the files are ranked (LOC, BLANK or COMMENT)
+     */
+    public TopK(final int aCount, final ResultStore.Column aColumn)
+    {
+        if ( aCount <= 0 ){
+            throw new IllegalArgumentException("must be positive : " + aCount);
+        }
+        count = aCount;
+        column = aColumn;
+        heap = new PriorityQueue<Entry>(aCount, ASCENDING);
+    }
+
+    /**
+     * Adds the value of a file.
+     * 
+     * @param aPath path of the file
+     * @param aValue the value of the file
+     */
+    public void add(final String aPath, final long aValue)
+    {
+        if ( heap.size() < count ){
+            heap.add(new Entry(aPath, aValue));
+        }
+        else if ( aValue > heap.peek().value ){
+            heap.poll();
+            heap.add(new Entry(aPath, aValue));
+        }
+    }
+
+    /**
+     * Adds the entries of another reducer (e.g., of another worker).
+     * 
+     * @param anOther another reducer
+     */
+    public void merge(final TopK anOther)
+    {
+        for (Iterator<Entry> itr = anOther.heap.iterator(); itr.hasNext(); ){
+            Entry entry = itr.next();
+            add(entry.path, entry.value);
+        }
+    }
+
+    /**
+     * Returns the kept entries, the largest first.
+     * 
+     * @return the list of at most K entries
+     */
+    public List<Entry> getEntries()
+    {
+        ArrayList<Entry> entries = new ArrayList<Entry>(heap);
+        Collections.sort(entries, Collections.reverseOrder(ASCENDING));
+        return entries;
+    }
+
+    public void accept(final LOC aResult)
+    {
+        add(aResult.getSourceFile().getPath(), valueOf(aResult, column));
+    }
+
+    public void failed(final String aPath, final Exception aCause)
+    {
+    }
+
+    public void close()
+    {
+    }
+
+    /**
+     * Returns the value of the specified column of a result of LOC measurement.
+     * The commented-out lines are not a part of LOC objects, so that COMMENT_OUT is not supported.
+     * 
+     * @param aResult the result of LOC measurement
+     * @param aColumn the column (LOC, BLANK or COMMENT)
+     * @return the value
+     */
+    static long valueOf(final LOC aResult, final ResultStore.Column aColumn)
+    {
+        switch ( aColumn ){
+        case LOC:
+            return aResult.getLOC();
+        case BLANK:
+            return aResult.getBlankCount();
+        case COMMENT:
+            return aResult.getTotalLineCount() - aResult.getLOC() - aResult.getBlankCount();
+        default:
+            throw new IllegalArgumentException("not available from LOC : " + aColumn);
+        }
+    }
+
+    private static final Comparator<Entry> ASCENDING = new Comparator<Entry>() {
+        public int compare(final Entry aLeft, final Entry aRight)
+        {
+            return Long.compare(aLeft.value, aRight.value);
+        }
+    };
+
+    private final ResultStore.Column column;
+
+    private final int count;
+
+    /** the min-heap of the kept entries (the smallest is on the top) */
+    private final PriorityQueue<Entry> heap;
+}
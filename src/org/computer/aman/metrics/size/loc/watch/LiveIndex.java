@@ -0,0 +1,541 @@
+package org.computer.aman.metrics.size.loc.watch;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.computer.aman.io.ContentDigest;
+import org.computer.aman.io.FileFinder;
+import org.computer.aman.io.sourcecode.SourceFile;
+import org.computer.aman.metrics.size.loc.LOC;
+import org.computer.aman.metrics.size.loc.LOCCollector;
+import org.computer.aman.metrics.size.loc.store.DirectoryTree;
+import org.computer.aman.metrics.size.loc.store.ResultStore;
+import org.computer.aman.metrics.util.CodeLineMap;
+import org.computer.aman.metrics.util.CodeMap;
+import org.computer.aman.metrics.util.CodeMapFactory;
+
+/**
+ * A live index of the LOC values of working trees, kept up to date by java.nio.file.WatchService
+ * instead of periodic full scans.
+ * <p></p>
+ * When started, the index registers every directory below the roots with a WatchService
+ * and measures all files once; afterwards it measures only the files which the watcher reports.
+ * The events of a file are debounced: the file is measured when no event has come for it
+ * during the debounce period, so that an editor saving a file in several writes costs one measurement.
+ * A reported file is not measured again if its size and modification time are unchanged,
+ * and is not lexed again if its contents are unchanged (by ContentDigest), e.g., when it is only touched.
+ * <p></p>
+ * The values are held in a DirectoryTree per root, whose subtotals are updated in place.
+ * A new directory is registered and scanned; a deleted file or directory is removed from the tree.
+ * If the watcher reports an overflow (i.e., events have been lost), 
+ * only the directory of the overflowed key is rescanned, with the directories below it.
+ * 
+ * <p></p>
+ * <u><b>(Example) a live LOC of a working tree.</b></u>
+ * <pre>
+ * LiveIndex <i>index</i> = new LiveIndex(Arrays.asList(new FileFinder(<i>"/foo/bar"</i>)), <i>".+\\.java"</i>);
+ * <i>index</i>.start();
+ * ...
+ * long <i>loc</i> = <i>index</i>.getTree(0).getRoot().get(ResultStore.Column.LOC);
+ * ...
+ * <i>index</i>.close();
+ * </pre>
+ * 
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class LiveIndex
+implements AutoCloseable
+{
+    /**
+     * Receives the changes of the index.
+     */
+    public interface Listener
+    {
+        /**
+         * Called after the values of a file have been updated, or the file has been removed.
+         * This method is called from the thread of the index, one at a time after the initial scan.
+         * 
+         * @param aPath path of the file
+         * @param isRemoved true if the file has been removed from the index
+         */
+        public void changed(final String aPath, final boolean isRemoved);
+    }
+
+    /**
+     * Creates an index of the files in or below the specified roots.
+     * 
+     * @param someRoots FileFinders of the roots
+     * @param aPattern the regular expression corresponding to the files to be measured
+     */
+    public LiveIndex(final List<FileFinder> someRoots, final String aPattern)
+    {
+        roots = new ArrayList<FileFinder>(someRoots);
+        pattern = aPattern;
+        trees = new DirectoryTree[roots.size()];
+        for ( int i = 0; i < trees.length; i++ ){
+            trees[i] = new DirectoryTree(roots.get(i).getDirectory());
+        }
+        files = new ConcurrentSkipListMap<String, FileState>();
+        fileCount = new AtomicInteger();
+        directories = new ConcurrentHashMap<WatchKey, Directory>();
+        pending = new LinkedHashMap<String, Long>();
+        debounce = DEFAULT_DEBOUNCE;
+    }
+
+    /**
+     * Sets the debounce period.
+     * 
+     * @param aMillis the period in milliseconds during which no event must come for a file before it is measured
+     */
+    public void setDebounce(final long aMillis)
+    {
+        debounce = Math.max(aMillis, 0);
+    }
+
+    /**
+     * Sets the listener of the changes.
+     * 
+     * @param aListener the listener (null for none)
+     */
+    public void setListener(final Listener aListener)
+    {
+        listener = aListener;
+    }
+
+    /**
+     * Registers the directories with the watcher, measures all files, and starts to follow the changes.
+     * 
+     * @throws IOException if the watcher could not be started or a root could not be walked
+     * @throws InterruptedException if the current thread is interrupted during the initial scan
+     */
+    public void start()
+    throws IOException, InterruptedException
+    {
+        watcher = FileSystems.getDefault().newWatchService();
+        // the directories are registered first, so that no change during the initial scan is lost
+        for ( int i = 0; i < roots.size(); i++ ){
+            register(new File(roots.get(i).getDirectory()).toPath(), i);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            for ( int i = 0; i < roots.size(); i++ ){
+                final int root = i;
+                for (Iterator<String> itr = roots.get(i).getList(pattern).iterator(); itr.hasNext(); ){
+                    final String path = itr.next();
+                    executor.execute(new Runnable() {
+                        public void run()
+                        {
+                            refresh(path, root);
+                        }
+                    });
+                }
+            }
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        thread = new Thread(new Runnable() {
+            public void run()
+            {
+                follow();
+            }
+        }, "live-index");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Returns the tree of the specified root.
+     * 
+     * @param aRoot the index of the root (in the order given to the constructor)
+     * @return the tree
+     */
+    public DirectoryTree getTree(final int aRoot)
+    {
+        return trees[aRoot];
+    }
+
+    /**
+     * Returns the total of the specified column over all roots.
+     * 
+     * @param aColumn the column
+     * @return the total
+     */
+    public long getTotal(final ResultStore.Column aColumn)
+    {
+        long total = 0;
+        for ( int i = 0; i < trees.length; i++ ){
+            total += trees[i].getRoot().get(aColumn);
+        }
+        return total;
+    }
+
+    /**
+     * Returns the number of the files in the index.
+     * 
+     * @return the number of the files
+     */
+    public int getFileCount()
+    {
+        return fileCount.get();
+    }
+
+    /**
+     * Returns the number of the rescans caused by overflows.
+     * 
+     * @return the number of the rescans
+     */
+    public int getRescanCount()
+    {
+        return rescanCount;
+    }
+
+    /**
+     * Stops following the changes. The trees keep the last values.
+     * 
+     * @throws IOException if the watcher could not be closed
+     */
+    public void close()
+    throws IOException
+    {
+        if ( watcher != null ){
+            watcher.close();
+        }
+        if ( thread != null ){
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Takes the events from the watcher, and measures the reported files after their debounce periods,
+     * until the watcher is closed.
+     */
+    private void follow()
+    {
+        try {
+            while ( true ){
+                WatchKey key;
+                if ( pending.isEmpty() ){
+                    key = watcher.take();
+                }
+                else{
+                    final long wait = pending.values().iterator().next() - System.currentTimeMillis();
+                    key = wait > 0 ? watcher.poll(wait, TimeUnit.MILLISECONDS) : watcher.poll();
+                }
+                if ( key != null ){
+                    process(key);
+                }
+
+                // the pending files are in the order of their deadlines, since the debounce period is constant
+                final long now = System.currentTimeMillis();
+                for (Iterator<Map.Entry<String, Long>> itr = pending.entrySet().iterator(); itr.hasNext(); ){
+                    Map.Entry<String, Long> entry = itr.next();
+                    if ( entry.getValue() > now ){
+                        break;
+                    }
+                    itr.remove();
+                    refresh(entry.getKey(), rootOf(entry.getKey()));
+                }
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            // closed
+        }
+    }
+
+    /**
+     * Processes the events of a key.
+     */
+    private void process(final WatchKey aKey)
+    {
+        final Directory directory = directories.get(aKey);
+        if ( directory == null ){
+            // an overflow which is not bound to a directory: all roots are rescanned
+            for (Iterator<WatchEvent<?>> itr = aKey.pollEvents().iterator(); itr.hasNext(); ){
+                if ( itr.next().kind() == StandardWatchEventKinds.OVERFLOW ){
+                    for ( int i = 0; i < roots.size(); i++ ){
+                        rescanCount++;
+                        rescan(new File(roots.get(i).getDirectory()).toPath(), i);
+                    }
+                    break;
+                }
+            }
+            aKey.reset();
+            return;
+        }
+        for (Iterator<WatchEvent<?>> itr = aKey.pollEvents().iterator(); itr.hasNext(); ){
+            WatchEvent<?> event = itr.next();
+            if ( event.kind() == StandardWatchEventKinds.OVERFLOW ){
+                rescanCount++;
+                rescan(directory.path, directory.root);
+                continue;
+            }
+            final Path path = directory.path.resolve((Path)event.context());
+            if ( event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path) ){
+                rescan(path, directory.root);
+                continue;
+            }
+            final String key = path.toString();
+            pending.remove(key);
+            pending.put(key, System.currentTimeMillis() + debounce);
+        }
+        if ( !aKey.reset() ){
+            // the directory has been deleted; its files are removed by the DELETE events of the parent
+            directories.remove(aKey);
+        }
+    }
+
+    /**
+     * Registers the directories in or below the specified directory, measures its changed files, 
+     * and removes the files which do not exist any more.
+     */
+    private void rescan(final Path aDirectory, final int aRoot)
+    {
+        try {
+            register(aDirectory, aRoot);
+            Files.walkFileTree(aDirectory, new SimpleFileVisitor<Path>() {
+                public FileVisitResult visitFile(final Path aFile, final BasicFileAttributes someAttributes)
+                {
+                    if ( someAttributes.isRegularFile() && aFile.toString().matches(pattern) ){
+                        refresh(aFile.toString(), aRoot);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                public FileVisitResult visitFileFailed(final Path aFile, final IOException anException)
+                {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            // the directory has been deleted while walking; its files are removed below
+        }
+        removeMissing(aDirectory.toString() + File.separator);
+    }
+
+    /**
+     * Registers the specified directory and all directories below it with the watcher.
+     */
+    private void register(final Path aDirectory, final int aRoot)
+    throws IOException
+    {
+        Files.walkFileTree(aDirectory, new SimpleFileVisitor<Path>() {
+            public FileVisitResult preVisitDirectory(final Path aPath, final BasicFileAttributes someAttributes)
+            throws IOException
+            {
+                WatchKey key = aPath.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, 
+                                              StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+                directories.put(key, new Directory(aPath, aRoot));
+                return FileVisitResult.CONTINUE;
+            }
+
+            public FileVisitResult visitFileFailed(final Path aPath, final IOException anException)
+            {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Brings a file up to date: measures it if it has changed, or removes it if it does not exist any more.
+     * A path which is no longer a file (e.g., a deleted directory) removes all files below it.
+     */
+    private void refresh(final String aPath, final int aRoot)
+    {
+        final File file = new File(aPath);
+        if ( !file.isFile() ){
+            remove(aPath);
+            removeMissing(aPath + File.separator);
+            return;
+        }
+        if ( aRoot < 0 || !aPath.matches(pattern) ){
+            return;
+        }
+        final long size = file.length();
+        final long lastModified = file.lastModified();
+        final FileState state = files.get(aPath);
+        if ( state != null && state.size == size && state.lastModified == lastModified ){
+            return;
+        }
+        try {
+            final ContentDigest digest = ContentDigest.of(file);
+            if ( state != null && state.digest.equals(digest) ){
+                // touched, but the contents are the same
+                files.put(aPath, new FileState(aRoot, size, lastModified, digest));
+                return;
+            }
+            final SourceFile sourceFile = new SourceFile(aPath);
+            LOCCollector collector = new LOCCollector(sourceFile);
+            CodeMap map = CodeMapFactory.create(sourceFile, collector);
+            LOC result = collector.getResult();
+            int commentOut = 0;
+            for (Iterator<CodeLineMap> itr = map.iterator(); itr.hasNext(); ){
+                CodeLineMap line = itr.next();
+                if ( line.getCodeCount() == 0 && line.getCommentOutCount() > 0 ){
+                    commentOut++;
+                }
+            }
+            trees[aRoot].update(aPath, result.getLOC(), result.getBlankCount(), 
+                                result.getTotalLineCount() - result.getLOC() - result.getBlankCount(), commentOut);
+            if ( files.put(aPath, new FileState(aRoot, size, lastModified, digest)) == null ){
+                fileCount.incrementAndGet();
+            }
+        } catch (Exception e) {
+            // not measurable (e.g., not supported, or deleted while reading)
+            remove(aPath);
+            return;
+        }
+        notify(aPath, false);
+    }
+
+    /**
+     * Removes a file from the index.
+     */
+    private void remove(final String aPath)
+    {
+        final FileState state = files.remove(aPath);
+        if ( state != null ){
+            fileCount.decrementAndGet();
+            trees[state.root].remove(aPath);
+            notify(aPath, true);
+        }
+    }
+
+    /**
+     * Removes the files below the specified prefix which do not exist any more;
+     * only the files below the prefix are visited, since they are adjacent in the sorted index.
+     */
+    private void removeMissing(final String aPrefix)
+    {
+        for (Iterator<String> itr = files.tailMap(aPrefix).keySet().iterator(); itr.hasNext(); ){
+            String path = itr.next();
+            if ( !path.startsWith(aPrefix) ){
+                break;
+            }
+            if ( !new File(path).isFile() ){
+                remove(path);
+            }
+        }
+    }
+
+    private void notify(final String aPath, final boolean isRemoved)
+    {
+        final Listener current = listener;
+        if ( current != null && thread != null ){
+            current.changed(aPath, isRemoved);
+        }
+    }
+
+    /**
+     * Returns the index of the root in or below which the path is (-1 if none).
+     */
+    private int rootOf(final String aPath)
+    {
+        for ( int i = 0; i < roots.size(); i++ ){
+            if ( aPath.startsWith(roots.get(i).getDirectory() + File.separator) ){
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * A watched directory.
+     */
+    private static class Directory
+    {
+        Directory(final Path aPath, final int aRoot)
+        {
+            path = aPath;
+            root = aRoot;
+        }
+
+        final Path path;
+
+        /** the index of the root */
+        final int root;
+    }
+
+    /**
+     * The state of an indexed file when it was measured.
+     */
+    private static class FileState
+    {
+        FileState(final int aRoot, final long aSize, final long aLastModified, final ContentDigest aDigest)
+        {
+            root = aRoot;
+            size = aSize;
+            lastModified = aLastModified;
+            digest = aDigest;
+        }
+
+        final ContentDigest digest;
+
+        final long lastModified;
+
+        /** the index of the root */
+        final int root;
+
+        final long size;
+    }
+
+    /** the default debounce period in milliseconds */
+    public static final long DEFAULT_DEBOUNCE = 200;
+
+    private volatile long debounce;
+
+    /** the watched directories by their keys */
+    private final ConcurrentHashMap<WatchKey, Directory> directories;
+
+    /** the number of the indexed files (the size of a ConcurrentSkipListMap is not constant-time) */
+    private final AtomicInteger fileCount;
+
+    /** the indexed files, sorted by their paths so that the files below a directory are adjacent */
+    private final ConcurrentSkipListMap<String, FileState> files;
+
+    private volatile Listener listener;
+
+    private final String pattern;
+
+    /** the reported files in the order of their deadlines (used only by the thread of the index) */
+    private final LinkedHashMap<String, Long> pending;
+
+    private volatile int rescanCount;
+
+    private final List<FileFinder> roots;
+
+    /** the thread following the changes (null during the initial scan) */
+    private volatile Thread thread;
+
+    private final DirectoryTree[] trees;
+
+    private WatchService watcher;
+}
@@ -70,6 +70,17 @@ public class CodeLineMap
         return commentCount;
     }
     
+    /**
+     * Retrieves the number of characters belong to a commented code type;
+     * this class does not distinguish commented code, so that it returns 0.
+     * 
+     * @return the number of characters belong to a commented code type
+     */
+    public int getCommentOutCount()
+    {
+        return 0;
+    }
+    
     /**
      * Retrieves the code map.
      * @return the code map
@@ -1,8 +1,16 @@
 package org.computer.aman.metrics.util;
 
+import java.io.FileReader;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Iterator;
 
+import org.computer.aman.io.LineReader;
+import org.computer.aman.io.sourcecode.SourceFile;
+import org.computer.aman.metrics.profile.FileMeasurementEvent;
+import org.computer.aman.metrics.profile.MetricsProfiler;
+import org.computer.aman.metrics.profile.Phase;
+
 /**
  * Code map expressing the types of source code.
  * <p></p>
@@ -51,9 +59,9 @@ public abstract class CodeMap
      */
     public String toString()
     {
-        StringBuffer buf = new StringBuffer();
+        StringBuilder buf = new StringBuilder();
         int lineNumber = 1;
-        for (Iterator<CodeLineMap> iterator = lines.iterator(); iterator.hasNext();) {
+        for (Iterator<CodeLineMap> iterator = iterator(); iterator.hasNext();) {
             CodeLineMap element = iterator.next();
             buf.append(lineNumber++);
             buf.append(element.toString());
@@ -63,6 +71,231 @@ public abstract class CodeMap
         return new String(buf);
     }
     
+    /**
+     * A parser of source lines, which a subclass gives to parse().
+     * Since a statement or a comment block can be across two or more lines,
+     * the implementation maintains the state of the parsing with using fields.
+     */
+    protected interface LineParser
+    {
+        /**
+         * Parses a source line and creates the corresponding code map.
+         * 
+         * @param aSourceLine source line to be parsed
+         */
+        public void parseLine(final String aSourceLine);
+    }
+
+    /**
+     * Reads the specified source file line by line, and parses each of the lines by the specified parser.
+     * <p></p>
+     * The time spent for reading and for lexing is recorded by MetricsProfiler
+     * and by a FileMeasurementEvent, if either of them is enabled.
+     * If the options carry a ParseBudget, the size of the file and each line are checked against it,
+     * and a line is read only up to the line limit (see LineReader).
+     * 
+     * @param aSourceFile the source file
+     * @param aParser the parser of each line
+     * @throws IOException if the reading of the source file is failed.
+     * @throws ParseAbortedException if the parsing exceeds the ParseBudget of the options
+     */
+    protected void parse(final SourceFile aSourceFile, final LineParser aParser)
+    throws IOException
+    {
+        final ParseBudget budget = options.getBudget();
+        final FileMeasurementEvent event = new FileMeasurementEvent();
+        final boolean timing = MetricsProfiler.enabled() || event.isEnabled();
+        long readTime = 0;
+        long lexTime = 0;
+        long lineCount = 0;
+
+        beginCollectors(aSourceFile);
+        if ( budget != null ){
+            budget.begin();
+            budget.checkFile(aSourceFile);
+        }
+        event.begin();
+        // a line longer than the limit of the budget is not buffered beyond the limit
+        LineReader reader = new LineReader(new FileReader(aSourceFile), 
+                                           budget != null ? budget.getMaxLineLength() : Integer.MAX_VALUE);
+        try {
+            String line = null;
+            long time = timing ? System.nanoTime() : 0L;
+            while ( (line = reader.readLine()) != null ){
+                if ( timing ){
+                    final long now = System.nanoTime();
+                    readTime += now - time;
+                    time = now;
+                    lineCount++;
+                }
+                if ( budget != null ){
+                    budget.checkLine(line);
+                }
+                aParser.parseLine(line);
+                if ( timing ){
+                    final long now = System.nanoTime();
+                    lexTime += now - time;
+                    time = now;
+                }
+            }
+            if ( timing ){
+                readTime += System.nanoTime() - time;
+            }
+        } finally {
+            reader.close();
+        }
+        endCollectors();
+        if ( timing ){
+            final long size = aSourceFile.length();
+            MetricsProfiler.add(Phase.READ, readTime);
+            MetricsProfiler.addRead(lineCount, size);
+            record(event, aSourceFile, size, lineCount, readTime, lexTime);
+        }
+    }
+
+    /**
+     * Parses each of the specified code lines by the specified parser.
+     * If the options carry a ParseBudget, each line is checked against it.
+     * <p></p>
+     * The time spent for lexing is recorded in the same way as parse(SourceFile) does;
+     * if the options tell the source file of the lines, the file is recorded with the time spent reading it,
+     * and otherwise the lines are recorded as a code fragment without a path.
+     * 
+     * @param sourceLines array of code lines
+     * @param aParser the parser of each line
+     * @throws ParseAbortedException if the parsing exceeds the ParseBudget of the options
+     */
+    protected void parse(final String[] sourceLines, final LineParser aParser)
+    {
+        final ParseBudget budget = options.getBudget();
+        final FileMeasurementEvent event = new FileMeasurementEvent();
+        final boolean timing = MetricsProfiler.enabled() || event.isEnabled();
+
+        beginCollectors(null);
+        if ( budget != null ){
+            budget.begin();
+        }
+        event.begin();
+        final long start = timing ? System.nanoTime() : 0L;
+        for ( int i = 0; i < sourceLines.length; i++ ){
+            if ( budget != null ){
+                budget.checkLine(sourceLines[i]);
+            }
+            aParser.parseLine(sourceLines[i]);
+        }
+        final long lexTime = timing ? System.nanoTime() - start : 0L;
+        endCollectors();
+        if ( timing ){
+            final SourceFile sourceFile = options.getSourceFile();
+            long size = 0;
+            for ( int i = 0; sourceFile == null && i < sourceLines.length; i++ ){
+                size += sourceLines[i].length() + 1;
+            }
+            record(event, sourceFile, sourceFile != null ? sourceFile.length() : size, sourceLines.length, 
+                   options.getReadNanos(), lexTime);
+        }
+    }
+
+    /**
+     * Records the time spent for lexing by MetricsProfiler,
+     * and commits the event of the file if it takes longer than the threshold.
+     */
+    private static void record(final FileMeasurementEvent anEvent, final SourceFile aSourceFile, final long aSize,
+                               final long aLineCount, final long aReadTime, final long aLexTime)
+    {
+        MetricsProfiler.add(Phase.LEX, aLexTime);
+
+        anEvent.end();
+        if ( anEvent.shouldCommit() && FileMeasurementEvent.exceedsThreshold(aReadTime + aLexTime) ){
+            if ( aSourceFile != null ){
+                anEvent.path = aSourceFile.getPath();
+                LanguageProvider language = LanguageRegistry.lookup(aSourceFile);
+                anEvent.language = language != null ? language.getName() : aSourceFile.getExtension();
+            }
+            anEvent.size = aSize;
+            anEvent.lineCount = aLineCount;
+            anEvent.readDuration = aReadTime;
+            anEvent.lexDuration = aLexTime;
+            anEvent.commit();
+        }
+    }
+
+    /**
+     * Sets the collectors which are called while this code map parses the source code;
+     * this must be called before parse().
+     * 
+     * @param someCollectors the collectors (may be null or empty)
+     */
+    protected void setCollectors(final MetricCollector[] someCollectors)
+    {
+        collectors = someCollectors != null ? someCollectors.clone() : NO_COLLECTORS;
+    }
+
+    /**
+     * Sets the options of the parsing (e.g., the ParseBudget which limits it,
+     * and the source file from which the lines given to parse(String[]) were read);
+     * this must be called before parse().
+     * 
+     * @param someOptions the options (null for ParseOptions.NONE)
+     */
+    protected void setOptions(final ParseOptions someOptions)
+    {
+        options = someOptions != null ? someOptions : ParseOptions.NONE;
+    }
+
+    /**
+     * Passes a parsed source line and its code map to the collectors;
+     * a subclass calls this at the end of the parsing of each line.
+     * Nothing is done if no collector is attached.
+     * 
+     * @param aSourceLine the source line
+     * @param aMap the code map of the line
+     */
+    protected void emitLine(final String aSourceLine, final CharSequence aMap)
+    {
+        if ( collectors.length == 0 ){
+            return;
+        }
+        final char code = CodeLineMap.CODE.charAt(0);
+        final char blank = CodeLineMap.BLANK.charAt(0);
+        int codeCount = 0;
+        int blankCount = 0;
+        int begin = 0;
+        final int length = Math.min(aSourceLine.length(), aMap.length());
+        for ( int i = 0; i < length; i++ ){
+            final char type = aMap.charAt(i);
+            if ( type == code ){
+                codeCount++;
+            }
+            else if ( type == blank ){
+                blankCount++;
+            }
+            if ( i + 1 == length || aMap.charAt(i + 1) != type ){
+                for ( int j = 0; j < collectors.length; j++ ){
+                    collectors[j].span(aSourceLine, begin, i + 1, type);
+                }
+                begin = i + 1;
+            }
+        }
+        for ( int j = 0; j < collectors.length; j++ ){
+            collectors[j].endLine(aSourceLine, aMap, codeCount, blankCount);
+        }
+    }
+
+    private void beginCollectors(final SourceFile aSourceFile)
+    {
+        for ( int j = 0; j < collectors.length; j++ ){
+            collectors[j].beginFile(aSourceFile);
+        }
+    }
+
+    private void endCollectors()
+    {
+        for ( int j = 0; j < collectors.length; j++ ){
+            collectors[j].endFile();
+        }
+    }
+
     /**
      * Appends the specified CodeLineMap object to the end of this cod map.
      * 
@@ -76,6 +309,14 @@ public abstract class CodeMap
         lines.add(aLineMap);
     }
       
+    private static final MetricCollector[] NO_COLLECTORS = new MetricCollector[0];
+
+    /** the collectors called while parsing */
+    private MetricCollector[] collectors = NO_COLLECTORS;
+
+    /** the options of the parsing */
+    private ParseOptions options = ParseOptions.NONE;
+
     /** 
      * list of CodeLineMap objects
      */
@@ -4,13 +4,12 @@ import java.io.IOException;
 
 import org.computer.aman.io.sourcecode.NotSupportedSourceFileExeption;
 import org.computer.aman.io.sourcecode.SourceFile;
-import org.computer.aman.metrics.util.c.CodeMapForC;
-import org.computer.aman.metrics.util.java.CodeMapForJava;
 
 /**
  * A class designed to produce a CodeMap object.
- * The produced CodeMap is a CodeMapForJava object or a CodeMapForC object;
- * The selection is decided by the file extension of the specified source file. 
+ * The produced CodeMap is created by the LanguageProvider registered to LanguageRegistry 
+ * for the file extension of the specified source file
+ * (e.g., a CodeMapForJava object or a CodeMapForC object).
  * 
  * @author Hirohisa AMAN &lt;aman@computer.org&gt;
  */
@@ -20,20 +19,83 @@ public class CodeMapFactory
      * Produces a CodeMap object which is appropriate to the specified source file.
      * 
      * @param aSourceFile source file from which the code map is produced
+     * @param someCollectors the collectors called while the source file is parsed
      * @return CodeMap object
      * @throws NotSupportedSourceFileExeption if the specified source file is in not supported language
      * @throws IOException if an IO exception occurred 
      */
-    public static CodeMap create(final SourceFile aSourceFile) 
+    public static CodeMap create(final SourceFile aSourceFile, final MetricCollector... someCollectors) 
     throws NotSupportedSourceFileExeption, IOException
     {
-        if ( aSourceFile.isJavaFile() ){
-            return new CodeMapForJava(aSourceFile);
-        }
-        if ( aSourceFile.isCFile() ){
-            return new CodeMapForC(aSourceFile);
+        return providerOf(aSourceFile).create(aSourceFile, someCollectors);
+    }
+
+    /**
+     * Produces a CodeMap object which is appropriate to the specified source file, parsing it with the specified options.
+     * 
+     * @param aSourceFile source file from which the code map is produced
+     * @param someOptions the options of the parsing (e.g., a ParseBudget)
+     * @param someCollectors the collectors called while the source file is parsed
+     * @return CodeMap object
+     * @throws NotSupportedSourceFileExeption if the specified source file is in not supported language
+     * @throws IOException if an IO exception occurred 
+     * @throws ParseAbortedException if the parsing exceeds the ParseBudget of the options
+     */
+    public static CodeMap create(final SourceFile aSourceFile, final ParseOptions someOptions, final MetricCollector... someCollectors) 
+    throws NotSupportedSourceFileExeption, IOException
+    {
+        return providerOf(aSourceFile).create(aSourceFile, someOptions, someCollectors);
+    }
+
+    /**
+     * Produces a CodeMap object which is appropriate to the specified source file,
+     * from the lines of the file which have already been read.
+     * 
+     * @param aSourceFile source file whose language decides the type of the code map
+     * @param sourceLines array of the lines of the source file
+     * @param someCollectors the collectors called while the lines are parsed
+     * @return CodeMap object
+     * @throws NotSupportedSourceFileExeption if the specified source file is in not supported language
+     */
+    public static CodeMap create(final SourceFile aSourceFile, final String[] sourceLines, final MetricCollector... someCollectors) 
+    throws NotSupportedSourceFileExeption
+    {
+        return providerOf(aSourceFile).create(sourceLines, someCollectors);
+    }
+
+    /**
+     * Produces a CodeMap object which is appropriate to the specified source file,
+     * from the lines of the file which have already been read, parsing them with the specified options.
+     * 
+     * @param aSourceFile source file whose language decides the type of the code map
+     * @param sourceLines array of the lines of the source file
+     * @param someOptions the options of the parsing (e.g., a ParseBudget)
+     * @param someCollectors the collectors called while the lines are parsed
+     * @return CodeMap object
+     * @throws NotSupportedSourceFileExeption if the specified source file is in not supported language
+     * @throws ParseAbortedException if the parsing exceeds the ParseBudget of the options
+     */
+    public static CodeMap create(final SourceFile aSourceFile, final String[] sourceLines, 
+                                 final ParseOptions someOptions, final MetricCollector... someCollectors) 
+    throws NotSupportedSourceFileExeption
+    {
+        return providerOf(aSourceFile).create(sourceLines, someOptions, someCollectors);
+    }
+
+    /**
+     * Returns the LanguageProvider for the specified source file.
+     * 
+     * @param aSourceFile source file
+     * @return the LanguageProvider for the source file
+     * @throws NotSupportedSourceFileExeption if the specified source file is in not supported language
+     */
+    public static LanguageProvider providerOf(final SourceFile aSourceFile)
+    throws NotSupportedSourceFileExeption
+    {
+        LanguageProvider provider = LanguageRegistry.lookup(aSourceFile);
+        if ( provider == null ){
+            throw new NotSupportedSourceFileExeption("not supported file type: " + aSourceFile);
         }
-        
-        return null;
+        return provider;
     }
 }
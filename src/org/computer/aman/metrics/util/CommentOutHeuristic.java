@@ -0,0 +1,48 @@
+package org.computer.aman.metrics.util;
+
+/**
+ * A heuristic which decides whether a comment seems to be commented code (comment-out code).
+ * <p></p>
+ * A heuristic works on character ranges of the source text, without copying them.
+ * An EOL comment is classified at once by isCommentOut(); 
+ * a traditional comment is classified incrementally: beginBlock() is called at its beginning,
+ * append() for each character of its content, and endBlock() at its end,
+ * so that the decision can be made without keeping the content of a large comment.
+ * <p></p>
+ * A heuristic keeps the state of the current traditional comment, 
+ * so that an instance must not be shared among code maps which are produced at the same time.
+ * 
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public interface CommentOutHeuristic
+{
+    /**
+     * Returns true if the content of a comment in the specified range seems to be commented code.
+     * 
+     * @param aText text containing the comment
+     * @param aBegin the beginning index of the comment content (inclusive)
+     * @param anEnd the ending index of the comment content (exclusive)
+     * @return true if the content seems to be commented code
+     */
+    public boolean isCommentOut(final CharSequence aText, final int aBegin, final int anEnd);
+
+    /**
+     * Starts the classification of a traditional comment.
+     */
+    public void beginBlock();
+
+    /**
+     * Receives a character of the content of the current traditional comment
+     * (the comment starting symbols and the ending symbols are not passed).
+     * 
+     * @param aChar a character of the content
+     */
+    public void append(final char aChar);
+
+    /**
+     * Ends the classification of the current traditional comment.
+     * 
+     * @return true if the content seems to be commented code
+     */
+    public boolean endBlock();
+}
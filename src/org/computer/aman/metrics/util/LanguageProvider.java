@@ -0,0 +1,98 @@
+package org.computer.aman.metrics.util;
+
+import java.io.IOException;
+
+import org.computer.aman.io.sourcecode.SourceFile;
+
+/**
+ * A provider of code maps for a programming language.
+ * <p></p>
+ * A provider is registered to the LanguageRegistry either by LanguageRegistry.register()
+ * or by listing its class name in "META-INF/services/org.computer.aman.metrics.util.LanguageProvider",
+ * so that a new language can be supported without modifying CodeMapFactory.
+ * 
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public interface LanguageProvider
+{
+    /**
+     * Returns the name of the language.
+     * 
+     * @return the name of the language
+     */
+    public String getName();
+
+    /**
+     * Returns the file extensions of the language (without ".", in lower case).
+     * 
+     * @return the file extensions of the language
+     */
+    public String[] getExtensions();
+
+    /**
+     * Creates a code map of the specified source file.
+     * 
+     * @param aSourceFile the source file
+     * @param someCollectors the collectors called while the source file is parsed
+     * @return the code map
+     * @throws IOException if the reading of the source file is failed.
+     */
+    public CodeMap create(final SourceFile aSourceFile, final MetricCollector... someCollectors)
+    throws IOException;
+
+    /**
+     * Creates a code map of the specified code fragment.
+     * 
+     * @param sourceLines array of code lines
+     * @param someCollectors the collectors called while the code fragment is parsed
+     * @return the code map
+     */
+    public CodeMap create(final String[] sourceLines, final MetricCollector... someCollectors);
+
+    /**
+     * Creates a code map of the specified source file, parsing it with the specified options.
+     * <p></p>
+     * A provider should override this method to pass the options to its code map.
+     * Otherwise, only the size of the file is checked against the ParseBudget of the options
+     * before the code map is created by create(SourceFile, MetricCollector...).
+     * 
+     * @param aSourceFile the source file
+     * @param someOptions the options of the parsing (null for ParseOptions.NONE)
+     * @param someCollectors the collectors called while the source file is parsed
+     * @return the code map
+     * @throws IOException if the reading of the source file is failed.
+     * @throws ParseAbortedException if the parsing exceeds the ParseBudget of the options
+     */
+    public default CodeMap create(final SourceFile aSourceFile, final ParseOptions someOptions, final MetricCollector... someCollectors)
+    throws IOException
+    {
+        if ( someOptions != null && someOptions.getBudget() != null ){
+            someOptions.getBudget().checkFile(aSourceFile);
+        }
+        return create(aSourceFile, someCollectors);
+    }
+
+    /**
+     * Creates a code map of the specified code fragment, parsing it with the specified options.
+     * <p></p>
+     * A provider should override this method to pass the options to its code map.
+     * Otherwise, all the lines are checked against the ParseBudget of the options
+     * before the code map is created by create(String[], MetricCollector...).
+     * 
+     * @param sourceLines array of code lines
+     * @param someOptions the options of the parsing (null for ParseOptions.NONE)
+     * @param someCollectors the collectors called while the code fragment is parsed
+     * @return the code map
+     * @throws ParseAbortedException if the parsing exceeds the ParseBudget of the options
+     */
+    public default CodeMap create(final String[] sourceLines, final ParseOptions someOptions, final MetricCollector... someCollectors)
+    {
+        if ( someOptions != null && someOptions.getBudget() != null ){
+            someOptions.getBudget().begin();
+            for ( int i = 0; i < sourceLines.length; i++ ){
+                someOptions.getBudget().checkLine(sourceLines[i]);
+            }
+        }
+        return create(sourceLines, someCollectors);
+    }
+}
@@ -0,0 +1,109 @@
+package org.computer.aman.metrics.util;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.computer.aman.metrics.util.c.LanguageForC;
+import org.computer.aman.metrics.util.java.LanguageForJava;
+
+/**
+ * A registry of the supported programming languages, which maps a file extension to a LanguageProvider.
+ * <p></p>
+ * The providers of Java and C/C++ are always registered; 
+ * the other providers are found by java.util.ServiceLoader when this class is initialized,
+ * or registered by register().
+ * Finding the provider of a file costs a single hash lookup.
+ * 
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class LanguageRegistry
+{
+    private LanguageRegistry()
+    {
+    }
+
+    /**
+     * Registers the specified provider for all of its extensions.
+     * A provider registered later replaces the earlier one for the same extension.
+     * 
+     * @param aProvider the provider to be registered
+     */
+    public static void register(final LanguageProvider aProvider)
+    {
+        String[] extensions = aProvider.getExtensions();
+        for ( int i = 0; i < extensions.length; i++ ){
+            PROVIDERS.put(extensions[i].toLowerCase(Locale.ROOT), aProvider);
+        }
+    }
+
+    /**
+     * Returns the provider for the specified file.
+     * 
+     * @param aFile the file
+     * @return the provider, or null if the language of the file is not supported
+     */
+    public static LanguageProvider lookup(final File aFile)
+    {
+        return lookup(aFile.getName());
+    }
+
+    /**
+     * Returns the provider for the specified file name.
+     * 
+     * @param aFileName the file name (or the path)
+     * @return the provider, or null if the language of the file is not supported
+     */
+    public static LanguageProvider lookup(final String aFileName)
+    {
+        int index = aFileName.lastIndexOf('.');
+        int separator = Math.max(aFileName.lastIndexOf('/'), aFileName.lastIndexOf(File.separatorChar));
+        String extension = aFileName.substring(Math.max(index, separator) + 1);
+
+        LanguageProvider provider = PROVIDERS.get(extension);
+        if ( provider == null ){
+            String lowerCase = extension.toLowerCase(Locale.ROOT);
+            if ( !lowerCase.equals(extension) ){
+                provider = PROVIDERS.get(lowerCase);
+            }
+        }
+        return provider;
+    }
+
+    /**
+     * Returns all registered providers (each provider once, even if it has two or more extensions).
+     * 
+     * @return the registered providers
+     */
+    public static Collection<LanguageProvider> getProviders()
+    {
+        return Collections.unmodifiableCollection(new HashSet<LanguageProvider>(PROVIDERS.values()));
+    }
+
+    /**
+     * Returns true if the language of the specified file is supported.
+     * 
+     * @param aFile the file
+     * @return true if the language of the file is supported
+     */
+    public static boolean isSupported(final File aFile)
+    {
+        return lookup(aFile) != null;
+    }
+
+    /** map from a file extension (in lower case) to the provider */
+    private static final ConcurrentHashMap<String, LanguageProvider> PROVIDERS = new ConcurrentHashMap<String, LanguageProvider>();
+
+    static {
+        register(new LanguageForJava());
+        register(new LanguageForC());
+        for (Iterator<LanguageProvider> itr = ServiceLoader.load(LanguageProvider.class).iterator(); itr.hasNext(); ){
+            register(itr.next());
+        }
+    }
+}
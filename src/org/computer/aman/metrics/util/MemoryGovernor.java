@@ -0,0 +1,181 @@
+package org.computer.aman.metrics.util;
+
+import java.util.Iterator;
+
+import org.computer.aman.io.sourcecode.SourceCodeLine;
+
+/**
+ * A global accountant of the approximate memory held by the measurement:
+ * the files in flight (their lines, code maps and LOC objects, estimated from their sizes by estimateFile()),
+ * and the results (LOC objects) kept alive.
+ * <p></p>
+ * The memory is accounted in two ways:
+ * <ul>
+ * <li>acquire() / release() for the files in flight; acquire() blocks while the budget is exceeded,
+ *     which applies backpressure to the reader. It never blocks when no file is in flight,
+ *     so that a file larger than the budget is still processed, one at a time.</li>
+ * <li>charge() / discharge() for the retained results; they never block, 
+ *     and the holder of the results is expected to spill them when isOverBudget() turns true.</li>
+ * </ul>
+ * The sizes are estimated by the estimate methods, from the numbers of lines and characters,
+ * assuming compressed references and compact (Latin-1) strings.
+ * The methods are thread-safe.
+ * 
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class MemoryGovernor
+{
+    /**
+     * Creates a governor.
+     * 
+     * @param aBudget the memory budget in bytes
+     */
+    public MemoryGovernor(final long aBudget)
+    {
+        if ( aBudget <= 0 ){
+            throw new IllegalArgumentException("must be positive : " + aBudget);
+        }
+        budget = aBudget;
+    }
+
+    /**
+     * Accounts the memory for a file in flight, waiting while the budget is exceeded.
+     * 
+     * @param aBytes the estimated size
+     * @throws InterruptedException if the current thread is interrupted while waiting
+     */
+    public synchronized void acquire(final long aBytes)
+    throws InterruptedException
+    {
+        while ( inFlightCount > 0 && inFlight + retained + aBytes > budget ){
+            waiting++;
+            try {
+                wait();
+            } finally {
+                waiting--;
+            }
+        }
+        inFlight += aBytes;
+        inFlightCount++;
+    }
+
+    /**
+     * Releases the memory of a file in flight.
+     * 
+     * @param aBytes the size given to acquire()
+     */
+    public synchronized void release(final long aBytes)
+    {
+        inFlight -= aBytes;
+        inFlightCount--;
+        notifyAll();
+    }
+
+    /**
+     * Accounts the memory of a retained result.
+     * 
+     * @param aBytes the estimated size
+     */
+    public synchronized void charge(final long aBytes)
+    {
+        retained += aBytes;
+    }
+
+    /**
+     * Releases the memory of a retained result (e.g., after it has been spilled).
+     * 
+     * @param aBytes the size given to charge()
+     */
+    public synchronized void discharge(final long aBytes)
+    {
+        retained -= aBytes;
+        notifyAll();
+    }
+
+    /**
+     * Returns true if the accounted memory exceeds the budget, or a reader is waiting for memory.
+     * 
+     * @return true if the retained results should be spilled
+     */
+    public synchronized boolean isOverBudget()
+    {
+        return inFlight + retained > budget || waiting > 0;
+    }
+
+    /**
+     * Returns the accounted memory.
+     * 
+     * @return the accounted memory in bytes
+     */
+    public synchronized long getUsed()
+    {
+        return inFlight + retained;
+    }
+
+    /**
+     * Returns the budget.
+     * 
+     * @return the budget in bytes
+     */
+    public long getBudget()
+    {
+        return budget;
+    }
+
+    /**
+     * Estimates the memory for reading, lexing and measuring a file of the specified size:
+     * the lines, the code map and the LOC object.
+     * 
+     * @param aFileSize the size of the file in bytes
+     * @return the estimated size in bytes
+     */
+    public static long estimateFile(final long aFileSize)
+    {
+        final long lines = aFileSize / AVERAGE_LINE_LENGTH + 1;
+        return lines * (LINE_OVERHEAD + MAP_LINE_OVERHEAD + RESULT_LINE_OVERHEAD) + aFileSize * 2;
+    }
+
+    /**
+     * Estimates the memory of a measurement result holding the specified lines (e.g., a LOC object).
+     * 
+     * @param someLines the lines held by the result
+     * @return the estimated size in bytes
+     */
+    public static long estimate(final Iterator<SourceCodeLine> someLines)
+    {
+        long size = OBJECT_OVERHEAD;
+        while ( someLines.hasNext() ){
+            size += RESULT_LINE_OVERHEAD + LINE_OVERHEAD + someLines.next().getContents().length();
+        }
+        return size;
+    }
+
+    /** the assumed average length of a line (for estimating the number of lines from a size) */
+    private static final int AVERAGE_LINE_LENGTH = 32;
+
+    /** a String and the reference to it, excluding its characters */
+    private static final int LINE_OVERHEAD = 44;
+
+    /** a CodeLineMap and its map, excluding the characters of the map */
+    private static final int MAP_LINE_OVERHEAD = 64;
+
+    /** a small object with a list */
+    private static final int OBJECT_OVERHEAD = 64;
+
+    /** a SourceCodeLine and the reference to it */
+    private static final int RESULT_LINE_OVERHEAD = 28;
+
+    private final long budget;
+
+    /** the memory of the files in flight */
+    private long inFlight;
+
+    /** the number of the files in flight */
+    private int inFlightCount;
+
+    /** the memory of the retained results */
+    private long retained;
+
+    /** the number of the threads waiting in acquire() */
+    private int waiting;
+}
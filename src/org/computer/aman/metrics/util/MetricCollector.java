@@ -0,0 +1,54 @@
+package org.computer.aman.metrics.util;
+
+import org.computer.aman.io.sourcecode.SourceFile;
+
+/**
+ * A collector of a metric, which is called by a CodeMap while it parses the source code.
+ * <p></p>
+ * Any number of collectors can be attached to a code map when it is created,
+ * and all of them run in the same pass over the source code,
+ * so that adding a metric never adds another read of the file.
+ * For each source line, span() is called for each run of characters of the same type,
+ * and then endLine() is called.
+ * <p></p>
+ * The types are the code map elements (CodeLineMap.BLANK, CodeLineMap.CODE and
+ * the comment types defined by the subclasses of CodeLineMap).
+ * Note that the lines of a traditional comment spanning two or more lines are reported as they are parsed,
+ * i.e., as a traditional comment, even if the whole comment is classified as commented code at its end.
+ * 
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public interface MetricCollector
+{
+    /**
+     * Called before the first line is parsed.
+     * 
+     * @param aSourceFile the source file (null for a code fragment)
+     */
+    public void beginFile(final SourceFile aSourceFile);
+
+    /**
+     * Receives a run of characters of the same type.
+     * 
+     * @param aLine the source line
+     * @param aBegin the beginning index of the run (inclusive)
+     * @param anEnd the ending index of the run (exclusive)
+     * @param aType the type of the characters (a code map element)
+     */
+    public void span(final String aLine, final int aBegin, final int anEnd, final char aType);
+
+    /**
+     * Called at the end of each source line.
+     * 
+     * @param aLine the source line
+     * @param aMap the code map of the line
+     * @param aCodeCount the number of CODE characters in the line
+     * @param aBlankCount the number of BLANK characters in the line
+     */
+    public void endLine(final String aLine, final CharSequence aMap, final int aCodeCount, final int aBlankCount);
+
+    /**
+     * Called after the last line has been parsed.
+     */
+    public void endFile();
+}
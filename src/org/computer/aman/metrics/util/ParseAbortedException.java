@@ -0,0 +1,36 @@
+package org.computer.aman.metrics.util;
+
+/**
+ * Signals that the parsing of a source file was aborted by its ParseBudget,
+ * or that the file was skipped by a SniffPolicy.
+ * <p></p>
+ * This is an unchecked exception, so that it passes through the constructors of code maps
+ * and LanguageProvider.create() as it is; the reason tells why the file was skipped.
+ * 
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class ParseAbortedException extends RuntimeException
+{
+    /** the reasons of aborting */
+    public enum Reason { FILE_TOO_LARGE, LINE_TOO_LONG, TIMEOUT, CANCELLED, SKIPPED }
+
+    public ParseAbortedException(final Reason aReason, final String aMessage)
+    {
+        super(aReason + " : " + aMessage);
+        reason = aReason;
+    }
+
+    /**
+     * Returns the reason why the parsing was aborted.
+     * 
+     * @return the reason
+     */
+    public Reason getReason()
+    {
+        return reason;
+    }
+
+    private final Reason reason;
+
+    private static final long serialVersionUID = 2026101901L;
+}
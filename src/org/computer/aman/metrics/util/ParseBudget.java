@@ -0,0 +1,164 @@
+package org.computer.aman.metrics.util;
+
+import java.io.File;
+
+/**
+ * Limits of the size, the line length and the time for parsing a source file, with cooperative cancellation.
+ * <p></p>
+ * A budget is given to a code map by ParseOptions, and the code map checks it
+ * before parsing each line; when a limit is exceeded, or when the budget has been cancelled
+ * (or the parsing thread has been interrupted), the parsing is aborted by a ParseAbortedException.
+ * Since no line longer than the line limit is parsed, a file costs at most
+ * the time limit plus the time for parsing a single line of the maximum length,
+ * no matter how pathological it is (e.g., a minified blob, a binary, or a multi-MB single line).
+ * <p></p>
+ * A budget is for a single file: the time limit counts from start(), 
+ * which is called at the beginning of the parsing if it has not been called yet.
+ * cancel() may be called from any thread.
+ * 
+ * <p></p>
+ * <u><b>(Example) measuring a file within 1MB, 10,000 characters per line and 2 seconds.</b></u>
+ * <pre>
+ * LOC <i>result</i> = LOCCounter.measure(<i>file</i>, new ParseBudget(1 &lt;&lt; 20, 10000, 2000));
+ * </pre>
+ * 
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class ParseBudget
+{
+    /**
+     * Creates a budget; a non-positive limit means no limit.
+     * 
+     * @param aMaxBytes the maximum size of a file in bytes (characters, for lines already read)
+     * @param aMaxLineLength the maximum number of characters of a line
+     * @param aMaxMillis the maximum time for a file in milliseconds
+     */
+    public ParseBudget(final long aMaxBytes, final int aMaxLineLength, final long aMaxMillis)
+    {
+        maxBytes = aMaxBytes > 0 ? aMaxBytes : Long.MAX_VALUE;
+        maxLineLength = aMaxLineLength > 0 ? aMaxLineLength : Integer.MAX_VALUE;
+        maxNanos = aMaxMillis > 0 ? aMaxMillis * 1000000L : Long.MAX_VALUE;
+    }
+
+    /**
+     * Starts the clock of the time limit; calling this again has no effect.
+     */
+    public void start()
+    {
+        if ( !started ){
+            started = true;
+            startTime = System.nanoTime();
+        }
+    }
+
+    /**
+     * Cancels the parsing; the parsing is aborted before the next line.
+     */
+    public void cancel()
+    {
+        cancelled = true;
+    }
+
+    /**
+     * Returns true if the budget has been cancelled.
+     * 
+     * @return true if the budget has been cancelled
+     */
+    public boolean isCancelled()
+    {
+        return cancelled;
+    }
+
+    /**
+     * Checks the size of a file before it is read.
+     * 
+     * @param aFile the file
+     * @throws ParseAbortedException if the file is larger than the limit
+     */
+    public void checkFile(final File aFile)
+    {
+        start();
+        final long size = aFile.length();
+        if ( size > maxBytes ){
+            throw new ParseAbortedException(ParseAbortedException.Reason.FILE_TOO_LARGE, 
+                                            aFile.getPath() + " (" + size + " bytes)");
+        }
+    }
+
+    /**
+     * Checks the budget before a line is parsed.
+     * 
+     * @param aLine the line to be parsed
+     * @throws ParseAbortedException if any limit is exceeded, or if the budget has been cancelled
+     */
+    public void checkLine(final String aLine)
+    {
+        checkLine(aLine.length());
+    }
+
+    /**
+     * Checks the budget before a line of the specified length is parsed (or counted).
+     * 
+     * @param aLength the number of characters of the line
+     * @throws ParseAbortedException if any limit is exceeded, or if the budget has been cancelled
+     */
+    public void checkLine(final int aLength)
+    {
+        if ( cancelled || Thread.currentThread().isInterrupted() ){
+            throw new ParseAbortedException(ParseAbortedException.Reason.CANCELLED, "line " + (lineCount + 1));
+        }
+        lineCount++;
+        if ( aLength > maxLineLength ){
+            throw new ParseAbortedException(ParseAbortedException.Reason.LINE_TOO_LONG, 
+                                            "line " + lineCount + " (" + aLength + " characters)");
+        }
+        characterCount += aLength + 1;
+        if ( characterCount > maxBytes ){
+            throw new ParseAbortedException(ParseAbortedException.Reason.FILE_TOO_LARGE, 
+                                            "more than " + maxBytes + " characters");
+        }
+        if ( maxNanos != Long.MAX_VALUE && System.nanoTime() - startTime > maxNanos ){
+            throw new ParseAbortedException(ParseAbortedException.Reason.TIMEOUT, 
+                                            "line " + lineCount + " (" + maxNanos / 1000000L + " ms)");
+        }
+    }
+
+    /**
+     * Returns the maximum number of characters of a line.
+     * 
+     * @return the maximum line length (Integer.MAX_VALUE for no limit)
+     */
+    public int getMaxLineLength()
+    {
+        return maxLineLength;
+    }
+
+    /**
+     * Starts the clock if it has not been started, and resets the counts of the lines and the characters;
+     * a code map calls this at the beginning of the parsing.
+     */
+    public void begin()
+    {
+        start();
+        lineCount = 0;
+        characterCount = 0;
+    }
+
+    private volatile boolean cancelled;
+
+    /** the number of characters checked so far (including the line terminators) */
+    private long characterCount;
+
+    /** the number of lines checked so far */
+    private int lineCount;
+
+    private final long maxBytes;
+
+    private final int maxLineLength;
+
+    private final long maxNanos;
+
+    private boolean started;
+
+    private long startTime;
+}
@@ -0,0 +1,98 @@
+package org.computer.aman.metrics.util;
+
+import org.computer.aman.io.sourcecode.SourceFile;
+
+/**
+ * Options for parsing a source file, which are given to a code map apart from its collectors.
+ * <p></p>
+ * The options carry the ParseBudget which limits the parsing, and the origin of the lines:
+ * when the lines have been read by the caller (e.g., by a MeasurementPipeline or a PrefetchingReader)
+ * rather than by the code map, the source file and the time spent reading it let the code map
+ * report the file to MetricsProfiler and FileMeasurementEvent in the same way as a file it reads by itself.
+ * Since the options are not a MetricCollector, a code map with options but no collector
+ * does not pass its lines to any collector.
+ *
+ * <p></p>
+ * <u><b>(Example 1) producing a code map within a budget.</b></u>
+ * <pre>
+ * ParseOptions <i>options</i> = new ParseOptions(new ParseBudget(1 &lt;&lt; 20, 10000, 2000));
+ * CodeMap <i>map</i> = CodeMapFactory.create(<i>file</i>, <i>options</i>, <i>collector</i>);
+ * </pre>
+ *
+ * <p></p>
+ * <u><b>(Example 2) lexing lines read beforehand.</b></u>
+ * <pre>
+ * ParseOptions <i>options</i> = new ParseOptions(null, <i>file</i>, <i>readNanos</i>);
+ * CodeMap <i>map</i> = CodeMapFactory.create(<i>file</i>, <i>lines</i>, <i>options</i>, <i>collector</i>);
+ * </pre>
+ *
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class ParseOptions
+{
+    /** the options without a budget */
+    public static final ParseOptions NONE = new ParseOptions(null);
+
+    /**
+     * Creates options with the specified budget.
+     *
+     * @param aBudget the budget which limits the parsing (null for no budget)
+     */
+    public ParseOptions(final ParseBudget aBudget)
+    {
+        this(aBudget, null, 0L);
+    }
+
+    /**
+     * Creates options with the specified budget, for the lines read from the specified source file.
+     *
+     * @param aBudget the budget which limits the parsing (null for no budget)
+     * @param aSourceFile the source file from which the lines were read (null for a code fragment)
+     * @param aReadNanos the time spent reading the lines in nanoseconds
+     */
+    public ParseOptions(final ParseBudget aBudget, final SourceFile aSourceFile, final long aReadNanos)
+    {
+        budget = aBudget;
+        sourceFile = aSourceFile;
+        readNanos = aReadNanos;
+    }
+
+    /**
+     * Returns the budget which limits the parsing.
+     *
+     * @return the budget (null for no budget)
+     */
+    public ParseBudget getBudget()
+    {
+        return budget;
+    }
+
+    /**
+     * Returns the time spent reading the lines.
+     *
+     * @return the time in nanoseconds (0 if the lines were not read by the caller)
+     */
+    public long getReadNanos()
+    {
+        return readNanos;
+    }
+
+    /**
+     * Returns the source file from which the lines were read.
+     *
+     * @return the source file (null if not known)
+     */
+    public SourceFile getSourceFile()
+    {
+        return sourceFile;
+    }
+
+    /** the budget which limits the parsing (null for no budget) */
+    private final ParseBudget budget;
+
+    /** the time spent reading the lines in nanoseconds */
+    private final long readNanos;
+
+    /** the source file from which the lines were read (null if not known) */
+    private final SourceFile sourceFile;
+}
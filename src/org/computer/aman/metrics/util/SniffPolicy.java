@@ -0,0 +1,88 @@
+package org.computer.aman.metrics.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.EnumMap;
+
+import org.computer.aman.io.sourcecode.FileSniffer;
+
+/**
+ * A policy which decides, from the kind guessed by a FileSniffer, how a file is measured.
+ * <p></p>
+ * A file is routed to one of the following:
+ * <ul>
+ * <li>LEX: the full measurement by a code map</li>
+ * <li>COUNT_ONLY: counting the lines and the blank lines without lexing (every non-blank line is counted as code)</li>
+ * <li>SKIP: no measurement</li>
+ * </ul>
+ * The default policy lexes source files, counts generated files,
+ * and skips binary, minified and preprocessed files.
+ * 
+ * <p></p>
+ * <u><b>(Example) lexing generated files as well.</b></u>
+ * <pre>
+ * SniffPolicy <i>policy</i> = new SniffPolicy();
+ * <i>policy</i>.setRoute(FileSniffer.Kind.GENERATED, SniffPolicy.Route.LEX);
+ * LOC <i>result</i> = LOCCounter.measure(<i>file</i>, <i>policy</i>);
+ * </pre>
+ * 
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class SniffPolicy
+{
+    /** the ways of measuring a file */
+    public enum Route { LEX, COUNT_ONLY, SKIP }
+
+    /**
+     * Creates the default policy.
+     */
+    public SniffPolicy()
+    {
+        sniffer = new FileSniffer();
+        routes = new EnumMap<FileSniffer.Kind, Route>(FileSniffer.Kind.class);
+        routes.put(FileSniffer.Kind.SOURCE, Route.LEX);
+        routes.put(FileSniffer.Kind.GENERATED, Route.COUNT_ONLY);
+        routes.put(FileSniffer.Kind.BINARY, Route.SKIP);
+        routes.put(FileSniffer.Kind.MINIFIED, Route.SKIP);
+        routes.put(FileSniffer.Kind.PREPROCESSED, Route.SKIP);
+    }
+
+    /**
+     * Sets the route of the specified kind of files.
+     * 
+     * @param aKind the kind of files
+     * @param aRoute the route
+     */
+    public synchronized void setRoute(final FileSniffer.Kind aKind, final Route aRoute)
+    {
+        routes.put(aKind, aRoute);
+    }
+
+    /**
+     * Returns the route of the specified kind of files.
+     * 
+     * @param aKind the kind of files
+     * @return the route
+     */
+    public synchronized Route getRoute(final FileSniffer.Kind aKind)
+    {
+        return routes.get(aKind);
+    }
+
+    /**
+     * Sniffs the specified file, and returns its kind.
+     * 
+     * @param aFile the file
+     * @return the kind of the file
+     * @throws IOException if the file could not be read
+     */
+    public FileSniffer.Kind sniff(final File aFile)
+    throws IOException
+    {
+        return sniffer.sniff(aFile);
+    }
+
+    private final EnumMap<FileSniffer.Kind, Route> routes;
+
+    private final FileSniffer sniffer;
+}
@@ -0,0 +1,62 @@
+package org.computer.aman.metrics.util;
+
+/**
+ * The default CommentOutHeuristic:
+ * a comment is regarded as commented code if its content ends with "{", "}" or ";",
+ * where white spaces, "*" and a trailing "*&#47;" are omitted.
+ * 
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class TailCharacterHeuristic
+implements CommentOutHeuristic
+{
+    public TailCharacterHeuristic()
+    {
+        tail = ' ';
+    }
+
+    public boolean isCommentOut(final CharSequence aText, final int aBegin, final int anEnd)
+    {
+        int idx = anEnd - 1;
+        while ( idx >= aBegin && Character.isWhitespace(aText.charAt(idx)) ){
+            idx--;
+        }
+        if ( idx - 1 >= aBegin && aText.charAt(idx) == '/' && aText.charAt(idx-1) == '*' ){
+            idx -= 2;
+        }
+        while ( idx >= aBegin && isOmitted(aText.charAt(idx)) ){
+            idx--;
+        }
+        return idx >= aBegin && isTail(aText.charAt(idx));
+    }
+
+    public void beginBlock()
+    {
+        tail = ' ';
+    }
+
+    public void append(final char aChar)
+    {
+        if ( !isOmitted(aChar) ){
+            tail = aChar;
+        }
+    }
+
+    public boolean endBlock()
+    {
+        return isTail(tail);
+    }
+
+    private static boolean isOmitted(final char aChar)
+    {
+        return aChar == '*' || Character.isWhitespace(aChar);
+    }
+
+    private static boolean isTail(final char aChar)
+    {
+        return aChar == '{' || aChar == '}' || aChar == ';';
+    }
+
+    /** the last character of the current traditional comment, except the omitted ones */
+    private char tail;
+}
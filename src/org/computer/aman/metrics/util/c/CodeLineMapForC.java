@@ -78,6 +78,16 @@ extends CodeLineMap
         return eolCommentOutCount;
     }
 
+    /**
+     * Retrieves the number of characters belong to EOL_COMMENT_OUT type or TRADITIONAL_COMMENT_OUT type.
+     * 
+     * @return the number of characters belong to a commented code type
+     */
+    public int getCommentOutCount()
+    {
+        return eolCommentOutCount + traditionalCommentOutCount;
+    }
+
     /**
      * Retrieves the number of characters belong to TRADITIONAL_COMMENT type.
      * 
@@ -0,0 +1,51 @@
+package org.computer.aman.metrics.util.c;
+
+import java.io.IOException;
+
+import org.computer.aman.io.sourcecode.SourceFile;
+import org.computer.aman.metrics.util.CodeMap;
+import org.computer.aman.metrics.util.LanguageProvider;
+import org.computer.aman.metrics.util.MetricCollector;
+import org.computer.aman.metrics.util.ParseOptions;
+import org.computer.aman.metrics.util.TailCharacterHeuristic;
+
+/**
+ * The LanguageProvider of C/C++ and the related files (.c, .cpp, .cc, .cxx, .h, .hpp, .hxx, m, i, ii).
+ * 
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class LanguageForC
+implements LanguageProvider
+{
+    public String getName()
+    {
+        return "C";
+    }
+
+    public String[] getExtensions()
+    {
+        return new String[] { "c", "cpp", "cc", "cxx", "h", "hpp", "hxx", "m", "i", "ii" };
+    }
+
+    public CodeMap create(final SourceFile aSourceFile, final MetricCollector... someCollectors)
+    throws IOException
+    {
+        return new CodeMapForC(aSourceFile, new TailCharacterHeuristic(), someCollectors);
+    }
+
+    public CodeMap create(final String[] sourceLines, final MetricCollector... someCollectors)
+    {
+        return new CodeMapForC(sourceLines, new TailCharacterHeuristic(), someCollectors);
+    }
+
+    public CodeMap create(final SourceFile aSourceFile, final ParseOptions someOptions, final MetricCollector... someCollectors)
+    throws IOException
+    {
+        return new CodeMapForC(aSourceFile, new TailCharacterHeuristic(), someOptions, someCollectors);
+    }
+
+    public CodeMap create(final String[] sourceLines, final ParseOptions someOptions, final MetricCollector... someCollectors)
+    {
+        return new CodeMapForC(sourceLines, new TailCharacterHeuristic(), someOptions, someCollectors);
+    }
+}
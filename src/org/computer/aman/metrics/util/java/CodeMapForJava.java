@@ -1,14 +1,18 @@
 package org.computer.aman.metrics.util.java;
 
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.LineNumberReader;
 import java.util.Iterator;
 import java.util.LinkedList;
 
 import org.computer.aman.io.sourcecode.SourceFile;
+import org.computer.aman.metrics.profile.MetricsProfiler;
+import org.computer.aman.metrics.profile.Phase;
 import org.computer.aman.metrics.util.CodeLineMap;
 import org.computer.aman.metrics.util.CodeMap;
+import org.computer.aman.metrics.util.CommentOutHeuristic;
+import org.computer.aman.metrics.util.MetricCollector;
+import org.computer.aman.metrics.util.ParseOptions;
+import org.computer.aman.metrics.util.TailCharacterHeuristic;
 
 /**
  * A code map representing the content of a Java source code.
@@ -31,12 +35,13 @@ import org.computer.aman.metrics.util.CodeMap;
 public class CodeMapForJava 
 extends CodeMap
 {
-	private CodeMapForJava()
+	private CodeMapForJava(final CommentOutHeuristic aHeuristic)
 	{
 		status = CODE;
 		workingMapList = new LinkedList<String>();
 		workingMap = new StringBuilder();
-		commentContents = new StringBuilder();
+		commentLength = 0;
+		heuristic = aHeuristic;
 	}
 	
     /**
@@ -48,19 +53,51 @@ extends CodeMap
     public CodeMapForJava(final SourceFile aSourceFile) 
     throws IOException
     {
-    	this();
+        this(aSourceFile, new TailCharacterHeuristic());
+    }
+
+    /**
+     * Creates a CodeMap object for a Java source file, 
+     * using the specified heuristic to detect commented code
+     * and calling the specified collectors while parsing.
+     * 
+     * @param aSourceFile the source file 
+     * @param aHeuristic the heuristic to detect commented code
+     * @param someCollectors the collectors called while parsing
+     * @throws IOException if the reading of the source file is failed.
+     */
+    public CodeMapForJava(final SourceFile aSourceFile, final CommentOutHeuristic aHeuristic, final MetricCollector... someCollectors) 
+    throws IOException
+    {
+        this(aSourceFile, aHeuristic, ParseOptions.NONE, someCollectors);
+    }
+
+    /**
+     * Creates a CodeMap object for a Java source file, 
+     * using the specified heuristic to detect commented code,
+     * parsing with the specified options and calling the specified collectors while parsing.
+     * 
+     * @param aSourceFile the source file 
+     * @param aHeuristic the heuristic to detect commented code
+     * @param someOptions the options of the parsing (e.g., a ParseBudget)
+     * @param someCollectors the collectors called while parsing
+     * @throws IOException if the reading of the source file is failed.
+     */
+    public CodeMapForJava(final SourceFile aSourceFile, final CommentOutHeuristic aHeuristic, 
+                          final ParseOptions someOptions, final MetricCollector... someCollectors) 
+    throws IOException
+    {
+    	this(aHeuristic);
+        setOptions(someOptions);
+        setCollectors(someCollectors);
         
-        LineNumberReader reader = new LineNumberReader(new FileReader(aSourceFile));
-        String line = null;
-        while ( (line = reader.readLine()) != null ){
-        	parseLine(line);
-        }
+        parse(aSourceFile, lineParser());
 
+        final long start = MetricsProfiler.start();
         for (Iterator<String> iterator = workingMapList.iterator(); iterator.hasNext();) {
             add(new CodeLineMapForJava(iterator.next()));            
         }
-
-        reader.close();
+        MetricsProfiler.stop(Phase.ASSEMBLE, start);
     }    
 
     /**
@@ -70,11 +107,41 @@ extends CodeMap
      */
     public CodeMapForJava(final String[] sourceLines)
     {
-    	this();
+        this(sourceLines, new TailCharacterHeuristic());
+    }
 
-    	for ( int i = 0; i < sourceLines.length; i++  ){
-        	parseLine(sourceLines[i]);
-        }
+    /**
+     * Creates a CodeMap object for a Java code fragment (String array),
+     * using the specified heuristic to detect commented code
+     * and calling the specified collectors while parsing.
+     * 
+     * @param sourceLines Array of Java code lines
+     * @param aHeuristic the heuristic to detect commented code
+     * @param someCollectors the collectors called while parsing
+     */
+    public CodeMapForJava(final String[] sourceLines, final CommentOutHeuristic aHeuristic, final MetricCollector... someCollectors)
+    {
+        this(sourceLines, aHeuristic, ParseOptions.NONE, someCollectors);
+    }
+
+    /**
+     * Creates a CodeMap object for a Java code fragment (String array),
+     * using the specified heuristic to detect commented code,
+     * parsing with the specified options and calling the specified collectors while parsing.
+     * 
+     * @param sourceLines Array of Java code lines
+     * @param aHeuristic the heuristic to detect commented code
+     * @param someOptions the options of the parsing (e.g., a ParseBudget)
+     * @param someCollectors the collectors called while parsing
+     */
+    public CodeMapForJava(final String[] sourceLines, final CommentOutHeuristic aHeuristic, 
+                          final ParseOptions someOptions, final MetricCollector... someCollectors)
+    {
+    	this(aHeuristic);
+        setOptions(someOptions);
+        setCollectors(someCollectors);
+
+        parse(sourceLines, lineParser());
 
         for (Iterator<String> iterator = workingMapList.iterator(); iterator.hasNext();) {
             add(new CodeLineMapForJava(iterator.next()));            
@@ -89,22 +156,37 @@ extends CodeMap
      */
     public boolean isCommentOut(final String aLine)
     {
-        // Regard the line to be a commented code if the line ends with "{", "}" or ";",
-    	// where "*/" is omitted.
-    	char tail = ' ';
-    	String str = aLine.trim();
-    	if ( str.endsWith("*/") ){
-    		int idx = str.length()-3;
-    		while ( idx >= 0 ){
-    			char ch = str.charAt(idx);
-    			if ( ch != '*' && !Character.isWhitespace(ch) ){
-    				tail = ch;
-    				break;
-    			}
-    			idx--;
-    		}
-    	}
-        return ( tail == '{' || tail == '}' || tail == ';' );
+        return heuristic.isCommentOut(aLine, 0, aLine.length());
+    }
+    
+    /**
+     * Classifies the EOL comment content from the specified index to the end of the line,
+     * and records the time as Phase.COMMENT_OUT.
+     * 
+     * @param aLine the source line
+     * @param aBegin the beginning index of the comment content
+     * @return true if the comment seems to be commented code
+     */
+    private boolean detectCommentOut(final String aLine, final int aBegin)
+    {
+        final long start = MetricsProfiler.start();
+        final boolean result = heuristic.isCommentOut(aLine, aBegin, aLine.length());
+        MetricsProfiler.stop(Phase.COMMENT_OUT, start);
+        return result;
+    }
+    
+    /**
+     * Ends the classification of the current traditional comment,
+     * and records the time as Phase.COMMENT_OUT.
+     * 
+     * @return true if the comment seems to be commented code
+     */
+    private boolean detectBlockCommentOut()
+    {
+        final long start = MetricsProfiler.start();
+        final boolean result = heuristic.endBlock();
+        MetricsProfiler.stop(Phase.COMMENT_OUT, start);
+        return result;
     }
     
     /**
@@ -121,6 +203,21 @@ extends CodeMap
         }
     }
     
+    /**
+     * Returns a LineParser which parses each line by parseLine().
+     * 
+     * @return the LineParser of this code map
+     */
+    private LineParser lineParser()
+    {
+        return new LineParser() {
+            public void parseLine(final String aSourceLine)
+            {
+                CodeMapForJava.this.parseLine(aSourceLine);
+            }
+        };
+    }
+
     /**
      * Parses the specified source line and create the corresponding code map.
      * Since a statement or a comment block can be across two or more lines,
@@ -128,7 +225,7 @@ extends CodeMap
      * 
      * @param aSourceLine source line to be parsed
      */
-	private void parseLine( String aSourceLine )
+	private void parseLine( final String aSourceLine )
 	{
         int idx = 0;
         while ( idx < aSourceLine.length() ){    
@@ -137,7 +234,8 @@ extends CodeMap
             if ( Character.isWhitespace(ch) ){ 
                 if ( status == TRADITIONAL ){
                 	appendToWorkingMap(CodeLineMapForJava.TRADITIONAL_COMMENT, 1);
-                    commentContents.append(ch);
+                    heuristic.append(ch);
+                    commentLength++;
                 }
                 else if ( status == STRING_LITERAL || status == CHAR_LITERAL ){
                 	appendToWorkingMap(CodeLineMap.CODE, 1);
@@ -154,22 +252,22 @@ extends CodeMap
 
             if ( status == CODE ){ 
                 if ( ch == '/' ){ 
-                    String remainedPart = aSourceLine.substring(idx);
-                    if ( remainedPart.startsWith("//") ){
-                        idx += remainedPart.length();
-                        appendToWorkingMap(isCommentOut(trimComment(remainedPart)) ? CodeLineMapForJava.EOL_COMMENT_OUT : CodeLineMapForJava.EOL_COMMENT, remainedPart.length());
+                    if ( aSourceLine.startsWith("//", idx) ){
+                        final int length = aSourceLine.length() - idx;
+                        appendToWorkingMap(detectCommentOut(aSourceLine, idx + "//".length()) ? CodeLineMapForJava.EOL_COMMENT_OUT : CodeLineMapForJava.EOL_COMMENT, length);
+                        idx += length;
                     }
-                    else if ( remainedPart.startsWith("/**") ){
+                    else if ( aSourceLine.startsWith("/**", idx) ){
                         status = JAVADOC;
                         idx += "/**".length();
                         appendToWorkingMap(CodeLineMapForJava.JAVADOC_COMMENT, "/**".length());
                     }
-                    else if ( remainedPart.startsWith("/*") ){
+                    else if ( aSourceLine.startsWith("/*", idx) ){
                         status = TRADITIONAL;
                         idx += "/*".length();
                         appendToWorkingMap(CodeLineMapForJava.TRADITIONAL_COMMENT, "/*".length());
-                        commentContents.delete(0, commentContents.length());
-                        commentContents.append("/*");
+                        heuristic.beginBlock();
+                        commentLength = "/*".length();
                     }
                     else{
                         idx++;
@@ -193,14 +291,14 @@ extends CodeMap
                 if ( ch == '*' && idx+1 < aSourceLine.length() && aSourceLine.charAt(idx+1) == '/' ){
                     idx += "*/".length();
                     appendToWorkingMap(CodeLineMapForJava.TRADITIONAL_COMMENT, "*/".length());
-                    commentContents.append("*/");
+                    commentLength += "*/".length();
                     status = CODE;
-                    if ( isCommentOut(trimComment(new String(commentContents))) ){
+                    if ( detectBlockCommentOut() ){
                         // replace the consecutive TRADITIONAL_COMMENT elements with TRADITIONAL_COMMENT_OUT elements 
                     	// in the working map
-                        int length = commentContents.length();
+                        int length = commentLength;
                         for ( int i = workingMap.length()-1; i >= 0; i-- ){
-                            workingMap.replace(i, i+1, CodeLineMapForJava.TRADITIONAL_COMMENT_OUT);
+                            workingMap.setCharAt(i, CodeLineMapForJava.TRADITIONAL_COMMENT_OUT.charAt(0));
                             length--;
                             if ( length == 0 ){
                                 break;
@@ -210,13 +308,13 @@ extends CodeMap
                         while ( length > 0 ){
                             StringBuilder buf = new StringBuilder(workingMapList.removeLast());
                             for ( int i = buf.length()-1; i >= 0; i-- ){
-                                buf.replace(i, i+1, CodeLineMapForJava.TRADITIONAL_COMMENT_OUT);
+                                buf.setCharAt(i, CodeLineMapForJava.TRADITIONAL_COMMENT_OUT.charAt(0));
                                 length--;
                                 if ( length == 0 ){
                                     break;
                                 }
                             }
-                            replacedMapList.addLast(new String(buf));
+                            replacedMapList.addFirst(new String(buf));
                         }
                         if ( replacedMapList.size() > 0 ){
                             workingMapList.addAll(replacedMapList);
@@ -226,7 +324,8 @@ extends CodeMap
                 else{
                     idx++;
                     appendToWorkingMap(CodeLineMapForJava.TRADITIONAL_COMMENT, 1);
-                    commentContents.append(ch);
+                    heuristic.append(ch);
+                    commentLength++;
                 }
                 continue;
             }
@@ -271,30 +370,12 @@ extends CodeMap
             }
         }
 
+        emitLine(aSourceLine, workingMap);
         workingMapList.add(new String(workingMap));
         workingMap.delete(0, workingMap.length());
 	}
     
 
-    /**
-     * Erases the comment starting symbols and the ending symbols 
-     * from the specified comment string.
-     * 
-     * @param aComment comment string to be processed
-     * @return trimmed comment string
-     */
-    private String trimComment(final String aComment)
-    {
-        if ( aComment.startsWith("//") ){
-            return aComment.substring(2);
-        }
-        if ( aComment.startsWith("/*") ){
-            return aComment.substring(2, aComment.length()-2);
-        }
-        return null;
-    }
-    
-
     private int status;
 
     private final int CODE = 1;
@@ -303,7 +384,9 @@ extends CodeMap
     private final int STRING_LITERAL = 100;
     private final int CHAR_LITERAL = 200;
     
-    private StringBuilder commentContents;
+    /** the number of map elements of the current traditional comment */
+    private int commentLength;
+    private CommentOutHeuristic heuristic;
     private LinkedList<String> workingMapList;
     private StringBuilder workingMap;
 }
@@ -0,0 +1,51 @@
+package org.computer.aman.metrics.util.java;
+
+import java.io.IOException;
+
+import org.computer.aman.io.sourcecode.SourceFile;
+import org.computer.aman.metrics.util.CodeMap;
+import org.computer.aman.metrics.util.LanguageProvider;
+import org.computer.aman.metrics.util.MetricCollector;
+import org.computer.aman.metrics.util.ParseOptions;
+import org.computer.aman.metrics.util.TailCharacterHeuristic;
+
+/**
+ * The LanguageProvider of Java (.java).
+ * 
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class LanguageForJava
+implements LanguageProvider
+{
+    public String getName()
+    {
+        return "Java";
+    }
+
+    public String[] getExtensions()
+    {
+        return new String[] { "java" };
+    }
+
+    public CodeMap create(final SourceFile aSourceFile, final MetricCollector... someCollectors)
+    throws IOException
+    {
+        return new CodeMapForJava(aSourceFile, new TailCharacterHeuristic(), someCollectors);
+    }
+
+    public CodeMap create(final String[] sourceLines, final MetricCollector... someCollectors)
+    {
+        return new CodeMapForJava(sourceLines, new TailCharacterHeuristic(), someCollectors);
+    }
+
+    public CodeMap create(final SourceFile aSourceFile, final ParseOptions someOptions, final MetricCollector... someCollectors)
+    throws IOException
+    {
+        return new CodeMapForJava(aSourceFile, new TailCharacterHeuristic(), someOptions, someCollectors);
+    }
+
+    public CodeMap create(final String[] sourceLines, final ParseOptions someOptions, final MetricCollector... someCollectors)
+    {
+        return new CodeMapForJava(sourceLines, new TailCharacterHeuristic(), someOptions, someCollectors);
+    }
+}
@@ -0,0 +1,200 @@
+package org.computer.aman.metrics.util.offheap;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An arena of off-heap (direct) memory from which OffHeapCodeMap objects are allocated.
+ * <p></p>
+ * The arena allocates direct buffers in large slabs and hands out consecutive regions of them,
+ * so that the heap holds only the slab objects regardless of how many code maps are stored.
+ * All code maps allocated from an arena share its lifetime: 
+ * close() frees the native memory of the slabs at once, and accessing any of the code maps afterwards
+ * throws IllegalStateException.
+ * Every access to a code map is counted while it reads the memory, and close() waits for the accesses in progress,
+ * so that no thread reads memory which has been freed.
+ * <p></p>
+ * The slabs are direct ByteBuffers, since the Foreign Memory API (MemorySegment) is not final
+ * before Java 22 and this library runs on Java 16 and later;
+ * they are freed by the cleaner of the buffers (sun.misc.Unsafe.invokeCleaner() of the jdk.unsupported module).
+ * If the cleaner is not available, close() frees nothing by itself, and the slabs are freed
+ * when the garbage collector finds them unreachable.
+ * 
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class OffHeapArena
+implements AutoCloseable
+{
+    /**
+     * Creates an arena with the default slab size (4 MB).
+     */
+    public OffHeapArena()
+    {
+        this(DEFAULT_SLAB_SIZE);
+    }
+
+    /**
+     * Creates an arena with the specified slab size.
+     * 
+     * @param aSlabSize the size of a slab in bytes
+     */
+    public OffHeapArena(final int aSlabSize)
+    {
+        if ( aSlabSize <= 0 ){
+            throw new IllegalArgumentException("must be positive : " + aSlabSize);
+        }
+        slabSize = aSlabSize;
+        slabs = new ArrayList<ByteBuffer>();
+        current = null;
+        allocated = 0;
+        closed = false;
+        accesses = new AtomicInteger();
+    }
+
+    /**
+     * Allocates a region of the specified size.
+     * A region larger than the slab size gets a direct buffer of its own.
+     * 
+     * @param aSize the size of the region in bytes
+     * @return the region, whose position is 0 and whose limit is aSize
+     */
+    synchronized ByteBuffer allocate(final int aSize)
+    {
+        checkOpen();
+        if ( aSize > slabSize ){
+            ByteBuffer region = ByteBuffer.allocateDirect(aSize);
+            slabs.add(region);
+            allocated += aSize;
+            return region;
+        }
+        if ( current == null || current.remaining() < aSize ){
+            current = ByteBuffer.allocateDirect(slabSize);
+            slabs.add(current);
+        }
+        ByteBuffer region = current.slice();
+        region.limit(aSize);
+        current.position(current.position() + aSize);
+        allocated += aSize;
+        return region;
+    }
+
+    /**
+     * Begins an access to the memory of this arena; every call must be followed by exit().
+     * 
+     * @throws IllegalStateException if this arena has been closed
+     */
+    void enter()
+    {
+        accesses.incrementAndGet();
+        if ( closed ){
+            accesses.decrementAndGet();
+            throw new IllegalStateException("the arena has been closed");
+        }
+    }
+
+    /**
+     * Ends an access to the memory of this arena.
+     */
+    void exit()
+    {
+        accesses.decrementAndGet();
+    }
+
+    /**
+     * Throws IllegalStateException if this arena has been closed.
+     */
+    void checkOpen()
+    {
+        if ( closed ){
+            throw new IllegalStateException("the arena has been closed");
+        }
+    }
+
+    /**
+     * Returns the number of bytes allocated from this arena.
+     * 
+     * @return the number of bytes allocated from this arena
+     */
+    public synchronized long getAllocatedBytes()
+    {
+        return allocated;
+    }
+
+    /**
+     * Returns true if this arena has been closed.
+     * 
+     * @return true if this arena has been closed
+     */
+    public boolean isClosed()
+    {
+        return closed;
+    }
+
+    /**
+     * Closes this arena, and frees its memory after the accesses in progress have ended;
+     * the code maps allocated from it can no longer be used.
+     */
+    public synchronized void close()
+    {
+        if ( closed ){
+            return;
+        }
+        closed = true;
+        while ( accesses.get() > 0 ){
+            Thread.onSpinWait();
+        }
+        if ( INVOKE_CLEANER != null ){
+            for ( int i = 0; i < slabs.size(); i++ ){
+                try {
+                    INVOKE_CLEANER.invoke(UNSAFE, slabs.get(i));
+                } catch (ReflectiveOperationException e) {
+                    // left to the garbage collector
+                }
+            }
+        }
+        slabs.clear();
+        current = null;
+    }
+
+    /** the default size of a slab */
+    public static final int DEFAULT_SLAB_SIZE = 4 << 20;
+
+    /** Unsafe.invokeCleaner(ByteBuffer), or null if it is not available */
+    private static final Method INVOKE_CLEANER;
+
+    /** the instance of sun.misc.Unsafe (null if not available) */
+    private static final Object UNSAFE;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> type = Class.forName("sun.misc.Unsafe");
+            Field field = type.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = type.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            unsafe = null;
+            invokeCleaner = null;
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    /** the number of the accesses in progress */
+    private final AtomicInteger accesses;
+
+    private long allocated;
+
+    private volatile boolean closed;
+
+    private ByteBuffer current;
+
+    private final int slabSize;
+
+    private final ArrayList<ByteBuffer> slabs;
+}
@@ -0,0 +1,77 @@
+package org.computer.aman.metrics.util.offheap;
+
+import org.computer.aman.metrics.util.CodeLineMap;
+
+/**
+ * A code map of a source line, backed by an OffHeapCodeMap.
+ * The counts are read when the object is created; the character types are read from the off-heap memory.
+ * 
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+class OffHeapCodeLineMap
+extends CodeLineMap
+{
+    OffHeapCodeLineMap(final OffHeapCodeMap aMap, final int aLine)
+    {
+        super(null);
+        owner = aMap;
+        line = aLine;
+        counts = new int[4];
+        owner.getCounts(line, counts);
+    }
+
+    public int getBlankCount()
+    {
+        return counts[0];
+    }
+
+    public int getCodeCount()
+    {
+        return counts[1];
+    }
+
+    public int getCommentCount()
+    {
+        return counts[2];
+    }
+
+    public int getCommentOutCount()
+    {
+        return counts[3];
+    }
+
+    /**
+     * Retrieves the code map, decoded from the off-heap memory.
+     * 
+     * @return the code map
+     * @throws UnsupportedOperationException if the character types are not kept
+     */
+    public String getMap()
+    {
+        return owner.getMap(line);
+    }
+
+    public boolean isComment(final int anIndex)
+    {
+        final char type = owner.getType(line, anIndex);
+        return type != CODE.charAt(0) && type != BLANK.charAt(0);
+    }
+
+    public boolean isBlankLine()
+    {
+        return getCodeCount() == 0 && getCommentCount() == 0;
+    }
+
+    public String toString()
+    {
+        return "(b" + getBlankCount() + ",c" + getCodeCount() + ",#" + getCommentCount() 
+                + ":o" + getCommentOutCount() + ")" + (owner.isKeepingTypes() ? " " + getMap() : "");
+    }
+
+    /** the blank, code, comment and commented-out counts */
+    private final int[] counts;
+
+    private final int line;
+
+    private final OffHeapCodeMap owner;
+}
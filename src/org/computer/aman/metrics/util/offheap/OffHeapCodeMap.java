@@ -0,0 +1,243 @@
+package org.computer.aman.metrics.util.offheap;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.computer.aman.metrics.util.CodeLineMap;
+import org.computer.aman.metrics.util.CodeMap;
+
+/**
+ * The contents of a code map stored in off-heap memory of an OffHeapArena.
+ * <p></p>
+ * An off-heap code map is a compact copy of a code map (e.g., a CodeMapForJava object):
+ * it keeps the blank, code, comment and commented-out character counts of each line, 
+ * and optionally the type of each character packed into four bits.
+ * The original code map can then be discarded, so that the heap footprint of whole-corpus analyses
+ * does not grow with the size of the corpus.
+ * <p></p>
+ * It is not a CodeMap, since it does not parse source code; it is an Iterable over the lines instead,
+ * whose iterator() returns CodeLineMap objects holding the counts of the lines,
+ * and reading the character types from the off-heap memory
+ * (getMap() and isComment() of them are available only if the character types have been kept).
+ * 
+ * <p></p>
+ * <u><b>(Example)</b></u>
+ * <pre>
+ * OffHeapArena <i>arena</i> = new OffHeapArena();
+ * OffHeapCodeMap <i>map</i> = new OffHeapCodeMap(<i>arena</i>, CodeMapFactory.create(<i>file</i>), false);
+ * for (Iterator&lt;CodeLineMap&gt; <i>itr</i> = <i>map</i>.iterator(); <i>itr</i>.hasNext(); ){
+ *     ... <i>itr</i>.next().getCommentOutCount() ...
+ * }
+ * ...
+ * <i>arena</i>.close();
+ * </pre>
+ * 
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class OffHeapCodeMap
+implements Iterable<CodeLineMap>
+{
+    /**
+     * Copies the specified code map into the specified arena.
+     * 
+     * @param anArena the arena in which the code map is stored
+     * @param aMap the code map to be copied
+     * @param isKeepingTypes true if the type of each character is to be kept
+     * @throws IllegalStateException if the arena has been closed
+     */
+    public OffHeapCodeMap(final OffHeapArena anArena, final CodeMap aMap, final boolean isKeepingTypes)
+    {
+        arena = anArena;
+
+        int count = 0;
+        long characters = 0;
+        for (Iterator<CodeLineMap> itr = aMap.iterator(); itr.hasNext(); ){
+            characters += itr.next().getMap().length();
+            count++;
+        }
+        lineCount = count;
+        keepingTypes = isKeepingTypes;
+
+        long size = (long)lineCount * COUNTS_SIZE;
+        if ( keepingTypes ){
+            size += (long)(lineCount + 1) * 4 + (characters + 1) / 2;
+        }
+        if ( size > Integer.MAX_VALUE ){
+            throw new IllegalArgumentException("too large code map : " + size + " bytes");
+        }
+        memory = arena.allocate((int)size);
+        typesBase = lineCount * COUNTS_SIZE + (lineCount + 1) * 4;
+
+        // entered after allocate(), since close() holds the lock of the arena while it waits for the accesses;
+        // a close() from then on waits until the region has been filled
+        arena.enter();
+        try {
+            int line = 0;
+            int offset = 0;
+            for (Iterator<CodeLineMap> itr = aMap.iterator(); itr.hasNext(); line++ ){
+                CodeLineMap lineMap = itr.next();
+                final int base = line * COUNTS_SIZE;
+                memory.putInt(base, lineMap.getBlankCount());
+                memory.putInt(base + 4, lineMap.getCodeCount());
+                memory.putInt(base + 8, lineMap.getCommentCount());
+                memory.putInt(base + 12, lineMap.getCommentOutCount());
+                if ( keepingTypes ){
+                    final String map = lineMap.getMap();
+                    memory.putInt(lineCount * COUNTS_SIZE + line * 4, offset);
+                    for ( int i = 0; i < map.length(); i++, offset++ ){
+                        final int type = map.charAt(i) - '0';
+                        final int index = typesBase + (offset >>> 1);
+                        final int packed = (offset & 1) == 0 ? type : (memory.get(index) & 0x0f) | (type << 4);
+                        memory.put(index, (byte)packed);
+                    }
+                }
+            }
+            if ( keepingTypes ){
+                memory.putInt(lineCount * COUNTS_SIZE + lineCount * 4, offset);
+            }
+        } finally {
+            arena.exit();
+        }
+    }
+
+    /**
+     * Returns the number of lines.
+     * 
+     * @return the number of lines
+     */
+    public int getLineCount()
+    {
+        return lineCount;
+    }
+
+    /**
+     * Returns true if the type of each character is kept.
+     * 
+     * @return true if the type of each character is kept
+     */
+    public boolean isKeepingTypes()
+    {
+        return keepingTypes;
+    }
+
+    /**
+     * Returns an iterator over the lines of this code map; 
+     * the returned CodeLineMap objects are backed by the off-heap memory.
+     * 
+     * @return an iterator over the elements (CodeLineMap objects) in this code map in proper sequence
+     * @throws IllegalStateException if the arena has been closed
+     */
+    public Iterator<CodeLineMap> iterator()
+    {
+        arena.checkOpen();
+        return new Iterator<CodeLineMap>() {
+            public boolean hasNext()
+            {
+                return next < lineCount;
+            }
+
+            public CodeLineMap next()
+            {
+                if ( next >= lineCount ){
+                    throw new NoSuchElementException();
+                }
+                return new OffHeapCodeLineMap(OffHeapCodeMap.this, next++);
+            }
+
+            private int next = 0;
+        };
+    }
+
+    public String toString()
+    {
+        StringBuilder buf = new StringBuilder();
+        for (Iterator<CodeLineMap> itr = iterator(); itr.hasNext(); ){
+            buf.append(itr.next()).append(System.lineSeparator());
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Reads the blank, code, comment and commented-out counts of the specified line.
+     * 
+     * @param aLine the line index (from 0)
+     * @param someCounts the array into which the four counts are read
+     */
+    void getCounts(final int aLine, final int[] someCounts)
+    {
+        arena.enter();
+        try {
+            for ( int i = 0; i < 4; i++ ){
+                someCounts[i] = memory.getInt(aLine * COUNTS_SIZE + i * 4);
+            }
+        } finally {
+            arena.exit();
+        }
+    }
+
+    /**
+     * Decodes the code map of the specified line.
+     */
+    String getMap(final int aLine)
+    {
+        if ( !keepingTypes ){
+            throw new UnsupportedOperationException("the character types are not kept");
+        }
+        arena.enter();
+        try {
+            final int offsets = lineCount * COUNTS_SIZE;
+            final int begin = memory.getInt(offsets + aLine * 4);
+            char[] map = new char[memory.getInt(offsets + (aLine + 1) * 4) - begin];
+            for ( int i = 0; i < map.length; i++ ){
+                map[i] = typeAt(begin + i);
+            }
+            return new String(map);
+        } finally {
+            arena.exit();
+        }
+    }
+
+    /**
+     * Returns the type of the specified character as a code map character ('0', '1', ...).
+     */
+    char getType(final int aLine, final int anIndex)
+    {
+        if ( !keepingTypes ){
+            throw new UnsupportedOperationException("the character types are not kept");
+        }
+        arena.enter();
+        try {
+            return typeAt(memory.getInt(lineCount * COUNTS_SIZE + aLine * 4) + anIndex);
+        } finally {
+            arena.exit();
+        }
+    }
+
+    /**
+     * Returns the type at the specified offset of the packed types (within enter() and exit()).
+     */
+    private char typeAt(final int anOffset)
+    {
+        final int packed = memory.get(typesBase + (anOffset >>> 1));
+        return (char)('0' + ((anOffset & 1) == 0 ? packed & 0x0f : (packed >>> 4) & 0x0f));
+    }
+
+    /** the size of the counts of a line in bytes */
+    private static final int COUNTS_SIZE = 16;
+
+    private final OffHeapArena arena;
+
+    private final boolean keepingTypes;
+
+    private final int lineCount;
+
+    /**
+     * the region of this code map: 
+     * counts[lineCount][4], then (if the types are kept) offsets[lineCount + 1] and the packed types 
+     */
+    private final ByteBuffer memory;
+
+    /** the position of the packed types in the region */
+    private final int typesBase;
+}